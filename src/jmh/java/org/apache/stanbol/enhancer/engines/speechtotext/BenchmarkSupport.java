@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.stanbol.commons.sphinx.ModelProvider;
+import org.apache.stanbol.commons.sphinx.ModelProviderImpl;
+import org.apache.stanbol.enhancer.contentitem.inmemory.InMemoryContentItemFactory;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.WavHeader;
+import org.apache.stanbol.enhancer.servicesapi.ContentItem;
+import org.apache.stanbol.enhancer.servicesapi.ContentItemFactory;
+import org.apache.stanbol.enhancer.servicesapi.impl.ByteArraySource;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * Creates the engine, models and content used by the benchmarks. Models are
+ * loaded from the classpath (<code>org.apache.stanbol.data.sphinx.model</code>)
+ * by the {@link ClasspathDataFileProvider} so that benchmarks run offline.
+ *
+ * @author Suman Saurabh
+ *
+ */
+final class BenchmarkSupport {
+
+    static final ContentItemFactory ciFactory = InMemoryContentItemFactory.getInstance();
+
+    private BenchmarkSupport() {}
+
+    static ModelProvider createModelProvider() {
+        return new ModelProviderImpl(new ClasspathDataFileProvider("DUMMY"));
+    }
+
+    /**
+     * Creates and activates an engine using the default models. The
+     * transcript cache is deactivated so that every request is decoded.
+     * @param properties additional component properties or <code>null</code>
+     */
+    static SphinxModelEnhancement createEngine(Dictionary<String,Object> properties) 
+            throws IOException, ConfigurationException {
+        Dictionary<String,Object> config = new Hashtable<String,Object>();
+        config.put(SpeechToTextEngine.PROPERTY_NAME, "sphinx-benchmark");
+        config.put(SpeechToTextEngine.TRANSCRIPT_CACHE_SIZE, 0);
+        config.put(SpeechToTextEngine.WARM_UP, false);
+        if(properties != null){
+            for(Enumeration<String> keys = properties.keys(); keys.hasMoreElements();){
+                String key = keys.nextElement();
+                config.put(key, properties.get(key));
+            }
+        }
+        SphinxModelEnhancement engine = new SphinxModelEnhancement(ciFactory);
+        engine.bindModelProvider(createModelProvider());
+        engine.activate(new MockComponentContext(config));
+        return engine;
+    }
+
+    static byte[] readResource(String name) throws IOException {
+        InputStream in = BenchmarkSupport.class.getClassLoader().getResourceAsStream(name);
+        if(in == null){
+            throw new IOException("Resource "+name+" not found");
+        }
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Creates a WAVE file with the PCM data of the parsed WAVE fixture
+     * repeated the parsed number of times
+     * @param fixture the name of the WAVE resource
+     * @param repeat the number of repetitions
+     * @return the WAVE file
+     */
+    static byte[] createWave(String fixture, int repeat) throws IOException {
+        byte[] wave = readResource(fixture);
+        WavHeader header = WavHeader.parse(new ByteArrayInputStream(wave));
+        int offset = (int)header.getDataOffset();
+        int length = (int)Math.min(header.getDataLength(), wave.length - offset);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(44 + length * repeat);
+        int blockAlign = header.getBlockAlign();
+        out.write("RIFF".getBytes("US-ASCII"));
+        write(out, 36 + length * repeat, 4);
+        out.write("WAVEfmt ".getBytes("US-ASCII"));
+        write(out, 16, 4);
+        write(out, header.getFormatTag(), 2);
+        write(out, header.getChannels(), 2);
+        write(out, header.getSampleRate(), 4);
+        write(out, header.getSampleRate() * blockAlign, 4);
+        write(out, blockAlign, 2);
+        write(out, header.getBitsPerSample(), 2);
+        out.write("data".getBytes("US-ASCII"));
+        write(out, length * repeat, 4);
+        for(int i = 0; i < repeat; i++){
+            out.write(wave, offset, length);
+        }
+        return out.toByteArray();
+    }
+
+    static ContentItem createContentItem(byte[] content, String mimeType) throws IOException {
+        return ciFactory.createContentItem(new ByteArraySource(content, mimeType));
+    }
+
+    private static void write(ByteArrayOutputStream out, long value, int bytes) {
+        for(int i = 0; i < bytes; i++){
+            out.write((int)(value >> (8 * i)));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.stanbol.enhancer.servicesapi.ContentItem;
+import org.apache.stanbol.enhancer.servicesapi.EngineException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full {@link SpeechToTextEngine#computeEnhancements(ContentItem)} of the
+ * bundled WAVE fixtures. Longer recordings are created by repeating the
+ * audio of a fixture.
+ *
+ * @author Suman Saurabh
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx2G"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class EnhancementBenchmark {
+
+    @Param({"temp.wav", "test.wav"})
+    public String fixture;
+
+    /**
+     * The number of times the audio of the fixture is repeated
+     */
+    @Param({"1", "4", "16"})
+    public int repeat;
+
+    private SphinxModelEnhancement engine;
+    private byte[] wave;
+    private ContentItem ci;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        engine = BenchmarkSupport.createEngine(null);
+        wave = BenchmarkSupport.createWave(fixture, repeat);
+    }
+
+    @Setup(Level.Invocation)
+    public void createContentItem() throws IOException {
+        ci = BenchmarkSupport.createContentItem(wave, "audio/wav");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.deactivate(new MockComponentContext());
+    }
+
+    @Benchmark
+    public ContentItem computeEnhancements() throws EngineException {
+        engine.computeEnhancements(ci);
+        return ci;
+    }
+}
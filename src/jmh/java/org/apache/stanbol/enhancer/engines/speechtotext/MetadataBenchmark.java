@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.apache.stanbol.enhancer.servicesapi.rdf.Properties.ENHANCER_SELECTED_TEXT;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.clerezza.rdf.core.LiteralFactory;
+import org.apache.clerezza.rdf.core.Triple;
+import org.apache.clerezza.rdf.core.UriRef;
+import org.apache.clerezza.rdf.core.impl.TripleImpl;
+import org.apache.stanbol.enhancer.servicesapi.ContentItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insertion of the time annotations into the metadata of an in-memory 
+ * {@link ContentItem}. Compares the bulk insertion under a single write lock
+ * (as done by the engine) with locking for every annotation.
+ *
+ * @author Suman Saurabh
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MetadataBenchmark {
+
+    /**
+     * The number of annotated utterances
+     */
+    @Param({"10", "100", "1000"})
+    public int utterances;
+
+    private final List<Triple> annotations = new ArrayList<Triple>();
+    private ContentItem ci;
+
+    @Setup(Level.Trial)
+    public void createAnnotations() {
+        LiteralFactory lf = LiteralFactory.getInstance();
+        TimeLiteralFormat format = SpeechToTextEngine.DEFAULT_TIME_FORMAT;
+        for(int i = 0; i < utterances; i++){
+            UriRef annotation = new UriRef("urn:Sphinx:text:benchmark-"+i);
+            annotations.add(new TripleImpl(annotation, SpeechToTextEngine.ENHANCER_TIME_START,
+                format.createLiteral(i * 2000L)));
+            annotations.add(new TripleImpl(annotation, SpeechToTextEngine.ENHANCER_TIME_END,
+                format.createLiteral(i * 2000L + 1500)));
+            annotations.add(new TripleImpl(annotation, ENHANCER_SELECTED_TEXT,
+                lf.createTypedLiteral("one zero zero zero one")));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createContentItem() throws IOException {
+        ci = BenchmarkSupport.createContentItem(new byte[0], "audio/wav");
+    }
+
+    @Benchmark
+    public ContentItem bulkInsert() {
+        ci.getLock().writeLock().lock();
+        try {
+            ci.getMetadata().addAll(annotations);
+        } finally {
+            ci.getLock().writeLock().unlock();
+        }
+        return ci;
+    }
+
+    @Benchmark
+    public ContentItem lockPerAnnotation() {
+        for(Triple triple : annotations){
+            ci.getLock().writeLock().lock();
+            try {
+                ci.getMetadata().add(triple);
+            } finally {
+                ci.getLock().writeLock().unlock();
+            }
+        }
+        return ci;
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cmu.sphinx.api.Configuration;
+import edu.cmu.sphinx.api.StreamSpeechRecognizer;
+
+/**
+ * Compares the construction of a new {@link StreamSpeechRecognizer} (loading
+ * the models) with borrowing a warmed recognizer from the {@link RecognizerPool}.
+ *
+ * @author Suman Saurabh
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx2G"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class RecognizerBenchmark {
+
+    private Configuration configuration;
+    private RecognizerPool pool;
+    private String modelSetKey;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        SphinxConfig config = new SphinxConfig();
+        ModelSnapshot models = config.getModelSnapshot(BenchmarkSupport.createModelProvider(), "en");
+        if(models == null){
+            throw new IllegalStateException("Default models not found on the classpath");
+        }
+        configuration = config.getConfiguration(models);
+        modelSetKey = models.getKey();
+        pool = new RecognizerPool(1, 0);
+        //warm the pool
+        pool.release(modelSetKey, pool.borrow(modelSetKey, configuration));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public StreamSpeechRecognizer construct() throws IOException {
+        return new StreamSpeechRecognizer(configuration);
+    }
+
+    @Benchmark
+    public StreamSpeechRecognizer reuse() throws IOException, InterruptedException {
+        StreamSpeechRecognizer recognizer = pool.borrow(modelSetKey, configuration);
+        pool.release(modelSetKey, recognizer);
+        return recognizer;
+    }
+}
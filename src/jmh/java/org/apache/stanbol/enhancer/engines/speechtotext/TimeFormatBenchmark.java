@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.clerezza.rdf.core.TypedLiteral;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creation of the start/end time literals in the different 
+ * {@link TimeLiteralFormat}s
+ *
+ * @author Suman Saurabh
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TimeFormatBenchmark {
+
+    @Param({"DURATION", "MILLISECONDS", "LEGACY"})
+    public TimeLiteralFormat format;
+
+    private long time = 0;
+
+    @Benchmark
+    public TypedLiteral createLiteral() {
+        time = (time + 1237) % (10 * 3600000L); //up to 10 hours
+        return format.createLiteral(time);
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrent decodes of a {@link SpeechToTextEngine}.
+ * Requests exceeding {@link #getMaxConcurrent()} wait (in the order they
+ * arrived) for at most {@link #getMaxWait()} milliseconds. If more as
+ * {@link #getMaxQueued()} requests are already waiting, requests are rejected
+ * immediately.<p>
+ * The current queue depth and the time requests waited for admission are
+ * recorded so that the load of the engine can be observed.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class AdmissionController {
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWait;
+
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+
+    /**
+     * @param maxConcurrent the maximum number of concurrent decodes
+     * @param maxQueued the maximum number of requests waiting for admission
+     * @param maxWait the maximum time in milliseconds a request waits for
+     * admission
+     */
+    public AdmissionController(int maxConcurrent, int maxQueued, long maxWait) {
+        if(maxConcurrent < 1){
+            throw new IllegalArgumentException("The parsed maximum number of concurrent "
+                + "decodes MUST BE >= 1 (parsed: "+maxConcurrent+")!");
+        }
+        if(maxQueued < 0){
+            throw new IllegalArgumentException("The parsed maximum queue size MUST NOT "
+                + "be negative (parsed: "+maxQueued+")!");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWait = Math.max(maxWait, 0);
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Waits for admission. Admitted callers MUST call {@link #release()}
+     * after the decode completed.
+     * @throws RejectedExecutionException if the queue is full or if the
+     * caller was not admitted within {@link #getMaxWait()} milliseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        //also respects the fairness of the semaphore
+        if(permits.tryAcquire(0, TimeUnit.MILLISECONDS)){
+            admitted.incrementAndGet();
+            waitTimes.record(0);
+            return;
+        }
+        if(queued.incrementAndGet() > maxQueued){
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many requests: "+maxConcurrent
+                + " decodes are running and "+maxQueued+" requests are waiting");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+        } finally {
+            queued.decrementAndGet();
+            waitTimes.record(System.nanoTime() - start);
+        }
+        if(!acquired){
+            timedOut.incrementAndGet();
+            throw new RejectedExecutionException("Not admitted within "+maxWait+"ms ("
+                + maxConcurrent+" decodes are running)");
+        }
+        admitted.incrementAndGet();
+    }
+
+    /**
+     * Releases the admission acquired by {@link #acquire()}
+     */
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * @return the maximum time in milliseconds a request waits for admission
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * @return the number of currently running decodes
+     */
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of requests currently waiting for admission
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of admitted requests
+     */
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    /**
+     * @return the number of requests rejected because the queue was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the number of requests rejected because they where not
+     * admitted within {@link #getMaxWait()}
+     */
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return the times requests waited for admission (including requests
+     * that timed out)
+     */
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController[active: "+getActive()+"/"+maxConcurrent+", queued: "
+            + getQueueDepth()+"/"+maxQueued+", rejected: "+getRejected()+", timed out: "
+            + getTimedOut()+", wait: "+waitTimes+"]";
+    }
+}
@@ -0,0 +1,481 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import edu.cmu.sphinx.api.SpeechResult;
+import edu.cmu.sphinx.result.Edge;
+import edu.cmu.sphinx.result.Lattice;
+import edu.cmu.sphinx.result.Node;
+
+/**
+ * The alternative hypotheses of an {@link Utterance}: the N-best list and a
+ * pruned word lattice. Only created if enabled by the {@link Settings} so
+ * that utterances do not keep anything but the best hypothesis otherwise.<p>
+ * The lattice is pruned to the {@link Settings#getMaxNodes()} nodes with the
+ * highest posterior probability (the initial and terminal node are always
+ * kept) and to the {@link Settings#getMaxEdges()} edges between kept nodes
+ * with the highest score. This keeps memory and output size per utterance
+ * bounded regardless of the size of the lattice created by the recognizer.<p>
+ * Alternatives are serialized by {@link #write(Writer, Utterance, long, long)}
+ * as tab separated lines (see {@link #MIME_TYPE}). The first column is the
+ * type of the record:
+ * <ul>
+ * <li><code>U start end hypothesis</code>: starts the records of an utterance
+ * <li><code>N text</code>: an N-best hypothesis (in the order reported by
+ * the recognizer)
+ * <li><code>L nodes edges prunedNodes prunedEdges</code>: the size of the
+ * lattice
+ * <li><code>V id start end posterior word</code>: a node of the lattice
+ * <li><code>E from to acousticScore lmScore</code>: an edge of the lattice
+ * </ul>
+ * Times are in milliseconds relative to the processed media, scores and
+ * posteriors are in the log domain of the recognizer. Node ids are only
+ * unique within an utterance.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public final class Alternatives {
+
+    /**
+     * The MIME type of the serialized alternatives
+     */
+    public static final String MIME_TYPE = "text/tab-separated-values";
+
+    private static final Comparator<LatticeNode> BY_POSTERIOR = new Comparator<LatticeNode>() {
+        @Override
+        public int compare(LatticeNode n1, LatticeNode n2) {
+            return Double.compare(n1.posterior, n2.posterior);
+        }
+    };
+    private static final Comparator<LatticeNode> BY_TIME = new Comparator<LatticeNode>() {
+        @Override
+        public int compare(LatticeNode n1, LatticeNode n2) {
+            if(n1.start != n2.start){
+                return n1.start < n2.start ? -1 : 1;
+            }
+            if(n1.end != n2.end){
+                return n1.end < n2.end ? -1 : 1;
+            }
+            return Double.compare(n2.posterior, n1.posterior);
+        }
+    };
+    private static final Comparator<LatticeEdge> BY_SCORE = new Comparator<LatticeEdge>() {
+        @Override
+        public int compare(LatticeEdge e1, LatticeEdge e2) {
+            return Double.compare(e1.acousticScore + e1.lmScore, e2.acousticScore + e2.lmScore);
+        }
+    };
+    private static final Comparator<LatticeEdge> BY_NODES = new Comparator<LatticeEdge>() {
+        @Override
+        public int compare(LatticeEdge e1, LatticeEdge e2) {
+            return e1.getFrom() != e2.getFrom() ? e1.getFrom() - e2.getFrom() : e1.getTo() - e2.getTo();
+        }
+    };
+
+    private final List<String> nbest;
+    private final boolean lattice;
+    private final List<LatticeNode> nodes;
+    private final List<LatticeEdge> edges;
+    private final int prunedNodes;
+    private final int prunedEdges;
+
+    private Alternatives(List<String> nbest, boolean lattice, List<LatticeNode> nodes, 
+            List<LatticeEdge> edges, int prunedNodes, int prunedEdges) {
+        this.nbest = nbest;
+        this.lattice = lattice;
+        this.nodes = nodes;
+        this.edges = edges;
+        this.prunedNodes = prunedNodes;
+        this.prunedEdges = prunedEdges;
+    }
+
+    /**
+     * Extracts the alternatives of a recognition result
+     * @param result the result
+     * @param settings the settings
+     * @return the alternatives
+     */
+    public static Alternatives create(SpeechResult result, Settings settings) {
+        Collection<String> nbest = settings.getNbest() > 0 ? 
+                result.getNbest(settings.getNbest()) : null;
+        Lattice lattice = settings.isLattice() ? result.getLattice() : null;
+        if(lattice == null){
+            return create(nbest, null, null, settings);
+        }
+        Map<Node,LatticeNode> nodes = new IdentityHashMap<Node,LatticeNode>();
+        for(Node node : lattice.getNodes()){
+            nodes.put(node, new LatticeNode(node.getWord() == null ? null : node.getWord().getSpelling(),
+                node.getBeginTime(), node.getEndTime(), node.getPosterior(), 
+                node == lattice.getInitialNode() || node == lattice.getTerminalNode()));
+        }
+        List<LatticeEdge> edges = new ArrayList<LatticeEdge>();
+        for(Edge edge : lattice.getEdges()){
+            LatticeNode from = nodes.get(edge.getFromNode());
+            LatticeNode to = nodes.get(edge.getToNode());
+            if(from != null && to != null){
+                edges.add(new LatticeEdge(from, to, edge.getAcousticScore(), edge.getLMScore()));
+            }
+        }
+        return create(nbest, nodes.values(), edges, settings);
+    }
+
+    /**
+     * Creates the alternatives and prunes the lattice to the budget of the
+     * parsed settings
+     * @param nbest the N-best hypotheses or <code>null</code> if not available
+     * @param nodes the nodes of the lattice or <code>null</code> if not available
+     * @param edges the edges of the lattice or <code>null</code> if not available
+     * @param settings the settings
+     * @return the alternatives
+     */
+    static Alternatives create(Collection<String> nbest, Collection<LatticeNode> nodes,
+            Collection<LatticeEdge> edges, Settings settings) {
+        List<String> hypotheses = Collections.emptyList();
+        if(nbest != null && settings.getNbest() > 0){
+            Set<String> normalized = new LinkedHashSet<String>();
+            for(String hypothesis : nbest){
+                String text = normalize(hypothesis);
+                if(!text.isEmpty() && normalized.size() < settings.getNbest()){
+                    normalized.add(text);
+                }
+            }
+            hypotheses = new ArrayList<String>(normalized);
+        }
+        if(nodes == null || !settings.isLattice()){
+            return new Alternatives(hypotheses, false, Collections.<LatticeNode>emptyList(),
+                Collections.<LatticeEdge>emptyList(), 0, 0);
+        }
+        //keep the nodes with the highest posterior (and always the anchors)
+        int budget = settings.getMaxNodes() - 2; //reserved for the initial and terminal node
+        PriorityQueue<LatticeNode> best = new PriorityQueue<LatticeNode>(
+            Math.max(budget + 1, 1), BY_POSTERIOR);
+        List<LatticeNode> selected = new ArrayList<LatticeNode>();
+        for(LatticeNode node : nodes){
+            if(node.anchor){
+                selected.add(node);
+            } else if(budget > 0){
+                best.add(node);
+                if(best.size() > budget){
+                    best.poll();
+                }
+            }
+        }
+        selected.addAll(best);
+        Collections.sort(selected, BY_TIME);
+        //number the kept nodes in the order of their start time
+        Map<LatticeNode,LatticeNode> kept = new IdentityHashMap<LatticeNode,LatticeNode>(selected.size());
+        List<LatticeNode> keptNodes = new ArrayList<LatticeNode>(selected.size());
+        for(LatticeNode node : selected){
+            LatticeNode numbered = node.withId(keptNodes.size());
+            kept.put(node, numbered);
+            keptNodes.add(numbered);
+        }
+        //keep the best scored edges between kept nodes
+        PriorityQueue<LatticeEdge> bestEdges = new PriorityQueue<LatticeEdge>(
+            settings.getMaxEdges() + 1, BY_SCORE);
+        int edgeCount = 0;
+        for(LatticeEdge edge : edges){
+            edgeCount++;
+            if(kept.containsKey(edge.from) && kept.containsKey(edge.to)){
+                bestEdges.add(edge);
+                if(bestEdges.size() > settings.getMaxEdges()){
+                    bestEdges.poll();
+                }
+            }
+        }
+        List<LatticeEdge> keptEdges = new ArrayList<LatticeEdge>(bestEdges.size());
+        for(LatticeEdge edge : bestEdges){
+            keptEdges.add(new LatticeEdge(kept.get(edge.from), kept.get(edge.to), 
+                edge.acousticScore, edge.lmScore));
+        }
+        Collections.sort(keptEdges, BY_NODES);
+        return new Alternatives(hypotheses, true, keptNodes, keptEdges,
+            nodes.size() - keptNodes.size(), edgeCount - keptEdges.size());
+    }
+
+    /**
+     * Removes the sentence start/end markers and whitespace of a hypothesis
+     * of the recognizer
+     */
+    private static String normalize(String hypothesis) {
+        if(hypothesis == null){
+            return "";
+        }
+        StringBuilder text = new StringBuilder(hypothesis.length());
+        for(String word : hypothesis.trim().split("\\s+")){
+            if(!word.isEmpty() && !"<s>".equals(word) && !"</s>".equals(word)){
+                if(text.length() > 0){
+                    text.append(' ');
+                }
+                text.append(word);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the N-best hypotheses
+     */
+    public List<String> getNbest() {
+        return Collections.unmodifiableList(nbest);
+    }
+
+    /**
+     * @return the kept nodes of the lattice in the order of their start time
+     */
+    public List<LatticeNode> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * @return the kept edges of the lattice
+     */
+    public List<LatticeEdge> getEdges() {
+        return Collections.unmodifiableList(edges);
+    }
+
+    /**
+     * @return the number of nodes removed by pruning
+     */
+    public int getPrunedNodes() {
+        return prunedNodes;
+    }
+
+    /**
+     * @return the number of edges removed by pruning
+     */
+    public int getPrunedEdges() {
+        return prunedEdges;
+    }
+
+    /**
+     * Writes the records of an utterance
+     * @param out the writer
+     * @param utterance the utterance. Used to convert the times of the
+     * lattice to the timeline of the processed media
+     * @param start the start time of the utterance in milliseconds
+     * @param end the end time of the utterance in milliseconds
+     * @throws IOException on any error while writing
+     */
+    public void write(Writer out, Utterance utterance, long start, long end) throws IOException {
+        out.append('U').append('\t').append(Long.toString(start)).append('\t')
+            .append(Long.toString(end)).append('\t').append(clean(utterance.getHypothesis()))
+            .append('\n');
+        for(String hypothesis : nbest){
+            out.append('N').append('\t').append(clean(hypothesis)).append('\n');
+        }
+        if(lattice){
+            out.append('L').append('\t').append(Integer.toString(nodes.size())).append('\t')
+                .append(Integer.toString(edges.size())).append('\t')
+                .append(Integer.toString(prunedNodes)).append('\t')
+                .append(Integer.toString(prunedEdges)).append('\n');
+            for(LatticeNode node : nodes){
+                out.append('V').append('\t').append(Integer.toString(node.getId())).append('\t')
+                    .append(Long.toString(utterance.toMediaTime(node.start))).append('\t')
+                    .append(Long.toString(utterance.toMediaTime(node.end))).append('\t')
+                    .append(Float.toString((float)node.posterior)).append('\t')
+                    .append(clean(node.word)).append('\n');
+            }
+            for(LatticeEdge edge : edges){
+                out.append('E').append('\t').append(Integer.toString(edge.getFrom())).append('\t')
+                    .append(Integer.toString(edge.getTo())).append('\t')
+                    .append(Float.toString((float)edge.acousticScore)).append('\t')
+                    .append(Float.toString((float)edge.lmScore)).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Ensures that texts do not break the tab separated records
+     */
+    private static String clean(String text) {
+        return text == null ? "" : text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    @Override
+    public String toString() {
+        return "Alternatives[nbest: "+nbest.size()+", nodes: "+nodes.size()+" (pruned: "
+            + prunedNodes+"), edges: "+edges.size()+" (pruned: "+prunedEdges+")]";
+    }
+
+    /**
+     * A node of the pruned lattice. Times are relative to the decoded stream
+     */
+    public static final class LatticeNode {
+
+        private final String word;
+        private final long start;
+        private final long end;
+        private final double posterior;
+        private final boolean anchor;
+        private final int id;
+
+        LatticeNode(String word, long start, long end, double posterior, boolean anchor) {
+            this(-1, word, start, end, posterior, anchor);
+        }
+
+        private LatticeNode(int id, String word, long start, long end, double posterior, boolean anchor) {
+            this.id = id;
+            this.word = word;
+            this.start = start;
+            this.end = end;
+            this.posterior = posterior;
+            this.anchor = anchor;
+        }
+
+        LatticeNode withId(int id) {
+            return new LatticeNode(id, word, start, end, posterior, anchor);
+        }
+
+        /**
+         * @return the id of the node within the utterance
+         */
+        public int getId() {
+            return id;
+        }
+
+        public String getWord() {
+            return word;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public double getPosterior() {
+            return posterior;
+        }
+    }
+
+    /**
+     * An edge of the pruned lattice
+     */
+    public static final class LatticeEdge {
+
+        private final LatticeNode from;
+        private final LatticeNode to;
+        private final double acousticScore;
+        private final double lmScore;
+
+        LatticeEdge(LatticeNode from, LatticeNode to, double acousticScore, double lmScore) {
+            this.from = from;
+            this.to = to;
+            this.acousticScore = acousticScore;
+            this.lmScore = lmScore;
+        }
+
+        /**
+         * @return the id of the node the edge leaves
+         */
+        public int getFrom() {
+            return from.getId();
+        }
+
+        /**
+         * @return the id of the node the edge enters
+         */
+        public int getTo() {
+            return to.getId();
+        }
+
+        public double getAcousticScore() {
+            return acousticScore;
+        }
+
+        public double getLmScore() {
+            return lmScore;
+        }
+    }
+
+    /**
+     * The settings for the extraction of {@link Alternatives}
+     */
+    public static final class Settings {
+
+        public static final int DEFAULT_MAX_NODES = 200;
+        public static final int DEFAULT_MAX_EDGES = 1000;
+
+        private final int nbest;
+        private final boolean lattice;
+        private final int maxNodes;
+        private final int maxEdges;
+
+        /**
+         * @param nbest the maximum number of N-best hypotheses (<code>0</code>
+         * to deactivate)
+         * @param lattice if the pruned lattice is extracted
+         * @param maxNodes the maximum number of lattice nodes per utterance
+         * @param maxEdges the maximum number of lattice edges per utterance
+         */
+        public Settings(int nbest, boolean lattice, int maxNodes, int maxEdges) {
+            if(nbest < 0){
+                throw new IllegalArgumentException("The number of N-best hypotheses MUST NOT "
+                    + "be negative (parsed: "+nbest+")!");
+            }
+            if(lattice && maxNodes < 2){
+                throw new IllegalArgumentException("The maximum number of lattice nodes MUST BE "
+                    + ">= 2 (parsed: "+maxNodes+")!");
+            }
+            if(lattice && maxEdges < 1){
+                throw new IllegalArgumentException("The maximum number of lattice edges MUST BE "
+                    + ">= 1 (parsed: "+maxEdges+")!");
+            }
+            this.nbest = nbest;
+            this.lattice = lattice;
+            this.maxNodes = maxNodes;
+            this.maxEdges = maxEdges;
+        }
+
+        public int getNbest() {
+            return nbest;
+        }
+
+        public boolean isLattice() {
+            return lattice;
+        }
+
+        public int getMaxNodes() {
+            return maxNodes;
+        }
+
+        public int getMaxEdges() {
+            return maxEdges;
+        }
+
+        /**
+         * @return if anything is extracted
+         */
+        public boolean isEnabled() {
+            return nbest > 0 || lattice;
+        }
+    }
+}
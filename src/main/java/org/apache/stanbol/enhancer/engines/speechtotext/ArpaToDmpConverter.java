@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts trigram language models in the ARPA text format to the binary
+ * DMP format (<code>Darpa Trigram LM</code>). Sphinx parses ARPA models
+ * completely into the heap, while n-grams of DMP models are read on demand
+ * from the file.<p>
+ * Bigram and trigram probabilities and the bigram back-off weights are 
+ * stored as 16 bit indexes into value tables. If a model uses more as 65536
+ * distinct values of a kind, values are rounded to the minimal precision 
+ * that fits. Models with more as 65535 words or with an other order as 3
+ * are not supported by the format and are rejected.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public final class ArpaToDmpConverter {
+
+    /**
+     * Words are read and written as bytes
+     */
+    static final Charset CHARSET = Charset.forName("ISO-8859-1");
+    static final String HEADER = "Darpa Trigram LM";
+    /**
+     * The binary logarithm of the number of bigrams sharing an entry of
+     * the trigram segment table
+     */
+    static final int LOG_BIGRAM_SEGMENT_SIZE = 9;
+    /**
+     * Word ids, table indexes and trigram offsets are unsigned 16 bit values
+     */
+    private static final int MAX_VALUE = 0xffff;
+
+    private ArpaToDmpConverter() {}
+
+    /**
+     * Converts a trigram model
+     * @param arpa the ARPA model (read with {@link #CHARSET})
+     * @param out the stream the DMP model is written to
+     * @param name the name of the model stored in the header
+     * @throws IOException on any error while reading or writing or if the
+     * parsed model can not be converted
+     */
+    public static void convert(BufferedReader arpa, DataOutputStream out, String name) throws IOException {
+        LineReader in = new LineReader(arpa);
+        int[] counts = readCounts(in);
+        int unigramCount = counts[0];
+        int bigramCount = counts[1];
+        int trigramCount = counts[2];
+        //unigrams: ids are assigned in the order of the model
+        String[] words = new String[unigramCount];
+        float[] unigramProbs = new float[unigramCount];
+        float[] unigramBackoffs = new float[unigramCount];
+        Map<String,Integer> ids = new HashMap<String,Integer>(unigramCount * 2);
+        in.expectSection("\\1-grams:");
+        for(int i = 0; i < unigramCount; i++){
+            String[] tokens = in.nextNGram(1);
+            words[i] = tokens[1];
+            unigramProbs[i] = parseFloat(tokens[0]);
+            unigramBackoffs[i] = tokens.length > 2 ? parseFloat(tokens[2]) : 0f;
+            if(ids.put(words[i], i) != null){
+                throw new IOException("duplicate unigram '"+words[i]+"'");
+            }
+        }
+        //bigrams: sorted by (first, second) word id. The position in the
+        //model is kept in the lower 31 bits to sort the values with them
+        long[] bigrams = new long[bigramCount];
+        float[] probs = new float[bigramCount];
+        float[] backoffs = new float[bigramCount];
+        in.expectSection("\\2-grams:");
+        for(int i = 0; i < bigramCount; i++){
+            String[] tokens = in.nextNGram(2);
+            probs[i] = parseFloat(tokens[0]);
+            backoffs[i] = tokens.length > 3 ? parseFloat(tokens[3]) : 0f;
+            long key = ((long)getId(ids, tokens[1]) << 16) | getId(ids, tokens[2]);
+            bigrams[i] = (key << 31) | i;
+        }
+        Arrays.sort(bigrams);
+        long[] bigramKeys = new long[bigramCount];
+        float[] bigramProbs = new float[bigramCount];
+        float[] bigramBackoffs = new float[bigramCount];
+        for(int i = 0; i < bigramCount; i++){
+            bigramKeys[i] = bigrams[i] >>> 31;
+            int index = (int)(bigrams[i] & Integer.MAX_VALUE);
+            bigramProbs[i] = probs[index];
+            bigramBackoffs[i] = backoffs[index];
+            if(i > 0 && bigramKeys[i] == bigramKeys[i - 1]){
+                throw new IOException("duplicate bigram '"+words[(int)(bigramKeys[i] >>> 16)]
+                    + " " + words[(int)(bigramKeys[i] & MAX_VALUE)]+"'");
+            }
+        }
+        bigrams = null;
+        probs = null;
+        backoffs = null;
+        //trigrams: sorted by (bigram index, third word id)
+        long[] trigramKeys = new long[trigramCount];
+        float[] trigramProbs = new float[trigramCount];
+        in.expectSection("\\3-grams:");
+        for(int i = 0; i < trigramCount; i++){
+            String[] tokens = in.nextNGram(3);
+            trigramProbs[i] = parseFloat(tokens[0]);
+            long bigramKey = ((long)getId(ids, tokens[1]) << 16) | getId(ids, tokens[2]);
+            int bigram = Arrays.binarySearch(bigramKeys, bigramKey);
+            if(bigram < 0){
+                throw new IOException("missing bigram for trigram '"+tokens[1]+" "+tokens[2]
+                    + " "+tokens[3]+"'");
+            }
+            trigramKeys[i] = ((long)bigram << 16) | getId(ids, tokens[3]);
+        }
+        in.expectSection("\\end\\");
+        Quantizer bigramProbTable = new Quantizer(bigramProbs);
+        Quantizer backoffTable = new Quantizer(bigramBackoffs);
+        Quantizer trigramProbTable = new Quantizer(trigramProbs);
+        long[] trigrams = trigramKeys; //(key << 16) | prob index
+        for(int i = 0; i < trigramCount; i++){
+            trigrams[i] = (trigramKeys[i] << 16) | trigramProbTable.indexOf(trigramProbs[i]);
+        }
+        trigramProbs = null;
+        Arrays.sort(trigrams);
+        for(int i = 1; i < trigramCount; i++){
+            if(trigrams[i] >>> 16 == trigrams[i - 1] >>> 16){
+                throw new IOException("duplicate trigram (bigram: "+(trigrams[i] >>> 32)+")");
+            }
+        }
+        //write the model
+        writeString(out, HEADER);
+        writeString(out, name);
+        out.writeInt(unigramCount);
+        out.writeInt(bigramCount);
+        out.writeInt(trigramCount);
+        int bigram = 0;
+        for(int word = 0; word <= unigramCount; word++){ //including a sentinel
+            while(bigram < bigramCount && (bigramKeys[bigram] >>> 16) < word){
+                bigram++;
+            }
+            out.writeInt(word);
+            out.writeFloat(word < unigramCount ? unigramProbs[word] : 0f);
+            out.writeFloat(word < unigramCount ? unigramBackoffs[word] : 0f);
+            out.writeInt(bigram);
+        }
+        int segmentSize = 1 << LOG_BIGRAM_SEGMENT_SIZE;
+        int[] segments = new int[(bigramCount + 1) / segmentSize + 1];
+        Arrays.fill(segments, trigramCount);
+        int trigram = 0;
+        for(int i = 0; i <= bigramCount; i++){ //including a sentinel
+            while(trigram < trigramCount && (trigrams[trigram] >>> 32) < i){
+                trigram++;
+            }
+            if(i % segmentSize == 0){
+                segments[i >> LOG_BIGRAM_SEGMENT_SIZE] = trigram;
+            }
+            int offset = trigram - segments[i >> LOG_BIGRAM_SEGMENT_SIZE];
+            if(offset > MAX_VALUE){
+                throw new IOException("too many trigrams for a bigram segment");
+            }
+            if(i < bigramCount){
+                out.writeShort((int)(bigramKeys[i] & MAX_VALUE));
+                out.writeShort(bigramProbTable.indexOf(bigramProbs[i]));
+                out.writeShort(backoffTable.indexOf(bigramBackoffs[i]));
+            } else {
+                out.writeShort(0);
+                out.writeShort(0);
+                out.writeShort(0);
+            }
+            out.writeShort(offset);
+        }
+        for(int i = 0; i < trigramCount; i++){
+            out.writeShort((int)((trigrams[i] >>> 16) & MAX_VALUE));
+            out.writeShort((int)(trigrams[i] & MAX_VALUE));
+        }
+        bigramProbTable.write(out);
+        backoffTable.write(out);
+        trigramProbTable.write(out);
+        out.writeInt(segments.length);
+        for(int segment : segments){
+            out.writeInt(segment);
+        }
+        int length = 0;
+        byte[][] strings = new byte[unigramCount][];
+        for(int i = 0; i < unigramCount; i++){
+            strings[i] = words[i].getBytes(CHARSET);
+            length += strings[i].length + 1;
+        }
+        out.writeInt(length);
+        for(byte[] string : strings){
+            out.write(string);
+            out.write(0);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the n-gram counts of the <code>\data\</code> section
+     * @return the unigram, bigram and trigram counts
+     */
+    private static int[] readCounts(LineReader in) throws IOException {
+        String line;
+        do {
+            line = in.next();
+            if(line == null){
+                throw new IOException("missing \\data\\ section");
+            }
+        } while(!line.equals("\\data\\"));
+        int[] counts = new int[3];
+        while((line = in.next()) != null && line.startsWith("ngram ")){
+            int separator = line.indexOf('=');
+            int order;
+            int count;
+            try {
+                order = Integer.parseInt(line.substring(6, separator).trim());
+                count = Integer.parseInt(line.substring(separator + 1).trim());
+            } catch (RuntimeException e) {
+                throw new IOException("invalid n-gram count '"+line+"'");
+            }
+            if(order < 1 || order > 3){
+                throw new IOException("unsupported n-gram order "+order+" (only trigram models are supported)");
+            }
+            counts[order - 1] = count;
+        }
+        in.pushBack(line);
+        if(counts[2] <= 0 || counts[1] <= 0){
+            throw new IOException("no trigrams (only trigram models are supported)");
+        }
+        if(counts[0] > MAX_VALUE){
+            throw new IOException("too many words ("+counts[0]+" > "+MAX_VALUE+")");
+        }
+        return counts;
+    }
+
+    private static int getId(Map<String,Integer> ids, String word) throws IOException {
+        Integer id = ids.get(word);
+        if(id == null){
+            throw new IOException("no unigram for word '"+word+"'");
+        }
+        return id;
+    }
+
+    private static float parseFloat(String value) throws IOException {
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid probability '"+value+"'");
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(CHARSET);
+        out.writeInt(bytes.length + 1);
+        out.write(bytes);
+        out.write(0);
+    }
+
+    /**
+     * Reads the non-empty lines of an ARPA model
+     */
+    private static class LineReader {
+
+        private final BufferedReader in;
+        private String pushedBack;
+
+        LineReader(BufferedReader in) {
+            this.in = in;
+        }
+
+        String next() throws IOException {
+            if(pushedBack != null){
+                String line = pushedBack;
+                pushedBack = null;
+                return line;
+            }
+            String line;
+            while((line = in.readLine()) != null){
+                line = line.trim();
+                if(!line.isEmpty()){
+                    return line;
+                }
+            }
+            return null;
+        }
+
+        void pushBack(String line) {
+            pushedBack = line;
+        }
+
+        void expectSection(String section) throws IOException {
+            String line = next();
+            if(!section.equals(line)){
+                throw new IOException("expected '"+section+"' but found '"+line+"'");
+            }
+        }
+
+        /**
+         * @return the probability, the words and the optional back-off weight
+         */
+        String[] nextNGram(int order) throws IOException {
+            String line = next();
+            if(line == null || line.startsWith("\\")){
+                throw new IOException("less "+order+"-grams as declared (found: '"+line+"')");
+            }
+            String[] tokens = line.split("\\s+");
+            if(tokens.length < order + 1 || tokens.length > order + 2){
+                throw new IOException("invalid "+order+"-gram '"+line+"'");
+            }
+            return tokens;
+        }
+    }
+
+    /**
+     * Table of the distinct values of a kind
+     */
+    private static final class Quantizer {
+
+        /**
+         * Scales of the rounding (<code>0</code> for no rounding)
+         */
+        private static final double[] SCALES = new double[]{0, 10000, 1000, 100, 10};
+
+        private final float[] table;
+        private final double scale;
+
+        Quantizer(float[] values) throws IOException {
+            for(double s : SCALES){
+                float[] distinct = distinct(values, s);
+                if(distinct.length <= MAX_VALUE + 1){
+                    table = distinct;
+                    scale = s;
+                    return;
+                }
+            }
+            throw new IOException("too many distinct probabilities");
+        }
+
+        private static float[] distinct(float[] values, double scale) {
+            float[] sorted = new float[values.length];
+            for(int i = 0; i < values.length; i++){
+                sorted[i] = round(values[i], scale);
+            }
+            Arrays.sort(sorted);
+            int size = 0;
+            for(int i = 0; i < sorted.length; i++){
+                if(size == 0 || sorted[i] != sorted[size - 1]){
+                    sorted[size++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, size);
+        }
+
+        private static float round(float value, double scale) {
+            return scale == 0 ? value : (float)(Math.round(value * scale) / scale);
+        }
+
+        int indexOf(float value) {
+            return Arrays.binarySearch(table, round(value, scale));
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(table.length);
+            for(float value : table){
+                out.writeFloat(value);
+            }
+        }
+    }
+}
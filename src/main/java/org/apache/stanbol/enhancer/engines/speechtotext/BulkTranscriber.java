@@ -0,0 +1,404 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.stanbol.commons.sphinx.ModelProvider;
+import org.apache.stanbol.commons.sphinx.ModelProviderImpl;
+import org.apache.stanbol.enhancer.engines.speechtotext.TranscriptCache.Transcript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command line tool that transcribes all media files of a directory outside
+ * of OSGi. Files are decoded by a {@link SpeechToTextEngine} with a pool of
+ * workers sharing the loaded models (see {@link RecognizerPool}).<p>
+ * For every media file <code>{name}.txt</code> (the recognized text) and
+ * <code>{name}.segments.tsv</code> (start and end time in milliseconds and
+ * the text of every utterance) are written to the output directory using
+ * the same relative path as the media file. Both files are written to
+ * temporary files first. Files with an up-to-date 
+ * <code>.segments.tsv</code> are skipped so that interrupted runs can be 
+ * resumed by starting them again.<p>
+ * Usage:
+ * <pre>
+ * java org.apache.stanbol.enhancer.engines.speechtotext.BulkTranscriber
+ *     --models {dir} --input {dir} --output {dir} [--workers {n}] [--language {lang}]
+ * </pre>
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class BulkTranscriber {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkTranscriber.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final String TEXT_SUFFIX = ".txt";
+    public static final String SEGMENTS_SUFFIX = ".segments.tsv";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * MIME types of the processed files by file extension
+     */
+    private static final Map<String,String> MIME_TYPES;
+    static {
+        Map<String,String> mimeTypes = new HashMap<String,String>();
+        mimeTypes.put("wav", "audio/wav");
+        mimeTypes.put("wave", "audio/wav");
+        mimeTypes.put("flac", "audio/flac");
+        mimeTypes.put("au", "audio/basic");
+        MIME_TYPES = Collections.unmodifiableMap(mimeTypes);
+    }
+
+    private final SpeechToTextEngine engine;
+    private final File inputDirectory;
+    private final File outputDirectory;
+    private final int workers;
+    private final String language;
+
+    /**
+     * @param engine the engine used to decode the files
+     * @param inputDirectory the directory with the media files
+     * @param outputDirectory the directory the transcripts are written to
+     * @param workers the number of files decoded concurrently
+     * @param language the language of the media or <code>null</code> to use
+     * the default language of the engine
+     */
+    public BulkTranscriber(SpeechToTextEngine engine, File inputDirectory, File outputDirectory,
+            int workers, String language) {
+        if(engine == null){
+            throw new IllegalArgumentException("The parsed engine MUST NOT be NULL!");
+        }
+        if(inputDirectory == null || !inputDirectory.isDirectory()){
+            throw new IllegalArgumentException("The parsed input directory "+inputDirectory
+                + " MUST BE an existing directory!");
+        }
+        if(outputDirectory == null){
+            throw new IllegalArgumentException("The parsed output directory MUST NOT be NULL!");
+        }
+        if(workers < 1){
+            throw new IllegalArgumentException("The parsed number of workers MUST BE >= 1 (parsed: "+workers+")!");
+        }
+        this.engine = engine;
+        this.inputDirectory = inputDirectory;
+        this.outputDirectory = outputDirectory;
+        this.workers = workers;
+        this.language = language;
+    }
+
+    /**
+     * Transcribes all media files of the input directory that do not yet have
+     * an up-to-date transcript in the output directory
+     * @return the report of the run
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public Report run() throws InterruptedException {
+        List<File> files = new ArrayList<File>();
+        collect(inputDirectory, files);
+        Collections.sort(files);
+        final Report report = new Report(files.size());
+        final AtomicInteger position = new AtomicInteger();
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> tasks = new ArrayList<Future<?>>(files.size());
+            for(final File file : files){
+                tasks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        process(file, report, position.incrementAndGet());
+                    }
+                }));
+            }
+            for(Future<?> task : tasks){
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    //process(..) handles all exceptions
+                    log.error("Unexpected error while transcribing", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        report.wallNanos = System.nanoTime() - start;
+        DecodingMetrics metrics = engine.getDecodingMetrics();
+        report.audioMillis = metrics.getDecodedAudioMillis();
+        report.realTimeFactor = metrics.getRealTimeFactor();
+        return report;
+    }
+
+    private void process(File file, Report report, int position) {
+        String path = getRelativePath(file);
+        File text = new File(outputDirectory, path + TEXT_SUFFIX);
+        File segments = new File(outputDirectory, path + SEGMENTS_SUFFIX);
+        if(segments.isFile() && segments.lastModified() >= file.lastModified()){
+            report.skipped.incrementAndGet(); //transcribed by a previous run
+            return;
+        }
+        File textTemp = new File(text.getPath() + TEMP_SUFFIX);
+        File segmentsTemp = new File(segments.getPath() + TEMP_SUFFIX);
+        long start = System.nanoTime();
+        Writer out = null;
+        try {
+            File parent = text.getParentFile();
+            if(!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()){
+                throw new IOException("Unable to create directory "+parent);
+            }
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(textTemp), UTF8));
+            Transcript transcript = engine.transcribe(file, engine.probe(file, getMimeType(file)), 
+                language, out);
+            out.close();
+            out = null;
+            writeSegments(transcript, segmentsTemp);
+            //the segments file is renamed last as it marks the file as completed
+            rename(textTemp, text);
+            rename(segmentsTemp, segments);
+            report.processed.incrementAndGet();
+            System.out.println(String.format(Locale.ROOT, "[%d/%d] %s: %d utterances (%dms)", 
+                position, report.files, path, transcript.getEntries().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        } catch (IOException e) {
+            fail(path, report, position, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(path, report, position, e);
+        } catch (RuntimeException e) {
+            fail(path, report, position, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            textTemp.delete();
+            segmentsTemp.delete();
+        }
+    }
+
+    private void fail(String path, Report report, int position, Exception e) {
+        report.failed.incrementAndGet();
+        System.err.println(String.format(Locale.ROOT, "[%d/%d] %s: failed (%s)", 
+            position, report.files, path, e));
+        log.warn("Unable to transcribe "+path, e);
+    }
+
+    private static void writeSegments(Transcript transcript, File file) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8));
+        try {
+            out.write("start_ms\tend_ms\ttext\n");
+            for(Transcript.Entry entry : transcript.getEntries()){
+                out.write(Long.toString(entry.getStart()));
+                out.write('\t');
+                out.write(Long.toString(entry.getEnd()));
+                out.write('\t');
+                out.write(entry.getText().replace('\t', ' ').replace('\n', ' '));
+                out.write('\n');
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private static void rename(File source, File target) throws IOException {
+        if(!source.renameTo(target) && !(target.delete() && source.renameTo(target))){
+            throw new IOException("Unable to rename "+source+" to "+target);
+        }
+    }
+
+    private void collect(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if(children == null){
+            return;
+        }
+        for(File child : children){
+            if(child.isDirectory()){
+                collect(child, files);
+            } else if(getMimeType(child) != null){
+                files.add(child);
+            }
+        }
+    }
+
+    private String getRelativePath(File file) {
+        String base = inputDirectory.getAbsolutePath();
+        String path = file.getAbsolutePath();
+        return path.startsWith(base) ? path.substring(base.length() + 1) : file.getName();
+    }
+
+    /**
+     * @return the MIME type of the parsed file or <code>null</code> if the
+     * file is not processed
+     */
+    static String getMimeType(File file) {
+        String name = file.getName();
+        int index = name.lastIndexOf('.');
+        return index < 0 ? null : MIME_TYPES.get(name.substring(index + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The result of a {@link BulkTranscriber#run()}
+     */
+    public static final class Report {
+
+        private final int files;
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private long wallNanos;
+        private long audioMillis;
+        private double realTimeFactor;
+
+        Report(int files) {
+            this.files = files;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public int getProcessed() {
+            return processed.get();
+        }
+
+        /**
+         * @return the number of files transcribed by a previous run
+         */
+        public int getSkipped() {
+            return skipped.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return the duration of the run in milliseconds
+         */
+        public long getWallMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(wallNanos);
+        }
+
+        /**
+         * @return the duration of the decoded audio in milliseconds
+         */
+        public long getAudioMillis() {
+            return audioMillis;
+        }
+
+        /**
+         * @return the seconds of audio decoded per second of the run
+         */
+        public double getThroughput() {
+            return wallNanos <= 0 ? 0 : audioMillis * 1000000d / wallNanos;
+        }
+
+        /**
+         * @return the decode time of a single worker divided by the audio
+         * duration
+         */
+        public double getRealTimeFactor() {
+            return realTimeFactor;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d files: %d transcribed, %d skipped, %d failed%n"
+                + "decoded %.1fs of audio in %.1fs (throughput: %.2fx real time, real-time factor: %.3f)",
+                files, getProcessed(), getSkipped(), getFailed(), audioMillis / 1000d,
+                wallNanos / 1e9, getThroughput(), realTimeFactor);
+        }
+    }
+
+    /**
+     * {@link SpeechToTextEngine} used outside of OSGi. Keeps one recognizer
+     * per worker.
+     */
+    private static class StandaloneEngine extends SpeechToTextEngine {
+
+        StandaloneEngine(ModelProvider modelProvider, SphinxConfig config, int workers) {
+            super(modelProvider, config);
+            recognizerPool = new RecognizerPool(workers, 0, metrics);
+            languageRegistry = new LanguageEngineRegistry(recognizerPool, 0);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String,String> options = new HashMap<String,String>();
+        for(int i = 0; i < args.length; i++){
+            if(args[i].startsWith("--") && i + 1 < args.length){
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                usage("Unknown argument "+args[i]);
+                return;
+            }
+        }
+        for(String required : Arrays.asList("models", "input", "output")){
+            if(!options.containsKey(required)){
+                usage("Missing argument --"+required);
+                return;
+            }
+        }
+        int workers;
+        try {
+            workers = options.containsKey("workers") ? Integer.parseInt(options.get("workers")) :
+                Runtime.getRuntime().availableProcessors();
+        } catch (NumberFormatException e) {
+            usage("Invalid number of workers "+options.get("workers"));
+            return;
+        }
+        BulkTranscriber transcriber;
+        try {
+            ModelProvider modelProvider = new ModelProviderImpl(
+                new DirectoryDataFileProvider(new File(options.get("models"))));
+            transcriber = new BulkTranscriber(new StandaloneEngine(modelProvider, new SphinxConfig(), workers),
+                new File(options.get("input")), new File(options.get("output")), workers,
+                options.get("language"));
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+            return;
+        }
+        Report report = transcriber.run();
+        System.out.println(report);
+        if(report.getFailed() > 0){
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: java "+BulkTranscriber.class.getName()+" --models {dir} "
+            + "--input {dir} --output {dir} [--workers {n}] [--language {lang}]");
+        System.exit(2);
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.stanbol.commons.sphinx.AcousticModel;
+import org.apache.stanbol.commons.sphinx.BaseModel;
 import org.apache.stanbol.commons.sphinx.DictionaryModel;
 import org.apache.stanbol.commons.sphinx.LanguageModel;
 import org.apache.stanbol.commons.sphinx.ModelProvider;
@@ -102,7 +103,9 @@ public class CustomSphinxModelEnhancement
     
     @Reference
     private DataFileTracker dataFileTracker;
-    private DataFileListener modelFileListener;
+    private DataFileListener dictionaryModelListener;
+    private DataFileListener languageModelListener;
+    private DataFileListener acousticModelListener;
     
     @Reference
     protected ContentItemFactory ci;
@@ -140,6 +143,10 @@ public class CustomSphinxModelEnhancement
         ciFactory=ci;
         String bundleSymbolicName=null;//Getter for acoustic bundle name
         config.CUSTOM_MODEL_AVAILABLE=true;
+        config.setLanguageModelCache(languageModelCache);
+        config.setDictionaryCache(dictionaryCache);
+        config.setRecognitionMode(recognitionMode);
+        config.setKeywordThreshold(keywordThreshold);
         Object value = ctx.getProperties().get(BUNDLE_SYMBOLIC_NAME);
         if(value != null && !value.toString().isEmpty()){
             bundleSymbolicName=value.toString();
@@ -153,8 +160,8 @@ public class CustomSphinxModelEnhancement
 	/************************************************************************************************************************************/
 	value = ctx.getProperties().get(DICTIONARY_MODEL);
 	if(value != null && !value.toString().isEmpty()){
-	    modelFileListener = new NamedModelFileListener<DictionaryModel>();
-	    dataFileTracker.add(modelFileListener,value.toString(), null);
+	    dictionaryModelListener = new NamedModelFileListener<DictionaryModel>(DictionaryModel.class);
+	    dataFileTracker.add(dictionaryModelListener,value.toString(), null);
 	}else {
             throw new ConfigurationException(DICTIONARY_MODEL, "Configurations for the " 
             + getClass().getSimpleName() +" MUST HAVE at least a single custom "
@@ -167,8 +174,8 @@ public class CustomSphinxModelEnhancement
         }
 	value = ctx.getProperties().get(LANGUAGE_MODEL);
 	if(value != null && !value.toString().isEmpty()){
-	    modelFileListener = new NamedModelFileListener<LanguageModel>();
-	    dataFileTracker.add(modelFileListener,value.toString(), null);
+	    languageModelListener = new NamedModelFileListener<LanguageModel>(LanguageModel.class);
+	    dataFileTracker.add(languageModelListener,value.toString(), null);
 	}else {
             throw new ConfigurationException(DICTIONARY_MODEL, "Configurations for the " 
             + getClass().getSimpleName() +" MUST HAVE at least a single custom "
@@ -182,13 +189,27 @@ public class CustomSphinxModelEnhancement
 	/************************************************************************************************************************************/
 	//Locating the Acoustic Model files in the parsed @bundleSymbolicName
 	String acousticResource[]={"feat.params", "mdef", "means", "mixture_weights", "noisedict", "transition_matrices", "variances","feature_transform"};
+	acousticModelListener = new NamedModelFileListener<AcousticModel>(AcousticModel.class);
 	for(String resourceName: acousticResource) {
-	    dataFileTracker.add(modelFileListener,bundleSymbolicName,resourceName, null);
+	    dataFileTracker.add(acousticModelListener,bundleSymbolicName,resourceName, null);
 	}
+	trackGrammar(dataFileTracker);
+	//models not yet available are loaded by the file listeners
+	startWarmUp();
     }
     @Override
     protected void deactivate(ComponentContext ctx) {
-        dataFileTracker.removeAll(modelFileListener); //remove all tracked files
+        //remove all tracked files
+        for(DataFileListener listener : new DataFileListener[]{dictionaryModelListener,
+                languageModelListener, acousticModelListener}){
+            if(listener != null){
+                dataFileTracker.removeAll(listener);
+            }
+        }
+        dictionaryModelListener = null;
+        languageModelListener = null;
+        acousticModelListener = null;
+        untrackGrammar(dataFileTracker);
         config = null;
         super.deactivate(ctx);
     }
@@ -219,25 +240,35 @@ public class CustomSphinxModelEnhancement
      * @param <T> {@link LanguageModel}, {@link DictionaryModel}, {@link AcousticModel},  
      */
     		
-    private class  NamedModelFileListener<T> implements DataFileListener {
+    private class  NamedModelFileListener<T extends BaseModel> implements DataFileListener {
                 
-        private T modelType;
+        private final Class<T> modelType;
+        
+        NamedModelFileListener(Class<T> modelType) {
+            this.modelType = modelType;
+        }
         
         @Override
         public boolean available(String resourceName, InputStream is) {
+            SphinxConfig config = CustomSphinxModelEnhancement.this.config;
+            if(config == null){
+                return false; //deactivated
+            }
             try {
                 
                 //register the new model to the configuration
-            	if(modelType.getClass().equals(LanguageModel.class))
+            	if(modelType.equals(LanguageModel.class))
             		config.setCustomLangModel(resourceName);
-            	else if(modelType.getClass().equals(DictionaryModel.class))
+            	else if(modelType.equals(DictionaryModel.class))
             		config.setCustomDictModel(resourceName);
             	else
             		config.setCustomAcousticModel(resourceName);
+            	//load the changed model set without affecting running requests
+            	scheduleModelReload();
                 
             } catch (RuntimeException e){
                 log.warn("Error while loading custom model from resource " +
-                        " resourceName. This model will NOT be available for the "+
+                        resourceName+". This model will NOT be available for the "+
                         getClass().getSimpleName()+" (name:"+getName()+")",e);
             }
             return false; //keep tracking
@@ -245,13 +276,19 @@ public class CustomSphinxModelEnhancement
 
         @Override
         public boolean unavailable(String resourceName) {
+            SphinxConfig config = CustomSphinxModelEnhancement.this.config;
+            if(config == null){
+                return false; //deactivated
+            }
             //remove the unavailable model from the configuration
-            if(modelType.getClass().equals(LanguageModel.class))
+            if(modelType.equals(LanguageModel.class))
         	config.removeCustomLanguageModel(resourceName);
-            else if(modelType.getClass().equals(DictionaryModel.class))
+            else if(modelType.equals(DictionaryModel.class))
         	config.removeCustomDictModel(resourceName);
             else
         	config.removeCustomAcousticModel(resourceName);
+            //the models in use are kept until a complete model set is available
+            scheduleModelReload();
             return false; //keep tracking
         }
         
@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.beans.ConstructorProperties;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instrumentation of the stages of {@link SpeechToTextEngine#computeEnhancements(
+ * org.apache.stanbol.enhancer.servicesapi.ContentItem)}. Records a
+ * {@link LatencyHistogram} for every {@link Stage}, the amount of decoded
+ * audio and the real-time factor (decode time divided by the duration of
+ * the processed media). All methods are thread safe.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class DecodingMetrics implements DecodingMetricsMXBean {
+
+    /**
+     * The size of a 10 ms frame of the 16 kHz 16 bit mono PCM parsed to
+     * recognizers
+     */
+    public static final int FRAME_BYTES = 320;
+
+    /**
+     * The instrumented stages
+     */
+    public static enum Stage {
+        /**
+         * The whole enhancement request
+         */
+        REQUEST,
+        /**
+         * Resolving the models and the recognizer configuration of the language
+         */
+        MODEL_RESOLUTION,
+        /**
+         * Waiting for admission (see {@link AdmissionController})
+         */
+        ADMISSION,
+        /**
+         * Borrowing a recognizer from the {@link RecognizerPool} (including
+         * waiting for a lent recognizer and creating a new one)
+         */
+        RECOGNIZER_ACQUISITION,
+        /**
+         * Creating a recognizer (loading the models)
+         */
+        RECOGNIZER_CREATION,
+        /**
+         * Decoding a stream (or a segment of long audio) by a recognizer
+         */
+        DECODE,
+        /**
+         * Writing an utterance to the text/plain Blob
+         */
+        SINK_WRITE,
+        /**
+         * Waiting for the write lock of the ContentItem
+         */
+        LOCK_WAIT,
+        /**
+         * Holding the write lock of the ContentItem
+         */
+        LOCK_HOLD
+    }
+
+    private final Map<Stage,LatencyHistogram> stages = new EnumMap<Stage,LatencyHistogram>(Stage.class);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicLong rtfDecodeNanos = new AtomicLong();
+    private final AtomicLong rtfAudioMillis = new AtomicLong();
+    private final AtomicLong maxRealTimeFactor = new AtomicLong(Double.doubleToLongBits(0));
+    private volatile double lastRealTimeFactor;
+    private volatile boolean ready = true;
+
+    public DecodingMetrics() {
+        for(Stage stage : Stage.values()){
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records the latency of a stage
+     * @param stage the stage
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    /**
+     * Records the end of an enhancement request
+     * @param nanos the duration of the request in nanoseconds
+     * @param success if the request completed successfully
+     */
+    public void recordRequest(long nanos, boolean success) {
+        record(Stage.REQUEST, nanos);
+        if(success){
+            requests.incrementAndGet();
+        } else {
+            failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the decoding of a stream (or segment) by a recognizer
+     * @param nanos the decode time in nanoseconds
+     * @param bytes the number of PCM bytes parsed to the recognizer
+     */
+    public void recordDecode(long nanos, long bytes) {
+        record(Stage.DECODE, nanos);
+        decodedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Records the real-time factor of a request
+     * @param decodeNanos the time in nanoseconds needed to decode the media
+     * @param audioMillis the duration of the media in milliseconds
+     */
+    public void recordRealTimeFactor(long decodeNanos, long audioMillis) {
+        if(audioMillis <= 0){
+            return;
+        }
+        rtfDecodeNanos.addAndGet(decodeNanos);
+        rtfAudioMillis.addAndGet(audioMillis);
+        double rtf = toRealTimeFactor(decodeNanos, audioMillis);
+        lastRealTimeFactor = rtf;
+        long max = maxRealTimeFactor.get();
+        while(rtf > Double.longBitsToDouble(max)
+                && !maxRealTimeFactor.compareAndSet(max, Double.doubleToLongBits(rtf))){
+            max = maxRealTimeFactor.get();
+        }
+    }
+
+    private static double toRealTimeFactor(long decodeNanos, long audioMillis) {
+        return audioMillis <= 0 ? 0 : decodeNanos / 1000000d / audioMillis;
+    }
+
+    /**
+     * @param stage the stage
+     * @return the histogram of the parsed stage
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stages.get(stage);
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public Map<String,StageStatistics> getStages() {
+        Map<String,StageStatistics> statistics = new LinkedHashMap<String,StageStatistics>();
+        for(Map.Entry<Stage,LatencyHistogram> entry : stages.entrySet()){
+            statistics.put(entry.getKey().name(), StageStatistics.create(entry.getValue()));
+        }
+        return statistics;
+    }
+
+    @Override
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    @Override
+    public long getDecodedFrames() {
+        return decodedBytes.get() / FRAME_BYTES;
+    }
+
+    @Override
+    public long getDecodedAudioMillis() {
+        return getDecodedFrames() * 10;
+    }
+
+    @Override
+    public double getRealTimeFactor() {
+        return toRealTimeFactor(rtfDecodeNanos.get(), rtfAudioMillis.get());
+    }
+
+    @Override
+    public double getLastRealTimeFactor() {
+        return lastRealTimeFactor;
+    }
+
+    @Override
+    public double getMaxRealTimeFactor() {
+        return Double.longBitsToDouble(maxRealTimeFactor.get());
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Sets the readiness of the engine. Not affected by {@link #reset()}
+     * @param ready the state
+     */
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    @Override
+    public void reset() {
+        for(LatencyHistogram histogram : stages.values()){
+            histogram.reset();
+        }
+        requests.set(0);
+        failures.set(0);
+        decodedBytes.set(0);
+        rtfDecodeNanos.set(0);
+        rtfAudioMillis.set(0);
+        maxRealTimeFactor.set(Double.doubleToLongBits(0));
+        lastRealTimeFactor = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodingMetrics[ready: "+ready+", requests: "+getRequests()
+            + ", failures: "+getFailures()+", rtf: "+getRealTimeFactor()+", decode: "
+            + getHistogram(Stage.DECODE)+"]";
+    }
+
+    /**
+     * Immutable snapshot of the {@link LatencyHistogram} of a {@link Stage}.
+     * All times are in microseconds.
+     */
+    public static final class StageStatistics {
+
+        private final long count;
+        private final long meanMicros;
+        private final long p50Micros;
+        private final long p95Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+
+        @ConstructorProperties({"count","meanMicros","p50Micros","p95Micros","p99Micros","maxMicros"})
+        public StageStatistics(long count, long meanMicros, long p50Micros, long p95Micros,
+                long p99Micros, long maxMicros) {
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        static StageStatistics create(LatencyHistogram histogram) {
+            return new StageStatistics(histogram.getCount(),
+                TimeUnit.NANOSECONDS.toMicros(histogram.getMeanNanos()),
+                histogram.getPercentileMicros(50), histogram.getPercentileMicros(95),
+                histogram.getPercentileMicros(99),
+                TimeUnit.NANOSECONDS.toMicros(histogram.getMaxNanos()));
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP95Micros() {
+            return p95Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+}
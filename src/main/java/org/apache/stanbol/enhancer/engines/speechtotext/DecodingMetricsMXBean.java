@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.util.Map;
+
+import org.apache.stanbol.enhancer.engines.speechtotext.DecodingMetrics.Stage;
+import org.apache.stanbol.enhancer.engines.speechtotext.DecodingMetrics.StageStatistics;
+
+/**
+ * Management interface of the {@link DecodingMetrics} of a
+ * {@link SpeechToTextEngine}. Registered as OSGi service and with the 
+ * platform MBean server (using the name of the engine as <code>name</code>
+ * key of the object name).
+ *
+ * @author Suman Saurabh
+ *
+ */
+public interface DecodingMetricsMXBean {
+
+    /**
+     * @return the number of completed enhancement requests
+     */
+    long getRequests();
+
+    /**
+     * @return the number of failed enhancement requests
+     */
+    long getFailures();
+
+    /**
+     * @return the latency statistics by {@link Stage} name
+     */
+    Map<String,StageStatistics> getStages();
+
+    /**
+     * @return the number of PCM bytes parsed to recognizers
+     */
+    long getDecodedBytes();
+
+    /**
+     * @return the number of 10 ms frames parsed to recognizers
+     */
+    long getDecodedFrames();
+
+    /**
+     * @return the duration of the audio parsed to recognizers in milliseconds
+     */
+    long getDecodedAudioMillis();
+
+    /**
+     * @return the real-time factor (decode time divided by audio duration)
+     * over all requests
+     */
+    double getRealTimeFactor();
+
+    /**
+     * @return the real-time factor of the last request
+     */
+    double getLastRealTimeFactor();
+
+    /**
+     * @return the highest real-time factor of a single request
+     */
+    double getMaxRealTimeFactor();
+
+    /**
+     * @return <code>false</code> while the engine warms up its models after
+     * it was activated
+     */
+    boolean isReady();
+
+    /**
+     * Removes all recorded values
+     */
+    void reset();
+}
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of pronunciation dictionaries reduced to the vocabulary
+ * of a language model. Sphinx only needs pronunciations for the words of
+ * the language model, but loads the whole dictionary (e.g. more as 130k 
+ * entries of <code>en-cmu.dict</code>) into the heap of every recognizer.<p>
+ * Reduced dictionaries are stored as <code>{sha1}.dict</code> in the cache
+ * directory, where <code>{sha1}</code> is the checksum of the dictionary and 
+ * the language model. All engines using the same models therefore share the
+ * same reduced dictionary, also after restarts. The vocabulary is read from 
+ * ARPA language models (<code>*.lm</code>). Dictionaries used with other 
+ * language models are used as they are.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class DictionaryCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DictionaryCache.class);
+
+    /**
+     * Dictionaries are read and written as bytes
+     */
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+    public static final String SUFFIX = ".dict";
+
+    private final File directory;
+    /**
+     * The location to use by the path, length and modification time of the
+     * dictionary and the language model
+     */
+    private final Map<String,String> locations = new ConcurrentHashMap<String,String>();
+
+    /**
+     * @param directory the directory of the reduced dictionaries
+     * @throws IOException if the parsed directory can not be created
+     */
+    public DictionaryCache(File directory) throws IOException {
+        if(directory == null){
+            throw new IllegalArgumentException("The parsed directory MUST NOT be NULL!");
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Unable to create the dictionary cache directory "+directory);
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Getter for the location of the dictionary to be used by Sphinx
+     * @param dictionaryLocation the location of the resolved dictionary
+     * @param languageModelLocation the location of the resolved language
+     * model (before it is compiled by the {@link LanguageModelCache})
+     * @return the location of the reduced dictionary or the parsed 
+     * dictionary location if the dictionary can not be reduced
+     */
+    public String getLocation(String dictionaryLocation, String languageModelLocation) {
+        File dictionary = LanguageModelCache.toFile(dictionaryLocation);
+        File languageModel = LanguageModelCache.toFile(languageModelLocation);
+        if(dictionary == null || !dictionary.isFile() || languageModel == null
+                || !languageModel.isFile() || !languageModel.getName().endsWith(LanguageModelCache.ARPA_SUFFIX)){
+            return dictionaryLocation;
+        }
+        String key = dictionary.getAbsolutePath()+"|"+dictionary.length()+"|"+dictionary.lastModified()
+            + "|" + languageModel.getAbsolutePath()+"|"+languageModel.length()+"|"+languageModel.lastModified();
+        String reduced = locations.get(key);
+        if(reduced == null){
+            synchronized (this) { //reduce a dictionary only once
+                reduced = locations.get(key);
+                if(reduced == null){
+                    reduced = reduce(dictionary, languageModel, dictionaryLocation);
+                    locations.put(key, reduced);
+                }
+            }
+        }
+        return reduced;
+    }
+
+    private String reduce(File dictionary, File languageModel, String location) {
+        File temp = null;
+        try {
+            File reduced = new File(directory, LanguageModelCache.getChecksum(dictionary, languageModel) + SUFFIX);
+            if(reduced.isFile()){
+                log.debug("use reduced dictionary {} for {}",reduced,dictionary);
+                return reduced.getAbsolutePath();
+            }
+            Set<String> vocabulary = readVocabulary(languageModel);
+            temp = File.createTempFile("reduce", ".tmp", directory);
+            int entries = 0;
+            int kept = 0;
+            BufferedReader in = null;
+            Writer out = null;
+            try {
+                in = new BufferedReader(new InputStreamReader(new FileInputStream(dictionary), CHARSET));
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), CHARSET));
+                String line;
+                while((line = in.readLine()) != null){
+                    String word = getWord(line);
+                    if(word == null){
+                        continue;
+                    }
+                    entries++;
+                    if(vocabulary.contains(word)){
+                        out.write(line);
+                        out.write('\n');
+                        kept++;
+                    }
+                }
+                out.close();
+                out = null;
+            } finally {
+                IOUtils.closeQuietly(in);
+                IOUtils.closeQuietly(out);
+            }
+            if(kept == entries){
+                log.debug("dictionary {} contains only words of {}",dictionary,languageModel);
+                return location;
+            }
+            //make the reduced dictionary only visible after it was completely written
+            if(!temp.renameTo(reduced) && !reduced.isFile()){
+                throw new IOException("Unable to rename "+temp+" to "+reduced);
+            }
+            log.info("reduced dictionary {} to the {} words of {} ({} of {} entries)", new Object[]{
+                dictionary, vocabulary.size(), languageModel, kept, entries});
+            return reduced.getAbsolutePath();
+        } catch (IOException e) {
+            log.warn("Unable to reduce dictionary "+dictionary+" (the dictionary is used as is): "
+                + e.getMessage());
+            return location;
+        } finally {
+            if(temp != null){
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the word of a dictionary entry (without the number of an
+     * alternate pronunciation, e.g. <code>read(2)</code>) in lower case or 
+     * <code>null</code> if the line is empty
+     */
+    static String getWord(String line) {
+        int end = 0;
+        while(end < line.length() && !Character.isWhitespace(line.charAt(end))){
+            end++;
+        }
+        if(end == 0){
+            return null;
+        }
+        String word = line.substring(0, end);
+        if(word.endsWith(")") && word.lastIndexOf('(') > 0){
+            word = word.substring(0, word.lastIndexOf('('));
+        }
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reads the unigrams of an ARPA language model
+     * @return the words in lower case
+     */
+    private static Set<String> readVocabulary(File languageModel) throws IOException {
+        Set<String> vocabulary = new HashSet<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+            new FileInputStream(languageModel), CHARSET));
+        try {
+            String line;
+            while((line = in.readLine()) != null && !line.trim().equals("\\1-grams:"));
+            while((line = in.readLine()) != null){
+                line = line.trim();
+                if(line.startsWith("\\")){
+                    break; //end of the unigrams
+                }
+                String[] tokens = line.split("\\s+");
+                if(tokens.length >= 2){
+                    vocabulary.add(tokens[1].toLowerCase(Locale.ROOT));
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        if(vocabulary.isEmpty()){
+            throw new IOException("no unigrams found in "+languageModel);
+        }
+        return vocabulary;
+    }
+
+    @Override
+    public String toString() {
+        return "DictionaryCache[directory: "+directory+", dictionaries: "+locations.size()+"]";
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.stanbol.commons.stanboltools.datafileprovider.DataFileProvider;
+
+/**
+ * {@link DataFileProvider} used outside of OSGi (see {@link BulkTranscriber})
+ * that provides the Sphinx model files from a directory. Files are looked up
+ * in the directory itself and its direct sub directories (e.g. the acoustic
+ * model in <code>en-us/</code> as stored by the Sphinx model data bundle).
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class DirectoryDataFileProvider implements DataFileProvider {
+
+    private final File directory;
+
+    /**
+     * @param directory the directory containing the model files
+     */
+    public DirectoryDataFileProvider(File directory) {
+        if(directory == null || !directory.isDirectory()){
+            throw new IllegalArgumentException("The parsed model directory "+directory
+                + " MUST BE an existing directory!");
+        }
+        this.directory = directory;
+    }
+
+    @Override
+    public InputStream getInputStream(String bundleSymbolicName, String filename,
+            Map<String,String> comments) throws IOException {
+        File file = getFile(filename);
+        return file == null ? null : new FileInputStream(file);
+    }
+
+    @Override
+    public boolean isAvailable(String bundleSymbolicName, String filename, Map<String,String> comments) {
+        return getFile(filename) != null;
+    }
+
+    private File getFile(String filename) {
+        File file = new File(directory, filename);
+        if(file.isFile()){
+            return file;
+        }
+        File[] children = directory.listFiles();
+        if(children != null){
+            for(File child : children){
+                file = new File(child, filename);
+                if(child.isDirectory() && file.isFile()){
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryDataFileProvider[" + directory + "]";
+    }
+}
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the grammars used by the {@link RecognitionMode#GRAMMAR} and
+ * {@link RecognitionMode#KEYWORDS} modes. Sphinx loads JSGF grammars by
+ * name from a directory, so every grammar is stored as 
+ * <code>{sha1}/{name}.gram</code> in the cache directory, where 
+ * <code>{sha1}</code> is the checksum of the grammar. A changed grammar 
+ * therefore always has a new location and recognizers using the previous
+ * version are not affected.<p>
+ * Keyword lists are compiled to a grammar named {@link #KEYWORDS_GRAMMAR}
+ * that matches any sequence of the listed phrases. The phrases and their
+ * detection thresholds are kept as comments of the grammar and are read by
+ * the {@link KeywordFilter}.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class GrammarCache {
+
+    private static final Logger log = LoggerFactory.getLogger(GrammarCache.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * The extension Sphinx requires for JSGF grammars
+     */
+    public static final String GRAMMAR_SUFFIX = ".gram";
+    /**
+     * The name of the grammars compiled from keyword lists
+     */
+    public static final String KEYWORDS_GRAMMAR = "keywords";
+    /**
+     * Words of keyword lists. Excludes the operators of JSGF
+     */
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}'._-]+");
+    /**
+     * The prefix of the comments of compiled keyword lists that contain a
+     * keyword and its optional detection threshold
+     */
+    static final String KEYWORD_COMMENT = "//keyword ";
+
+    private final File directory;
+
+    /**
+     * @param directory the directory of the stored grammars
+     * @throws IOException if the parsed directory can not be created
+     */
+    public GrammarCache(File directory) throws IOException {
+        if(directory == null){
+            throw new IllegalArgumentException("The parsed directory MUST NOT be NULL!");
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Unable to create the grammar directory "+directory);
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stores a JSGF grammar. NOTE that imported grammars are not stored.
+     * @param resourceName the name of the grammar file. MUST end with 
+     * {@link #GRAMMAR_SUFFIX} and match the name declared by the grammar
+     * @param in the content of the grammar. Not closed by this method
+     * @return the stored grammar
+     * @throws IOException if the grammar could not be stored
+     */
+    public File storeGrammar(String resourceName, InputStream in) throws IOException {
+        String name = new File(resourceName).getName();
+        if(!name.endsWith(GRAMMAR_SUFFIX)){
+            throw new IOException("The name of the grammar "+resourceName+" MUST end with "
+                + GRAMMAR_SUFFIX);
+        }
+        File temp = File.createTempFile("grammar", ".tmp", directory);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            IOUtils.copy(in, out);
+            out.close();
+            out = null;
+            return store(temp, name);
+        } finally {
+            IOUtils.closeQuietly(out);
+            temp.delete();
+        }
+    }
+
+    /**
+     * Compiles and stores a keyword list
+     * @param resourceName the name of the keyword list (used for logging)
+     * @param in the keyword list (see {@link #compileKeywords(BufferedReader)}).
+     * Not closed by this method
+     * @return the stored grammar
+     * @throws IOException if the list could not be read or does not contain
+     * any keyword
+     */
+    public File storeKeywords(String resourceName, InputStream in) throws IOException {
+        String grammar = compileKeywords(new BufferedReader(new InputStreamReader(in, UTF8)));
+        if(grammar == null){
+            throw new IOException("The keyword list "+resourceName+" does not contain any keyword");
+        }
+        File temp = File.createTempFile("keywords", ".tmp", directory);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(grammar.getBytes(UTF8));
+            out.close();
+            out = null;
+            File stored = store(temp, KEYWORDS_GRAMMAR + GRAMMAR_SUFFIX);
+            log.debug("compiled keyword list {} to {}",resourceName,stored);
+            return stored;
+        } finally {
+            IOUtils.closeQuietly(out);
+            temp.delete();
+        }
+    }
+
+    private File store(File temp, String name) throws IOException {
+        File versionDirectory = new File(directory, LanguageModelCache.getChecksum(temp));
+        File grammar = new File(versionDirectory, name);
+        if(grammar.isFile()){
+            return grammar;
+        }
+        if(!versionDirectory.isDirectory() && !versionDirectory.mkdirs()){
+            throw new IOException("Unable to create the grammar directory "+versionDirectory);
+        }
+        if(!temp.renameTo(grammar) && !grammar.isFile()){
+            throw new IOException("Unable to rename "+temp+" to "+grammar);
+        }
+        return grammar;
+    }
+
+    /**
+     * Compiles a keyword list to a JSGF grammar. Lines contain a single
+     * keyword or phrase, optionally followed by a detection threshold in 
+     * slashes (e.g. <code>turn on /1e-20/</code>) as used by PocketSphinx. 
+     * Keywords and thresholds are written as {@link #KEYWORD_COMMENT}s of the
+     * grammar (see {@link KeywordFilter}). Lines starting with <code>#</code>
+     * are comments.
+     * Keywords are converted to lower case. Phrases with characters that are
+     * not allowed in JSGF tokens are skipped.
+     * @param in the keyword list
+     * @return the grammar or <code>null</code> if the list does not contain
+     * any keyword
+     * @throws IOException on any error while reading the list
+     */
+    static String compileKeywords(BufferedReader in) throws IOException {
+        Map<String,String> keywords = new LinkedHashMap<String,String>();
+        for(String line = in.readLine(); line != null; line = in.readLine()){
+            line = line.trim();
+            String threshold = null;
+            int thresholdStart = line.indexOf('/');
+            if(thresholdStart >= 0){
+                int thresholdEnd = line.indexOf('/', thresholdStart + 1);
+                threshold = line.substring(thresholdStart + 1, 
+                    thresholdEnd < 0 ? line.length() : thresholdEnd).trim();
+                line = line.substring(0, thresholdStart).trim();
+            }
+            if(line.isEmpty() || line.charAt(0) == '#'){
+                continue;
+            }
+            StringBuilder keyword = new StringBuilder();
+            for(String word : line.toLowerCase(Locale.ROOT).split("\\s+")){
+                if(!WORD.matcher(word).matches()){
+                    log.warn("skip keyword '{}' (unsupported characters in '{}')",line,word);
+                    keyword = null;
+                    break;
+                }
+                if(keyword.length() > 0){
+                    keyword.append(' ');
+                }
+                keyword.append(word);
+            }
+            if(keyword != null && (threshold != null && !threshold.isEmpty() 
+                    || !keywords.containsKey(keyword.toString()))){
+                keywords.put(keyword.toString(), threshold);
+            }
+        }
+        if(keywords.isEmpty()){
+            return null;
+        }
+        StringBuilder grammar = new StringBuilder("#JSGF V1.0 UTF-8;\n\ngrammar ");
+        grammar.append(KEYWORDS_GRAMMAR).append(";\n\n");
+        for(Entry<String,String> keyword : keywords.entrySet()){
+            grammar.append(KEYWORD_COMMENT).append(keyword.getKey());
+            if(keyword.getValue() != null && !keyword.getValue().isEmpty()){
+                grammar.append(" /").append(keyword.getValue()).append('/');
+            }
+            grammar.append('\n');
+        }
+        grammar.append("public <").append(KEYWORDS_GRAMMAR).append("> = (");
+        boolean first = true;
+        for(String keyword : keywords.keySet()){
+            grammar.append(first ? "\n      " : "\n    | ").append(keyword);
+            first = false;
+        }
+        return grammar.append("\n    )+;\n").toString();
+    }
+
+    /**
+     * @param grammar a stored grammar
+     * @return the name of the grammar as required by Sphinx
+     */
+    public static String getGrammarName(File grammar) {
+        String name = grammar.getName();
+        return name.endsWith(GRAMMAR_SUFFIX) ? 
+                name.substring(0, name.length() - GRAMMAR_SUFFIX.length()) : name;
+    }
+
+    @Override
+    public String toString() {
+        return "GrammarCache[directory: "+directory+"]";
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.util.Locale;
+
+/**
+ * The granularity of the start/end time annotations created for the
+ * recognized text.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public enum Granularity {
+    /**
+     * One annotation per utterance
+     */
+    UTTERANCE,
+    /**
+     * One annotation per phrase. Utterances are split into phrases at pauses
+     * of at least {@link #PHRASE_PAUSE} milliseconds between words. Phrase
+     * annotations also include the mean confidence of their words.
+     */
+    PHRASE,
+    /**
+     * One annotation per utterance plus the timings and confidences of all
+     * words in a columnar side part of the ContentItem (see 
+     * {@link WordTimingsWriter}). Words are not written as RDF as this would 
+     * add several triples per word to the metadata.
+     */
+    WORD;
+
+    /**
+     * The minimum pause in milliseconds between two phrases
+     */
+    public static final long PHRASE_PAUSE = 300;
+
+    /**
+     * Parses the granularity from the configured value (case insensitive)
+     * @param value the configured value
+     * @return the granularity
+     * @throws IllegalArgumentException if the parsed value is not a known
+     * granularity
+     */
+    public static Granularity parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.cmu.sphinx.result.WordResult;
+
+/**
+ * Rejects keywords recognized with a low confidence in the
+ * {@link RecognitionMode#KEYWORDS} mode. The grammar compiled from a keyword
+ * list matches every utterance to the listed phrases, so also speech that does
+ * not contain any keyword is reported as keyword.<p>
+ * The confidence of a keyword is the product of the confidences of its words
+ * (see {@link Utterance#getConfidence(WordResult)}). Keywords are accepted if
+ * the confidence is at least the detection threshold of the keyword list 
+ * (e.g. <code>turn on /1e-20/</code>) or the default threshold for keywords
+ * without one. NOTE that PocketSphinx thresholds are not based on the same
+ * scores and usually need to be adapted.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class KeywordFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(KeywordFilter.class);
+
+    /**
+     * The default threshold for keywords without a detection threshold
+     */
+    public static final double DEFAULT_THRESHOLD = 0.5;
+
+    /**
+     * The keywords split into words with their thresholds. Longest keywords
+     * first so that the longest matching keyword is found
+     */
+    private final List<Entry<String[],Double>> keywords;
+
+    /**
+     * @param keywords the keywords (lower case) with their thresholds. 
+     * <code>null</code> values use the default threshold
+     * @param defaultThreshold the threshold of keywords without one
+     */
+    public KeywordFilter(Map<String,Double> keywords, double defaultThreshold) {
+        List<Entry<String[],Double>> entries = new ArrayList<Entry<String[],Double>>();
+        Map<String[],Double> split = new LinkedHashMap<String[],Double>();
+        for(Entry<String,Double> keyword : keywords.entrySet()){
+            split.put(keyword.getKey().split(" "), keyword.getValue() == null ? 
+                    defaultThreshold : keyword.getValue());
+        }
+        entries.addAll(split.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String[],Double>>() {
+            @Override
+            public int compare(Entry<String[],Double> e1, Entry<String[],Double> e2) {
+                return e2.getKey().length - e1.getKey().length;
+            }
+        });
+        this.keywords = entries;
+    }
+
+    /**
+     * Reads the keywords and thresholds of a grammar compiled from a keyword
+     * list by the {@link GrammarCache}
+     * @param grammar the grammar
+     * @param defaultThreshold the threshold of keywords without one
+     * @return the filter
+     * @throws IOException if the grammar could not be read
+     */
+    public static KeywordFilter load(File grammar, double defaultThreshold) throws IOException {
+        Map<String,Double> keywords = new LinkedHashMap<String,Double>();
+        for(String line : FileUtils.readLines(grammar, "UTF-8")){
+            if(!line.startsWith(GrammarCache.KEYWORD_COMMENT)){
+                continue;
+            }
+            String keyword = line.substring(GrammarCache.KEYWORD_COMMENT.length()).trim();
+            Double threshold = null;
+            int thresholdStart = keyword.indexOf('/');
+            if(thresholdStart >= 0){
+                String value = keyword.substring(thresholdStart + 1, keyword.lastIndexOf('/')).trim();
+                keyword = keyword.substring(0, thresholdStart).trim();
+                try {
+                    threshold = Double.valueOf(value);
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid threshold '{}' of keyword '{}' (use default {})",
+                        new Object[]{value, keyword, defaultThreshold});
+                }
+            }
+            keywords.put(keyword, threshold);
+        }
+        return new KeywordFilter(keywords, defaultThreshold);
+    }
+
+    /**
+     * Removes the keywords with a confidence below their threshold
+     * @param utterance the utterance recognized with the keyword grammar
+     * @return the utterance with the accepted keywords or <code>null</code> 
+     * if no keyword was accepted
+     */
+    public Utterance filter(Utterance utterance) {
+        List<WordResult> spoken = new ArrayList<WordResult>();
+        if(utterance.getWords() != null){
+            for(WordResult word : utterance.getWords()){
+                if(Utterance.isSpoken(word)){
+                    spoken.add(word);
+                }
+            }
+        }
+        List<WordResult> accepted = new ArrayList<WordResult>(spoken.size());
+        StringBuilder hypothesis = new StringBuilder();
+        for(int i = 0; i < spoken.size();){
+            Entry<String[],Double> keyword = match(spoken, i);
+            if(keyword == null){ //not a listed keyword
+                i++;
+                continue;
+            }
+            int end = i + keyword.getKey().length;
+            double confidence = 1;
+            for(int j = i; j < end; j++){
+                confidence *= Utterance.getConfidence(spoken.get(j));
+            }
+            if(confidence >= keyword.getValue()){
+                accepted.addAll(spoken.subList(i, end));
+                for(String word : keyword.getKey()){
+                    if(hypothesis.length() > 0){
+                        hypothesis.append(' ');
+                    }
+                    hypothesis.append(word);
+                }
+            } else {
+                log.debug("reject keyword {} (confidence: {}, threshold: {})", new Object[]{
+                    Arrays.toString(keyword.getKey()), confidence, keyword.getValue()});
+            }
+            i = end;
+        }
+        if(accepted.isEmpty()){
+            return null;
+        }
+        return accepted.size() == spoken.size() ? utterance : 
+            utterance.withWords(hypothesis.toString(), accepted);
+    }
+
+    private Entry<String[],Double> match(List<WordResult> words, int start) {
+        for(Entry<String[],Double> keyword : keywords){
+            String[] tokens = keyword.getKey();
+            if(start + tokens.length > words.size()){
+                continue;
+            }
+            boolean matches = true;
+            for(int i = 0; matches && i < tokens.length; i++){
+                matches = tokens[i].equals(words.get(start + i).getWord().getSpelling()
+                    .toLowerCase(Locale.ROOT));
+            }
+            if(matches){
+                return keyword;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,485 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.stanbol.commons.sphinx.ModelProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.cmu.sphinx.api.Configuration;
+import edu.cmu.sphinx.api.StreamSpeechRecognizer;
+
+/**
+ * Registry holding a {@link LanguageEngine} for every language processed by a
+ * {@link SpeechToTextEngine}. Entries are created lazily on the first request
+ * for a language and evicted (together with their pooled recognizers) if they
+ * are not used for longer as the configured idle timeout.<p>
+ * Requests only read the {@link LanguageEngine} of their language. This
+ * allows to process content of different languages concurrently without
+ * changing the state of the shared {@link SphinxConfig}.<p>
+ * Every loaded model set forms a reference counted generation. Requests
+ * hold a reference from {@link #getEngine(SphinxConfig, ModelProvider, String)}
+ * until {@link #release(LanguageEngine)}. If the models of a language change
+ * (see {@link #warm(SphinxConfig, ModelSnapshot)} and
+ * {@link #retire(ModelSnapshot)}) new requests use the new generation while
+ * running requests complete on the old one. The pooled recognizers and the
+ * model resources of a retired generation are only released after all its
+ * requests completed.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class LanguageEngineRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(LanguageEngineRegistry.class);
+
+    /**
+     * 16 kHz 16 bit mono PCM decoded by {@link #warm(SphinxConfig, ModelSnapshot)}:
+     * 500ms of silence followed by 500ms of a quiet 440 Hz tone
+     */
+    private static final byte[] WARM_UP_CLIP = createWarmUpClip(16000, 1000);
+
+    private final RecognizerPool recognizerPool;
+    private final long idleTimeout;
+
+    private final ConcurrentMap<String,LanguageEngine> engines = new ConcurrentHashMap<String,LanguageEngine>();
+    /**
+     * The active generation by model set key. Changes to this map and to
+     * {@link #engines} (other as idle updates) are synchronized on this map
+     */
+    private final Map<String,Generation> generations = new ConcurrentHashMap<String,Generation>();
+    private final AtomicLong generationCounter = new AtomicLong();
+
+    /**
+     * @param recognizerPool the pool used to lend recognizers
+     * @param idleTimeout the time in milliseconds after that an unused
+     * language is evicted. Values <code>&lt;= 0</code> deactivate eviction.
+     */
+    public LanguageEngineRegistry(RecognizerPool recognizerPool, long idleTimeout) {
+        if(recognizerPool == null){
+            throw new IllegalArgumentException("The parsed RecognizerPool MUST NOT be NULL!");
+        }
+        this.recognizerPool = recognizerPool;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Getter for the {@link LanguageEngine} of the parsed language. If the
+     * models of the language where changed since the last call (see
+     * {@link SphinxConfig#getModelSnapshot(ModelProvider, String)}) a new
+     * entry is created for the re-resolved models.<p>
+     * The returned entry holds a reference to its model generation. Callers
+     * MUST call {@link #release(LanguageEngine)} after the request completed.
+     * @param config the configuration of the calling engine
+     * @param MPi the model provider used to resolve the models
+     * @param language the language
+     * @return the entry or <code>null</code> if the models for the parsed
+     * language are not available
+     */
+    public LanguageEngine getEngine(SphinxConfig config, ModelProvider MPi, String language) {
+        long now = System.currentTimeMillis();
+        evictIdle(now);
+        ModelSnapshot models = config.getModelSnapshot(MPi, language);
+        if(models == null){
+            return null;
+        }
+        LanguageEngine engine = engines.get(language);
+        if(engine == null || !engine.getModels().equals(models) || !engine.generation.retain()){
+            engine = createEngine(config, language, models);
+        }
+        engine.lastUsed = now;
+        return engine;
+    }
+
+    /**
+     * Releases the reference to the model generation hold by an entry
+     * returned by {@link #getEngine(SphinxConfig, ModelProvider, String)}
+     * @param engine the entry
+     */
+    public void release(LanguageEngine engine) {
+        if(engine != null){
+            engine.generation.release();
+        }
+    }
+
+    /**
+     * Loads the parsed models and creates a recognizer for them that decodes
+     * a short clip so that the first requests using the models do not need
+     * to wait for them.
+     * Intended to be called in the background before the models are made
+     * available to requests.<p>
+     * The warmed generation is not evicted when idle and keeps one idle
+     * recognizer (see {@link RecognizerPool#keepWarm(String)}) until its
+     * models are replaced or the registry is closed.
+     * @param config the configuration of the calling engine
+     * @param models the models
+     * @throws IOException if the recognizer could not be created
+     * @throws InterruptedException if interrupted while waiting for a recognizer
+     */
+    public void warm(SphinxConfig config, ModelSnapshot models) throws IOException, InterruptedException {
+        Generation generation = getGeneration(config, models);
+        boolean warmed = false;
+        try {
+            long start = System.nanoTime();
+            StreamSpeechRecognizer recognizer = recognizerPool.borrow(generation.poolKey, 
+                generation.configuration);
+            boolean decoded = false;
+            try { //also warms up the code paths of the decoder
+                recognizer.startRecognition(new ByteArrayInputStream(WARM_UP_CLIP));
+                while(recognizer.getResult() != null);
+                recognizer.stopRecognition();
+                decoded = true;
+            } finally {
+                if(decoded){
+                    recognizerPool.release(generation.poolKey, recognizer);
+                } else {
+                    recognizerPool.discard(generation.poolKey, recognizer);
+                }
+            }
+            generation.pinned = true;
+            recognizerPool.keepWarm(generation.poolKey);
+            warmed = true;
+            log.debug("warmed model generation {} in {}ms", generation,
+                (System.nanoTime() - start) / 1000000);
+        } finally {
+            if(!warmed){
+                synchronized (generations) {
+                    retireUnused(generation);
+                }
+            }
+            generation.release();
+        }
+    }
+
+    private static byte[] createWarmUpClip(int sampleRate, int millis) {
+        int samples = sampleRate * millis / 1000;
+        byte[] clip = new byte[samples * 2];
+        for(int i = samples / 2; i < samples; i++){
+            int value = (int)(1000 * Math.sin(2 * Math.PI * 440 * i / sampleRate));
+            clip[i * 2] = (byte)value; //little endian
+            clip[i * 2 + 1] = (byte)(value >> 8);
+        }
+        return clip;
+    }
+
+    /**
+     * Retires the generation of the parsed models. Requests started afterwards
+     * resolve the models again. Requests that still use the retired generation
+     * complete normally. Its recognizers and resources are released after the
+     * last of them released the generation.
+     * @param models the replaced models
+     */
+    public void retire(ModelSnapshot models) {
+        synchronized (generations) {
+            for(Iterator<LanguageEngine> it = engines.values().iterator();it.hasNext();){
+                if(it.next().getModels().equals(models)){
+                    it.remove();
+                }
+            }
+            Generation generation = generations.remove(models.getKey());
+            if(generation != null){
+                log.debug("retire model generation {}",generation);
+                generation.retire();
+            }
+        }
+    }
+
+    private LanguageEngine createEngine(SphinxConfig config, String language, ModelSnapshot models) {
+        //the generation is created without holding the lock
+        Generation generation = getGeneration(config, models);
+        synchronized (generations) {
+            LanguageEngine engine = engines.get(language);
+            if(engine != null && engine.getModels().equals(models) && engine.generation.retain()){
+                generation.release();
+                return engine; //created by a concurrent request
+            }
+            LanguageEngine created = new LanguageEngine(language, generation);
+            if(generations.get(models.getKey()) != generation){
+                return created; //retired concurrently: only used by this request
+            }
+            //the active generation is never drained as it holds its own reference
+            engines.put(language, created);
+            if(engine != null){
+                log.debug("models for language {} changed to {}",language,models);
+                retireUnused(engine.generation);
+            }
+            return created;
+        }
+    }
+
+    /**
+     * Getter for the active generation of the parsed models. Creates a new
+     * generation if none is active. The configuration of a new generation 
+     * (that may require to convert models) and the identity of its models
+     * (that requires checksums of the model files) are calculated without
+     * holding the lock so that requests for other models are not blocked.
+     * @return the generation with a reference for the caller
+     */
+    private Generation getGeneration(SphinxConfig config, ModelSnapshot models) {
+        synchronized (generations) {
+            Generation generation = generations.get(models.getKey());
+            if(generation != null && generation.retain()){
+                return generation;
+            }
+        }
+        Configuration configuration = config.getConfiguration(models);
+        String poolKey = ModelIdentity.of(configuration);
+        KeywordFilter keywordFilter = getKeywordFilter(config, models);
+        synchronized (generations) {
+            Generation generation = generations.get(models.getKey());
+            if(generation == null){ //not created by a concurrent request
+                generation = new Generation(generationCounter.incrementAndGet(), models,
+                    configuration, poolKey, keywordFilter, config);
+                generations.put(models.getKey(), generation);
+                log.debug("created model generation {}",generation);
+            }
+            generation.retain();
+            return generation;
+        }
+    }
+
+    private static KeywordFilter getKeywordFilter(SphinxConfig config, ModelSnapshot models) {
+        if(config.getRecognitionMode() != RecognitionMode.KEYWORDS || models.getGrammar() == null){
+            return null;
+        }
+        try {
+            return KeywordFilter.load(models.getGrammar(), config.getKeywordThreshold());
+        } catch (IOException e) {
+            log.warn("Unable to read the keywords of grammar "+models.getGrammar()
+                + " (keywords are not filtered)", e);
+            return null;
+        }
+    }
+
+    /**
+     * Retires the parsed generation if no entry uses it. MUST BE called
+     * while holding the lock on {@link #generations}.
+     */
+    private void retireUnused(Generation generation) {
+        for(LanguageEngine engine : engines.values()){
+            if(engine.generation == generation){
+                return;
+            }
+        }
+        if(generations.get(generation.models.getKey()) == generation){
+            generations.remove(generation.models.getKey());
+            generation.retire();
+        }
+    }
+
+    /**
+     * Called after the last reference of a retired generation was released
+     */
+    private void drained(Generation generation) {
+        synchronized (generations) {
+            if(generations.containsKey(generation.models.getKey())){
+                return; //the same models are used by a newer generation
+            }
+            boolean shared = false;
+            for(Generation active : generations.values()){
+                shared = shared || active.poolKey.equals(generation.poolKey);
+            }
+            if(!shared){ //keep recognizers of identical models of other generations
+                recognizerPool.evict(generation.poolKey);
+            }
+            //while holding the lock so that no new generation of the same
+            //models is created before their resources are deleted
+            log.debug("release drained model generation {}",generation);
+            generation.config.releaseModels(generation.models);
+        }
+    }
+
+    /**
+     * Evicts all entries that where not used for longer as the idle timeout.
+     * The generation of an evicted entry is retired as soon as no other entry
+     * uses the same model set. Entries of warmed generations are kept.
+     * @param now the current time
+     */
+    private void evictIdle(long now) {
+        if(idleTimeout <= 0){
+            return;
+        }
+        for(LanguageEngine engine : engines.values()){
+            if(now - engine.lastUsed > idleTimeout && !engine.generation.pinned){
+                synchronized (generations) {
+                    if(engines.remove(engine.language, engine)){
+                        log.debug("evict idle language {}",engine.language);
+                        retireUnused(engine.generation);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all entries and retires all generations
+     */
+    public void close() {
+        synchronized (generations) {
+            engines.clear();
+            List<Generation> retired = new ArrayList<Generation>(generations.values());
+            generations.clear();
+            for(Generation generation : retired){
+                generation.retire();
+            }
+        }
+    }
+
+    /**
+     * The resolved configuration and the warmed recognizers for a single
+     * language. Instances are immutable (with the exception of the last
+     * usage time) and can be used concurrently.
+     */
+    public final class LanguageEngine {
+
+        private final String language;
+        private final Generation generation;
+        private volatile long lastUsed;
+
+        LanguageEngine(String language, Generation generation) {
+            this.language = language;
+            this.generation = generation;
+        }
+
+        public String getLanguage() {
+            return language;
+        }
+
+        public ModelSnapshot getModels() {
+            return generation.models;
+        }
+
+        /**
+         * @return the number of the model generation used by this entry.
+         * Increases every time models are loaded.
+         */
+        public long getGeneration() {
+            return generation.number;
+        }
+
+        /**
+         * @return the filter for the keywords recognized by the
+         * {@link RecognitionMode#KEYWORDS} mode or <code>null</code> if
+         * recognized utterances are not filtered
+         */
+        public KeywordFilter getKeywordFilter() {
+            return generation.keywordFilter;
+        }
+
+        /**
+         * Lends a recognizer for the models of this language
+         * @see RecognizerPool#borrow(String, Configuration)
+         */
+        public StreamSpeechRecognizer borrow() throws IOException, InterruptedException {
+            return recognizerPool.borrow(generation.poolKey, generation.configuration);
+        }
+
+        /**
+         * @see RecognizerPool#release(String, StreamSpeechRecognizer)
+         */
+        public void release(StreamSpeechRecognizer recognizer) {
+            recognizerPool.release(generation.poolKey, recognizer);
+        }
+
+        /**
+         * @see RecognizerPool#discard(String, StreamSpeechRecognizer)
+         */
+        public void discard(StreamSpeechRecognizer recognizer) {
+            recognizerPool.discard(generation.poolKey, recognizer);
+        }
+    }
+
+    /**
+     * A loaded model set. The registry holds a reference while the
+     * generation is active and every request using it holds an other one.
+     */
+    private final class Generation {
+
+        private final long number;
+        private final ModelSnapshot models;
+        private final Configuration configuration;
+        /**
+         * The key used for the {@link RecognizerPool}. Based on the content of
+         * the models so that recognizers are shared with generations (and 
+         * engines) that load identical models
+         */
+        private final String poolKey;
+        private final KeywordFilter keywordFilter;
+        private final SphinxConfig config;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final AtomicBoolean retired = new AtomicBoolean();
+        /**
+         * Set for warmed generations that are not evicted when idle
+         */
+        private volatile boolean pinned;
+
+        Generation(long number, ModelSnapshot models, Configuration configuration, String poolKey,
+                KeywordFilter keywordFilter, SphinxConfig config) {
+            this.number = number;
+            this.models = models;
+            this.configuration = configuration;
+            this.poolKey = poolKey;
+            this.keywordFilter = keywordFilter;
+            this.config = config;
+        }
+
+        /**
+         * Adds a reference
+         * @return <code>false</code> if the generation is already drained
+         */
+        boolean retain() {
+            for(;;){
+                int current = references.get();
+                if(current <= 0){
+                    return false;
+                }
+                if(references.compareAndSet(current, current + 1)){
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if(references.decrementAndGet() == 0){
+                drained(this);
+            }
+        }
+
+        /**
+         * Releases the reference of the registry
+         */
+        void retire() {
+            if(retired.compareAndSet(false, true)){
+                release();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Generation[" + number + ", references: " + references.get() + ", " + models + "]";
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of compiled language models. ARPA trigram models
+ * (<code>*.lm</code>) are converted once to the DMP format (see 
+ * {@link ArpaToDmpConverter}) and stored as <code>{sha1}.lm.dmp</code> in the
+ * cache directory, where <code>{sha1}</code> is the checksum of the ARPA
+ * model. Sphinx reads the n-grams of DMP models on demand from the file
+ * instead of parsing the whole model into the heap. Models that can not be
+ * converted are used as they are.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class LanguageModelCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LanguageModelCache.class);
+
+    /**
+     * The extension Sphinx uses to detect ARPA models
+     */
+    public static final String ARPA_SUFFIX = ".lm";
+    /**
+     * The extension Sphinx uses to detect DMP models
+     */
+    public static final String COMPILED_SUFFIX = ".lm.dmp";
+
+    private final File directory;
+    /**
+     * The location to use by the path, length and modification time of the
+     * ARPA model. Avoids to calculate the checksum for every lookup
+     */
+    private final Map<String,String> locations = new ConcurrentHashMap<String,String>();
+
+    /**
+     * @param directory the directory of the compiled models
+     * @throws IOException if the parsed directory can not be created
+     */
+    public LanguageModelCache(File directory) throws IOException {
+        if(directory == null){
+            throw new IllegalArgumentException("The parsed directory MUST NOT be NULL!");
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Unable to create the language model cache directory "+directory);
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Getter for the location of the language model to be used by Sphinx.
+     * ARPA models are compiled on the first call. Compiled models are reused
+     * after restarts as long as the checksum of the ARPA model is unchanged.
+     * @param location the location of the resolved language model
+     * @return the location of the compiled model or the parsed location if
+     * it is not an ARPA model or it can not be converted
+     */
+    public String getLocation(String location) {
+        File model = toFile(location);
+        if(model == null || !model.isFile() || !model.getName().endsWith(ARPA_SUFFIX)){
+            return location;
+        }
+        String key = model.getAbsolutePath()+"|"+model.length()+"|"+model.lastModified();
+        String compiled = locations.get(key);
+        if(compiled == null){
+            synchronized (this) { //compile a model only once
+                compiled = locations.get(key);
+                if(compiled == null){
+                    compiled = compile(model, location);
+                    locations.put(key, compiled);
+                }
+            }
+        }
+        return compiled;
+    }
+
+    private String compile(File model, String location) {
+        long start = System.nanoTime();
+        File temp = null;
+        try {
+            File compiled = new File(directory, getChecksum(model) + COMPILED_SUFFIX);
+            if(compiled.isFile()){
+                log.debug("use compiled language model {} for {}",compiled,model);
+                return compiled.getAbsolutePath();
+            }
+            temp = File.createTempFile("compile", ".tmp", directory);
+            BufferedReader in = null;
+            DataOutputStream out = null;
+            try {
+                in = new BufferedReader(new InputStreamReader(new FileInputStream(model), 
+                    ArpaToDmpConverter.CHARSET), 64 * 1024);
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+                ArpaToDmpConverter.convert(in, out, model.getName());
+                out.close();
+                out = null;
+            } finally {
+                IOUtils.closeQuietly(in);
+                IOUtils.closeQuietly(out);
+            }
+            //make the compiled model only visible after it was completely written
+            if(!temp.renameTo(compiled) && !compiled.isFile()){
+                throw new IOException("Unable to rename "+temp+" to "+compiled);
+            }
+            log.info("compiled language model {} to {} in {}ms", new Object[]{model, compiled,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+            return compiled.getAbsolutePath();
+        } catch (IOException e) {
+            log.warn("Unable to compile language model "+model+" (the model is used as is): "
+                + e.getMessage());
+            return location;
+        } finally {
+            if(temp != null){
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the hex encoded checksum over the content of the parsed files
+     */
+    static String getChecksum(File...files) throws IOException {
+        MessageDigest digest = TranscriptCache.createDigest();
+        byte[] buffer = new byte[64 * 1024];
+        for(File file : files){
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                int read;
+                while((read = in.read(buffer)) >= 0){
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+            digest.update((byte)0);
+        }
+        StringBuilder checksum = new StringBuilder();
+        for(byte b : digest.digest()){
+            checksum.append(Character.forDigit((b >> 4) & 0xf, 16));
+            checksum.append(Character.forDigit(b & 0xf, 16));
+        }
+        return checksum.toString();
+    }
+
+    /**
+     * @return the file of the parsed model location or <code>null</code> if
+     * the location is not a file
+     */
+    static File toFile(String location) {
+        if(location == null){
+            return null;
+        }
+        if(location.startsWith("file:")){
+            try {
+                return new File(URI.create(location));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return location.indexOf(':') > 1 ? null : new File(location); //other URL schemes
+    }
+
+    @Override
+    public String toString() {
+        return "LanguageModelCache[directory: "+directory+", models: "+locations.size()+"]";
+    }
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies. Values are counted in buckets with
+ * exponentially growing upper bounds (1µs, 2µs, 4µs, ...) so that
+ * percentiles are reported with an error of at most a factor of two while
+ * using constant memory. All methods are thread safe.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class LatencyHistogram {
+
+    /**
+     * The upper bound of the last bucket is 2^40µs (about 12 days)
+     */
+    private static final int BUCKETS = 41;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a single latency
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if(nanos < 0){
+            nanos = 0;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        //index of the smallest bucket with an upper bound >= micros
+        int index = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        buckets.incrementAndGet(Math.min(index, BUCKETS - 1));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while(nanos > max && !maxNanos.compareAndSet(max, nanos)){
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of all recorded latencies in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * @return the highest recorded latency in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the mean latency in nanoseconds or <code>0</code> if nothing
+     * was recorded
+     */
+    public long getMeanNanos() {
+        long c = count.get();
+        return c == 0 ? 0 : totalNanos.get() / c;
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies
+     * @param percentile the percentile (<code>0 &lt; percentile &lt;= 100</code>)
+     * @return the upper bound (in microseconds) of the bucket containing the
+     * percentile (but never more as the maximum recorded latency) or
+     * <code>0</code> if nothing was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        if(percentile <= 0 || percentile > 100){
+            throw new IllegalArgumentException("The parsed percentile MUST BE in the "
+                + "range (0..100] (parsed: "+percentile+")!");
+        }
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = (long)Math.ceil(total * percentile / 100);
+        long seen = 0;
+        int index = 0;
+        for(; index < BUCKETS - 1; index++){
+            seen += counts[index];
+            if(seen >= rank){
+                break;
+            }
+        }
+        return Math.min(1L << index, TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+    }
+
+    /**
+     * Removes all recorded latencies
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++){
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram[count: "+getCount()+", mean: "
+            + TimeUnit.NANOSECONDS.toMicros(getMeanNanos())+"µs, p50: "
+            + getPercentileMicros(50)+"µs, p99: "+getPercentileMicros(99)+"µs, max: "
+            + TimeUnit.NANOSECONDS.toMicros(getMaxNanos())+"µs]";
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how long a lock (e.g. the write lock of a ContentItem) was held.
+ * All methods are thread safe.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class LockHoldStatistics {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private volatile long lastNanos;
+
+    /**
+     * Records a single lock hold
+     * @param nanos the time in nanoseconds the lock was held
+     */
+    public void record(long nanos) {
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        lastNanos = nanos;
+        long max = maxNanos.get();
+        while(nanos > max && !maxNanos.compareAndSet(max, nanos)){
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded lock holds
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of all recorded lock holds in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * @return the longest recorded lock hold in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the last recorded lock hold in nanoseconds
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * @return the average lock hold in nanoseconds or <code>0</code> if no
+     * lock hold was recorded
+     */
+    public long getAverageNanos() {
+        long c = count.get();
+        return c == 0 ? 0 : totalNanos.get() / c;
+    }
+
+    @Override
+    public String toString() {
+        return "LockHoldStatistics[count: " + getCount() + ", avg: "
+            + TimeUnit.NANOSECONDS.toMicros(getAverageNanos()) + "µs, max: "
+            + TimeUnit.NANOSECONDS.toMicros(getMaxNanos()) + "µs]";
+    }
+}
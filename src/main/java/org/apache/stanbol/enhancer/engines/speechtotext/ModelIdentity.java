@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.cmu.sphinx.api.Configuration;
+
+/**
+ * Identifies the models of a recognizer {@link Configuration} by their
+ * content. The same acoustic model, dictionary and language model resolved
+ * to different locations (e.g. by the <code>sphinx</code> and the 
+ * <code>sphinx-custom</code> engine) have the same identity. Used as key of 
+ * the {@link RecognizerPool} so that recognizers are shared by all engines 
+ * of the JVM using the same models.<p>
+ * Checksums are calculated once per file (or directory) and modification.
+ * Only the checksum of the last modification of at most
+ * {@link #MAX_CHECKSUMS} files is kept. Locations that are not files (e.g. class path resources) are their own 
+ * identity.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public final class ModelIdentity {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelIdentity.class);
+
+    /**
+     * The maximum number of files (or directories) with a cached checksum
+     */
+    public static final int MAX_CHECKSUMS = 256;
+
+    /**
+     * The checksum by path. Guarded by itself
+     */
+    private static final Map<String,Checksum> checksums = new LinkedHashMap<String,Checksum>(16, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Checksum> eldest) {
+            return size() > MAX_CHECKSUMS;
+        }
+    };
+
+    private ModelIdentity() {}
+
+    /**
+     * @param configuration the configuration of a recognizer
+     * @return the identity of the models and settings of the configuration
+     */
+    public static String of(Configuration configuration) {
+        StringBuilder identity = new StringBuilder();
+        identity.append(getIdentity(configuration.getAcousticModelPath())).append('|');
+        identity.append(getIdentity(configuration.getDictionaryPath())).append('|');
+        identity.append(getIdentity(configuration.getLanguageModelPath())).append('|');
+        identity.append(configuration.getSampleRate());
+        if(configuration.getUseGrammar()){
+            identity.append('|').append(getIdentity(configuration.getGrammarPath()));
+            identity.append('|').append(configuration.getGrammarName());
+        }
+        return identity.toString();
+    }
+
+    /**
+     * @param locations the locations of model files or directories. 
+     * <code>null</code> values are ignored
+     * @return the identity of the content of the parsed locations
+     */
+    public static String of(String...locations) {
+        StringBuilder identity = new StringBuilder();
+        for(String location : locations){
+            if(location != null){
+                if(identity.length() > 0){
+                    identity.append('|');
+                }
+                identity.append(getIdentity(location));
+            }
+        }
+        return identity.toString();
+    }
+
+    /**
+     * @param location the location of a model file or directory
+     * @return the checksum of the content or the parsed location if it is
+     * not a file
+     */
+    static String getIdentity(String location) {
+        File file = LanguageModelCache.toFile(location);
+        if(file == null || !file.exists()){
+            return location;
+        }
+        List<File> files = new ArrayList<File>();
+        if(file.isDirectory()){ //e.g. the files of an acoustic model
+            File[] children = file.listFiles();
+            if(children != null){
+                Arrays.sort(children);
+                for(File child : children){
+                    if(child.isFile()){
+                        files.add(child);
+                    }
+                }
+            }
+        } else {
+            files.add(file);
+        }
+        String path = file.getAbsolutePath();
+        StringBuilder stamp = new StringBuilder();
+        for(File f : files){
+            stamp.append('|').append(f.getName()).append('|').append(f.length())
+                .append('|').append(f.lastModified());
+        }
+        Checksum checksum;
+        synchronized (checksums) {
+            checksum = checksums.get(path);
+        }
+        if(checksum == null || !checksum.stamp.equals(stamp.toString())){
+            try { //calculated without holding the lock
+                checksum = new Checksum(stamp.toString(), "sha1:" + 
+                        LanguageModelCache.getChecksum(files.toArray(new File[files.size()])));
+            } catch (IOException e) {
+                log.warn("Unable to calculate the checksum of "+file+" (use the location as identity)", e);
+                return location;
+            }
+            synchronized (checksums) { //replaces the checksum of older modifications
+                checksums.put(path, checksum);
+            }
+        }
+        return checksum.value;
+    }
+
+    /**
+     * @return the number of files (or directories) with a cached checksum
+     */
+    static int getChecksumCount() {
+        synchronized (checksums) {
+            return checksums.size();
+        }
+    }
+
+    private static class Checksum {
+        final String stamp;
+        final String value;
+
+        Checksum(String stamp, String value) {
+            this.stamp = stamp;
+            this.value = value;
+        }
+    }
+}
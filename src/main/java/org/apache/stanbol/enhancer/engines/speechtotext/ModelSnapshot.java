@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.File;
+
+import org.apache.stanbol.commons.sphinx.AcousticModel;
+import org.apache.stanbol.commons.sphinx.BaseModel;
+import org.apache.stanbol.commons.sphinx.DictionaryModel;
+import org.apache.stanbol.commons.sphinx.LanguageModel;
+
+/**
+ * Immutable set of resolved Sphinx model locations. Instances are created by
+ * {@link SphinxConfig} once per language (default models) or bundle (custom
+ * models) and can be shared between threads without synchronization.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public final class ModelSnapshot {
+
+    private final BaseModel acousticModel;
+    private final BaseModel dictionaryModel;
+    private final BaseModel languageModel;
+    private final File grammar;
+    private final String identity;
+    private final String key;
+
+    ModelSnapshot(BaseModel acousticModel, BaseModel dictionaryModel, BaseModel languageModel) {
+        this(acousticModel, dictionaryModel, languageModel, null);
+    }
+
+    /**
+     * @param grammar the JSGF grammar used instead of the language model or
+     * <code>null</code> for large vocabulary recognition
+     */
+    ModelSnapshot(BaseModel acousticModel, BaseModel dictionaryModel, BaseModel languageModel,
+            File grammar) {
+        if(acousticModel == null || dictionaryModel == null || languageModel == null){
+            throw new IllegalArgumentException("The parsed models MUST NOT be NULL!");
+        }
+        this.acousticModel = acousticModel;
+        this.dictionaryModel = dictionaryModel;
+        this.languageModel = languageModel;
+        this.grammar = grammar;
+        this.identity = ModelIdentity.of(acousticModel.toString(), dictionaryModel.toString(),
+            languageModel.toString(), grammar == null ? null : grammar.getAbsolutePath());
+        this.key = acousticModel+"|"+dictionaryModel+"|"+languageModel
+            + (grammar == null ? "" : "|"+grammar.getAbsolutePath()) + "|" + identity;
+    }
+
+    public AcousticModel getAcousticModelLocation() {
+        return (AcousticModel)acousticModel;
+    }
+
+    public DictionaryModel getDictionaryModelLocation() {
+        return (DictionaryModel)dictionaryModel;
+    }
+
+    public LanguageModel getLanguageModelLocation() {
+        return (LanguageModel)languageModel;
+    }
+
+    /**
+     * @return the JSGF grammar (see {@link GrammarCache}) or <code>null</code>
+     * if the language model is used
+     */
+    public File getGrammar() {
+        return grammar;
+    }
+
+    /**
+     * @return the identity of the content of the models (see {@link ModelIdentity}).
+     * The same models resolved to different locations have the same identity
+     */
+    public String getIdentity() {
+        return identity;
+    }
+
+    /**
+     * @return the identity of this model set. Includes the locations and the
+     * content of the models, so a model file replaced at the same location
+     * forms a new model set
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ModelSnapshot && ((ModelSnapshot)o).key.equals(key);
+    }
+
+    @Override
+    public String toString() {
+        return "ModelSnapshot[" + key + "]";
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.stanbol.enhancer.engines.speechtotext.LanguageEngineRegistry.LanguageEngine;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.SilenceSegmenter;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.SilenceSegmenter.Segment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes the {@link Segment}s of long recordings concurrently on a fixed
+ * number of threads. The {@link Utterance}s of all segments are parsed to
+ * an {@link UtteranceHandler} in the order of the segments with times
+ * relative to the start of the segmented stream.<p>
+ * To keep memory bounded only a limited number of segments are read ahead
+ * of the oldest segment not yet decoded. NOTE that every segment borrows a
+ * recognizer (see {@link RecognizerPool}), so the parallelism should not
+ * exceed the number of recognizers of a model set. If the decoding of a
+ * segment fails segments that are not yet started are cancelled and
+ * {@link #decode(LanguageEngine, SilenceSegmenter, Alternatives.Settings, UtteranceHandler, DecodingMetrics)}
+ * waits for the running ones, so no decoding outlives the request.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class ParallelSegmentDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelSegmentDecoder.class);
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int maxPending;
+
+    /**
+     * @param parallelism the number of segments decoded concurrently
+     */
+    public ParallelSegmentDecoder(int parallelism) {
+        if(parallelism < 1){
+            throw new IllegalArgumentException("The parsed parallelism MUST BE >= 1 (parsed: "+parallelism+")!");
+        }
+        this.executor = Executors.newFixedThreadPool(parallelism);
+        this.parallelism = parallelism;
+        this.maxPending = parallelism * 2;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Decodes all segments of the parsed segmenter.
+     * @param languageEngine provides the recognizers
+     * @param segmenter the segmented audio
+     * @param alternatives the settings for the extraction of the 
+     * {@link Alternatives} or <code>null</code> if deactivated
+     * @param handler notified about the utterances of all segments in the 
+     * order of the segments
+     * @param metrics used to record the decoding of the segments or 
+     * <code>null</code> to deactivate instrumentation
+     * @throws IOException on any error while reading or decoding a segment
+     * or if thrown by the handler
+     * @throws InterruptedException if interrupted while waiting for a segment
+     * to be decoded
+     */
+    public void decode(final LanguageEngine languageEngine, SilenceSegmenter segmenter,
+            final Alternatives.Settings alternatives, UtteranceHandler handler, 
+            final DecodingMetrics metrics) throws IOException, InterruptedException {
+        Deque<SegmentTask> pending = new ArrayDeque<SegmentTask>(maxPending);
+        int segments = 0;
+        int utterances = 0;
+        boolean completed = false;
+        try {
+            Segment segment;
+            while((segment = segmenter.next()) != null){
+                segments++;
+                SegmentTask task = new SegmentTask(languageEngine, segment, alternatives, metrics);
+                task.future = executor.submit(task);
+                pending.add(task);
+                if(pending.size() >= maxPending){
+                    utterances += handle(join(pending.poll().future), handler);
+                }
+            }
+            while(!pending.isEmpty()){
+                utterances += handle(join(pending.poll().future), handler);
+            }
+            completed = true;
+        } finally {
+            if(!completed){
+                cancel(pending);
+            }
+        }
+        log.debug("decoded {} segments with {} utterances",segments,utterances);
+    }
+
+    /**
+     * Cancels the parsed tasks that are not yet started and waits for the
+     * running ones so that no recognizer is used after the request failed
+     */
+    private void cancel(Deque<SegmentTask> pending) {
+        boolean interrupted = false;
+        for(SegmentTask task : pending){
+            if(task.started.compareAndSet(false, true)){
+                continue; //not started: will not decode
+            }
+            for(;;){
+                try {
+                    task.future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true; //wait anyway
+                } catch (ExecutionException e) {
+                    break; //ignore as the request already failed
+                }
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int handle(List<Utterance> utterances, UtteranceHandler handler) throws IOException {
+        for(Utterance utterance : utterances){
+            handler.handle(utterance);
+        }
+        return utterances.size();
+    }
+
+    private List<Utterance> join(Future<List<Utterance>> task) throws IOException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException){
+                throw (IOException)cause;
+            } else if(cause instanceof InterruptedException){
+                throw (InterruptedException)cause;
+            } else if(cause instanceof RuntimeException){
+                throw (RuntimeException)cause;
+            } else {
+                throw new IllegalStateException("Unable to decode segment", cause);
+            }
+        }
+    }
+
+    /**
+     * Shuts down the used threads
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Decodes a single segment unless it was cancelled before it started
+     */
+    private static class SegmentTask implements Callable<List<Utterance>> {
+
+        final AtomicBoolean started = new AtomicBoolean();
+        final LanguageEngine languageEngine;
+        final Segment segment;
+        final Alternatives.Settings alternatives;
+        final DecodingMetrics metrics;
+        volatile Future<List<Utterance>> future;
+
+        SegmentTask(LanguageEngine languageEngine, Segment segment, 
+                Alternatives.Settings alternatives, DecodingMetrics metrics) {
+            this.languageEngine = languageEngine;
+            this.segment = segment;
+            this.alternatives = alternatives;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public List<Utterance> call() throws Exception {
+            if(!started.compareAndSet(false, true)){
+                return Collections.emptyList(); //cancelled
+            }
+            return SpeechToTextEngine.recognize(languageEngine,
+                segment.getStream(), segment.getOffsetMillis(), alternatives, metrics);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.util.Locale;
+
+/**
+ * The search used by the recognizers of an engine.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public enum RecognitionMode {
+    /**
+     * Large vocabulary decoding with the statistical language model
+     */
+    LARGE_VOCABULARY,
+    /**
+     * Decoding constrained by a JSGF grammar. The language model is not
+     * loaded.
+     */
+    GRAMMAR,
+    /**
+     * Spotting of the phrases of a keyword list. The list is compiled to a
+     * JSGF grammar (see {@link GrammarCache#compileKeywords(java.io.BufferedReader)})
+     * so that only the keywords are searched. Keywords recognized with a
+     * confidence below their threshold are dropped by the {@link KeywordFilter}.
+     */
+    KEYWORDS;
+
+    /**
+     * Parses the mode from the configured value (case insensitive, 
+     * <code>'-'</code> may be used instead of <code>'_'</code>)
+     * @param value the configured value
+     * @return the mode
+     * @throws IllegalArgumentException if the parsed value is not a known mode
+     */
+    public static RecognitionMode parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
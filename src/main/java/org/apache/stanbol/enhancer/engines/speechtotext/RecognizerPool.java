@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.apache.stanbol.enhancer.engines.speechtotext.DecodingMetrics.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.cmu.sphinx.api.Configuration;
+import edu.cmu.sphinx.api.StreamSpeechRecognizer;
+
+/**
+ * Bounded pool of warmed {@link StreamSpeechRecognizer} instances. Recognizers
+ * are keyed by the identity of the models (see {@link ModelIdentity}) so 
+ * that a recognizer is only ever lent to requests that use the very same
+ * acoustic, dictionary and language model.<p>
+ * At most {@link #getMaxSize()} recognizers are lent per model set. Callers
+ * block in {@link #borrow(String, Configuration)} until one is returned if all
+ * of them are lent. Idle recognizers are evicted lazily after
+ * {@link #getIdleTimeout()} milliseconds. Recognizers of model sets that are
+ * no longer used are evicted by a sweep over all model sets that runs at most
+ * every {@link #SWEEP_INTERVAL} milliseconds when any recognizer is borrowed
+ * or returned. Model sets marked by {@link #keepWarm(String)} always keep
+ * their most recently used idle recognizer.<p>
+ * Idle recognizers are shared by the pools of all engines in the JVM. Every
+ * recognizer holds its own copy of the acoustic model, so engines using the
+ * same models (e.g. <code>sphinx</code> and <code>sphinx-custom</code>)
+ * reuse the recognizers created by the other instead of loading the models
+ * again.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class RecognizerPool {
+
+    private static final Logger log = LoggerFactory.getLogger(RecognizerPool.class);
+
+    /**
+     * The minimum time in milliseconds between two sweeps over the idle
+     * recognizers of all model sets
+     */
+    public static final long SWEEP_INTERVAL = 10000;
+
+    private final int maxSize;
+    private final long idleTimeout;
+    private final DecodingMetrics metrics;
+
+    private final Map<String,KeyedPool> pools = new ConcurrentHashMap<String,KeyedPool>();
+    /**
+     * The idle recognizers of all pools of the JVM by key. Guarded by itself
+     */
+    private static final Map<String,SharedIdle> sharedIdle = new HashMap<String,SharedIdle>();
+    /**
+     * The earliest time of the next sweep. Guarded by {@link #sharedIdle}
+     */
+    private static long nextSweep;
+
+    /**
+     * @param maxSize the maximum number of recognizers per model set
+     * @param idleTimeout the time in milliseconds after that an unused
+     * recognizer is evicted. Values <code>&lt;= 0</code> deactivate eviction.
+     */
+    public RecognizerPool(int maxSize, long idleTimeout) {
+        this(maxSize, idleTimeout, null);
+    }
+
+    /**
+     * @param maxSize the maximum number of recognizers per model set
+     * @param idleTimeout the time in milliseconds after that an unused
+     * recognizer is evicted. Values <code>&lt;= 0</code> deactivate eviction.
+     * @param metrics used to record the time needed to borrow and create
+     * recognizers or <code>null</code> to deactivate instrumentation
+     */
+    public RecognizerPool(int maxSize, long idleTimeout, DecodingMetrics metrics) {
+        if(maxSize < 1){
+            throw new IllegalArgumentException("The parsed maximum pool size MUST BE >= 1 (parsed: "+maxSize+")!");
+        }
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.metrics = metrics;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Lends a recognizer for the parsed model set. If no idle recognizer is
+     * available and the pool is not yet exhausted a new one is created for the
+     * parsed configuration. Otherwise this method blocks until a recognizer
+     * is returned. Borrowed recognizers MUST BE returned by calling
+     * {@link #release(String, StreamSpeechRecognizer)} or
+     * {@link #discard(String, StreamSpeechRecognizer)}.
+     * @param modelSetKey the key of the resolved model set
+     * @param configuration the configuration used to create new recognizers
+     * @return the recognizer
+     * @throws IOException if a new recognizer could not be created
+     * @throws InterruptedException if interrupted while waiting for a recognizer
+     */
+    public StreamSpeechRecognizer borrow(String modelSetKey, Configuration configuration)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        KeyedPool pool = getPool(modelSetKey);
+        pool.permits.acquire();
+        long now = System.currentTimeMillis();
+        sweep(now);
+        StreamSpeechRecognizer recognizer = pool.shared.poll(now, idleTimeout);
+        if(recognizer == null){
+            try {
+                log.debug("create new recognizer for model set {}",modelSetKey);
+                long created = System.nanoTime();
+                recognizer = new StreamSpeechRecognizer(configuration);
+                if(metrics != null){
+                    metrics.record(Stage.RECOGNIZER_CREATION, System.nanoTime() - created);
+                }
+            } catch (IOException e) {
+                pool.permits.release();
+                throw e;
+            } catch (RuntimeException e) {
+                pool.permits.release();
+                throw e;
+            }
+        }
+        synchronized (pool) {
+            pool.lent.put(recognizer, Boolean.TRUE);
+        }
+        if(metrics != null){
+            metrics.record(Stage.RECOGNIZER_ACQUISITION, System.nanoTime() - start);
+        }
+        return recognizer;
+    }
+
+    /**
+     * Returns a borrowed recognizer to the pool
+     * @param modelSetKey the key of the model set parsed to
+     * {@link #borrow(String, Configuration)}
+     * @param recognizer the recognizer
+     */
+    public void release(String modelSetKey, StreamSpeechRecognizer recognizer) {
+        KeyedPool pool = pools.get(modelSetKey);
+        if(pool == null){ //model set was evicted while the recognizer was lent
+            return;
+        }
+        synchronized (pool) {
+            if(pool.lent.remove(recognizer) == null){
+                return; //lent by an already evicted pool
+            }
+        }
+        long now = System.currentTimeMillis();
+        pool.shared.add(recognizer, now, idleTimeout);
+        pool.permits.release();
+        sweep(now);
+    }
+
+    /**
+     * Drops a borrowed recognizer (e.g. because the recognition failed and
+     * its state is undefined)
+     * @param modelSetKey the key of the model set parsed to
+     * {@link #borrow(String, Configuration)}
+     * @param recognizer the recognizer
+     */
+    public void discard(String modelSetKey, StreamSpeechRecognizer recognizer) {
+        KeyedPool pool = pools.get(modelSetKey);
+        if(pool == null){
+            return;
+        }
+        synchronized (pool) {
+            if(pool.lent.remove(recognizer) == null){
+                return;
+            }
+        }
+        pool.permits.release();
+    }
+
+    /**
+     * Marks the parsed model set as warmed up: its most recently used idle
+     * recognizer is not evicted after the idle timeout (while this pool uses
+     * the model set) so that requests do not need to load the models again.
+     * @param modelSetKey the key of the model set
+     */
+    public void keepWarm(String modelSetKey) {
+        KeyedPool pool = pools.get(modelSetKey);
+        if(pool == null){
+            return;
+        }
+        synchronized (sharedIdle) {
+            if(!pool.warm){
+                pool.warm = true;
+                pool.shared.warm++;
+            }
+        }
+    }
+
+    /**
+     * Removes the parsed model set from this pool. Recognizers that are 
+     * currently lent are dropped when returned. Idle recognizers are removed
+     * as soon as no other pool uses the model set.
+     * @param modelSetKey the key of the model set
+     */
+    public void evict(String modelSetKey) {
+        KeyedPool pool = modelSetKey == null ? null : pools.remove(modelSetKey);
+        if(pool != null){
+            detach(modelSetKey, pool);
+            log.debug("evicted recognizers of model set {}",modelSetKey);
+        }
+    }
+
+    /**
+     * Removes all pooled recognizers
+     */
+    public void close() {
+        for(String modelSetKey : pools.keySet()){
+            evict(modelSetKey);
+        }
+    }
+
+    /**
+     * @param modelSetKey the key of the model set
+     * @return the number of idle recognizers of the parsed model set shared
+     * by all pools of the JVM
+     */
+    public static int getSharedIdleCount(String modelSetKey) {
+        SharedIdle shared;
+        synchronized (sharedIdle) {
+            shared = sharedIdle.get(modelSetKey);
+        }
+        return shared == null ? 0 : shared.size();
+    }
+
+    /**
+     * Evicts the expired idle recognizers of all model sets so that the
+     * recognizers of model sets that are no longer requested (e.g. because
+     * the models where replaced) do not stay in memory until the model set is
+     * requested again.
+     */
+    private static void sweep(long now) {
+        List<SharedIdle> all;
+        synchronized (sharedIdle) {
+            if(now < nextSweep){
+                return;
+            }
+            nextSweep = now + SWEEP_INTERVAL;
+            all = new ArrayList<SharedIdle>(sharedIdle.values());
+        }
+        for(SharedIdle shared : all){
+            shared.sweep(now);
+        }
+    }
+
+    private SharedIdle attach(String modelSetKey) {
+        synchronized (sharedIdle) {
+            SharedIdle shared = sharedIdle.get(modelSetKey);
+            if(shared == null){
+                shared = new SharedIdle(idleTimeout);
+                sharedIdle.put(modelSetKey, shared);
+            } else {
+                shared.attach(idleTimeout);
+            }
+            shared.users++;
+            return shared;
+        }
+    }
+
+    private static void detach(String modelSetKey, KeyedPool pool) {
+        SharedIdle shared = pool.shared;
+        synchronized (sharedIdle) {
+            if(pool.warm){
+                pool.warm = false;
+                shared.warm--;
+            }
+            if(--shared.users == 0 && sharedIdle.get(modelSetKey) == shared){
+                sharedIdle.remove(modelSetKey);
+                shared.clear();
+            }
+        }
+    }
+
+    private KeyedPool getPool(String modelSetKey) {
+        KeyedPool pool = pools.get(modelSetKey);
+        if(pool == null){
+            synchronized (pools) {
+                pool = pools.get(modelSetKey);
+                if(pool == null){
+                    pool = new KeyedPool(attach(modelSetKey));
+                    pools.put(modelSetKey, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * The recognizers of a single model set lent by this pool. Access to 
+     * {@link #lent} MUST BE synchronized on the instance. {@link #warm} is
+     * guarded by {@link RecognizerPool#sharedIdle}.
+     */
+    private class KeyedPool {
+
+        final Semaphore permits = new Semaphore(maxSize, true);
+        final Map<StreamSpeechRecognizer,Boolean> lent =
+                new IdentityHashMap<StreamSpeechRecognizer,Boolean>(maxSize);
+        final SharedIdle shared;
+        boolean warm;
+
+        KeyedPool(SharedIdle shared) {
+            this.shared = shared;
+        }
+    }
+
+    /**
+     * The idle recognizers of a model set shared by all pools using it. The
+     * {@link #users} and {@link #warm} are guarded by 
+     * {@link RecognizerPool#sharedIdle}.
+     */
+    private static class SharedIdle {
+
+        final Deque<Entry> idle = new ArrayDeque<Entry>();
+        int users;
+        /**
+         * The number of pools that keep this model set warm
+         */
+        volatile int warm;
+        /**
+         * The longest idle timeout of the pools using this model set used by
+         * sweeps. <code>&lt;= 0</code> if any of them deactivated eviction.
+         */
+        private long sweepTimeout;
+
+        SharedIdle(long idleTimeout) {
+            this.sweepTimeout = idleTimeout;
+        }
+
+        synchronized void attach(long idleTimeout) {
+            if(sweepTimeout > 0 && (idleTimeout <= 0 || idleTimeout > sweepTimeout)){
+                sweepTimeout = idleTimeout;
+            }
+        }
+
+        synchronized void sweep(long now) {
+            evictIdle(now, sweepTimeout);
+        }
+
+        synchronized void clear() {
+            idle.clear();
+        }
+
+        synchronized StreamSpeechRecognizer poll(long now, long idleTimeout) {
+            evictIdle(now, idleTimeout);
+            Entry entry = idle.pollFirst();
+            return entry == null ? null : entry.recognizer;
+        }
+
+        synchronized void add(StreamSpeechRecognizer recognizer, long now, long idleTimeout) {
+            idle.addFirst(new Entry(recognizer, now));
+            evictIdle(now, idleTimeout);
+        }
+
+        synchronized int size() {
+            return idle.size();
+        }
+
+        /**
+         * Evicts recognizers that where not used for longer as the parsed
+         * idle timeout. Most recently used recognizers are at the head of 
+         * {@link #idle} so the tail is checked. The most recently used one
+         * is kept if the model set is kept {@link #warm}.
+         */
+        private void evictIdle(long now, long idleTimeout) {
+            if(idleTimeout <= 0){
+                return;
+            }
+            int keep = warm > 0 ? 1 : 0;
+            for(Iterator<Entry> it = idle.descendingIterator();it.hasNext() && idle.size() > keep;){
+                Entry entry = it.next();
+                if(now - entry.lastUsed > idleTimeout){
+                    it.remove();
+                } else {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        final StreamSpeechRecognizer recognizer;
+        final long lastUsed;
+
+        Entry(StreamSpeechRecognizer recognizer, long lastUsed) {
+            this.recognizer = recognizer;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -14,28 +14,69 @@
 package org.apache.stanbol.enhancer.engines.speechtotext;
 
 
-import edu.cmu.sphinx.api.Configuration;
 import edu.cmu.sphinx.api.SpeechResult;
 import edu.cmu.sphinx.api.StreamSpeechRecognizer;
 import edu.cmu.sphinx.result.WordResult;
 import static org.apache.stanbol.enhancer.servicesapi.helper.EnhancementEngineHelper.randomUUID;
+import static org.apache.stanbol.enhancer.servicesapi.rdf.Properties.ENHANCER_CONFIDENCE;
 import static org.apache.stanbol.enhancer.servicesapi.rdf.Properties.ENHANCER_SELECTED_TEXT;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.clerezza.rdf.core.LiteralFactory;
-import org.apache.clerezza.rdf.core.MGraph;
+import org.apache.clerezza.rdf.core.Triple;
 import org.apache.clerezza.rdf.core.UriRef;
 import org.apache.clerezza.rdf.core.impl.TripleImpl;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyOption;
+import org.apache.stanbol.enhancer.engines.speechtotext.DecodingMetrics.Stage;
+import org.apache.stanbol.enhancer.engines.speechtotext.LanguageEngineRegistry.LanguageEngine;
+import org.apache.stanbol.enhancer.engines.speechtotext.TranscriptCache.Transcript;
+import org.apache.stanbol.enhancer.engines.speechtotext.Utterance.Phrase;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.AudioDecoderRegistry;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.AudioNormalizer;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.AudioProbe;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.DecodedAudio;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.MappedAudioInputStream;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.OffsetMap;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.SilenceSegmenter;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.VoiceActivityFilter;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.WavHeader;
 import org.apache.stanbol.commons.sphinx.ModelProvider;
+import org.apache.stanbol.commons.stanboltools.datafileprovider.DataFileListener;
 import org.apache.stanbol.commons.stanboltools.datafileprovider.DataFileProvider;
+import org.apache.stanbol.commons.stanboltools.datafileprovider.DataFileTracker;
 import org.apache.stanbol.enhancer.servicesapi.Blob;
 import org.apache.stanbol.enhancer.servicesapi.ContentItem;
 import org.apache.stanbol.enhancer.servicesapi.ContentItemFactory;
@@ -43,8 +84,12 @@ import org.apache.stanbol.enhancer.servicesapi.ContentSink;
 import org.apache.stanbol.enhancer.servicesapi.EngineException;
 import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
 import org.apache.stanbol.enhancer.servicesapi.InvalidContentException;
+import org.apache.stanbol.enhancer.servicesapi.NoSuchPartException;
 import org.apache.stanbol.enhancer.servicesapi.helper.EnhancementEngineHelper;
 import org.apache.stanbol.enhancer.servicesapi.impl.AbstractEnhancementEngine;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,7 +102,80 @@ import org.slf4j.LoggerFactory;
  * @author Suman Saurabh
  *
  */
-
+@Component(componentAbstract = true, metatype = true)
+@org.apache.felix.scr.annotations.Properties(value={//inherited by all engines (inherit = true)
+    @Property(name=SpeechToTextEngine.RECOGNIZER_POOL_SIZE,
+        intValue=SpeechToTextEngine.DEFAULT_RECOGNIZER_POOL_SIZE),
+    @Property(name=SpeechToTextEngine.RECOGNIZER_POOL_IDLE_TIMEOUT,
+        intValue=SpeechToTextEngine.DEFAULT_RECOGNIZER_POOL_IDLE_TIMEOUT),
+    @Property(name=SpeechToTextEngine.LONG_AUDIO_MODE,
+        boolValue=SpeechToTextEngine.DEFAULT_LONG_AUDIO_MODE),
+    @Property(name=SpeechToTextEngine.LONG_AUDIO_MIN_DURATION,
+        intValue=SpeechToTextEngine.DEFAULT_LONG_AUDIO_MIN_DURATION),
+    @Property(name=SpeechToTextEngine.LONG_AUDIO_PARALLELISM,
+        intValue=SpeechToTextEngine.DEFAULT_LONG_AUDIO_PARALLELISM),
+    @Property(name=SpeechToTextEngine.VAD_MODE,
+        boolValue=SpeechToTextEngine.DEFAULT_VAD_MODE),
+    @Property(name=SpeechToTextEngine.VAD_ENERGY_THRESHOLD,
+        intValue=VoiceActivityFilter.Settings.DEFAULT_ENERGY_THRESHOLD),
+    @Property(name=SpeechToTextEngine.VAD_MIN_ZERO_CROSSING_RATE,
+        intValue=VoiceActivityFilter.Settings.DEFAULT_MIN_ZERO_CROSSING_RATE),
+    @Property(name=SpeechToTextEngine.VAD_MAX_ZERO_CROSSING_RATE,
+        intValue=VoiceActivityFilter.Settings.DEFAULT_MAX_ZERO_CROSSING_RATE),
+    @Property(name=SpeechToTextEngine.VAD_HANGOVER,
+        intValue=VoiceActivityFilter.Settings.DEFAULT_HANGOVER_MILLIS),
+    @Property(name=SpeechToTextEngine.TIME_FORMAT,
+        value="duration", options={
+            @PropertyOption(name="duration",value="xsd:duration"),
+            @PropertyOption(name="milliseconds",value="xsd:long (milliseconds)"),
+            @PropertyOption(name="legacy",value="HH:MM:SS:m (string)")}),
+    @Property(name=SpeechToTextEngine.GRANULARITY,
+        value="utterance", options={
+            @PropertyOption(name="utterance",value="Utterance"),
+            @PropertyOption(name="phrase",value="Phrase (with confidence)"),
+            @PropertyOption(name="word",value="Utterance plus word timings side part")}),
+    @Property(name=SpeechToTextEngine.NORMALIZE_AUDIO,
+        boolValue=SpeechToTextEngine.DEFAULT_NORMALIZE_AUDIO),
+    @Property(name=SpeechToTextEngine.MEMORY_MAPPING,
+        boolValue=SpeechToTextEngine.DEFAULT_MEMORY_MAPPING),
+    @Property(name=SpeechToTextEngine.TRANSCRIPT_CACHE_SIZE,
+        intValue=SpeechToTextEngine.DEFAULT_TRANSCRIPT_CACHE_SIZE),
+    @Property(name=SpeechToTextEngine.TRANSCRIPT_CACHE_DISK,
+        boolValue=SpeechToTextEngine.DEFAULT_TRANSCRIPT_CACHE_DISK),
+    @Property(name=SpeechToTextEngine.TRANSCRIPT_CACHE_MAX_CONTENT_SIZE,
+        intValue=SpeechToTextEngine.DEFAULT_TRANSCRIPT_CACHE_MAX_CONTENT_SIZE),
+    @Property(name=SpeechToTextEngine.ADMISSION_MAX_CONCURRENT,
+        intValue=SpeechToTextEngine.DEFAULT_ADMISSION_MAX_CONCURRENT),
+    @Property(name=SpeechToTextEngine.ADMISSION_MAX_QUEUED,
+        intValue=SpeechToTextEngine.DEFAULT_ADMISSION_MAX_QUEUED),
+    @Property(name=SpeechToTextEngine.ADMISSION_MAX_WAIT,
+        intValue=SpeechToTextEngine.DEFAULT_ADMISSION_MAX_WAIT),
+    @Property(name=SpeechToTextEngine.WARM_UP,
+        boolValue=SpeechToTextEngine.DEFAULT_WARM_UP),
+    @Property(name=SpeechToTextEngine.LANGUAGE_MODEL_CACHE,
+        boolValue=SpeechToTextEngine.DEFAULT_LANGUAGE_MODEL_CACHE),
+    @Property(name=SpeechToTextEngine.DICTIONARY_CACHE,
+        boolValue=SpeechToTextEngine.DEFAULT_DICTIONARY_CACHE),
+    @Property(name=SpeechToTextEngine.ALTERNATIVES_NBEST,
+        intValue=SpeechToTextEngine.DEFAULT_ALTERNATIVES_NBEST),
+    @Property(name=SpeechToTextEngine.ALTERNATIVES_LATTICE,
+        boolValue=SpeechToTextEngine.DEFAULT_ALTERNATIVES_LATTICE),
+    @Property(name=SpeechToTextEngine.ALTERNATIVES_MAX_NODES,
+        intValue=Alternatives.Settings.DEFAULT_MAX_NODES),
+    @Property(name=SpeechToTextEngine.ALTERNATIVES_MAX_EDGES,
+        intValue=Alternatives.Settings.DEFAULT_MAX_EDGES),
+    @Property(name=SpeechToTextEngine.RECOGNITION_MODE,
+        value="large_vocabulary", options={
+            @PropertyOption(name="large_vocabulary",value="Large vocabulary (language model)"),
+            @PropertyOption(name="grammar",value="JSGF grammar"),
+            @PropertyOption(name="keywords",value="Keyword list")}),
+    @Property(name=SpeechToTextEngine.GRAMMAR,
+        value=""),
+    @Property(name=SpeechToTextEngine.KEYWORDS,
+        value=""),
+    @Property(name=SpeechToTextEngine.KEYWORDS_THRESHOLD,
+        doubleValue=KeywordFilter.DEFAULT_THRESHOLD)
+})
 public abstract class SpeechToTextEngine 
 	extends AbstractEnhancementEngine<IOException,RuntimeException> 
 	implements EnhancementEngine {
@@ -79,8 +197,369 @@ public abstract class SpeechToTextEngine
      */
     public static final UriRef ENHANCER_TIME_END = new UriRef("http://www.w3.org/TR/prov-o/#endedAtTime");
 
+    /**
+     * The maximum number of recognizers kept per model set. Concurrent requests
+     * exceeding this number wait until a recognizer is returned.
+     */
+    public static final String RECOGNIZER_POOL_SIZE = "stanbol.engines.speechtotext.pool.size";
+    
+    public static final int DEFAULT_RECOGNIZER_POOL_SIZE = 2;
+    /**
+     * The time in seconds after that unused recognizers are evicted from the 
+     * pool. Values <code>&lt;= 0</code> deactivate eviction. NOTE that one
+     * recognizer of the models warmed up by {@link #WARM_UP} is kept.
+     */
+    public static final String RECOGNIZER_POOL_IDLE_TIMEOUT = "stanbol.engines.speechtotext.pool.idleTimeout";
+    
+    public static final int DEFAULT_RECOGNIZER_POOL_IDLE_TIMEOUT = 300;
+    /**
+     * Switches on the long audio mode. In this mode recordings longer as
+     * {@link #LONG_AUDIO_MIN_DURATION} are cut at pauses into segments that
+     * are decoded concurrently.
+     */
+    public static final String LONG_AUDIO_MODE = "stanbol.engines.speechtotext.longAudio.enabled";
+    
+    public static final boolean DEFAULT_LONG_AUDIO_MODE = false;
+    /**
+     * The minimum duration in seconds of recordings processed in the long 
+     * audio mode
+     */
+    public static final String LONG_AUDIO_MIN_DURATION = "stanbol.engines.speechtotext.longAudio.minDuration";
+    
+    public static final int DEFAULT_LONG_AUDIO_MIN_DURATION = 300;
+    /**
+     * The number of segments decoded concurrently in the long audio mode. 
+     * Values <code>&lt;= 0</code> use the number of available processors.
+     * NOTE that every segment borrows a recognizer, so the parallelism is
+     * capped at {@link #RECOGNIZER_POOL_SIZE}. Raise the pool size to decode
+     * more segments of a recording at the same time.
+     */
+    public static final String LONG_AUDIO_PARALLELISM = "stanbol.engines.speechtotext.longAudio.parallelism";
+    
+    public static final int DEFAULT_LONG_AUDIO_PARALLELISM = 0;
+    /**
+     * Switches on the voice activity detection. If enabled non-speech regions
+     * are dropped before the audio is parsed to the recognizer.
+     */
+    public static final String VAD_MODE = "stanbol.engines.speechtotext.vad.enabled";
+    
+    public static final boolean DEFAULT_VAD_MODE = false;
+    /**
+     * The minimum RMS amplitude (0..32767) of speech
+     */
+    public static final String VAD_ENERGY_THRESHOLD = "stanbol.engines.speechtotext.vad.energyThreshold";
+    /**
+     * The minimum number of zero crossings per second of speech
+     */
+    public static final String VAD_MIN_ZERO_CROSSING_RATE = "stanbol.engines.speechtotext.vad.minZeroCrossingRate";
+    /**
+     * The maximum number of zero crossings per second of speech
+     */
+    public static final String VAD_MAX_ZERO_CROSSING_RATE = "stanbol.engines.speechtotext.vad.maxZeroCrossingRate";
+    /**
+     * The time in milliseconds audio is kept after detected speech
+     */
+    public static final String VAD_HANGOVER = "stanbol.engines.speechtotext.vad.hangover";
+    /**
+     * Switches on the conversion of decoded audio to the format required by
+     * Sphinx (16 kHz, 16 bit, mono PCM). Supports 8/16/24/32 bit PCM and
+     * 32/64 bit float samples with any number of channels and sample rate.
+     */
+    public static final String NORMALIZE_AUDIO = "stanbol.engines.speechtotext.normalize.enabled";
+    
+    public static final boolean DEFAULT_NORMALIZE_AUDIO = true;
+    /**
+     * Switches on memory mapping of file based content. Mapped files are
+     * read directly from the page cache and segments of long recordings
+     * are not copied to the heap.
+     */
+    public static final String MEMORY_MAPPING = "stanbol.engines.speechtotext.mmap.enabled";
+    
+    public static final boolean DEFAULT_MEMORY_MAPPING = true;
+    /**
+     * The format of the start/end time literals. One of <code>duration</code>
+     * (<code>xsd:duration</code>), <code>milliseconds</code> (<code>xsd:long</code>)
+     * or <code>legacy</code> (<code>HH:MM:SS:m</code> strings).
+     * See {@link TimeLiteralFormat}
+     */
+    public static final String TIME_FORMAT = "stanbol.engines.speechtotext.timeFormat";
+    
+    public static final TimeLiteralFormat DEFAULT_TIME_FORMAT = TimeLiteralFormat.DURATION;
+    /**
+     * The maximum memory in kilobytes used by the transcripts kept in memory
+     * by the {@link TranscriptCache}. Values <code>&lt;= 0</code> deactivate 
+     * caching.
+     */
+    public static final String TRANSCRIPT_CACHE_SIZE = "stanbol.engines.speechtotext.cache.size";
+    
+    public static final int DEFAULT_TRANSCRIPT_CACHE_SIZE = 1024;
+    /**
+     * Switches on the disk tier of the {@link TranscriptCache}. Transcripts
+     * are stored in <code>speechtotext/transcripts</code> within the Stanbol
+     * home directory.
+     */
+    public static final String TRANSCRIPT_CACHE_DISK = "stanbol.engines.speechtotext.cache.disk.enabled";
+    
+    public static final boolean DEFAULT_TRANSCRIPT_CACHE_DISK = false;
+    /**
+     * The maximum size in megabytes of content whose transcript is cached.
+     * The key of the {@link TranscriptCache} is the hash of the content, so
+     * cached content is read twice. Larger content (or content of unknown
+     * size) is not cached. Values <code>&lt;= 0</code> deactivate the limit.
+     */
+    public static final String TRANSCRIPT_CACHE_MAX_CONTENT_SIZE = "stanbol.engines.speechtotext.cache.maxContentSize";
+    
+    public static final int DEFAULT_TRANSCRIPT_CACHE_MAX_CONTENT_SIZE = 256;
+    /**
+     * The maximum number of concurrent decodes. Requests exceeding this
+     * number wait for admission (see {@link AdmissionController}). Values
+     * <code>&lt;= 0</code> deactivate admission control.
+     */
+    public static final String ADMISSION_MAX_CONCURRENT = "stanbol.engines.speechtotext.admission.maxConcurrent";
+    
+    public static final int DEFAULT_ADMISSION_MAX_CONCURRENT = DEFAULT_RECOGNIZER_POOL_SIZE;
+    /**
+     * The maximum number of requests waiting for admission. Further requests
+     * are rejected.
+     */
+    public static final String ADMISSION_MAX_QUEUED = "stanbol.engines.speechtotext.admission.maxQueued";
+    
+    public static final int DEFAULT_ADMISSION_MAX_QUEUED = 10;
+    /**
+     * The maximum time in seconds a request waits for admission before it
+     * is rejected
+     */
+    public static final String ADMISSION_MAX_WAIT = "stanbol.engines.speechtotext.admission.maxWait";
+    
+    public static final int DEFAULT_ADMISSION_MAX_WAIT = 120;
+    /**
+     * If the models of the default language are loaded in the background
+     * after activation. The engine reports itself as not ready (see
+     * {@link #isReady()}) until a recognizer was created and has decoded a
+     * short clip. The warmed models and one of their recognizers are not 
+     * evicted after {@link #RECOGNIZER_POOL_IDLE_TIMEOUT}, so the engine stays
+     * ready. If disabled, the first request after the idle timeout loads the
+     * models again.
+     */
+    public static final String WARM_UP = "stanbol.engines.speechtotext.warmup.enabled";
+    
+    public static final boolean DEFAULT_WARM_UP = true;
+    /**
+     * If ARPA language models are compiled to the binary DMP format (see
+     * {@link LanguageModelCache}). Compiled models are stored in
+     * <code>speechtotext/lm</code> within the Stanbol home directory.
+     */
+    public static final String LANGUAGE_MODEL_CACHE = "stanbol.engines.speechtotext.lmcache.enabled";
+    
+    public static final boolean DEFAULT_LANGUAGE_MODEL_CACHE = false;
+    /**
+     * If pronunciation dictionaries are reduced to the vocabulary of ARPA
+     * language models (see {@link DictionaryCache}). Reduced dictionaries are 
+     * stored in <code>speechtotext/dict</code> within the Stanbol home 
+     * directory.
+     */
+    public static final String DICTIONARY_CACHE = "stanbol.engines.speechtotext.dictcache.enabled";
+    
+    public static final boolean DEFAULT_DICTIONARY_CACHE = true;
+    /**
+     * The maximum number of alternative hypotheses (N-best) written per
+     * utterance to the {@link Alternatives#MIME_TYPE} part of the ContentItem.
+     * Values <code>&lt;= 0</code> deactivate the N-best output. NOTE that
+     * the {@link TranscriptCache} is not used while alternatives are written.
+     */
+    public static final String ALTERNATIVES_NBEST = "stanbol.engines.speechtotext.alternatives.nbest";
+    
+    public static final int DEFAULT_ALTERNATIVES_NBEST = 0;
+    /**
+     * Switches on writing the pruned word lattice of every utterance to the
+     * {@link Alternatives#MIME_TYPE} part of the ContentItem
+     */
+    public static final String ALTERNATIVES_LATTICE = "stanbol.engines.speechtotext.alternatives.lattice.enabled";
+    
+    public static final boolean DEFAULT_ALTERNATIVES_LATTICE = false;
+    /**
+     * The maximum number of lattice nodes written per utterance. Nodes with
+     * the lowest posterior probability are pruned.
+     */
+    public static final String ALTERNATIVES_MAX_NODES = "stanbol.engines.speechtotext.alternatives.lattice.maxNodes";
+    /**
+     * The maximum number of lattice edges written per utterance. Edges with
+     * the lowest score are pruned.
+     */
+    public static final String ALTERNATIVES_MAX_EDGES = "stanbol.engines.speechtotext.alternatives.lattice.maxEdges";
+    /**
+     * The granularity of the time annotations. One of <code>utterance</code>,
+     * <code>phrase</code> or <code>word</code>. See {@link Granularity}.
+     * NOTE that the {@link TranscriptCache} is only used for 
+     * <code>utterance</code>.
+     */
+    public static final String GRANULARITY = "stanbol.engines.speechtotext.granularity";
+    
+    public static final Granularity DEFAULT_GRANULARITY = Granularity.UTTERANCE;
+    /**
+     * The search used by the recognizers. One of <code>large_vocabulary</code>,
+     * <code>grammar</code> (requires {@link #GRAMMAR}) or <code>keywords</code>
+     * (requires {@link #KEYWORDS}). See {@link RecognitionMode}.
+     */
+    public static final String RECOGNITION_MODE = "stanbol.engines.speechtotext.mode";
+    
+    public static final RecognitionMode DEFAULT_RECOGNITION_MODE = RecognitionMode.LARGE_VOCABULARY;
+    /**
+     * The JSGF grammar used by the <code>grammar</code> mode. The value is the
+     * name of the file (MUST end with <code>.gram</code>) loaded via the 
+     * DataFileProvider infrastructure. Changed grammars are loaded without
+     * affecting running requests.
+     */
+    public static final String GRAMMAR = "stanbol.engines.speechtotext.grammar";
+    /**
+     * The keyword list used by the <code>keywords</code> mode. The value is
+     * the name of the file loaded via the DataFileProvider infrastructure.
+     * One keyword or phrase per line (see {@link GrammarCache#storeKeywords(String, InputStream)}).
+     */
+    public static final String KEYWORDS = "stanbol.engines.speechtotext.keywords";
+    /**
+     * The minimum confidence of recognized keywords without a detection 
+     * threshold in the keyword list. Keywords with a lower confidence are
+     * not reported. See {@link KeywordFilter}.
+     */
+    public static final String KEYWORDS_THRESHOLD = "stanbol.engines.speechtotext.keywords.threshold";
+    /**
+     * The ContentItem part used to cache the {@link AudioProbe} created by
+     * {@link #canEnhance(ContentItem)}
+     */
+    public static final UriRef AUDIO_PROBE_PART = new UriRef("urn:Sphinx:audio:probe");
+    /**
+     * The size of the buffer used to parse (and reset) the header of the 
+     * processed media
+     */
+    private static final int HEADER_BUFFER_SIZE = AudioDecoderRegistry.MAX_HEADER_SIZE;
+
     protected SphinxConfig config;
     protected ModelProvider MPi;
+    /**
+     * Lends warmed recognizers to {@link #computeEnhancements(ContentItem)}
+     */
+    protected RecognizerPool recognizerPool;
+    /**
+     * Holds the resolved configuration of all processed languages
+     */
+    protected LanguageEngineRegistry languageRegistry;
+    /**
+     * Decodes long recordings. <code>null</code> if the long audio mode is
+     * deactivated
+     */
+    protected ParallelSegmentDecoder segmentDecoder;
+    /**
+     * The minimum duration in milliseconds of recordings processed by the
+     * {@link #segmentDecoder}
+     */
+    protected long longAudioMinDuration = DEFAULT_LONG_AUDIO_MIN_DURATION*1000L;
+    /**
+     * The settings of the voice activity detection. <code>null</code> if 
+     * voice activity detection is deactivated
+     */
+    protected VoiceActivityFilter.Settings vadSettings;
+    /**
+     * Selects the decoder for the processed media
+     */
+    protected AudioDecoderRegistry decoderRegistry = AudioDecoderRegistry.createDefault();
+    /**
+     * If decoded audio not compatible with Sphinx is converted
+     */
+    protected boolean normalizeAudio = DEFAULT_NORMALIZE_AUDIO;
+    /**
+     * If file based content is memory mapped
+     */
+    protected boolean memoryMapping = DEFAULT_MEMORY_MAPPING;
+    /**
+     * The format used for the start/end time literals
+     */
+    protected TimeLiteralFormat timeFormat = DEFAULT_TIME_FORMAT;
+    /**
+     * The granularity of the time annotations
+     */
+    protected Granularity granularity = DEFAULT_GRANULARITY;
+    /**
+     * The search used by the recognizers. Sub classes parse it to their
+     * {@link SphinxConfig}
+     */
+    protected RecognitionMode recognitionMode = DEFAULT_RECOGNITION_MODE;
+    /**
+     * The default threshold of the {@link RecognitionMode#KEYWORDS} mode.
+     * Sub classes parse it to their {@link SphinxConfig}
+     */
+    protected double keywordThreshold = KeywordFilter.DEFAULT_THRESHOLD;
+    /**
+     * The tracked grammar or keyword list. <code>null</code> in the 
+     * {@link RecognitionMode#LARGE_VOCABULARY} mode
+     */
+    private String grammarResource;
+    /**
+     * Stores tracked grammars. <code>null</code> in the 
+     * {@link RecognitionMode#LARGE_VOCABULARY} mode
+     */
+    protected GrammarCache grammarCache;
+    private DataFileListener grammarListener;
+    /**
+     * Loads changed models in the background (see {@link #scheduleModelReload()})
+     */
+    private ExecutorService modelLoader;
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+    /**
+     * Tracks how long the write lock of processed ContentItems is held
+     */
+    protected final LockHoldStatistics metadataLockStatistics = new LockHoldStatistics();
+    /**
+     * Instrumentation of the stages of {@link #computeEnhancements(ContentItem)}
+     */
+    protected final DecodingMetrics metrics = new DecodingMetrics();
+    /**
+     * The registration of the {@link #metrics} as OSGi service
+     */
+    private ServiceRegistration<?> metricsRegistration;
+    /**
+     * The name of the {@link #metrics} MBean or <code>null</code> if not
+     * registered
+     */
+    private ObjectName metricsObjectName;
+    /**
+     * Caches the transcripts of decoded content. <code>null</code> if caching
+     * is deactivated
+     */
+    protected TranscriptCache transcriptCache;
+    /**
+     * The maximum size in bytes of content whose transcript is cached.
+     * <code>&lt;= 0</code> if not limited
+     */
+    protected long transcriptCacheMaxContentSize;
+    /**
+     * Limits the number of concurrent decodes. <code>null</code> if admission
+     * control is deactivated
+     */
+    protected AdmissionController admissionController;
+    /**
+     * Compiles ARPA language models. <code>null</code> if deactivated. Sub
+     * classes parse it to their {@link SphinxConfig}
+     */
+    protected LanguageModelCache languageModelCache;
+    /**
+     * Reduces dictionaries to the used words. <code>null</code> if 
+     * deactivated. Sub classes parse it to their {@link SphinxConfig}
+     */
+    protected DictionaryCache dictionaryCache;
+    /**
+     * The settings for the N-best and lattice output. <code>null</code> if
+     * deactivated
+     */
+    protected Alternatives.Settings alternativesSettings;
+    /**
+     * If the models are warmed up after activation
+     */
+    protected boolean warmUp = DEFAULT_WARM_UP;
+    /**
+     * Loads the models after activation. <code>null</code> if not running
+     */
+    private Thread warmUpThread;
 
     
     
@@ -107,11 +586,424 @@ public abstract class SpeechToTextEngine
         }
         this.MPi = MPi;
         this.config = config;
+        this.recognizerPool = new RecognizerPool(DEFAULT_RECOGNIZER_POOL_SIZE,
+            DEFAULT_RECOGNIZER_POOL_IDLE_TIMEOUT*1000L, metrics);
+        this.languageRegistry = new LanguageEngineRegistry(recognizerPool, 
+            recognizerPool.getIdleTimeout());
     }
     
     SpeechToTextEngine(DataFileProvider dfp,SphinxConfig config) throws IOException {
         //this(new ModelProviderImpl(dfp),config);
     }
+    
+    @Override
+    protected void activate(ComponentContext ctx) throws ConfigurationException, IOException {
+        super.activate(ctx);
+        Dictionary<?,?> properties = ctx.getProperties();
+        recognizerPool = new RecognizerPool(
+            getIntProperty(properties, RECOGNIZER_POOL_SIZE, DEFAULT_RECOGNIZER_POOL_SIZE),
+            getIntProperty(properties, RECOGNIZER_POOL_IDLE_TIMEOUT, DEFAULT_RECOGNIZER_POOL_IDLE_TIMEOUT)*1000L,
+            metrics);
+        languageRegistry = new LanguageEngineRegistry(recognizerPool, 
+            recognizerPool.getIdleTimeout());
+        if(getBooleanProperty(properties, LONG_AUDIO_MODE, DEFAULT_LONG_AUDIO_MODE)){
+            int parallelism = getIntProperty(properties, LONG_AUDIO_PARALLELISM, DEFAULT_LONG_AUDIO_PARALLELISM);
+            if(parallelism <= 0){
+                parallelism = Runtime.getRuntime().availableProcessors();
+            }
+            if(parallelism > recognizerPool.getMaxSize()){ //more threads would only wait for recognizers
+                log.info("cap long audio parallelism {} of {} at the recognizer pool size {}", 
+                    new Object[]{parallelism, getName(), recognizerPool.getMaxSize()});
+                parallelism = recognizerPool.getMaxSize();
+            }
+            segmentDecoder = new ParallelSegmentDecoder(parallelism);
+            longAudioMinDuration = getIntProperty(properties, LONG_AUDIO_MIN_DURATION, 
+                DEFAULT_LONG_AUDIO_MIN_DURATION)*1000L;
+        }
+        normalizeAudio = getBooleanProperty(properties, NORMALIZE_AUDIO, DEFAULT_NORMALIZE_AUDIO);
+        memoryMapping = getBooleanProperty(properties, MEMORY_MAPPING, DEFAULT_MEMORY_MAPPING);
+        if(getBooleanProperty(properties, VAD_MODE, DEFAULT_VAD_MODE)){
+            try {
+                vadSettings = new VoiceActivityFilter.Settings(
+                    getIntProperty(properties, VAD_ENERGY_THRESHOLD, 
+                        VoiceActivityFilter.Settings.DEFAULT_ENERGY_THRESHOLD), 
+                    getIntProperty(properties, VAD_MIN_ZERO_CROSSING_RATE, 
+                        VoiceActivityFilter.Settings.DEFAULT_MIN_ZERO_CROSSING_RATE), 
+                    getIntProperty(properties, VAD_MAX_ZERO_CROSSING_RATE, 
+                        VoiceActivityFilter.Settings.DEFAULT_MAX_ZERO_CROSSING_RATE), 
+                    getIntProperty(properties, VAD_HANGOVER, 
+                        VoiceActivityFilter.Settings.DEFAULT_HANGOVER_MILLIS), 
+                    VoiceActivityFilter.Settings.DEFAULT_PRE_ROLL_MILLIS);
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException(VAD_MAX_ZERO_CROSSING_RATE, e.getMessage(), e);
+            }
+        } else {
+            vadSettings = null;
+        }
+        Object value = properties == null ? null : properties.get(TIME_FORMAT);
+        if(value != null && !value.toString().trim().isEmpty()){
+            try {
+                timeFormat = TimeLiteralFormat.parse(value.toString());
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException(TIME_FORMAT, "Unknown time format '"
+                    + value + "' (supported: duration, milliseconds, legacy)!", e);
+            }
+        } else {
+            timeFormat = DEFAULT_TIME_FORMAT;
+        }
+        value = properties == null ? null : properties.get(GRANULARITY);
+        if(value != null && !value.toString().trim().isEmpty()){
+            try {
+                granularity = Granularity.parse(value.toString());
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException(GRANULARITY, "Unknown granularity '"
+                    + value + "' (supported: utterance, phrase, word)!", e);
+            }
+        } else {
+            granularity = DEFAULT_GRANULARITY;
+        }
+        value = properties == null ? null : properties.get(RECOGNITION_MODE);
+        if(value != null && !value.toString().trim().isEmpty()){
+            try {
+                recognitionMode = RecognitionMode.parse(value.toString());
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException(RECOGNITION_MODE, "Unknown recognition mode '"
+                    + value + "' (supported: large_vocabulary, grammar, keywords)!", e);
+            }
+        } else {
+            recognitionMode = DEFAULT_RECOGNITION_MODE;
+        }
+        grammarResource = null;
+        grammarCache = null;
+        if(recognitionMode != RecognitionMode.LARGE_VOCABULARY){
+            String key = recognitionMode == RecognitionMode.GRAMMAR ? GRAMMAR : KEYWORDS;
+            value = properties == null ? null : properties.get(key);
+            if(value == null || value.toString().trim().isEmpty()){
+                throw new ConfigurationException(key, "The recognition mode '"
+                    + recognitionMode.name().toLowerCase(Locale.ROOT) + "' requires this property!");
+            }
+            grammarResource = value.toString().trim();
+            keywordThreshold = getDoubleProperty(properties, KEYWORDS_THRESHOLD, 
+                KeywordFilter.DEFAULT_THRESHOLD);
+            if(recognitionMode == RecognitionMode.GRAMMAR 
+                    && !grammarResource.endsWith(GrammarCache.GRAMMAR_SUFFIX)){
+                throw new ConfigurationException(GRAMMAR, "The name of the grammar '"
+                    + grammarResource + "' MUST end with '"+GrammarCache.GRAMMAR_SUFFIX+"'!");
+            }
+            try {
+                grammarCache = new GrammarCache(getDataDirectory(ctx, "grammar"));
+            } catch (IOException e) {
+                throw new ConfigurationException(key, e.getMessage(), e);
+            }
+        }
+        int cacheSize = getIntProperty(properties, TRANSCRIPT_CACHE_SIZE, DEFAULT_TRANSCRIPT_CACHE_SIZE);
+        if(cacheSize > 0){
+            File directory = null;
+            if(getBooleanProperty(properties, TRANSCRIPT_CACHE_DISK, DEFAULT_TRANSCRIPT_CACHE_DISK)){
+                directory = getDataDirectory(ctx, "transcripts");
+            }
+            try {
+                transcriptCache = new TranscriptCache(cacheSize * 1024L, directory);
+            } catch (IOException e) {
+                throw new ConfigurationException(TRANSCRIPT_CACHE_DISK, e.getMessage(), e);
+            }
+            transcriptCacheMaxContentSize = getIntProperty(properties, TRANSCRIPT_CACHE_MAX_CONTENT_SIZE, 
+                DEFAULT_TRANSCRIPT_CACHE_MAX_CONTENT_SIZE) * 1024L * 1024L;
+            log.debug("activated {}",transcriptCache);
+        } else {
+            transcriptCache = null;
+        }
+        int maxConcurrent = getIntProperty(properties, ADMISSION_MAX_CONCURRENT, DEFAULT_ADMISSION_MAX_CONCURRENT);
+        if(maxConcurrent > 0){
+            try {
+                admissionController = new AdmissionController(maxConcurrent, 
+                    getIntProperty(properties, ADMISSION_MAX_QUEUED, DEFAULT_ADMISSION_MAX_QUEUED),
+                    getIntProperty(properties, ADMISSION_MAX_WAIT, DEFAULT_ADMISSION_MAX_WAIT)*1000L);
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException(ADMISSION_MAX_QUEUED, e.getMessage(), e);
+            }
+        } else {
+            admissionController = null;
+        }
+        if(getBooleanProperty(properties, LANGUAGE_MODEL_CACHE, DEFAULT_LANGUAGE_MODEL_CACHE)){
+            try {
+                languageModelCache = new LanguageModelCache(getDataDirectory(ctx, "lm"));
+            } catch (IOException e) {
+                throw new ConfigurationException(LANGUAGE_MODEL_CACHE, e.getMessage(), e);
+            }
+        } else {
+            languageModelCache = null;
+        }
+        if(getBooleanProperty(properties, DICTIONARY_CACHE, DEFAULT_DICTIONARY_CACHE)){
+            try {
+                dictionaryCache = new DictionaryCache(getDataDirectory(ctx, "dict"));
+            } catch (IOException e) {
+                throw new ConfigurationException(DICTIONARY_CACHE, e.getMessage(), e);
+            }
+        } else {
+            dictionaryCache = null;
+        }
+        try {
+            alternativesSettings = new Alternatives.Settings(
+                Math.max(getIntProperty(properties, ALTERNATIVES_NBEST, DEFAULT_ALTERNATIVES_NBEST), 0),
+                getBooleanProperty(properties, ALTERNATIVES_LATTICE, DEFAULT_ALTERNATIVES_LATTICE),
+                getIntProperty(properties, ALTERNATIVES_MAX_NODES, Alternatives.Settings.DEFAULT_MAX_NODES),
+                getIntProperty(properties, ALTERNATIVES_MAX_EDGES, Alternatives.Settings.DEFAULT_MAX_EDGES));
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException(ALTERNATIVES_MAX_NODES, e.getMessage(), e);
+        }
+        if(!alternativesSettings.isEnabled()){
+            alternativesSettings = null;
+        }
+        warmUp = getBooleanProperty(properties, WARM_UP, DEFAULT_WARM_UP);
+        //ready if the first request may load the models
+        metrics.setReady(!warmUp);
+        modelLoader = Executors.newSingleThreadExecutor();
+        registerMetrics(ctx);
+    }
+    
+    /**
+     * Starts tracking the grammar (or keyword list) of the configured
+     * {@link #RECOGNITION_MODE}. Does nothing in the 
+     * {@link RecognitionMode#LARGE_VOCABULARY} mode. MUST BE called by sub 
+     * classes after {@link #config} is initialised.
+     * @param tracker the tracker used to load the grammar
+     */
+    protected void trackGrammar(DataFileTracker tracker) {
+        if(grammarResource == null){
+            return;
+        }
+        grammarListener = new GrammarFileListener();
+        tracker.add(grammarListener, grammarResource, null);
+    }
+    
+    /**
+     * Stops tracking the grammar started by {@link #trackGrammar(DataFileTracker)}
+     * @param tracker the tracker
+     */
+    protected void untrackGrammar(DataFileTracker tracker) {
+        if(grammarListener != null){
+            tracker.removeAll(grammarListener);
+            grammarListener = null;
+        }
+    }
+    
+    /**
+     * Schedules the loading of the changed models. Events for several files
+     * received before the loading starts are processed by a single reload.
+     */
+    protected void scheduleModelReload() {
+        ExecutorService loader = modelLoader;
+        if(loader == null || !reloadPending.compareAndSet(false, true)){
+            return; //deactivated or already scheduled
+        }
+        try {
+            loader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    reloadPending.set(false);
+                    reloadModels();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reloadPending.set(false); //deactivated concurrently
+        }
+    }
+    
+    /**
+     * Reloads the models of all languages in use (or of the default language
+     * if no models are loaded yet). The first loaded model set completes the
+     * warm up of this engine.
+     */
+    private void reloadModels() {
+        SphinxConfig config = this.config;
+        LanguageEngineRegistry registry = languageRegistry;
+        if(config == null || registry == null || MPi == null){
+            return; //deactivated
+        }
+        Set<String> languages = config.getSnapshotLanguages();
+        if(languages.isEmpty()){
+            languages.add(config.getDefaultLanguage());
+        }
+        boolean loaded = false;
+        for(String language : languages){
+            loaded = reloadModels(config, registry, language) || loaded;
+        }
+        if(loaded){
+            metrics.setReady(true);
+        }
+    }
+    
+    /**
+     * Loads the current model set as a new generation, creates a recognizer
+     * for it and only then swaps it in. Requests running on the replaced
+     * models complete on them (see {@link LanguageEngineRegistry#retire(ModelSnapshot)}).
+     * If the model set is incomplete (e.g. while a model file is replaced)
+     * the models in use are kept.
+     * @return if a new model set was loaded
+     */
+    private boolean reloadModels(SphinxConfig config, LanguageEngineRegistry registry, String language) {
+        ModelSnapshot current = config.getCurrentModelSnapshot(language);
+        ModelSnapshot models = config.resolveModels(MPi, language);
+        if(models == null){
+            log.info("model set of {} is incomplete - keep using {}", getName(), current);
+            return false;
+        } else if(models.equals(current)){ //same locations and content
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            registry.warm(config, models);
+        } catch (IOException e) {
+            log.warn("Unable to load models "+models+" for "+getName()
+                + " (keep using "+current+")", e);
+            return false;
+        } catch (RuntimeException e) {
+            log.warn("Unable to load models "+models+" for "+getName()
+                + " (keep using "+current+")", e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        ModelSnapshot replaced = config.replaceModelSnapshot(language, models);
+        if(replaced != null && !replaced.equals(models)){
+            registry.retire(replaced);
+        }
+        log.info("{} uses models {} (loaded in {}ms, replaced: {})", new Object[]{
+            getName(), models, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), replaced});
+        return true;
+    }
+    
+    /**
+     * Starts to warm up the models of the default language on a background
+     * thread if {@link #WARM_UP} is enabled. MUST BE called by sub classes
+     * after {@link #config} is initialised.
+     */
+    protected void startWarmUp() {
+        if(!warmUp){
+            return;
+        }
+        final SphinxConfig config = this.config;
+        final ModelProvider MPi = this.MPi;
+        final LanguageEngineRegistry registry = languageRegistry;
+        warmUpThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                String language = config.getDefaultLanguage();
+                try {
+                    ModelSnapshot models = config.getModelSnapshot(MPi, language);
+                    if(models == null){
+                        log.warn("Unable to warm up {}: models for language {} are not available",
+                            getName(), language);
+                    } else {
+                        registry.warm(config, models);
+                        log.info("warmed up {} in {}ms (models: {})", new Object[]{getName(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), models});
+                    }
+                } catch (IOException e) {
+                    log.warn("Unable to warm up "+getName(), e);
+                } catch (RuntimeException e) {
+                    log.warn("Unable to warm up "+getName(), e);
+                } catch (InterruptedException e) {
+                    return; //deactivated
+                }
+                //requests are also accepted if warming up failed
+                metrics.setReady(true);
+            }
+        }, "speechtotext-warmup-"+getName());
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
+    
+    /**
+     * Registers the {@link #metrics} as OSGi service and with the platform
+     * MBean server
+     */
+    private void registerMetrics(ComponentContext ctx) {
+        Hashtable<String,Object> serviceProperties = new Hashtable<String,Object>();
+        serviceProperties.put(PROPERTY_NAME, getName());
+        metricsRegistration = ctx.getBundleContext().registerService(
+            new String[]{DecodingMetrics.class.getName(), DecodingMetricsMXBean.class.getName()}, 
+            metrics, serviceProperties);
+        try {
+            ObjectName name = new ObjectName(DecodingMetrics.class.getPackage().getName()
+                + ":type=DecodingMetrics,name="+ObjectName.quote(getName()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            metricsObjectName = name;
+        } catch (JMException e) {
+            log.warn("Unable to register decoding metrics of engine "+getName()+" with JMX", e);
+        }
+    }
+    
+    private void unregisterMetrics() {
+        if(metricsRegistration != null){
+            try {
+                metricsRegistration.unregister();
+            } catch (IllegalStateException e) {
+                //already unregistered
+            }
+            metricsRegistration = null;
+        }
+        if(metricsObjectName != null){
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(metricsObjectName);
+            } catch (JMException e) {
+                log.debug("Unable to unregister "+metricsObjectName, e);
+            }
+            metricsObjectName = null;
+        }
+    }
+    
+    /**
+     * A directory of this engine within the Stanbol home directory 
+     * (<code>sling.home</code>), e.g. for the disk tier of the 
+     * {@link TranscriptCache}. Falls back to the data directory of the 
+     * bundle if the home directory is not known.
+     * @param ctx the component context
+     * @param name the name of the directory
+     * @return the directory
+     */
+    private File getDataDirectory(ComponentContext ctx, String name) {
+        String home = ctx.getBundleContext().getProperty("sling.home");
+        if(home != null){
+            return new File(home, "speechtotext" + File.separatorChar + name);
+        } else {
+            return ctx.getBundleContext().getDataFile(name);
+        }
+    }
+    
+    @Override
+    protected void deactivate(ComponentContext ctx) {
+        if(warmUpThread != null){
+            warmUpThread.interrupt();
+            warmUpThread = null;
+        }
+        if(modelLoader != null){
+            modelLoader.shutdownNow();
+            modelLoader = null;
+        }
+        unregisterMetrics();
+        transcriptCache = null;
+        languageModelCache = null;
+        grammarCache = null;
+        admissionController = null;
+        if(segmentDecoder != null){
+            segmentDecoder.close();
+            segmentDecoder = null;
+        }
+        if(languageRegistry != null){
+            languageRegistry.close();
+            languageRegistry = null;
+        }
+        if(recognizerPool != null){
+            recognizerPool.close();
+            recognizerPool = null;
+        }
+        super.deactivate(ctx);
+    }
    
    
 
@@ -121,147 +1013,867 @@ public abstract class SpeechToTextEngine
      */
     @Override
     public int canEnhance(ContentItem ci) throws EngineException {
-        // check if content is present
+        // check if content is present and in a supported format
+        if(ci.getBlob() == null){
+            return CANNOT_ENHANCE;
+        }
+        AudioProbe probe;
         try {
-            if ((ci.getBlob() == null)|| 
-                    (ci.getBlob().getStream().read() == -1)||
-                    (ci.getMimeType().compareToIgnoreCase("audio/wav"))!=0){
-                    //if(!config.initConfig(MPi))
-                        return CANNOT_ENHANCE;
-            }
+            probe = getAudioProbe(ci);
         } catch (IOException e) {
             log.error("Failed to get the text for "
                     + "enhancement of content: " + ci.getUri(), e);
             throw new InvalidContentException(this, ci, e);
         }
+        if(!probe.isSupported()){
+            log.debug("can not enhance {}: {}",ci.getUri(),probe.getError());
+            return CANNOT_ENHANCE;
+        }
         // no reason why we should require to be executed synchronously
         return ENHANCE_ASYNC;
     }
     
     
-    @SuppressWarnings("deprecation")
     @Override
     public void computeEnhancements(ContentItem ci) throws EngineException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            enhance(ci);
+            success = true;
+        } finally {
+            metrics.recordRequest(System.nanoTime() - start, success);
+        }
+    }
+    
+    @SuppressWarnings("deprecation")
+    private void enhance(ContentItem ci) throws EngineException {
         log.info("^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^");//Helps in debugging
-        List<ArrayList<String>> resultPredicted=new ArrayList<ArrayList<String>>();
-        StringBuilder recogString=new StringBuilder();
-        /*
-        recogString.append("Stanbol Can detetct famous cities like Paris and famous people like Bob Marley. ");
-        ArrayList<String> sentence=new ArrayList<String>();
-        sentence.add(timeStampCalculator(777));
-        sentence.add(timeStampCalculator(5678));
-        sentence.add("Stanbol Can detetct famous cities like Paris and famous people like Bob Marley. ");
-        resultPredicted.add(sentence);
-        sentence.clear();
-        sentence.add(timeStampCalculator(5942));
-        sentence.add(timeStampCalculator(7632));
-        sentence.add("This is Speech to text Enhancement Engine. ");
-        resultPredicted.add(sentence);
-        */
-        final InputStream in;
         String lang=extractLanguage(ci);
-        if(lang!=null) {
-            config.setDefaultLanguage(lang);
-            //config.initConfig(MPi);
+        if(lang==null) {
+            lang = config.getDefaultLanguage();
         }
-        config.initConfig(MPi);
-
-
-        
-        
-        
-        
-        Configuration configuration = config.getConfiguration();        
-        try {
-            in = ci.getBlob().getStream();
-            //Extracting Text from Media File parsed
-            StreamSpeechRecognizer recognizer = new StreamSpeechRecognizer(configuration);
-            
-            recognizer.startRecognition(in);
-            SpeechResult result;
-            resultPredicted=new ArrayList<ArrayList<String>>();//for time-stamp mapping
-            
-           //Recognizing the Media Data and storing each line in @resultPredicted
-            while ((result = recognizer.getResult()) != null) {
-                List<WordResult> wordlist=result.getWords();
-                ArrayList<String>sentencePredicted=new ArrayList<String>();
-                sentencePredicted.add(timeStampCalculator(wordlist.get(0).getTimeFrame().getStart()));
-                sentencePredicted.add(timeStampCalculator(wordlist.get(wordlist.size()-2).getTimeFrame().getEnd()));
-                log.info(result.getHypothesis());
-                sentencePredicted.add(result.getHypothesis());
-                resultPredicted.add(sentencePredicted);
-            	recogString.append(result.getHypothesis()).append("\n");
-            }
-            recognizer.stopRecognition();
-        } catch (IOException ex) {
-            log.error("Exception reading content item.", ex);
-            throw new InvalidContentException("Exception reading content item.", ex);
+        //the shared config is not modified so that concurrent requests for 
+        //other languages are not affected
+        long resolutionStart = System.nanoTime();
+        LanguageEngineRegistry registry = languageRegistry;
+        LanguageEngine languageEngine = registry.getEngine(config, MPi, lang);
+        metrics.record(Stage.MODEL_RESOLUTION, System.nanoTime() - resolutionStart);
+        if(languageEngine == null){
+            throw new EngineException(this, ci, "Unable to resolve the Sphinx models "
+                + "for language "+lang, null);
         }
-        //Speech Recognized now add the Blob to the ContentItem
-        
-        
+        try { //the models are not released while in use
+            enhance(ci, languageEngine);
+        } finally {
+            registry.release(languageEngine);
+        }
+    }
+    
+    private void enhance(ContentItem ci, LanguageEngine languageEngine) throws EngineException {
+        //the annotations are created while decoding and added to the metadata
+        //in a single bulk operation to keep the write lock short
+        List<Triple> annotations = new ArrayList<Triple>();
+        InputStream in = null;
+        //The Blobs are added up front and the recognized text is written as
+        //soon as it is available
+        String random = randomUUID().toString();
+        List<UriRef> parts = new ArrayList<UriRef>(3);
         ContentSink plainTextSink;
+        BufferedWriter out = null;
+        //The N-best hypotheses and lattices are written to an other Blob
+        Alternatives.Settings alternatives = alternativesSettings;
+        BufferedWriter alternativesOut = null;
+        //as are the word timings
+        Granularity granularity = this.granularity;
+        OutputStream wordsOut = null;
+        WordTimingsWriter words = null;
+        boolean completed = false;
         try {
-            plainTextSink = ciFactory.createContentSink("text/plain" +"; charset="+UTF8);
-        } catch (IOException e) {
-            IOUtils.closeQuietly(in); //close the input stream
-            throw new EngineException("Error while initialising Blob for" +
-                		"writing the text/plain version of the parsed content",e);
-        }
-        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(plainTextSink.getOutputStream(), UTF8));
-        try { // parse the writer to the framework that extracts the text 
-            	out.write(recogString.toString());
-        } catch (IOException e) {
-        	throw new EngineException("Unable to write extracted" +
-                		"plain text to Blob (blob impl: "
-                        + plainTextSink.getBlob().getClass()+")",e);
+            try {
+                plainTextSink = addContentSink(ci, parts, new UriRef("urn:Sphinx:text:"+random), 
+                    "text/plain" +"; charset="+UTF8);
+                out = new BufferedWriter(new OutputStreamWriter(plainTextSink.getOutputStream(), UTF8));
+                if(alternatives != null){
+                    ContentSink alternativesSink = addContentSink(ci, parts, 
+                        new UriRef("urn:Sphinx:alternatives:"+random), Alternatives.MIME_TYPE + "; charset="+UTF8);
+                    alternativesOut = new BufferedWriter(new OutputStreamWriter(
+                        alternativesSink.getOutputStream(), UTF8));
+                }
+                if(granularity == Granularity.WORD){
+                    ContentSink wordsSink = addContentSink(ci, parts, 
+                        new UriRef("urn:Sphinx:words:"+random), WordTimingsWriter.MIME_TYPE);
+                    wordsOut = new BufferedOutputStream(wordsSink.getOutputStream());
+                    words = new WordTimingsWriter(wordsOut);
+                }
+            } catch (IOException e) {
+                throw new EngineException("Error while initialising Blob for" +
+                        "writing the text/plain version of the parsed content",e);
+            }
+            TranscriptWriter writer = new TranscriptWriter(out, alternativesOut, words, annotations, 
+                timeFormat, granularity, metrics);
+            try {
+                AudioProbe probe = getAudioProbe(ci);
+                AdmissionController admission = admissionController;
+                if(admission != null){ //wait until the number of decodes allows an other one
+                    long admissionStart = System.nanoTime();
+                    try {
+                        admission.acquire();
+                    } finally {
+                        metrics.record(Stage.ADMISSION, System.nanoTime() - admissionStart);
+                    }
+                }
+                try { //also hashing the content for the cache key is bound by the admission
+                    //cached transcripts include neither alternatives nor word timings
+                    String cacheKey = transcriptCache == null || alternatives != null 
+                            || granularity != Granularity.UTTERANCE || !isCacheable(ci, probe) ? null : 
+                        getCacheKey(ci, probe, languageEngine);
+                    Transcript cached = cacheKey == null ? null : transcriptCache.get(cacheKey);
+                    if(cached != null){ //re-create the transcript without decoding
+                        log.debug("use cached transcript for {} ({})",ci.getUri(),transcriptCache);
+                        for(Transcript.Entry entry : cached.getEntries()){
+                            writer.write(entry.getStart(), entry.getEnd(), entry.getText());
+                        }
+                    } else {
+                        if(cacheKey != null){
+                            writer.recordTranscript();
+                        }
+                        in = openStream(ci.getBlob().getStream());
+                        transcribe(in, probe, languageEngine, alternatives, writer);
+                        if(cacheKey != null){
+                            transcriptCache.put(cacheKey, writer.getTranscript());
+                        }
+                    }
+                } finally {
+                    if(admission != null){
+                        admission.release();
+                    }
+                }
+                writer.finish();
+                completed = true;
+            } catch (TranscriptWriteException ex) {
+                throw new EngineException("Unable to write extracted" +
+                    		"plain text to Blob (blob impl: "
+                            + plainTextSink.getBlob().getClass()+")",ex.getCause());
+            } catch (IOException ex) {
+                log.error("Exception reading content item.", ex);
+                throw new InvalidContentException("Exception reading content item.", ex);
+            } catch (RejectedExecutionException ex) {
+                log.warn("reject {}: {} ({})", new Object[]{ci.getUri(), ex.getMessage(), admissionController});
+                throw new EngineException(this, ci, "Unable to decode content: "+ex.getMessage(), ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new EngineException("Interrupted while waiting for a Sphinx recognizer", ex);
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+            IOUtils.closeQuietly(alternativesOut);
+            IOUtils.closeQuietly(wordsOut);
+            if(!completed){ //do not keep the partial transcript
+                for(UriRef part : parts){
+                    ci.removePart(part);
+                }
+            }
         }
-        finally
-        { IOUtils.closeQuietly(out); }
-            
-        String random = randomUUID().toString();
-        UriRef textBlobUri = new UriRef("urn:Sphinx:text:"+random);//create an UriRef for the Blob
-        ci.addPart(textBlobUri, plainTextSink.getBlob());            
         plainTextSink=null;
         
+        long lockStart = System.nanoTime();
         ci.getLock().writeLock().lock();
-        try {	 
-            MGraph metadata = ci.getMetadata();
-            LiteralFactory lf = LiteralFactory.getInstance();//UriRef timestampAnnotation = EnhancementEngineHelper.createTextEnhancement(ci, this);
-            
-            for (ArrayList<String> entry : resultPredicted) {
-                random = randomUUID().toString();
-                UriRef timestampAnnotation = new UriRef("urn:Sphinx:text:"+random);
-		metadata.add(new TripleImpl(timestampAnnotation, ENHANCER_TIME_START,lf.createTypedLiteral(entry.get(0))));//Start time of the spoken text
-                metadata.add(new TripleImpl(timestampAnnotation, ENHANCER_TIME_END,lf.createTypedLiteral(entry.get(1))));// End time of the spoken text
-		metadata.add(new TripleImpl(timestampAnnotation, ENHANCER_SELECTED_TEXT,lf.createTypedLiteral(entry.get(2))));// Spoken text at the particular time frame                                
-            }
-            /*
-            random = randomUUID().toString();
-                UriRef timestampAnnotation = new UriRef("urn:Sphinx:text:"+random);
-		metadata.add(new TripleImpl(timestampAnnotation, ENHANCER_TIME_START,lf.createTypedLiteral(timeStampCalculator(777))));//Start time of the spoken text
-                metadata.add(new TripleImpl(timestampAnnotation, ENHANCER_TIME_END,lf.createTypedLiteral(timeStampCalculator(4000))));// End time of the spoken text
-		metadata.add(new TripleImpl(timestampAnnotation, ENHANCER_SELECTED_TEXT,lf.createTypedLiteral("This is Speech to text")));// Spoken text at the particular time frame                                
-                
-                random = randomUUID().toString();
-                timestampAnnotation = new UriRef("urn:Sphinx:text:"+random);
-		metadata.add(new TripleImpl(timestampAnnotation, ENHANCER_TIME_START,lf.createTypedLiteral(timeStampCalculator(4567))));//Start time of the spoken text
-                metadata.add(new TripleImpl(timestampAnnotation, ENHANCER_TIME_END,lf.createTypedLiteral(timeStampCalculator(8792))));// End time of the spoken text
-		metadata.add(new TripleImpl(timestampAnnotation, ENHANCER_SELECTED_TEXT,lf.createTypedLiteral("I am perfectus")));// Spoken text at the particular time frame                                
-            */
+        long start = System.nanoTime();
+        metrics.record(Stage.LOCK_WAIT, start - lockStart);
+        try {
+            ci.getMetadata().addAll(annotations);
         }finally{
             ci.getLock().writeLock().unlock();
+            long held = System.nanoTime() - start;
+            metadataLockStatistics.record(held);
+            metrics.record(Stage.LOCK_HOLD, held);
+            log.debug("added {} triples to the metadata of {} in {}µs", new Object[]{
+                annotations.size(), ci.getUri(), TimeUnit.NANOSECONDS.toMicros(held)});
         }    
     }
+    
+    /**
+     * Decodes the parsed media and parses the recognized utterances to the
+     * parsed writer
+     * @param in the stream of the media. MUST support {@link InputStream#mark(int)}
+     * @param probe the probe of the media
+     * @param languageEngine provides the recognizers
+     * @param alternatives the settings for the extraction of the 
+     * {@link Alternatives} or <code>null</code> if deactivated
+     * @param writer the writer of the transcript
+     */
+    private void transcribe(InputStream in, AudioProbe probe, LanguageEngine languageEngine,
+            Alternatives.Settings alternatives, TranscriptWriter writer) 
+                    throws IOException, InterruptedException {
+        DecodedAudio audio = decode(in, probe);
+        WavHeader header = audio == null ? null : audio.getFormat();
+        InputStream pcm = audio == null ? in : audio.getStream();
+        if(normalizeAudio && header != null && !header.isSphinxCompatible()
+                && AudioNormalizer.isSupported(header)){
+            //resample and mix down to 16 kHz, 16 bit mono PCM
+            AudioNormalizer normalizer = new AudioNormalizer(pcm, header);
+            log.debug("convert {}",normalizer);
+            pcm = normalizer;
+            header = normalizer.getOutputHeader();
+        }
+        VoiceActivityFilter vad = null;
+        if(vadSettings != null && header != null && header.isSphinxCompatible()){
+            //drop non-speech regions before they reach the recognizer
+            pcm = vad = new VoiceActivityFilter(pcm, header.getSampleRate(), vadSettings);
+        }
+        writer.setOffsetMap(vad == null ? null : vad.getOffsetMap());
+        long start = System.nanoTime();
+        if(segmentDecoder != null && header != null && header.isSphinxCompatible()
+                && header.getDurationMillis() >= longAudioMinDuration){
+            //cut long recordings at pauses and decode the segments concurrently
+            log.debug("decode {} in long audio mode",header);
+            segmentDecoder.decode(languageEngine, 
+                new SilenceSegmenter(pcm, header.getSampleRate()), alternatives, writer, metrics);
+        } else { //Extracting Text from Media File parsed by using a pooled recognizer
+            recognize(languageEngine, pcm, 0, alternatives, writer, metrics);
+        }
+        if(header != null && header.isDataLengthKnown()){
+            metrics.recordRealTimeFactor(System.nanoTime() - start, header.getDurationMillis());
+        }
+        if(vad != null){
+            log.debug("{} dropped {}ms of non-speech audio",vad,vad.getDroppedMillis());
+        }
+    }
+    
+    /**
+     * Creates a {@link ContentSink} and adds its Blob as part to the parsed
+     * ContentItem
+     * @param ci the content item
+     * @param parts the list the URI of the added part is added to
+     * @param uri the URI of the part
+     * @param mimeType the MIME type of the Blob
+     * @return the sink
+     * @throws IOException if the sink could not be created
+     */
+    private ContentSink addContentSink(ContentItem ci, List<UriRef> parts, UriRef uri, String mimeType)
+            throws IOException {
+        ContentSink sink = ciFactory.createContentSink(mimeType);
+        ci.addPart(uri, sink.getBlob());
+        parts.add(uri);
+        return sink;
+    }
+    
+    /**
+     * Checks if the size of the content allows to cache its transcript. The
+     * size of the Blob is used if known, otherwise the probed data length.
+     * @param ci the content item
+     * @param probe the probe of the media
+     * @return <code>false</code> if the content is larger as 
+     * {@link #transcriptCacheMaxContentSize} or if its size is unknown
+     */
+    private boolean isCacheable(ContentItem ci, AudioProbe probe) {
+        long maxSize = transcriptCacheMaxContentSize;
+        if(maxSize <= 0){
+            return true;
+        }
+        long size = ci.getBlob().getContentLength();
+        if(size < 0 && probe.getHeader() != null && probe.getHeader().isDataLengthKnown()){
+            size = probe.getHeader().getDataLength();
+        }
+        if(size < 0 || size > maxSize){
+            log.debug("do not cache the transcript of {} (size: {}, max: {})", new Object[]{
+                ci.getUri(), size, maxSize});
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Creates the key of the {@link TranscriptCache} for the parsed 
+     * ContentItem. This requires to read the content, but not to decode it.
+     * The models are identified by their content (see {@link ModelSnapshot#getIdentity()})
+     * so that transcripts of replaced models are not used.
+     * @param ci the content item
+     * @param probe the probe of the media
+     * @param languageEngine the language engine used to decode the media
+     * @return the key
+     * @throws IOException on any error while reading the media
+     */
+    private String getCacheKey(ContentItem ci, AudioProbe probe, LanguageEngine languageEngine) 
+            throws IOException {
+        InputStream in = openStream(ci.getBlob().getStream());
+        try {
+            MessageDigest digest = TranscriptCache.createDigest();
+            byte[] buffer = new byte[8192];
+            for(int read = in.read(buffer); read >= 0; read = in.read(buffer)){
+                digest.update(buffer, 0, read);
+            }
+            return TranscriptCache.createKey(digest.digest(), languageEngine.getModels().getIdentity(),
+                getDecodingOptions(probe));
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+    
+    /**
+     * The options that affect the result of decoding the probed media
+     */
+    private String getDecodingOptions(AudioProbe probe) {
+        StringBuilder options = new StringBuilder();
+        //the format is defined by the content, but the decoder by the MIME type
+        options.append("decoder=").append(probe.getDecoder() == null ? 
+                null : probe.getDecoder().getClass().getName());
+        options.append(";normalize=").append(normalizeAudio);
+        if(vadSettings != null){
+            options.append(";vad=").append(vadSettings.getEnergyThreshold()).append('/')
+                .append(vadSettings.getMinZeroCrossingRate()).append('/')
+                .append(vadSettings.getMaxZeroCrossingRate()).append('/')
+                .append(vadSettings.getHangoverMillis()).append('/')
+                .append(vadSettings.getPreRollMillis());
+        }
+        if(segmentDecoder != null){
+            options.append(";longAudio=").append(longAudioMinDuration);
+        }
+        //the grammar is part of the identity of the models
+        options.append(";mode=").append(recognitionMode.name());
+        if(recognitionMode == RecognitionMode.KEYWORDS){
+            options.append(";keywordThreshold=").append(keywordThreshold);
+        }
+        return options.toString();
+    }
+    
+    /**
+     * Probes the format of a media file (e.g. for decoding it by 
+     * {@link #transcribe(File, AudioProbe, String, Writer)})
+     * @param file the media file
+     * @param mimeType the MIME type of the file or <code>null</code> to
+     * detect the format by the header of the file
+     * @return the probe
+     * @throws IOException on any error while reading the file
+     */
+    public AudioProbe probe(File file, String mimeType) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return AudioProbe.probe(decoderRegistry, in, mimeType, 
+                Collections.<String,String>emptyMap());
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+    
+    /**
+     * Decodes a media file without a ContentItem. Used for bulk processing
+     * outside of the enhancer (see {@link BulkTranscriber}). Decoding is done
+     * in the same way as by {@link #computeEnhancements(ContentItem)} but 
+     * without caching and admission control.
+     * @param file the media file
+     * @param probe the probe of the file (see {@link #probe(File, String)})
+     * @param language the language or <code>null</code> to use the default
+     * language of the {@link SphinxConfig}
+     * @param out receives the recognized text (one utterance per line)
+     * @return the transcript of the file
+     * @throws IOException if the media is not supported or on any error 
+     * while reading the media or writing the text
+     * @throws InterruptedException if interrupted while waiting for a recognizer
+     */
+    public Transcript transcribe(File file, AudioProbe probe, String language, Writer out)
+            throws IOException, InterruptedException {
+        if(!probe.isSupported()){
+            throw new IOException("Unable to decode "+file+": "+probe.getError());
+        }
+        if(language == null){
+            language = config.getDefaultLanguage();
+        }
+        long resolutionStart = System.nanoTime();
+        LanguageEngineRegistry registry = languageRegistry;
+        LanguageEngine languageEngine = registry.getEngine(config, MPi, language);
+        metrics.record(Stage.MODEL_RESOLUTION, System.nanoTime() - resolutionStart);
+        if(languageEngine == null){
+            throw new IOException("Unable to resolve the Sphinx models for language "+language);
+        }
+        InputStream in = null;
+        try {
+            in = openStream(new FileInputStream(file));
+            TranscriptWriter writer = new TranscriptWriter(out, null, null, new ArrayList<Triple>(),
+                timeFormat, Granularity.UTTERANCE, metrics);
+            writer.recordTranscript(); //returned to the caller
+            transcribe(in, probe, languageEngine, null, writer);
+            writer.finish();
+            return writer.getTranscript();
+        } finally {
+            IOUtils.closeQuietly(in);
+            registry.release(languageEngine);
+        }
+    }
+    
+    /**
+     * Statistics about how long the write lock of processed ContentItems was
+     * held by this engine
+     * @return the statistics
+     */
+    public LockHoldStatistics getMetadataLockStatistics() {
+        return metadataLockStatistics;
+    }
+    
+    /**
+     * The instrumentation of this engine. Also available as OSGi service
+     * and MBean.
+     * @return the metrics
+     */
+    public DecodingMetrics getDecodingMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * The cache of transcripts. Provides the hit/miss counters
+     * @return the cache or <code>null</code> if caching is deactivated
+     */
+    public TranscriptCache getTranscriptCache() {
+        return transcriptCache;
+    }
+    
+    /**
+     * The admission control of this engine. Provides the current queue depth
+     * and the time requests waited for admission.
+     * @return the admission controller or <code>null</code> if admission 
+     * control is deactivated
+     */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+    
+    /**
+     * If the engine completed warming up its models. Requests are also
+     * processed before, but need to wait for the models to be loaded.
+     * Also available as attribute of the {@link DecodingMetricsMXBean}.
+     * @return <code>false</code> while warming up
+     */
+    public boolean isReady() {
+        return metrics.isReady();
+    }
     	
-    private String timeStampCalculator(long timeStamp) {
-        long millis=timeStamp%1000;
-   	long second = (timeStamp / 1000) % 60;
-        long minute = (timeStamp / (1000 * 60)) % 60;
-   	long hour = (timeStamp / (1000 * 60 * 60)) % 24;
-        String time = String.format("%02d:%02d:%02d:%d", hour, minute, second, millis);
-    	return time;
+    /**
+     * Decodes the parsed stream by using a recognizer of the parsed language
+     * @param languageEngine provides the recognizer
+     * @param in the audio stream
+     * @param offset the offset in milliseconds of the parsed stream within
+     * the processed media
+     * @param alternatives the settings for the extraction of the 
+     * {@link Alternatives} or <code>null</code> if deactivated
+     * @param metrics used to record the decoding or <code>null</code> to
+     * deactivate instrumentation
+     * @return the recognized utterances
+     * @throws IOException if the recognizer could not be created
+     * @throws InterruptedException if interrupted while waiting for a recognizer
+     */
+    static List<Utterance> recognize(LanguageEngine languageEngine, InputStream in, long offset,
+            Alternatives.Settings alternatives, DecodingMetrics metrics) 
+                    throws IOException, InterruptedException {
+        final List<Utterance> utterances = new ArrayList<Utterance>();
+        recognize(languageEngine, in, offset, alternatives, new UtteranceHandler() {
+            @Override
+            public void handle(Utterance utterance) {
+                utterances.add(utterance);
+            }
+        }, metrics);
+        return utterances;
+    }
+    
+    /**
+     * Decodes the parsed stream by using a recognizer of the parsed language
+     * @param languageEngine provides the recognizer
+     * @param in the audio stream
+     * @param offset the offset in milliseconds of the parsed stream within
+     * the processed media
+     * @param alternatives the settings for the extraction of the 
+     * {@link Alternatives} or <code>null</code> if deactivated
+     * @param handler notified about every recognized utterance
+     * @param metrics used to record the decoding or <code>null</code> to
+     * deactivate instrumentation
+     * @throws IOException if the recognizer could not be created or if thrown
+     * by the handler
+     * @throws InterruptedException if interrupted while waiting for a recognizer
+     */
+    static void recognize(LanguageEngine languageEngine, InputStream in, long offset,
+            Alternatives.Settings alternatives, UtteranceHandler handler, DecodingMetrics metrics) 
+                    throws IOException, InterruptedException {
+        StreamSpeechRecognizer recognizer = languageEngine.borrow();
+        boolean recognized = false;
+        CountingInputStream counter = metrics == null ? null : new CountingInputStream(in);
+        long start = System.nanoTime();
+        try {
+            recognizer.startRecognition(counter == null ? in : counter);
+            KeywordFilter keywordFilter = languageEngine.getKeywordFilter();
+            SpeechResult result;
+            while ((result = recognizer.getResult()) != null) {
+                log.debug("recognized: {}", result.getHypothesis());
+                Utterance utterance = new Utterance(result, offset, alternatives);
+                if(keywordFilter != null){
+                    utterance = keywordFilter.filter(utterance);
+                }
+                if(utterance != null){
+                    handler.handle(utterance);
+                }
+            }
+            recognizer.stopRecognition();
+            recognized = true;
+            if(metrics != null){
+                metrics.recordDecode(System.nanoTime() - start, counter.getByteCount());
+            }
+        } finally {
+            if(recognized){
+                languageEngine.release(recognizer);
+            } else { //state of the recognizer is undefined
+                languageEngine.discard(recognizer);
+            }
+        }
+    }
+    
+    /**
+     * Writes the hypothesis of recognized utterances to the text/plain Blob 
+     * and creates the time annotations for them with the configured
+     * {@link Granularity}. The annotations are NOT added to the metadata of
+     * the ContentItem as this would require the write lock. If requested by
+     * {@link #recordTranscript()} all written utterances are recorded in a 
+     * {@link Transcript}. If available the 
+     * {@link Alternatives} and the word timings of the utterances are written
+     * to additional writers.
+     */
+    private static class TranscriptWriter implements UtteranceHandler {
+
+        private final LiteralFactory lf = LiteralFactory.getInstance();
+        private final Writer out;
+        private final Writer alternativesOut;
+        private final WordTimingsWriter words;
+        private final List<Triple> annotations;
+        private final TimeLiteralFormat timeFormat;
+        private final Granularity granularity;
+        private final DecodingMetrics metrics;
+        private Transcript transcript;
+        private OffsetMap offsetMap;
+
+        TranscriptWriter(Writer out, Writer alternativesOut, WordTimingsWriter words, 
+                List<Triple> annotations, TimeLiteralFormat timeFormat, Granularity granularity, 
+                DecodingMetrics metrics) {
+            this.out = out;
+            this.alternativesOut = alternativesOut;
+            this.words = words;
+            this.annotations = annotations;
+            this.timeFormat = timeFormat;
+            this.granularity = granularity;
+            this.metrics = metrics;
+        }
+
+        /**
+         * Starts recording the written utterances (e.g. for the 
+         * {@link TranscriptCache}). Not recorded by default so that the
+         * memory used by a request does not grow with the length of the media
+         */
+        void recordTranscript() {
+            transcript = new Transcript();
+        }
+
+        /**
+         * @param offsetMap maps times of filtered streams back to the original
+         * media or <code>null</code> if the stream is not filtered
+         */
+        void setOffsetMap(OffsetMap offsetMap) {
+            this.offsetMap = offsetMap;
+        }
+
+        @Override
+        public void handle(Utterance utterance) throws IOException {
+            if(offsetMap != null){ //map times back to the original media
+                utterance = utterance.withOffsetMap(offsetMap);
+            }
+            long start = utterance.getStart();
+            long end = utterance.getEnd();
+            if(granularity == Granularity.PHRASE){
+                for(Phrase phrase : utterance.getPhrases(Granularity.PHRASE_PAUSE)){
+                    annotate(phrase.getStart(), phrase.getEnd(), phrase.getText(), phrase.getConfidence());
+                }
+            } else {
+                annotate(start, end, utterance.getHypothesis(), null);
+            }
+            append(start, end, utterance.getHypothesis());
+            try {
+                if(words != null && utterance.getWords() != null){
+                    for(WordResult word : utterance.getWords()){
+                        if(Utterance.isSpoken(word)){
+                            words.add(word.getWord().getSpelling(), 
+                                utterance.toMediaTime(word.getTimeFrame().getStart()),
+                                utterance.toMediaTime(word.getTimeFrame().getEnd()),
+                                Utterance.getConfidence(word));
+                        }
+                    }
+                }
+                Alternatives alternatives = utterance.getAlternatives();
+                if(alternativesOut != null && alternatives != null){
+                    alternatives.write(alternativesOut, utterance, start, end);
+                }
+            } catch (IOException e) {
+                throw new TranscriptWriteException(e);
+            }
+        }
+
+        /**
+         * Writes an utterance
+         * @param start the start time in milliseconds
+         * @param end the end time in milliseconds
+         * @param text the recognized text
+         * @throws TranscriptWriteException if the text could not be written
+         */
+        void write(long start, long end, String text) throws TranscriptWriteException {
+            annotate(start, end, text, null);
+            append(start, end, text);
+        }
+
+        /**
+         * Creates the time annotation for a recognized text
+         * @param start the start time in milliseconds
+         * @param end the end time in milliseconds
+         * @param text the recognized text
+         * @param confidence the confidence or <code>null</code> if not known
+         */
+        private void annotate(long start, long end, String text, Double confidence) {
+            UriRef timestampAnnotation = new UriRef("urn:Sphinx:text:"+randomUUID().toString());
+            annotations.add(new TripleImpl(timestampAnnotation, ENHANCER_TIME_START,
+                timeFormat.createLiteral(start)));//Start time of the spoken text
+            annotations.add(new TripleImpl(timestampAnnotation, ENHANCER_TIME_END,
+                timeFormat.createLiteral(end)));// End time of the spoken text
+            annotations.add(new TripleImpl(timestampAnnotation, ENHANCER_SELECTED_TEXT,
+                lf.createTypedLiteral(text)));// Spoken text at the particular time frame
+            if(confidence != null){
+                annotations.add(new TripleImpl(timestampAnnotation, ENHANCER_CONFIDENCE,
+                    lf.createTypedLiteral(confidence)));
+            }
+        }
+
+        /**
+         * Appends the text of an utterance to the text/plain Blob
+         */
+        private void append(long start, long end, String text) throws TranscriptWriteException {
+            if(transcript != null){
+                transcript.add(start, end, text);
+            }
+            long writeStart = System.nanoTime();
+            try {
+                out.write(text);
+                out.write('\n');
+                out.flush(); //make the text available to readers of the Blob
+            } catch (IOException e) {
+                throw new TranscriptWriteException(e);
+            }
+            metrics.record(Stage.SINK_WRITE, System.nanoTime() - writeStart);
+        }
+
+        /**
+         * Flushes all writers after the last utterance
+         * @throws TranscriptWriteException if a writer could not be flushed
+         */
+        void finish() throws TranscriptWriteException {
+            try {
+                out.flush();
+                if(alternativesOut != null){
+                    alternativesOut.flush();
+                }
+                if(words != null){
+                    words.finish();
+                }
+            } catch (IOException e) {
+                throw new TranscriptWriteException(e);
+            }
+        }
+
+        /**
+         * @return the utterances written since {@link #recordTranscript()} or
+         * <code>null</code> if not recorded
+         */
+        Transcript getTranscript() {
+            return transcript;
+        }
     }
+    
+    /**
+     * Used to distinguish errors while writing the text/plain Blob from
+     * errors while reading the audio
+     */
+    private static class TranscriptWriteException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        TranscriptWriteException(IOException cause) {
+            super(cause);
+        }
+    }
+    
+    /**
+     * Stores the tracked grammar (or compiles the tracked keyword list) and
+     * loads it without affecting running requests. If the grammar becomes
+     * unavailable the grammar in use is kept.
+     */
+    private class GrammarFileListener implements DataFileListener {
+
+        @Override
+        public boolean available(String resourceName, InputStream is) {
+            SphinxConfig config = SpeechToTextEngine.this.config;
+            GrammarCache cache = grammarCache;
+            if(config == null || cache == null){
+                return false; //deactivated
+            }
+            try {
+                File grammar = recognitionMode == RecognitionMode.KEYWORDS ?
+                        cache.storeKeywords(resourceName, is) : cache.storeGrammar(resourceName, is);
+                log.info("{} uses {} grammar {} (from {})", new Object[]{getName(),
+                    recognitionMode.name().toLowerCase(Locale.ROOT), grammar, resourceName});
+                config.setGrammar(grammar);
+                scheduleModelReload();
+            } catch (IOException e) {
+                log.warn("Unable to load grammar from resource "+resourceName+" for "
+                    + getName()+" (keep using "+config.getGrammar()+")", e);
+            }
+            return false; //keep tracking
+        }
+
+        @Override
+        public boolean unavailable(String resourceName) {
+            return false; //keep tracking and using the current grammar
+        }
+    }
+    
+    /**
+     * Getter for the {@link AudioProbe} of the parsed ContentItem. Probes
+     * of supported media are cached as part {@link #AUDIO_PROBE_PART} of the
+     * ContentItem so that the header of the media is only read once. 
+     * ContentItems this engine can not enhance are not changed.
+     * @param ci the content item
+     * @return the probe
+     * @throws IOException on any error while reading the header of the media
+     */
+    protected AudioProbe getAudioProbe(ContentItem ci) throws IOException {
+        try {
+            return ci.getPart(AUDIO_PROBE_PART, AudioProbe.class);
+        } catch (NoSuchPartException e) {
+            //not yet probed
+        }
+        Blob blob = ci.getBlob();
+        InputStream in = blob.getStream();
+        AudioProbe probe;
+        try {
+            probe = AudioProbe.probe(decoderRegistry, in, blob.getMimeType(), blob.getParameter());
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        log.debug("probed {}: {}",ci.getUri(),probe);
+        if(probe.isSupported()){ //only if this engine will enhance the item
+            ci.addPart(AUDIO_PROBE_PART, probe);
+        }
+        return probe;
+    }
+    
+    /**
+     * Prepares the parsed stream of the processed media for decoding. File 
+     * based streams are memory mapped if {@link #MEMORY_MAPPING} is enabled.
+     * @param stream the stream of the media
+     * @return a stream supporting {@link InputStream#mark(int)}
+     */
+    private InputStream openStream(InputStream stream) {
+        if(memoryMapping && stream instanceof FileInputStream){
+            try {
+                return new MappedAudioInputStream((FileInputStream)stream);
+            } catch (IOException e) {
+                log.debug("unable to memory map blob ({}) read it as stream",e.getMessage());
+            }
+        }
+        return new BufferedInputStream(stream, HEADER_BUFFER_SIZE);
+    }
+    
+    /**
+     * Decodes the parsed stream as described by the parsed probe. If the 
+     * header can not be decoded the stream is reset so that it can be parsed
+     * as a whole to the recognizer.
+     * @param in the stream. MUST support {@link InputStream#mark(int)}
+     * @param probe the probe of the stream
+     * @return the decoded audio or <code>null</code> if the stream is not 
+     * decoded
+     * @throws IOException if the stream could not be reset
+     */
+    private DecodedAudio decode(InputStream in, AudioProbe probe) throws IOException {
+        in.mark(HEADER_BUFFER_SIZE);
+        try {
+            return probe.decode(in);
+        } catch (IOException e) {
+            log.debug("unable to decode content ({}) decode content as is",e.getMessage());
+            in.reset();
+            return null;
+        }
+    }
+    
+    /**
+     * Parses a boolean configuration value
+     * @param properties the component properties
+     * @param key the key of the property
+     * @param defaultValue the value used if the property is not present
+     * @return the parsed value
+     */
+    protected static boolean getBooleanProperty(Dictionary<?,?> properties, String key, boolean defaultValue) {
+        Object value = properties == null ? null : properties.get(key);
+        if(value instanceof Boolean){
+            return ((Boolean)value).booleanValue();
+        } else if(value != null && !value.toString().trim().isEmpty()){
+            return Boolean.parseBoolean(value.toString().trim());
+        } else {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Parses a floating point configuration value
+     * @param properties the component properties
+     * @param key the key of the property
+     * @param defaultValue the value used if the property is not present
+     * @return the parsed value
+     * @throws ConfigurationException if the value is not a number
+     */
+    protected static double getDoubleProperty(Dictionary<?,?> properties, String key, double defaultValue) 
+            throws ConfigurationException {
+        Object value = properties == null ? null : properties.get(key);
+        if(value instanceof Number){
+            return ((Number)value).doubleValue();
+        } else if(value != null && !value.toString().trim().isEmpty()){
+            try {
+                return Double.parseDouble(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new ConfigurationException(key, "The configured value '"
+                    + value + "' is not a valid number!", e);
+            }
+        } else {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Parses an integer configuration value
+     * @param properties the component properties
+     * @param key the key of the property
+     * @param defaultValue the value used if the property is not present
+     * @return the parsed value
+     * @throws ConfigurationException if the value is not an integer
+     */
+    protected static int getIntProperty(Dictionary<?,?> properties, String key, int defaultValue) 
+            throws ConfigurationException {
+        Object value = properties == null ? null : properties.get(key);
+        if(value instanceof Number){
+            return ((Number)value).intValue();
+        } else if(value != null && !value.toString().trim().isEmpty()){
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new ConfigurationException(key, "The configured value '"
+                    + value + "' is not a valid integer!", e);
+            }
+        } else {
+            return defaultValue;
+        }
+    }
+    	
     /**
      * Extracts the language of the parsed ContentItem by using
      * {@link EnhancementEngineHelper#getLanguage(ContentItem)} and 
@@ -13,7 +13,12 @@
  ******************************************************************************/
 package org.apache.stanbol.enhancer.engines.speechtotext;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 import org.slf4j.Logger;
@@ -41,7 +46,12 @@ public class SphinxConfig {
     
     private ModelProvider MPi;
     
-    private BaseModel lmodel, amodel, dmodel;// Getter for Model files wrapper returned by {@link ModelProviderImpl}
+    /**
+     * The resolved models by language (default models) or bundle symbolic
+     * name (custom models). Read without locking on the hot path and replaced
+     * by {@link #replaceModelSnapshot(String, ModelSnapshot)}
+     */
+    private final ConcurrentMap<String,ModelSnapshot> snapshots = new ConcurrentHashMap<String,ModelSnapshot>();
     
     private String defaultLanguage="en";//Getter for language used by {@link SpeechToTextEngine}
     
@@ -56,6 +66,16 @@ public class SphinxConfig {
     
     protected boolean CUSTOM_MODEL_AVAILABLE=false;// True when Custom Model files are used
     
+    private LanguageModelCache languageModelCache;//Compiles ARPA language models, null if deactivated
+    
+    private DictionaryCache dictionaryCache;//Reduces dictionaries to the language model, null if deactivated
+    
+    private RecognitionMode recognitionMode = RecognitionMode.LARGE_VOCABULARY;
+    
+    private volatile File grammar;//The grammar of the GRAMMAR and KEYWORDS modes, null until available
+    
+    private double keywordThreshold = KeywordFilter.DEFAULT_THRESHOLD;//The default threshold of the KEYWORDS mode
+    
     public SphinxConfig() {
         this.dictionaryModelFile = new HashSet<String>();
         this.languageModelFile = new HashSet<String>();
@@ -63,34 +83,107 @@ public class SphinxConfig {
 }
     
    	
-    protected boolean initConfig(ModelProvider MPi) {
+    /**
+     * Getter for the resolved models. Models are only resolved on the first
+     * call for a language (or bundle in case of custom models). Subsequent
+     * calls return the cached {@link ModelSnapshot} until the models are
+     * replaced by {@link #replaceModelSnapshot(String, ModelSnapshot)}.
+     * @param MPi the model provider used to resolve the models
+     * @param language the language of the default models. Ignored if custom 
+     * models are used
+     * @return the resolved models or <code>null</code> if not all models are
+     * available
+     */
+    protected ModelSnapshot getModelSnapshot(ModelProvider MPi, String language) {
+        String snapshotKey = getSnapshotKey(language);
+        ModelSnapshot snapshot = snapshots.get(snapshotKey);
+        if(snapshot != null){
+            return snapshot;
+        }
+        synchronized (this) { //resolve models only once
+            snapshot = snapshots.get(snapshotKey);
+            if(snapshot == null){
+                snapshot = resolveModels(MPi, language);
+                if(snapshot != null){
+                    snapshots.put(snapshotKey, snapshot);
+                }
+            }
+            return snapshot;
+        }
+    }
+    
+    /**
+     * Resolves the models for the parsed language without looking at (or
+     * changing) the models currently in use.
+     * @param MPi the model provider used to resolve the models
+     * @param language the language of the default models. Ignored if custom 
+     * models are used
+     * @return the resolved models or <code>null</code> if not all models are
+     * available
+     */
+    protected synchronized ModelSnapshot resolveModels(ModelProvider MPi, String language) {
         this.MPi=MPi;
-    	lmodel=new LanguageModel();
-        amodel=new AcousticModel();
-        dmodel=new DictionaryModel();
-        
+        BaseModel lmodel, amodel, dmodel;
         if(!CUSTOM_MODEL_AVAILABLE) {
-            System.out.println("Getting to acosutic");
-
-            amodel = MPi.getDefaultModel(getDefaultLanguage(),amodel);
-            //amodel = MPi.getDefaultModel(getDefaultLanguage(),amodel);
-
-            System.out.println("Getting to dictionary");
-            dmodel = MPi.getDefaultModel(getDefaultLanguage(),dmodel);                        
-            System.out.println("Getting to language");
-            lmodel = MPi.getDefaultModel(getDefaultLanguage(),lmodel);
-            
-            
-           
+            log.debug("resolve default models for language {}",language);
+            amodel = MPi.getDefaultModel(language,new AcousticModel());
+            dmodel = MPi.getDefaultModel(language,new DictionaryModel());
+            lmodel = MPi.getDefaultModel(language,new LanguageModel());
+        } else {
+            log.debug("resolve custom models of bundle {}",bundleSymbolicName);
+            lmodel = MPi.getModel(new HashSet<String>(languageModelFile), new LanguageModel(),bundleSymbolicName);
+            amodel = MPi.getModel(new HashSet<String>(acousticModelFile), new AcousticModel(),bundleSymbolicName);
+            dmodel = MPi.getModel(new HashSet<String>(dictionaryModelFile), new DictionaryModel(),bundleSymbolicName);
         }
-        else {
-            lmodel = this.MPi.getModel(languageModelFile, lmodel,bundleSymbolicName);
-            amodel = this.MPi.getModel(acousticModelFile, amodel,bundleSymbolicName);
-            dmodel = this.MPi.getModel(dictionaryModelFile, dmodel,bundleSymbolicName);
+        if(amodel == null || dmodel == null || lmodel == null){
+            log.warn("Unable to resolve Sphinx models for '{}' (acoustic: {}, "
+                + "dictionary: {}, language: {})", new Object[]{getSnapshotKey(language),amodel,dmodel,lmodel});
+            return null;
         }
-        
-        return amodel != null && dmodel != null && lmodel != null;
+        File grammar = this.grammar;
+        if(recognitionMode == RecognitionMode.LARGE_VOCABULARY){
+            grammar = null;
+        } else if(grammar == null){
+            log.warn("The grammar for recognition mode {} of '{}' is not yet available",
+                recognitionMode, getSnapshotKey(language));
+            return null;
+        }
+        return new ModelSnapshot(amodel, dmodel, lmodel, grammar);
+    }
+    
+    /**
+     * Getter for the models currently in use
+     * @param language the language of the default models. Ignored if custom 
+     * models are used
+     * @return the models or <code>null</code> if not yet resolved
+     */
+    protected ModelSnapshot getCurrentModelSnapshot(String language) {
+        return snapshots.get(getSnapshotKey(language));
+    }
+    
+    /**
+     * Atomically replaces the models used by requests started afterwards
+     * @param language the language of the default models. Ignored if custom 
+     * models are used
+     * @param snapshot the new models
+     * @return the replaced models or <code>null</code> if none
+     */
+    protected ModelSnapshot replaceModelSnapshot(String language, ModelSnapshot snapshot) {
+        return snapshots.put(getSnapshotKey(language), snapshot);
+    }
+    
+    private String getSnapshotKey(String language) {
+        return String.valueOf(CUSTOM_MODEL_AVAILABLE ? bundleSymbolicName : language);
     }
+    
+    /**
+     * @return the languages (or bundle in case of custom models) of the 
+     * models currently in use
+     */
+    protected Set<String> getSnapshotLanguages() {
+        return new HashSet<String>(snapshots.keySet());
+    }
+    
 	
 	
 	public void setDefaultLanguage(String defaultLanguage) {
@@ -104,6 +197,61 @@ public class SphinxConfig {
 		return defaultLanguage;
 	}
 	
+	/**
+	 * @param languageModelCache used to compile ARPA language models or
+	 * <code>null</code> to use them as they are
+	 */
+	public void setLanguageModelCache(LanguageModelCache languageModelCache) {
+		this.languageModelCache = languageModelCache;
+	}
+	
+	/**
+	 * @param dictionaryCache used to reduce dictionaries to the vocabulary of
+	 * the language model or <code>null</code> to use them as they are
+	 */
+	public void setDictionaryCache(DictionaryCache dictionaryCache) {
+		this.dictionaryCache = dictionaryCache;
+	}
+	
+	/**
+	 * @param recognitionMode the search used by recognizers. Models resolved
+	 * afterwards use the parsed mode
+	 */
+	public void setRecognitionMode(RecognitionMode recognitionMode) {
+		this.recognitionMode = recognitionMode == null ? 
+				RecognitionMode.LARGE_VOCABULARY : recognitionMode;
+	}
+	
+	public RecognitionMode getRecognitionMode() {
+		return recognitionMode;
+	}
+	
+	/**
+	 * Sets the grammar used by the {@link RecognitionMode#GRAMMAR} and
+	 * {@link RecognitionMode#KEYWORDS} modes. Like custom model files the
+	 * grammar is used by models resolved afterwards.
+	 * @param grammar a grammar stored by the {@link GrammarCache}
+	 */
+	public void setGrammar(File grammar) {
+		this.grammar = grammar;
+	}
+	
+	public File getGrammar() {
+		return grammar;
+	}
+	
+	/**
+	 * @param keywordThreshold the threshold used by the {@link KeywordFilter}
+	 * for keywords without a detection threshold
+	 */
+	public void setKeywordThreshold(double keywordThreshold) {
+		this.keywordThreshold = keywordThreshold;
+	}
+	
+	public double getKeywordThreshold() {
+		return keywordThreshold;
+	}
+	
 	public synchronized void setCustomLangModel(String modelFileName){
 		this.languageModelFile.add(modelFileName);
 	}
@@ -114,59 +262,82 @@ public class SphinxConfig {
 	public synchronized void setCustomAcousticModel(String modelFileName) {
 		this.acousticModelFile.add(modelFileName);
 	}
+	/*
+	 * Removing a model file does not affect the models in use. They are
+	 * replaced as soon as a complete new model set is available and their
+	 * resources are released by releaseModels(..) after the last request
+	 * using them completed.
+	 */
 	public synchronized void removeCustomLanguageModel(String modelFileName) {
-		lmodel=null;
-		deleteUnavailableResource(lmodel);
 		this.languageModelFile.remove(modelFileName);
 	}
 	public synchronized void removeCustomDictModel(String modelFileName) {
-		dmodel=null;
-		deleteUnavailableResource(dmodel);
 		this.dictionaryModelFile.remove(modelFileName);
 	}
 
 	public synchronized void removeCustomAcousticModel(String modelFileName) {
-		amodel=null;
-		deleteUnavailableResource(amodel);
 		this.acousticModelFile.remove(modelFileName);
 	}
-	  
-	 
-	public AcousticModel getAcousticModelLocation() {
-		return (AcousticModel)amodel;
-	}
-	public DictionaryModel getDictionaryModelLocation() {
-		return (DictionaryModel)dmodel;
-	}
-	public LanguageModel getLanguageModelLocation() {		
-        return (LanguageModel)lmodel;
-    }
 	
+	/**
+	 * Deletes the resources of models that are no longer used. Resources
+	 * shared with the models currently in use are kept.
+	 * @param released the models no longer used by any request
+	 */
+	protected synchronized void releaseModels(ModelSnapshot released) {
+		Set<String> used = new HashSet<String>();
+		for(ModelSnapshot snapshot : snapshots.values()){
+			used.add(snapshot.getAcousticModelLocation().toString());
+			used.add(snapshot.getDictionaryModelLocation().toString());
+			used.add(snapshot.getLanguageModelLocation().toString());
+		}
+		for(BaseModel model : Arrays.<BaseModel>asList(released.getAcousticModelLocation(),
+				released.getDictionaryModelLocation(), released.getLanguageModelLocation())){
+			if(!used.contains(model.toString())){
+				deleteUnavailableResource(model);
+			}
+		}
+	}
 	 
-    
     /**
      * Deletes the unavailable resource 
      * 
      * @param modelType {@link LanguageModel}, {@link DictionaryModel}, {@link AcousticModel}
      */
     public void deleteUnavailableResource(BaseModel modelType) {//free temp resources
-    	MPi.removeUnavailableResource(modelType);
+    	if(MPi != null){
+    		MPi.removeUnavailableResource(modelType);
+    	}
     }
 
     /**
      * 
+     * @param models the resolved models
      * @return Returns the initialized {@link Configuration} to {@link SpeechToTextEngine}
      */
 	
-    protected Configuration getConfiguration() {
+    protected Configuration getConfiguration(ModelSnapshot models) {
 	Configuration configuration = new Configuration();
         
-    	configuration.setAcousticModelPath(getAcousticModelLocation().toString());           
-        //configuration.setAcousticModelPath("/tmp/model/acoustic");
-        configuration.setDictionaryPath(getDictionaryModelLocation().toString());
-        //configuration.setDictionaryPath("/tmp/model/en-cmu.dict");
-        configuration.setLanguageModelPath(getLanguageModelLocation().toString());
-        // configuration.setLanguageModelPath("/tmp/model/en-us.lm.dmp");
+    	configuration.setAcousticModelPath(models.getAcousticModelLocation().toString());           
+        File grammar = models.getGrammar();
+        if(grammar != null){ //the grammar replaces the language model
+            configuration.setDictionaryPath(models.getDictionaryModelLocation().toString());
+            configuration.setUseGrammar(true);
+            configuration.setGrammarPath(grammar.getParentFile().toURI().toString());
+            configuration.setGrammarName(GrammarCache.getGrammarName(grammar));
+            return configuration;
+        }
+        String dictionary = models.getDictionaryModelLocation().toString();
+        String languageModel = models.getLanguageModelLocation().toString();
+        if(dictionaryCache != null){ //only load pronunciations of the used words
+            dictionary = dictionaryCache.getLocation(dictionary, languageModel);
+        }
+        configuration.setDictionaryPath(dictionary);
+        if(languageModelCache != null){ //use the compiled model if available
+            languageModel = languageModelCache.getLocation(languageModel);
+        }
+        configuration.setLanguageModelPath(languageModel);
         return configuration;
     }
 	
@@ -25,6 +25,7 @@ import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.stanbol.commons.sphinx.ModelProvider;
+import org.apache.stanbol.commons.stanboltools.datafileprovider.DataFileTracker;
 import org.apache.stanbol.enhancer.servicesapi.ContentItemFactory;
 import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
 import org.apache.stanbol.enhancer.servicesapi.ServiceProperties;
@@ -71,6 +72,9 @@ public class SphinxModelEnhancement
     @Reference
     protected ContentItemFactory ci;
     
+    @Reference
+    private DataFileTracker dataFileTracker;
+    
      /**
      * Bind method of {@link SpeechToTextEngine#ModelProviderImpl}
      * @param MPi
@@ -98,15 +102,22 @@ public class SphinxModelEnhancement
         ciFactory=ci;
         config = new SphinxConfig();
         config.CUSTOM_MODEL_AVAILABLE=false;
+        config.setLanguageModelCache(languageModelCache);
+        config.setDictionaryCache(dictionaryCache);
+        config.setRecognitionMode(recognitionMode);
+        config.setKeywordThreshold(keywordThreshold);
         // Need to register the default data before loading the models
         Object value = ctx.getProperties().get(DEFAULT_LANGUAGE);
         if(value != null && !value.toString().isEmpty()){
             config.setDefaultLanguage(value.toString());
         } //else no default language        
+        trackGrammar(dataFileTracker);
+        startWarmUp();
     }
     
     @Override
     protected void deactivate(ComponentContext ctx) {
+        untrackGrammar(dataFileTracker);
         config = null;
         super.deactivate(ctx);
     }
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.util.Locale;
+
+import org.apache.clerezza.rdf.core.TypedLiteral;
+import org.apache.clerezza.rdf.core.UriRef;
+import org.apache.clerezza.rdf.core.impl.TypedLiteralImpl;
+import org.apache.clerezza.rdf.ontologies.XSD;
+
+/**
+ * The formats supported for the literals of the start/end time annotations.
+ * Times are formatted without the use of {@link String#format(String, Object...)}
+ * so that only the resulting String is created.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public enum TimeLiteralFormat {
+
+    /**
+     * <code>xsd:duration</code> literals (e.g. <code>PT1H2M3.45S</code>)
+     */
+    DURATION,
+    /**
+     * <code>xsd:long</code> literals with the time in milliseconds
+     */
+    MILLISECONDS,
+    /**
+     * The plain <code>HH:MM:SS:mmm</code> literals used by earlier versions
+     * of this engine. NOTE that hours no longer wrap after 24 hours.
+     */
+    LEGACY;
+
+    /**
+     * The <code>xsd:duration</code> datatype (not defined by {@link XSD})
+     */
+    public static final UriRef XSD_DURATION = new UriRef("http://www.w3.org/2001/XMLSchema#duration");
+
+    /**
+     * The maximum number of chars of formatted times
+     * (19 digits of a long + unit, separator and prefix chars)
+     */
+    private static final int MAX_LENGTH = 32;
+
+    /**
+     * Creates the literal for the parsed time
+     * @param millis the time in milliseconds
+     * @return the literal
+     */
+    public TypedLiteral createLiteral(long millis) {
+        switch (this) {
+            case DURATION:
+                return new TypedLiteralImpl(toDuration(millis), XSD_DURATION);
+            case MILLISECONDS:
+                return new TypedLiteralImpl(Long.toString(millis), XSD.long_);
+            default:
+                return new TypedLiteralImpl(toLegacy(millis), XSD.string);
+        }
+    }
+
+    /**
+     * Parses the format from the configured value (case insensitive)
+     * @param value the configured value
+     * @return the format
+     * @throws IllegalArgumentException if the parsed value is not a known format
+     */
+    public static TimeLiteralFormat parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Formats a time as <code>xsd:duration</code>
+     * @param millis the time in milliseconds. MUST NOT be negative
+     * @return the duration (e.g. <code>PT1H2M3.45S</code>)
+     */
+    public static String toDuration(long millis) {
+        checkTime(millis);
+        char[] buf = new char[MAX_LENGTH];
+        int pos = 0;
+        buf[pos++] = 'P';
+        buf[pos++] = 'T';
+        long hours = millis / 3600000;
+        int minutes = (int)(millis / 60000 % 60);
+        int seconds = (int)(millis / 1000 % 60);
+        int ms = (int)(millis % 1000);
+        if(hours > 0){
+            pos = appendNumber(buf, pos, hours, 1);
+            buf[pos++] = 'H';
+        }
+        if(minutes > 0){
+            pos = appendNumber(buf, pos, minutes, 1);
+            buf[pos++] = 'M';
+        }
+        if(seconds > 0 || ms > 0 || pos == 2){
+            pos = appendNumber(buf, pos, seconds, 1);
+            if(ms > 0){
+                buf[pos++] = '.';
+                //strip trailing zeros of the fraction
+                int digits = 3;
+                while(ms % 10 == 0){
+                    ms /= 10;
+                    digits--;
+                }
+                pos = appendNumber(buf, pos, ms, digits);
+            }
+            buf[pos++] = 'S';
+        }
+        return new String(buf, 0, pos);
+    }
+
+    /**
+     * Formats a time by using the <code>HH:MM:SS:m</code> pattern used by 
+     * earlier versions of this engine.
+     * @param millis the time in milliseconds. MUST NOT be negative
+     * @return the formatted time
+     */
+    public static String toLegacy(long millis) {
+        checkTime(millis);
+        char[] buf = new char[MAX_LENGTH];
+        int pos = appendNumber(buf, 0, millis / 3600000, 2);
+        buf[pos++] = ':';
+        pos = appendNumber(buf, pos, millis / 60000 % 60, 2);
+        buf[pos++] = ':';
+        pos = appendNumber(buf, pos, millis / 1000 % 60, 2);
+        buf[pos++] = ':';
+        pos = appendNumber(buf, pos, millis % 1000, 1);
+        return new String(buf, 0, pos);
+    }
+
+    private static void checkTime(long millis) {
+        if(millis < 0){
+            throw new IllegalArgumentException("The parsed time MUST NOT be negative (parsed: "+millis+")!");
+        }
+    }
+
+    /**
+     * Appends the decimal digits of a non negative number
+     * @param buf the buffer
+     * @param pos the position to append the number
+     * @param value the number
+     * @param minDigits the minimum number of digits (padded by leading zeros)
+     * @return the position after the appended number
+     */
+    private static int appendNumber(char[] buf, int pos, long value, int minDigits) {
+        int digits = 1;
+        for(long v = value / 10; v > 0; v /= 10){
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        int end = pos + digits;
+        for(int i = end - 1; i >= pos; i--){
+            buf[i] = (char)('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the {@link Transcript}s of decoded audio so that the same content
+ * is not decoded again if it is re-enhanced (e.g. by an other chain or as a
+ * duplicate upload).<p>
+ * Keys are created by {@link #createKey(byte[], String, String)} from the
+ * digest of the content, the content identity of the used model set and
+ * the decoding options. Transcripts are kept in a LRU memory tier bounded
+ * by the (estimated) memory used by the transcripts. If a directory is configured, transcripts are also written to disk
+ * and entries evicted from the memory tier (or lost by a restart) are read
+ * from there.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class TranscriptCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TranscriptCache.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * The algorithm used for the content digest and the keys
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-1";
+    /**
+     * Identifies files of the disk tier (and the version of their format)
+     */
+    private static final int FILE_MAGIC = 0x53545431; //STT1
+    private static final String FILE_SUFFIX = ".transcript";
+
+    private final long maxBytes;
+    private final File directory;
+    /**
+     * The memory tier in access order. Guarded by itself
+     */
+    private final LinkedHashMap<String,Transcript> memory;
+    private long memoryBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxBytes the maximum memory in bytes used by the transcripts
+     * kept in memory (see {@link Transcript#getSize()})
+     * @param directory the directory of the disk tier or <code>null</code>
+     * to deactivate the disk tier
+     * @throws IOException if the parsed directory can not be created
+     */
+    public TranscriptCache(long maxBytes, File directory) throws IOException {
+        if(maxBytes < 1){
+            throw new IllegalArgumentException("The parsed maximum size MUST BE >= 1 (parsed: "+maxBytes+")!");
+        }
+        if(directory != null && !directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Unable to create the transcript cache directory "+directory);
+        }
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.memory = new LinkedHashMap<String,Transcript>(16, 0.75f, true);
+    }
+
+    /**
+     * @return a new digest used to calculate the hash of the content
+     */
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM+" is not supported by this JVM!", e);
+        }
+    }
+
+    /**
+     * Creates the key of a transcript
+     * @param contentDigest the digest of the content
+     * @param modelSet the identity of the used models (see {@link ModelSnapshot#getIdentity()})
+     * @param options the options affecting the decoding result (e.g. the
+     * audio format and the voice activity detection settings)
+     * @return the key
+     */
+    public static String createKey(byte[] contentDigest, String modelSet, String options) {
+        MessageDigest digest = createDigest();
+        digest.update(contentDigest);
+        digest.update((byte)0);
+        digest.update(String.valueOf(modelSet).getBytes(UTF8));
+        digest.update((byte)0);
+        digest.update(String.valueOf(options).getBytes(UTF8));
+        byte[] hash = digest.digest();
+        StringBuilder key = new StringBuilder(hash.length * 2);
+        for(byte b : hash){
+            key.append(Character.forDigit((b >> 4) & 0xf, 16));
+            key.append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Getter for a cached transcript. Transcripts read from the disk tier
+     * are added to the memory tier.
+     * @param key the key
+     * @return the transcript or <code>null</code> if not cached
+     */
+    public Transcript get(String key) {
+        Transcript transcript;
+        synchronized (memory) {
+            transcript = memory.get(key);
+        }
+        if(transcript == null && directory != null){
+            transcript = read(key);
+            if(transcript != null){
+                diskHits.incrementAndGet();
+                synchronized (memory) {
+                    putInMemory(key, transcript);
+                }
+            }
+        }
+        if(transcript == null){
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return transcript;
+    }
+
+    /**
+     * Adds a transcript to the cache
+     * @param key the key
+     * @param transcript the transcript
+     */
+    public void put(String key, Transcript transcript) {
+        if(key == null || transcript == null){
+            throw new IllegalArgumentException("The parsed key and transcript MUST NOT be NULL!");
+        }
+        synchronized (memory) {
+            putInMemory(key, transcript);
+        }
+        if(directory != null){
+            write(key, transcript);
+        }
+    }
+
+    /**
+     * Adds a transcript to the memory tier and evicts the least recently 
+     * used transcripts until the memory tier fits into {@link #getMaxBytes()}.
+     * Transcripts larger as the memory tier are only kept on disk. MUST BE
+     * called while holding the lock on {@link #memory}.
+     */
+    private void putInMemory(String key, Transcript transcript) {
+        Transcript replaced = memory.remove(key);
+        if(replaced != null){
+            memoryBytes -= replaced.getSize();
+        }
+        if(transcript.getSize() > maxBytes){
+            return;
+        }
+        memory.put(key, transcript);
+        memoryBytes += transcript.getSize();
+        for(Iterator<Transcript> it = memory.values().iterator(); 
+                memoryBytes > maxBytes && it.hasNext();){
+            memoryBytes -= it.next().getSize();
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes all transcripts from the memory and the disk tier
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+        if(directory != null){
+            File[] files = directory.listFiles();
+            if(files != null){
+                for(File file : files){
+                    if(file.getName().endsWith(FILE_SUFFIX) && !file.delete()){
+                        log.warn("Unable to delete cached transcript {}",file);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of transcripts in the memory tier
+     */
+    public int size() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    /**
+     * @return the maximum memory in bytes used by the memory tier
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the (estimated) memory in bytes used by the memory tier
+     */
+    public long getMemoryBytes() {
+        synchronized (memory) {
+            return memoryBytes;
+        }
+    }
+
+    /**
+     * @return the directory of the disk tier or <code>null</code> if
+     * deactivated
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of requests answered by the cache (including
+     * {@link #getDiskHits() disk hits})
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests answered by the disk tier
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * @return the number of requests not answered by the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + FILE_SUFFIX);
+    }
+
+    private Transcript read(String key) {
+        File file = getFile(key);
+        if(!file.isFile()){
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if(in.readInt() != FILE_MAGIC){
+                throw new IOException("unknown file format");
+            }
+            int size = in.readInt();
+            Transcript transcript = new Transcript();
+            for(int i = 0; i < size; i++){
+                long start = in.readLong();
+                long end = in.readLong();
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                transcript.add(start, end, new String(text, UTF8));
+            }
+            return transcript;
+        } catch (IOException e) {
+            log.warn("Unable to read cached transcript "+file+" (file will be deleted)", e);
+            IOUtils.closeQuietly(in); //close before deleting
+            file.delete();
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private void write(String key, Transcript transcript) {
+        File file = getFile(key);
+        File temp = new File(directory, key + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(FILE_MAGIC);
+            List<Transcript.Entry> entries = transcript.getEntries();
+            out.writeInt(entries.size());
+            for(Transcript.Entry entry : entries){
+                out.writeLong(entry.getStart());
+                out.writeLong(entry.getEnd());
+                byte[] text = entry.getText().getBytes(UTF8);
+                out.writeInt(text.length);
+                out.write(text);
+            }
+            out.close();
+            out = null;
+            //replace the file only after it was completely written
+            if(!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))){
+                throw new IOException("Unable to rename "+temp+" to "+file);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write transcript to "+file, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            temp.delete();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TranscriptCache[size: "+size()+" ("+getMemoryBytes()+"/"+maxBytes+" bytes), hits: "+getHits()+" (disk: "
+                + getDiskHits()+"), misses: "+getMisses()+", directory: "+directory+"]";
+    }
+
+    /**
+     * The recognized text of a media together with the start/end times (in
+     * milliseconds relative to the processed media) of the utterances.
+     * Entries are only added while decoding. Afterwards instances are used
+     * read-only and can be shared between threads.
+     */
+    public static final class Transcript {
+
+        /**
+         * The estimated memory used by an empty transcript
+         */
+        private static final int OVERHEAD = 64;
+        /**
+         * The estimated memory used by an entry (without the characters)
+         */
+        private static final int ENTRY_OVERHEAD = 96;
+
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private long size = OVERHEAD;
+
+        /**
+         * Adds an utterance
+         * @param start the start time in milliseconds
+         * @param end the end time in milliseconds
+         * @param text the recognized text
+         */
+        public void add(long start, long end, String text) {
+            entries.add(new Entry(start, end, text));
+            size += ENTRY_OVERHEAD + 2L * text.length();
+        }
+
+        /**
+         * @return the estimated memory in bytes used by this transcript
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the utterances in the order they where recognized
+         */
+        public List<Entry> getEntries() {
+            return Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * A single utterance of a {@link Transcript}
+         */
+        public static final class Entry {
+
+            private final long start;
+            private final long end;
+            private final String text;
+
+            Entry(long start, long end, String text) {
+                this.start = start;
+                this.end = end;
+                this.text = text;
+            }
+
+            public long getStart() {
+                return start;
+            }
+
+            public long getEnd() {
+                return end;
+            }
+
+            public String getText() {
+                return text;
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.OffsetMap;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.VoiceActivityFilter;
+
+import edu.cmu.sphinx.api.SpeechResult;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.LogMath;
+
+/**
+ * A single recognized utterance. Times of the {@link WordResult}s are relative
+ * to the decoded stream. The offset of that stream within the processed
+ * media (and the {@link OffsetMap} of dropped non-speech regions) is applied
+ * by the getters of this class so that all returned times are on the timeline
+ * of the processed media.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class Utterance {
+
+    private final String hypothesis;
+    private final List<WordResult> words;
+    private final long offset;
+    private final OffsetMap offsetMap;
+    private final Alternatives alternatives;
+
+    /**
+     * @param result the result of the recognizer
+     * @param offset the offset in milliseconds of the decoded stream within
+     * the processed media
+     */
+    public Utterance(SpeechResult result, long offset) {
+        this(result, offset, null);
+    }
+
+    /**
+     * @param result the result of the recognizer
+     * @param offset the offset in milliseconds of the decoded stream within
+     * the processed media
+     * @param alternatives the settings for the extraction of the 
+     * {@link Alternatives} or <code>null</code> to only keep the best 
+     * hypothesis
+     */
+    public Utterance(SpeechResult result, long offset, Alternatives.Settings alternatives) {
+        this(result.getHypothesis(), result.getWords(), offset, null,
+            alternatives == null ? null : Alternatives.create(result, alternatives));
+    }
+    
+    Utterance(String hypothesis, List<WordResult> words, long offset, OffsetMap offsetMap,
+            Alternatives alternatives) {
+        this.hypothesis = hypothesis;
+        this.words = words;
+        this.offset = offset;
+        this.offsetMap = offsetMap;
+        this.alternatives = alternatives;
+    }
+    
+    /**
+     * Creates a copy of this utterance for the case that the decoded stream
+     * was filtered (e.g. by the {@link VoiceActivityFilter}).
+     * @param offsetMap maps times of the filtered stream to the original media
+     * @return the mapped utterance
+     */
+    public Utterance withOffsetMap(OffsetMap offsetMap) {
+        return new Utterance(hypothesis, words, offset, offsetMap, alternatives);
+    }
+
+    /**
+     * Creates a copy of this utterance that only contains a part of the
+     * recognized words (e.g. the keywords accepted by a {@link KeywordFilter})
+     * @param hypothesis the hypothesis of the parsed words
+     * @param words the words
+     * @return the copy
+     */
+    Utterance withWords(String hypothesis, List<WordResult> words) {
+        return new Utterance(hypothesis, words, offset, offsetMap, alternatives);
+    }
+
+    public String getHypothesis() {
+        return hypothesis;
+    }
+
+    /**
+     * @return the N-best hypotheses and the pruned lattice or <code>null</code>
+     * if not extracted
+     */
+    public Alternatives getAlternatives() {
+        return alternatives;
+    }
+
+    /**
+     * @return the recognized words. NOTE that times are relative to the
+     * decoded stream. Use {@link #toMediaTime(long)} to get the position
+     * within the processed media.
+     */
+    public List<WordResult> getWords() {
+        return words;
+    }
+
+    /**
+     * @return the offset in milliseconds of the decoded stream within the
+     * processed media
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Converts a time of the decoded stream (e.g. of a {@link WordResult}) to
+     * the timeline of the processed media
+     * @param time the time in milliseconds relative to the decoded stream
+     * @return the time in milliseconds relative to the processed media
+     */
+    public long toMediaTime(long time) {
+        return offsetMap == null ? time + offset : offsetMap.toOriginal(time + offset);
+    }
+
+    /**
+     * @return the start time of the first spoken word of this utterance in
+     * milliseconds
+     */
+    public long getStart() {
+        if(words == null || words.isEmpty()){
+            return toMediaTime(0);
+        }
+        for(WordResult word : words){
+            if(isSpoken(word)){
+                return toMediaTime(word.getTimeFrame().getStart());
+            }
+        }
+        return toMediaTime(words.get(0).getTimeFrame().getStart());
+    }
+
+    /**
+     * @return the end time of the last spoken word of this utterance in
+     * milliseconds
+     */
+    public long getEnd() {
+        if(words == null || words.isEmpty()){
+            return getStart();
+        }
+        for(int i = words.size() - 1; i >= 0; i--){
+            if(isSpoken(words.get(i))){
+                return toMediaTime(words.get(i).getTimeFrame().getEnd());
+            }
+        }
+        return toMediaTime(words.get(words.size() - 1).getTimeFrame().getEnd());
+    }
+
+    /**
+     * Splits this utterance at pauses between spoken words
+     * @param minPause the minimum pause in milliseconds between two phrases
+     * @return the phrases. Empty if no word was spoken
+     */
+    public List<Phrase> getPhrases(long minPause) {
+        if(words == null || words.isEmpty()){
+            return Collections.emptyList();
+        }
+        List<Phrase> phrases = new ArrayList<Phrase>();
+        StringBuilder text = new StringBuilder();
+        long start = -1;
+        long end = -1;
+        double confidence = 0;
+        int count = 0;
+        for(WordResult word : words){
+            if(!isSpoken(word)){
+                continue;
+            }
+            long wordStart = toMediaTime(word.getTimeFrame().getStart());
+            if(count > 0 && wordStart - end >= minPause){
+                phrases.add(new Phrase(start, end, text.toString(), confidence / count));
+                text.setLength(0);
+                confidence = 0;
+                count = 0;
+            }
+            if(count == 0){
+                start = wordStart;
+            } else {
+                text.append(' ');
+            }
+            text.append(word.getWord().getSpelling());
+            end = toMediaTime(word.getTimeFrame().getEnd());
+            confidence += getConfidence(word);
+            count++;
+        }
+        if(count > 0){
+            phrases.add(new Phrase(start, end, text.toString(), confidence / count));
+        }
+        return phrases;
+    }
+
+    /**
+     * @param word a recognized word
+     * @return <code>false</code> for fillers (e.g. silence and noise) and the
+     * sentence start/end markers
+     */
+    public static boolean isSpoken(WordResult word) {
+        return !word.isFiller() && word.getWord() != null && !word.getWord().isFiller()
+                && !word.getWord().isSentenceStartWord() && !word.getWord().isSentenceEndWord();
+    }
+
+    /**
+     * @param word a recognized word
+     * @return the confidence of the word clamped to <code>0..1</code>. Sphinx
+     * reports the posterior probability in the log domain
+     */
+    public static double getConfidence(WordResult word) {
+        double confidence = LogMath.getLogMath().logToLinear((float)word.getConfidence());
+        return Math.max(0, Math.min(1, confidence));
+    }
+
+    /**
+     * A part of an utterance without pauses between the words. Times are
+     * on the timeline of the processed media.
+     */
+    public static final class Phrase {
+
+        private final long start;
+        private final long end;
+        private final String text;
+        private final double confidence;
+
+        Phrase(long start, long end, String text, double confidence) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+            this.confidence = confidence;
+        }
+
+        /**
+         * @return the start time in milliseconds
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the end time in milliseconds
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return the mean confidence of the words
+         */
+        public double getConfidence() {
+            return confidence;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.IOException;
+
+/**
+ * Callback notified about {@link Utterance}s as soon as they are recognized.
+ * Utterances are parsed in the order of the processed media.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public interface UtteranceHandler {
+
+    /**
+     * Called for every recognized utterance
+     * @param utterance the utterance
+     * @throws IOException if the utterance could not be processed. This
+     * stops the recognition.
+     */
+    void handle(Utterance utterance) throws IOException;
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the words written by the {@link WordTimingsWriter}. Only a single
+ * block of words is kept in memory. Use {@link #next()} to move to the next
+ * word and the getters to access its data.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class WordTimingsReader {
+
+    private final DataInputStream in;
+    private final List<String> vocabulary = new ArrayList<String>();
+    private final int[] words = new int[WordTimingsWriter.BLOCK_SIZE];
+    private final long[] starts = new long[WordTimingsWriter.BLOCK_SIZE];
+    private final long[] durations = new long[WordTimingsWriter.BLOCK_SIZE];
+    private final byte[] confidences = new byte[WordTimingsWriter.BLOCK_SIZE];
+    private int size;
+    private int position = -1;
+    private long lastStart;
+    private boolean ended;
+
+    /**
+     * @param in the stream. Not closed by this reader
+     * @throws IOException if the stream is not in the expected format
+     */
+    public WordTimingsReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        if(this.in.readInt() != WordTimingsWriter.MAGIC){
+            throw new IOException("Unknown word timings format");
+        }
+    }
+
+    /**
+     * Moves to the next word
+     * @return <code>false</code> if there are no more words
+     * @throws IOException on any error while reading the stream
+     */
+    public boolean next() throws IOException {
+        if(position + 1 < size){
+            position++;
+            return true;
+        }
+        if(ended || !readBlock()){
+            ended = true;
+            return false;
+        }
+        position = 0;
+        return true;
+    }
+
+    public String getWord() {
+        checkPosition();
+        return vocabulary.get(words[position]);
+    }
+
+    /**
+     * @return the start time in milliseconds
+     */
+    public long getStart() {
+        checkPosition();
+        return starts[position];
+    }
+
+    /**
+     * @return the end time in milliseconds
+     */
+    public long getEnd() {
+        checkPosition();
+        return starts[position] + durations[position];
+    }
+
+    /**
+     * @return the confidence (0..1, quantized to steps of 1/255)
+     */
+    public double getConfidence() {
+        checkPosition();
+        return (confidences[position] & 0xFF) / 255d;
+    }
+
+    private void checkPosition() {
+        if(position < 0 || position >= size){
+            throw new IllegalStateException("No current word (call next() first)!");
+        }
+    }
+
+    private boolean readBlock() throws IOException {
+        int count = in.readInt();
+        if(count == 0){
+            return false;
+        }
+        if(count < 0 || count > words.length){
+            throw new IOException("Invalid block size "+count);
+        }
+        int newWords = in.readInt();
+        for(int i = 0; i < newWords; i++){
+            vocabulary.add(in.readUTF());
+        }
+        for(int i = 0; i < count; i++){
+            long index = readVarint();
+            if(index >= vocabulary.size()){
+                throw new IOException("Invalid word index "+index);
+            }
+            words[i] = (int)index;
+        }
+        for(int i = 0; i < count; i++){
+            long zigzag = readVarint();
+            lastStart += (zigzag >>> 1) ^ -(zigzag & 1);
+            starts[i] = lastStart;
+        }
+        for(int i = 0; i < count; i++){
+            durations[i] = readVarint();
+        }
+        in.readFully(confidences, 0, count);
+        size = count;
+        return true;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint");
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the timings and confidences of recognized words in a compact 
+ * columnar format. Words are written in blocks of up to {@link #BLOCK_SIZE}
+ * words so that memory stays constant regardless of the length of the
+ * processed media. All numbers are big-endian.
+ * <pre>
+ * int     magic ({@link #MAGIC})
+ * block*  int      count of words (1..{@link #BLOCK_SIZE})
+ *         int      count of new words, followed by the words (modified 
+ *                  UTF-8 as written by {@link DataOutputStream#writeUTF(String)}).
+ *                  New words are appended to the vocabulary in that order
+ *         varint*  the index of the words in the vocabulary
+ *         varint*  the start times as zigzag encoded difference to the start
+ *                  time of the previous word in milliseconds
+ *         varint*  the durations in milliseconds
+ *         byte*    the confidences quantized to 0..255
+ * int     0 (end of the words)
+ * </pre>
+ * Use the {@link WordTimingsReader} to read the words.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class WordTimingsWriter {
+
+    /**
+     * The MIME type of the written format
+     */
+    public static final String MIME_TYPE = "application/x-stanbol-word-timings";
+    /**
+     * Identifies the format (and its version)
+     */
+    public static final int MAGIC = 0x53545731; //STW1
+    /**
+     * The maximum number of words of a block
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    private final DataOutputStream out;
+    private final Map<String,Integer> vocabulary = new HashMap<String,Integer>();
+    private final List<String> newWords = new ArrayList<String>();
+    private final int[] words = new int[BLOCK_SIZE];
+    private final long[] starts = new long[BLOCK_SIZE];
+    private final long[] durations = new long[BLOCK_SIZE];
+    private final byte[] confidences = new byte[BLOCK_SIZE];
+    private int size;
+    private long lastStart;
+    private long count;
+    private boolean finished;
+
+    /**
+     * @param out the stream. Not closed by this writer
+     * @throws IOException if the header could not be written
+     */
+    public WordTimingsWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.out.writeInt(MAGIC);
+    }
+
+    /**
+     * Adds a word
+     * @param word the word
+     * @param start the start time in milliseconds
+     * @param end the end time in milliseconds
+     * @param confidence the confidence (values are clamped to 0..1)
+     * @throws IOException if a completed block could not be written
+     */
+    public void add(String word, long start, long end, double confidence) throws IOException {
+        if(finished){
+            throw new IllegalStateException("The word timings are already finished!");
+        }
+        Integer index = vocabulary.get(word);
+        if(index == null){
+            index = vocabulary.size();
+            vocabulary.put(word, index);
+            newWords.add(word);
+        }
+        words[size] = index;
+        starts[size] = start;
+        durations[size] = Math.max(end - start, 0);
+        confidences[size] = (byte)Math.round(Math.max(0, Math.min(1, confidence)) * 255);
+        size++;
+        count++;
+        if(size == BLOCK_SIZE){
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the remaining words and the end marker and flushes the stream
+     * @throws IOException on any error while writing
+     */
+    public void finish() throws IOException {
+        if(!finished){
+            finished = true;
+            writeBlock();
+            out.writeInt(0);
+            out.flush();
+        }
+    }
+
+    /**
+     * @return the number of added words
+     */
+    public long getCount() {
+        return count;
+    }
+
+    private void writeBlock() throws IOException {
+        if(size == 0){
+            return;
+        }
+        out.writeInt(size);
+        out.writeInt(newWords.size());
+        for(String word : newWords){
+            out.writeUTF(word);
+        }
+        newWords.clear();
+        for(int i = 0; i < size; i++){
+            writeVarint(words[i]);
+        }
+        for(int i = 0; i < size; i++){
+            long delta = starts[i] - lastStart;
+            writeVarint((delta << 1) ^ (delta >> 63));
+            lastStart = starts[i];
+        }
+        for(int i = 0; i < size; i++){
+            writeVarint(durations[i]);
+        }
+        out.write(confidences, 0, size);
+        size = 0;
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while((value & ~0x7FL) != 0){
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+}
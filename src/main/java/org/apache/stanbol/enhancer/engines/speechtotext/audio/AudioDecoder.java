@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes a media type to PCM sample data. Decoders are selected by the
+ * {@link AudioDecoderRegistry} based on the MIME type and the first bytes
+ * of the content.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public interface AudioDecoder {
+
+    /**
+     * The number of bytes parsed to {@link #accepts(String, Map, byte[], int)}
+     */
+    int SNIFF_LENGTH = 16;
+
+    /**
+     * @return the (lower case) MIME types supported by this decoder
+     */
+    Set<String> getMimeTypes();
+
+    /**
+     * Checks if this decoder can decode the content
+     * @param mimeType the (lower case) MIME type of the content without 
+     * parameters. <code>null</code> if not known
+     * @param parameters the parameters of the MIME type
+     * @param head the first bytes of the content
+     * @param length the number of available bytes in head. Might be less as
+     * {@link #SNIFF_LENGTH} for short content
+     * @return if this decoder accepts the content
+     */
+    boolean accepts(String mimeType, Map<String,String> parameters, byte[] head, int length);
+
+    /**
+     * Decodes the content
+     * @param in the content
+     * @param mimeType the (lower case) MIME type of the content without 
+     * parameters. <code>null</code> if not known
+     * @param parameters the parameters of the MIME type
+     * @return the decoded audio
+     * @throws IOException on any error while reading the header of the content
+     * or if the content uses an unsupported encoding
+     */
+    DecodedAudio decode(InputStream in, String mimeType, Map<String,String> parameters) throws IOException;
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the {@link AudioDecoder} for processed content. Decoders are asked
+ * in the order they were registered. The first decoder accepting the MIME 
+ * type and the first bytes of the content is used.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class AudioDecoderRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(AudioDecoderRegistry.class);
+
+    /**
+     * The read limit used to mark streams parsed to 
+     * {@link #decode(InputStream, String, Map)}
+     */
+    public static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private final List<AudioDecoder> decoders = new CopyOnWriteArrayList<AudioDecoder>();
+
+    /**
+     * Creates an empty registry
+     */
+    public AudioDecoderRegistry() {}
+
+    /**
+     * @return a registry with the decoders provided by this package
+     * (WAVE, FLAC, G.711 and raw PCM)
+     */
+    public static AudioDecoderRegistry createDefault() {
+        AudioDecoderRegistry registry = new AudioDecoderRegistry();
+        registry.register(new WavDecoder());
+        registry.register(new FlacDecoder());
+        registry.register(new G711Decoder());
+        registry.register(new RawPcmDecoder());
+        return registry;
+    }
+
+    /**
+     * Adds a decoder. Decoders registered earlier are preferred.
+     * @param decoder the decoder
+     */
+    public void register(AudioDecoder decoder) {
+        if(decoder == null){
+            throw new IllegalArgumentException("The parsed AudioDecoder MUST NOT be NULL!");
+        }
+        decoders.add(decoder);
+    }
+
+    /**
+     * Removes a decoder
+     * @param decoder the decoder
+     * @return if the decoder was registered
+     */
+    public boolean unregister(AudioDecoder decoder) {
+        return decoders.remove(decoder);
+    }
+
+    /**
+     * @return the MIME types supported by the registered decoders
+     */
+    public Set<String> getMimeTypes() {
+        Set<String> mimeTypes = new HashSet<String>();
+        for(AudioDecoder decoder : decoders){
+            mimeTypes.addAll(decoder.getMimeTypes());
+        }
+        return Collections.unmodifiableSet(mimeTypes);
+    }
+
+    /**
+     * @param mimeType the MIME type (parameters are ignored)
+     * @return if a registered decoder supports the parsed MIME type
+     */
+    public boolean isSupported(String mimeType) {
+        String normalised = normalise(mimeType);
+        if(normalised == null){
+            return false;
+        }
+        for(AudioDecoder decoder : decoders){
+            if(decoder.getMimeTypes().contains(normalised)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Selects the decoder for the parsed content
+     * @param mimeType the MIME type of the content or <code>null</code>
+     * @param parameters the parameters of the MIME type or <code>null</code>
+     * @param head the first bytes of the content
+     * @param length the number of valid bytes in head
+     * @return the decoder or <code>null</code> if no decoder accepts the content
+     */
+    public AudioDecoder getDecoder(String mimeType, Map<String,String> parameters, byte[] head, int length) {
+        String normalised = normalise(mimeType);
+        Map<String,String> params = parameters == null ? Collections.<String,String>emptyMap() : parameters;
+        for(AudioDecoder decoder : decoders){
+            if(decoder.accepts(normalised, params, head, length)){
+                return decoder;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the parsed content
+     * @param in the content. MUST support {@link InputStream#mark(int)}. The
+     * stream is marked with a read limit of {@link #MAX_HEADER_SIZE} so that
+     * callers can reset it if the header can not be decoded.
+     * @param mimeType the MIME type of the content or <code>null</code>
+     * @param parameters the parameters of the MIME type or <code>null</code>
+     * @return the decoded audio or <code>null</code> if no decoder accepts
+     * the content. In that case the stream is reset to its start.
+     * @throws IOException on any error while reading the stream or if the
+     * selected decoder is not able to decode the content
+     */
+    public DecodedAudio decode(InputStream in, String mimeType, Map<String,String> parameters) throws IOException {
+        byte[] head = new byte[AudioDecoder.SNIFF_LENGTH];
+        in.mark(MAX_HEADER_SIZE);
+        int length = 0;
+        int read;
+        while(length < head.length && (read = in.read(head, length, head.length - length)) >= 0){
+            length += read;
+        }
+        in.reset();
+        AudioDecoder decoder = getDecoder(mimeType, parameters, head, length);
+        if(decoder == null){
+            log.debug("no decoder for content with MIME type {}",mimeType);
+            return null;
+        }
+        log.debug("decode content with MIME type {} by using {}",mimeType,decoder);
+        return decoder.decode(in, normalise(mimeType), 
+            parameters == null ? Collections.<String,String>emptyMap() : parameters);
+    }
+
+    static String normalise(String mimeType) {
+        if(mimeType == null){
+            return null;
+        }
+        int index = mimeType.indexOf(';');
+        String normalised = (index < 0 ? mimeType : mimeType.substring(0, index)).trim();
+        return normalised.isEmpty() ? null : normalised.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Checks if the first bytes of the content match the parsed ASCII magic 
+     * number
+     * @param head the first bytes
+     * @param length the number of valid bytes in head
+     * @param offset the offset of the magic number
+     * @param magic the magic number
+     * @return <code>true</code> on a match
+     */
+    static boolean startsWith(byte[] head, int length, int offset, String magic) {
+        if(length < offset + magic.length()){
+            return false;
+        }
+        for(int i = 0; i < magic.length(); i++){
+            if(head[offset + i] != magic.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Converts the sample data of a WAVE stream to the format expected by Sphinx
+ * (16 kHz, 16 bit, little-endian, mono PCM). Channels are mixed down by
+ * averaging and the sample rate is converted by a {@link PolyphaseResampler}.
+ * Conversion is done block by block so that memory usage is independent of
+ * the length of the stream.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class AudioNormalizer extends InputStream {
+
+    /**
+     * The number of input frames converted at once
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    private final WavHeader header;
+    private final InputStream in;
+    private final SampleReader reader;
+    private final PolyphaseResampler resampler;
+
+    private final float[] input = new float[BLOCK_SIZE];
+    private final float[] output;
+    private final byte[] out;
+    private int outPos = 0;
+    private int outLength = 0;
+    private boolean eos = false;
+
+    /**
+     * @param in the stream positioned at the first byte of the sample data
+     * @param header the format of the sample data
+     * @throws IOException if the format is not supported
+     */
+    public AudioNormalizer(InputStream in, WavHeader header) throws IOException {
+        this.header = header;
+        this.in = in;
+        this.reader = new SampleReader(in, header);
+        try {
+            this.resampler = header.getSampleRate() == WavHeader.SPHINX_SAMPLE_RATE ? null :
+                new PolyphaseResampler(header.getSampleRate(), WavHeader.SPHINX_SAMPLE_RATE);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        int maxOutput = resampler == null ? BLOCK_SIZE : Math.max(
+            resampler.getMaxOutput(BLOCK_SIZE), resampler.getMaxOutput(resampler.getDelay()));
+        this.output = new float[maxOutput];
+        this.out = new byte[maxOutput * 2];
+    }
+
+    /**
+     * @param header the header
+     * @return <code>true</code> if the sample data described by the parsed
+     * header can be converted
+     */
+    public static boolean isSupported(WavHeader header) {
+        return SampleReader.isSupported(header);
+    }
+
+    /**
+     * @return the format of the converted stream. The data length is an 
+     * estimation based on the data length of the source.
+     */
+    public WavHeader getOutputHeader() {
+        long dataLength = header.isDataLengthKnown() ? 
+                header.getDataLength() / header.getBlockAlign() 
+                * WavHeader.SPHINX_SAMPLE_RATE / header.getSampleRate() * 2 : 0;
+        return new WavHeader(WavHeader.FORMAT_PCM, 1, WavHeader.SPHINX_SAMPLE_RATE, 16, dataLength);
+    }
+
+    @Override
+    public int read() throws IOException {
+        while(outPos >= outLength){
+            if(!fill()){
+                return -1;
+            }
+        }
+        return out[outPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0){
+            return 0;
+        }
+        while(outPos >= outLength){
+            if(!fill()){
+                return -1;
+            }
+        }
+        int n = Math.min(len, outLength - outPos);
+        System.arraycopy(out, outPos, b, off, n);
+        outPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return outLength - outPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Converts the next block
+     * @return <code>false</code> if the end of the stream was reached
+     */
+    private boolean fill() throws IOException {
+        if(eos){
+            return false;
+        }
+        outPos = 0;
+        int read = reader.read(input, 0, BLOCK_SIZE);
+        int samples;
+        if(read < 0){
+            eos = true;
+            if(resampler == null){
+                return false;
+            }
+            samples = resampler.flush(output, 0);
+        } else if(resampler == null){
+            System.arraycopy(input, 0, output, 0, read);
+            samples = read;
+        } else {
+            samples = resampler.process(input, 0, read, output, 0);
+        }
+        for(int i = 0, pos = 0; i < samples; i++){
+            int sample = Math.round(output[i] * 32767f);
+            if(sample > Short.MAX_VALUE){
+                sample = Short.MAX_VALUE;
+            } else if(sample < Short.MIN_VALUE){
+                sample = Short.MIN_VALUE;
+            }
+            out[pos++] = (byte)sample;
+            out[pos++] = (byte)(sample >> 8);
+        }
+        outLength = samples * 2;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "AudioNormalizer[" + header + " -> 16 kHz, 16 bit, mono]";
+    }
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The result of probing the first bytes of processed media: the selected 
+ * {@link AudioDecoder} and - for RIFF/WAVE files - the parsed 
+ * {@link WavHeader}. Immutable so that it can be cached (e.g. as part of a
+ * ContentItem) and used to decode the media later on without sniffing and
+ * parsing the header again.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public final class AudioProbe {
+
+    /**
+     * The number of bytes read by {@link #probe(AudioDecoderRegistry, InputStream, String, Map)}.
+     * Enough for the header of typical RIFF/WAVE files (including a 
+     * <code>fact</code> chunk).
+     */
+    public static final int PROBE_SIZE = 128;
+
+    private final String mimeType;
+    private final Map<String,String> parameters;
+    private final boolean empty;
+    private final AudioDecoder decoder;
+    private final WavHeader header;
+    private final String error;
+
+    private AudioProbe(String mimeType, Map<String,String> parameters, boolean empty, 
+            AudioDecoder decoder, WavHeader header, String error) {
+        this.mimeType = mimeType;
+        this.parameters = parameters == null ? Collections.<String,String>emptyMap() :
+            Collections.unmodifiableMap(parameters);
+        this.empty = empty;
+        this.decoder = decoder;
+        this.header = header;
+        this.error = error;
+    }
+
+    /**
+     * Reads at most {@link #PROBE_SIZE} bytes from the parsed stream. The
+     * stream is NOT closed.
+     * @param registry the decoder registry
+     * @param in the media
+     * @param mimeType the MIME type of the media or <code>null</code>
+     * @param parameters the parameters of the MIME type or <code>null</code>
+     * @return the probe
+     * @throws IOException on any error while reading from the parsed stream
+     */
+    public static AudioProbe probe(AudioDecoderRegistry registry, InputStream in, 
+            String mimeType, Map<String,String> parameters) throws IOException {
+        byte[] head = new byte[PROBE_SIZE];
+        int length = 0;
+        int read;
+        while(length < head.length && (read = in.read(head, length, head.length - length)) >= 0){
+            length += read;
+        }
+        if(length == 0){
+            return new AudioProbe(mimeType, parameters, true, null, null, null);
+        }
+        AudioDecoder decoder = registry.getDecoder(mimeType, parameters, head, length);
+        WavHeader header = null;
+        String error = null;
+        if(decoder == null && !registry.isSupported(mimeType)){
+            error = "unsupported media type " + mimeType;
+        } else if(decoder instanceof WavDecoder){
+            try {
+                header = WavHeader.probe(head, length);
+                if(header.getSampleRate() <= 0 || header.getChannels() <= 0){
+                    error = "invalid WAVE format " + header;
+                }
+            } catch (IOException e) {
+                error = "invalid WAVE header (" + e.getMessage() + ")";
+            }
+        }
+        return new AudioProbe(mimeType, parameters, false, decoder, header, error);
+    }
+
+    /**
+     * @return <code>true</code> if the media is not empty and the probe 
+     * found no problems with the format
+     */
+    public boolean isSupported() {
+        return !empty && error == null;
+    }
+
+    /**
+     * @return the reason why the media is not supported or <code>null</code>
+     */
+    public String getError() {
+        return empty ? "empty content" : error;
+    }
+
+    /**
+     * @return the decoder or <code>null</code> if the media is parsed as is
+     * to the recognizer
+     */
+    public AudioDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * @return the header of RIFF/WAVE media or <code>null</code>
+     */
+    public WavHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Decodes the probed media
+     * @param in the media positioned at the first byte
+     * @return the decoded audio or <code>null</code> if no decoder accepted
+     * the media
+     * @throws IOException on any error while decoding the header of the media
+     */
+    public DecodedAudio decode(InputStream in) throws IOException {
+        if(decoder == null){
+            return null;
+        } else if(header != null && header.getDataOffset() >= 0){
+            //the header was already parsed
+            return ((WavDecoder)decoder).decodeProbed(in, header);
+        } else {
+            return decoder.decode(in, AudioDecoderRegistry.normalise(mimeType), parameters);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AudioProbe[mimeType: " + mimeType + ", decoder: " + decoder 
+                + (header == null ? "" : ", header: " + header)
+                + (isSupported() ? "" : ", error: " + getError()) + "]";
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.InputStream;
+
+/**
+ * PCM sample data as returned by an {@link AudioDecoder}.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class DecodedAudio {
+
+    private final WavHeader format;
+    private final InputStream stream;
+
+    /**
+     * @param format the format of the sample data. Only PCM and IEEE float
+     * formats are allowed
+     * @param stream the sample data
+     */
+    public DecodedAudio(WavHeader format, InputStream stream) {
+        if(format == null){
+            throw new IllegalArgumentException("The parsed format MUST NOT be NULL!");
+        }
+        if(stream == null){
+            throw new IllegalArgumentException("The parsed InputStream MUST NOT be NULL!");
+        }
+        this.format = format;
+        this.stream = stream;
+    }
+
+    /**
+     * @return the format of the sample data
+     */
+    public WavHeader getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the little-endian sample data
+     */
+    public InputStream getStream() {
+        return stream;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodedAudio[" + format + "]";
+    }
+}
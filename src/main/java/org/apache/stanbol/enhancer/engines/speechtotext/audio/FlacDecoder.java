@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes native FLAC streams (see {@link FlacInputStream}).
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class FlacDecoder implements AudioDecoder {
+
+    private static final Set<String> MIME_TYPES = Collections.unmodifiableSet(new HashSet<String>(
+        Arrays.asList("audio/flac", "audio/x-flac")));
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public boolean accepts(String mimeType, Map<String,String> parameters, byte[] head, int length) {
+        return AudioDecoderRegistry.startsWith(head, length, 0, FlacInputStream.MAGIC);
+    }
+
+    @Override
+    public DecodedAudio decode(InputStream in, String mimeType, Map<String,String> parameters) throws IOException {
+        FlacInputStream flac = new FlacInputStream(in);
+        return new DecodedAudio(flac.getFormat(), flac);
+    }
+
+    @Override
+    public String toString() {
+        return "FlacDecoder";
+    }
+}
@@ -0,0 +1,528 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for native FLAC streams. Decodes a single frame at a time
+ * and provides the samples as interleaved little-endian PCM as described by
+ * {@link #getFormat()}. Samples with a bit depth that is not a multiple of 8
+ * are scaled to the next byte boundary. CRCs are not validated.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class FlacInputStream extends InputStream {
+
+    static final String MAGIC = "fLaC";
+
+    private static final int METADATA_STREAMINFO = 0;
+    private static final int CHANNELS_LEFT_SIDE = 8;
+    private static final int CHANNELS_RIGHT_SIDE = 9;
+    private static final int CHANNELS_MID_SIDE = 10;
+
+    private final BitReader bits;
+    private final WavHeader format;
+    private final int streamBitsPerSample;
+    private final int bytesPerSample;
+    private final int shift;
+
+    private int[][] samples;
+    private byte[] out = new byte[0];
+    private int outPos = 0;
+    private int outLength = 0;
+    private boolean eos = false;
+
+    /**
+     * Reads the metadata of the parsed FLAC stream
+     * @param in the stream
+     * @throws IOException if the stream is not a valid FLAC stream
+     */
+    public FlacInputStream(InputStream in) throws IOException {
+        this.bits = new BitReader(in);
+        for(int i = 0; i < MAGIC.length(); i++){
+            if(bits.readBits(8) != MAGIC.charAt(i)){
+                throw new IOException("Parsed stream is not a FLAC stream!");
+            }
+        }
+        int sampleRate = -1, channels = -1, bitsPerSample = -1, maxBlockSize = -1;
+        long totalSamples = 0;
+        boolean last;
+        do {
+            last = bits.readBits(1) == 1;
+            int type = bits.readBits(7);
+            int length = bits.readBits(24);
+            if(type == METADATA_STREAMINFO){
+                bits.readBits(16); //min block size
+                maxBlockSize = bits.readBits(16);
+                bits.readBits(24); //min frame size
+                bits.readBits(24); //max frame size
+                sampleRate = bits.readBits(20);
+                channels = bits.readBits(3) + 1;
+                bitsPerSample = bits.readBits(5) + 1;
+                totalSamples = (long)bits.readBits(4) << 32 | (bits.readBits(32) & 0xFFFFFFFFL);
+                bits.skipBytes(length - 18);
+            } else {
+                bits.skipBytes(length);
+            }
+        } while(!last);
+        if(sampleRate <= 0){
+            throw new IOException("Missing or invalid FLAC STREAMINFO metadata block!");
+        }
+        this.streamBitsPerSample = bitsPerSample;
+        this.bytesPerSample = (bitsPerSample + 7) / 8;
+        this.shift = bytesPerSample * 8 - bitsPerSample;
+        this.samples = new int[channels][Math.max(maxBlockSize, 16)];
+        this.format = new WavHeader(WavHeader.FORMAT_PCM, channels, sampleRate, bytesPerSample * 8,
+            totalSamples * channels * bytesPerSample);
+    }
+
+    /**
+     * @return the format of the decoded sample data
+     */
+    public WavHeader getFormat() {
+        return format;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while(outPos >= outLength){
+            if(!fill()){
+                return -1;
+            }
+        }
+        return out[outPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0){
+            return 0;
+        }
+        while(outPos >= outLength){
+            if(!fill()){
+                return -1;
+            }
+        }
+        int n = Math.min(len, outLength - outPos);
+        System.arraycopy(out, outPos, b, off, n);
+        outPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return outLength - outPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        bits.close();
+    }
+
+    /**
+     * Decodes the next frame
+     * @return <code>false</code> if the end of the stream was reached
+     */
+    private boolean fill() throws IOException {
+        if(eos){
+            return false;
+        }
+        int blockSize = readFrame();
+        if(blockSize < 0){
+            eos = true;
+            return false;
+        }
+        int channels = format.getChannels();
+        int length = blockSize * channels * bytesPerSample;
+        if(out.length < length){
+            out = new byte[length];
+        }
+        int pos = 0;
+        for(int i = 0; i < blockSize; i++){
+            for(int c = 0; c < channels; c++){
+                int sample = samples[c][i] << shift;
+                switch (bytesPerSample) {
+                    case 1: //8 bit WAVE samples are unsigned
+                        out[pos++] = (byte)(sample + 128);
+                        break;
+                    case 2:
+                        out[pos++] = (byte)sample;
+                        out[pos++] = (byte)(sample >> 8);
+                        break;
+                    case 3:
+                        out[pos++] = (byte)sample;
+                        out[pos++] = (byte)(sample >> 8);
+                        out[pos++] = (byte)(sample >> 16);
+                        break;
+                    default:
+                        out[pos++] = (byte)sample;
+                        out[pos++] = (byte)(sample >> 8);
+                        out[pos++] = (byte)(sample >> 16);
+                        out[pos++] = (byte)(sample >> 24);
+                }
+            }
+        }
+        outPos = 0;
+        outLength = length;
+        return true;
+    }
+
+    /**
+     * Reads the next frame into {@link #samples}
+     * @return the block size or <code>-1</code> if the end of the stream was
+     * reached
+     */
+    private int readFrame() throws IOException {
+        //search the frame sync code (skips e.g. trailing ID3 tags)
+        int b = bits.readByteOrEOF();
+        while(true){
+            if(b < 0){
+                return -1;
+            }
+            if(b == 0xFF){
+                b = bits.readByteOrEOF();
+                if(b >= 0 && (b & 0xFE) == 0xF8){
+                    break;
+                }
+            } else {
+                b = bits.readByteOrEOF();
+            }
+        }
+        int blockSizeCode = bits.readBits(4);
+        int sampleRateCode = bits.readBits(4);
+        int channelAssignment = bits.readBits(4);
+        int sampleSizeCode = bits.readBits(3);
+        bits.readBits(1); //reserved
+        //frame or sample number (UTF-8 like coding)
+        int first = bits.readBits(8);
+        for(int mask = 0x80; (first & mask) != 0 && mask > 1; mask >>= 1){
+            if(mask != 0x80){
+                bits.readBits(8);
+            }
+        }
+        int blockSize;
+        switch (blockSizeCode) {
+            case 0:
+                throw new IOException("Invalid FLAC block size code 0!");
+            case 1:
+                blockSize = 192;
+                break;
+            case 6:
+                blockSize = bits.readBits(8) + 1;
+                break;
+            case 7:
+                blockSize = bits.readBits(16) + 1;
+                break;
+            default:
+                blockSize = blockSizeCode < 6 ? 576 << (blockSizeCode - 2) : 256 << (blockSizeCode - 8);
+        }
+        switch (sampleRateCode) { //the sample rate of STREAMINFO is used
+            case 12:
+                bits.readBits(8);
+                break;
+            case 13:
+            case 14:
+                bits.readBits(16);
+                break;
+            default:
+                break;
+        }
+        bits.readBits(8); //CRC-8
+        int bitsPerSample;
+        switch (sampleSizeCode) {
+            case 0: bitsPerSample = streamBitsPerSample; break;
+            case 1: bitsPerSample = 8; break;
+            case 2: bitsPerSample = 12; break;
+            case 4: bitsPerSample = 16; break;
+            case 5: bitsPerSample = 20; break;
+            case 6: bitsPerSample = 24; break;
+            case 7: bitsPerSample = 32; break;
+            default:
+                throw new IOException("Invalid FLAC sample size code "+sampleSizeCode+"!");
+        }
+        int channels = channelAssignment < CHANNELS_LEFT_SIDE ? channelAssignment + 1 : 2;
+        if(channels != format.getChannels() || channelAssignment > CHANNELS_MID_SIDE){
+            throw new IOException("Invalid FLAC channel assignment "+channelAssignment+"!");
+        }
+        if(samples[0].length < blockSize){
+            samples = new int[channels][blockSize];
+        }
+        for(int c = 0; c < channels; c++){
+            //the side channel has one additional bit
+            boolean side = (channelAssignment == CHANNELS_LEFT_SIDE && c == 1) ||
+                    (channelAssignment == CHANNELS_RIGHT_SIDE && c == 0) ||
+                    (channelAssignment == CHANNELS_MID_SIDE && c == 1);
+            readSubframe(samples[c], blockSize, side ? bitsPerSample + 1 : bitsPerSample);
+        }
+        bits.alignToByte();
+        bits.readBits(16); //CRC-16
+        decorrelate(channelAssignment, blockSize);
+        return blockSize;
+    }
+
+    private void decorrelate(int channelAssignment, int blockSize) {
+        int[] left = samples[0];
+        int[] right = channelAssignment >= CHANNELS_LEFT_SIDE ? samples[1] : null;
+        switch (channelAssignment) {
+            case CHANNELS_LEFT_SIDE:
+                for(int i = 0; i < blockSize; i++){
+                    right[i] = left[i] - right[i];
+                }
+                break;
+            case CHANNELS_RIGHT_SIDE:
+                for(int i = 0; i < blockSize; i++){
+                    left[i] += right[i];
+                }
+                break;
+            case CHANNELS_MID_SIDE:
+                for(int i = 0; i < blockSize; i++){
+                    int side = right[i];
+                    int mid = (left[i] << 1) | (side & 1);
+                    left[i] = (mid + side) >> 1;
+                    right[i] = (mid - side) >> 1;
+                }
+                break;
+            default: //independent channels
+                break;
+        }
+    }
+
+    private void readSubframe(int[] data, int blockSize, int bitsPerSample) throws IOException {
+        if(bits.readBits(1) != 0){
+            throw new IOException("Invalid FLAC subframe padding!");
+        }
+        int type = bits.readBits(6);
+        int wasted = 0;
+        if(bits.readBits(1) == 1){
+            wasted = bits.readUnary() + 1;
+            bitsPerSample -= wasted;
+        }
+        if(type == 0){ //CONSTANT
+            int value = bits.readSigned(bitsPerSample);
+            for(int i = 0; i < blockSize; i++){
+                data[i] = value;
+            }
+        } else if(type == 1){ //VERBATIM
+            for(int i = 0; i < blockSize; i++){
+                data[i] = bits.readSigned(bitsPerSample);
+            }
+        } else if(type >= 8 && type <= 12){ //FIXED
+            int order = type - 8;
+            for(int i = 0; i < order; i++){
+                data[i] = bits.readSigned(bitsPerSample);
+            }
+            readResidual(data, blockSize, order);
+            restoreFixed(data, blockSize, order);
+        } else if(type >= 32){ //LPC
+            int order = (type & 0x1F) + 1;
+            for(int i = 0; i < order; i++){
+                data[i] = bits.readSigned(bitsPerSample);
+            }
+            int precision = bits.readBits(4) + 1;
+            if(precision == 16){
+                throw new IOException("Invalid FLAC LPC coefficient precision!");
+            }
+            int lpcShift = bits.readSigned(5);
+            int[] coefs = new int[order];
+            for(int i = 0; i < order; i++){
+                coefs[i] = bits.readSigned(precision);
+            }
+            readResidual(data, blockSize, order);
+            for(int i = order; i < blockSize; i++){
+                long sum = 0;
+                for(int j = 0; j < order; j++){
+                    sum += (long)coefs[j] * data[i - j - 1];
+                }
+                data[i] += (int)(sum >> lpcShift);
+            }
+        } else {
+            throw new IOException("Reserved FLAC subframe type "+type+"!");
+        }
+        if(wasted > 0){
+            for(int i = 0; i < blockSize; i++){
+                data[i] <<= wasted;
+            }
+        }
+    }
+
+    private static void restoreFixed(int[] data, int blockSize, int order) {
+        for(int i = order; i < blockSize; i++){
+            switch (order) {
+                case 1:
+                    data[i] += data[i-1];
+                    break;
+                case 2:
+                    data[i] += 2 * data[i-1] - data[i-2];
+                    break;
+                case 3:
+                    data[i] += 3 * data[i-1] - 3 * data[i-2] + data[i-3];
+                    break;
+                case 4:
+                    data[i] += 4 * data[i-1] - 6 * data[i-2] + 4 * data[i-3] - data[i-4];
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads the Rice coded residual into data starting at order
+     */
+    private void readResidual(int[] data, int blockSize, int order) throws IOException {
+        int method = bits.readBits(2);
+        if(method > 1){
+            throw new IOException("Reserved FLAC residual coding method "+method+"!");
+        }
+        int paramBits = method == 0 ? 4 : 5;
+        int escape = (1 << paramBits) - 1;
+        int partitionOrder = bits.readBits(4);
+        int partitions = 1 << partitionOrder;
+        int partitionSize = blockSize >> partitionOrder;
+        int pos = order;
+        for(int p = 0; p < partitions; p++){
+            int count = p == 0 ? partitionSize - order : partitionSize;
+            if(count < 0){
+                throw new IOException("Invalid FLAC residual partition order!");
+            }
+            int param = bits.readBits(paramBits);
+            if(param == escape){ //unencoded
+                int size = bits.readBits(5);
+                for(int i = 0; i < count; i++){
+                    data[pos++] = size == 0 ? 0 : bits.readSigned(size);
+                }
+            } else {
+                for(int i = 0; i < count; i++){
+                    int value = bits.readUnary() << param | (param == 0 ? 0 : bits.readBits(param));
+                    data[pos++] = (value >>> 1) ^ -(value & 1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FlacInputStream[" + format + "]";
+    }
+
+    /**
+     * Reads big-endian bit fields from a stream
+     */
+    private static class BitReader {
+
+        private final InputStream in;
+        private final byte[] buf = new byte[8192];
+        private int pos = 0;
+        private int length = 0;
+        private long cache = 0;
+        private int cached = 0;
+
+        BitReader(InputStream in) {
+            this.in = in;
+        }
+
+        private int nextByte() throws IOException {
+            if(pos >= length){
+                length = in.read(buf, 0, buf.length);
+                pos = 0;
+                if(length <= 0){
+                    length = 0;
+                    return -1;
+                }
+            }
+            return buf[pos++] & 0xff;
+        }
+
+        /**
+         * @return the next byte or <code>-1</code> at the end of the stream.
+         * MUST only be called if the reader is aligned to a byte
+         */
+        int readByteOrEOF() throws IOException {
+            return cached >= 8 ? readBits(8) : nextByte();
+        }
+
+        int readBits(int n) throws IOException {
+            if(n == 0){
+                return 0;
+            }
+            while(cached < n){
+                int b = nextByte();
+                if(b < 0){
+                    throw new EOFException("Unexpected end of the FLAC stream!");
+                }
+                cache = cache << 8 | b;
+                cached += 8;
+            }
+            cached -= n;
+            return (int)((cache >>> cached) & ((1L << n) - 1));
+        }
+
+        int readSigned(int n) throws IOException {
+            if(n == 0){
+                return 0;
+            }
+            int value = readBits(n);
+            return value << (32 - n) >> (32 - n);
+        }
+
+        /**
+         * @return the number of 0 bits before the next 1 bit
+         */
+        int readUnary() throws IOException {
+            int count = 0;
+            while(true){
+                if(cached == 0){
+                    int b = nextByte();
+                    if(b < 0){
+                        throw new EOFException("Unexpected end of the FLAC stream!");
+                    }
+                    cache = b;
+                    cached = 8;
+                }
+                int remaining = (int)(cache & ((1L << cached) - 1));
+                if(remaining == 0){
+                    count += cached;
+                    cached = 0;
+                } else {
+                    //the position of the highest 1 bit within the remaining bits
+                    int zeros = cached - (32 - Integer.numberOfLeadingZeros(remaining));
+                    count += zeros;
+                    cached -= zeros + 1;
+                    return count;
+                }
+            }
+        }
+
+        void alignToByte() {
+            cached -= cached % 8;
+        }
+
+        void skipBytes(long n) throws IOException {
+            alignToByte();
+            for(long i = 0; i < n; i++){
+                if(readByteOrEOF() < 0){
+                    throw new EOFException("Unexpected end of the FLAC stream!");
+                }
+            }
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
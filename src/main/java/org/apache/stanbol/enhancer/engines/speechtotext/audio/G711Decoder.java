@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes G.711 µ-law and A-law telephony audio. Supports raw G.711 data 
+ * (<code>audio/PCMU</code>, <code>audio/PCMA</code>, <code>audio/basic</code>)
+ * as well as Sun/NeXT <code>.au</code> files with µ-law, A-law or 16 bit 
+ * linear PCM encoding. For raw data the <code>rate</code> (default: 8000) 
+ * and <code>channels</code> (default: 1) parameters of the MIME type are 
+ * used.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class G711Decoder implements AudioDecoder {
+
+    public static final String PCMU = "audio/pcmu";
+    public static final String PCMA = "audio/pcma";
+    public static final String BASIC = "audio/basic";
+
+    public static final int DEFAULT_SAMPLE_RATE = 8000;
+
+    private static final Set<String> MIME_TYPES = Collections.unmodifiableSet(new HashSet<String>(
+        Arrays.asList(PCMU, PCMA, BASIC, "audio/x-mulaw", "audio/x-alaw", "audio/au", "audio/x-au")));
+
+    private static final String AU_MAGIC = ".snd";
+    private static final int AU_HEADER_SIZE = 24;
+    private static final int AU_ULAW = 1;
+    private static final int AU_PCM_16 = 3;
+    private static final int AU_ALAW = 27;
+
+    private static final short[] ULAW = new short[256];
+    private static final short[] ALAW = new short[256];
+    static {
+        for(int i = 0; i < 256; i++){
+            //µ-law (ITU-T G.711)
+            int u = ~i & 0xff;
+            int t = (((u & 0x0f) << 3) + 0x84) << ((u & 0x70) >> 4);
+            ULAW[i] = (short)((u & 0x80) != 0 ? 0x84 - t : t - 0x84);
+            //A-law (ITU-T G.711)
+            int a = i ^ 0x55;
+            int segment = (a & 0x70) >> 4;
+            t = (a & 0x0f) << 4;
+            if(segment == 0){
+                t += 8;
+            } else {
+                t = (t + 0x108) << (segment - 1);
+            }
+            ALAW[i] = (short)((a & 0x80) != 0 ? t : -t);
+        }
+    }
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public boolean accepts(String mimeType, Map<String,String> parameters, byte[] head, int length) {
+        return AudioDecoderRegistry.startsWith(head, length, 0, AU_MAGIC) ||
+                (mimeType != null && MIME_TYPES.contains(mimeType));
+    }
+
+    @Override
+    public DecodedAudio decode(InputStream in, String mimeType, Map<String,String> parameters) throws IOException {
+        in.mark(AU_MAGIC.length());
+        byte[] magic = new byte[AU_MAGIC.length()];
+        int read = 0;
+        int n;
+        while(read < magic.length && (n = in.read(magic, read, magic.length - read)) >= 0){
+            read += n;
+        }
+        if(AudioDecoderRegistry.startsWith(magic, read, 0, AU_MAGIC)){
+            return decodeAu(new DataInputStream(in));
+        }
+        in.reset();
+        int rate = RawPcmDecoder.getIntParameter(parameters, "rate", DEFAULT_SAMPLE_RATE);
+        int channels = RawPcmDecoder.getIntParameter(parameters, "channels", 1);
+        return new DecodedAudio(new WavHeader(WavHeader.FORMAT_PCM, channels, rate, 16, 0),
+            new G711InputStream(in, PCMA.equals(mimeType) || "audio/x-alaw".equals(mimeType)));
+    }
+
+    private DecodedAudio decodeAu(DataInputStream in) throws IOException {
+        //all fields are big-endian
+        long dataOffset = in.readInt() & 0xFFFFFFFFL;
+        long dataSize = in.readInt() & 0xFFFFFFFFL;
+        int encoding = in.readInt();
+        int rate = in.readInt();
+        int channels = in.readInt();
+        if(dataOffset < AU_HEADER_SIZE){
+            throw new IOException("Invalid .au header (data offset: "+dataOffset+")!");
+        }
+        //skip the annotation
+        for(long skip = dataOffset - AU_HEADER_SIZE; skip > 0; skip--){
+            if(in.read() < 0){
+                throw new IOException("Unexpected end of the .au header!");
+            }
+        }
+        if(dataSize == 0xFFFFFFFFL){ //unknown
+            dataSize = 0;
+        }
+        switch (encoding) {
+            case AU_ULAW:
+            case AU_ALAW:
+                return new DecodedAudio(new WavHeader(WavHeader.FORMAT_PCM, channels, rate, 16, dataSize * 2),
+                    new G711InputStream(in, encoding == AU_ALAW));
+            case AU_PCM_16:
+                return new DecodedAudio(new WavHeader(WavHeader.FORMAT_PCM, channels, rate, 16, dataSize),
+                    new RawPcmDecoder.ByteSwapInputStream(in));
+            default:
+                throw new IOException("Unsupported .au encoding "+encoding+"!");
+        }
+    }
+
+    /**
+     * Expands a single µ-law encoded sample
+     * @param code the µ-law code
+     * @return the linear 16 bit sample
+     */
+    public static short expandULaw(byte code) {
+        return ULAW[code & 0xff];
+    }
+
+    /**
+     * Expands a single A-law encoded sample
+     * @param code the A-law code
+     * @return the linear 16 bit sample
+     */
+    public static short expandALaw(byte code) {
+        return ALAW[code & 0xff];
+    }
+
+    @Override
+    public String toString() {
+        return "G711Decoder";
+    }
+
+    /**
+     * Expands G.711 codes to 16 bit little-endian PCM
+     */
+    static class G711InputStream extends FilterInputStream {
+
+        private final short[] table;
+        private final byte[] codes = new byte[4096];
+        /**
+         * the high byte of a sample if only the low byte was read
+         */
+        private int pending = -1;
+
+        G711InputStream(InputStream in, boolean aLaw) {
+            super(in);
+            this.table = aLaw ? ALAW : ULAW;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(pending >= 0){
+                int b = pending;
+                pending = -1;
+                return b;
+            }
+            int code = in.read();
+            if(code < 0){
+                return -1;
+            }
+            short sample = table[code];
+            pending = (sample >> 8) & 0xff;
+            return sample & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0){
+                return 0;
+            }
+            int pos = off;
+            int end = off + len;
+            if(pending >= 0){
+                b[pos++] = (byte)pending;
+                pending = -1;
+            }
+            int wanted = (end - pos + 1) / 2; //the last sample may be split
+            if(wanted > 0){
+                int read = in.read(codes, 0, Math.min(wanted, codes.length));
+                if(read < 0){
+                    return pos > off ? pos - off : -1;
+                }
+                for(int i = 0; i < read; i++){
+                    short sample = table[codes[i] & 0xff];
+                    b[pos++] = (byte)sample;
+                    if(pos < end){
+                        b[pos++] = (byte)(sample >> 8);
+                    } else {
+                        pending = (sample >> 8) & 0xff;
+                    }
+                }
+            }
+            return pos - off;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while(skipped < n && read() >= 0){
+                skipped++;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available() * 2 + (pending >= 0 ? 1 : 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+    }
+}
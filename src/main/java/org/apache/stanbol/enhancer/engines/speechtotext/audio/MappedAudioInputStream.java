@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * {@link InputStream} over a memory mapped file. Data is copied directly from
+ * the page cache to the arrays parsed to {@link #read(byte[], int, int)}.
+ * Files are mapped in windows of {@link #WINDOW_SIZE} so that files of any
+ * size can be read. Mapped memory is not part of the Java heap and the pages
+ * are shared by all readers of the same file.<p>
+ * In addition to the {@link InputStream} methods {@link #peek(int)} provides
+ * direct access to the mapped data without any copy (used e.g. by the 
+ * {@link SilenceSegmenter}). {@link #mark(int)} and {@link #reset()} are 
+ * supported without any read limit. {@link #limit(long)} ends the stream
+ * before the end of the file (e.g. at the end of the sample data of a 
+ * RIFF/WAVE file).
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class MappedAudioInputStream extends InputStream {
+
+    /**
+     * The size of the mapped windows
+     */
+    public static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final InputStream source;
+    /**
+     * The end of this stream. The size of the file unless {@link #limit(long) limited}
+     */
+    private long size;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+    private long position;
+    private long mark;
+
+    /**
+     * Maps the file read by the parsed stream starting at its current position
+     * @param in the stream. Closed when this stream is closed
+     * @throws IOException if the file could not be mapped
+     */
+    public MappedAudioInputStream(FileInputStream in) throws IOException {
+        this(in, WINDOW_SIZE);
+    }
+
+    MappedAudioInputStream(FileInputStream in, int windowSize) throws IOException {
+        this.windowSize = windowSize;
+        this.source = in;
+        this.channel = in.getChannel();
+        this.size = channel.size();
+        this.position = channel.position();
+        this.mark = position;
+    }
+
+    /**
+     * Ends this stream after the next <code>length</code> bytes. Has no 
+     * effect if less bytes are remaining.
+     * @param length the number of bytes readable from the current position
+     */
+    public void limit(long length) {
+        size = Math.min(size, position + Math.max(length, 0));
+        if(window != null && windowStart + window.capacity() > size){
+            window = null; //do not map data beyond the limit
+        }
+    }
+
+    /**
+     * @return the number of bytes until the end of the stream
+     */
+    public long remaining() {
+        return Math.max(size - position, 0);
+    }
+
+    /**
+     * Provides direct access to the next bytes of the file without advancing
+     * the position of this stream.
+     * @param length the maximum number of bytes
+     * @return a read-only little-endian buffer with position <code>0</code> and
+     * the limit set to the available bytes (<code>min(length, remaining())</code>)
+     * @throws IOException if the file could not be mapped
+     */
+    public ByteBuffer peek(int length) throws IOException {
+        int available = (int)Math.min(length, remaining());
+        ByteBuffer buffer = ensureMapped(available).asReadOnlyBuffer();
+        int offset = (int)(position - windowStart);
+        buffer.limit(offset + available).position(offset);
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Ensures that the next <code>length</code> bytes are within the mapped window
+     */
+    private MappedByteBuffer ensureMapped(int length) throws IOException {
+        if(window == null || position < windowStart || 
+                position + length > windowStart + window.capacity()){
+            long mapSize = Math.min(Math.max(windowSize, length), size - position);
+            window = channel.map(MapMode.READ_ONLY, position, mapSize);
+            windowStart = position;
+        }
+        return window;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(position >= size){
+            return -1;
+        }
+        int value = ensureMapped(1).get((int)(position - windowStart)) & 0xff;
+        position++;
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0){
+            return 0;
+        }
+        if(position >= size){
+            return -1;
+        }
+        //do not remap only to fill the parsed array
+        if(window == null || position < windowStart || position >= windowStart + window.capacity()){
+            ensureMapped(1);
+        }
+        int offset = (int)(position - windowStart);
+        int n = (int)Math.min(len, window.capacity() - offset);
+        ByteBuffer buffer = window.duplicate();
+        buffer.position(offset);
+        buffer.get(b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if(n <= 0){
+            return 0;
+        }
+        long skipped = Math.min(n, remaining());
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(remaining(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        position = mark;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        source.close();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedAudioInputStream[size: " + size + ", position: " + position + "]";
+    }
+}
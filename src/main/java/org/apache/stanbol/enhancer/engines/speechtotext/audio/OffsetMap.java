@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.util.Arrays;
+
+/**
+ * Maps positions within a filtered audio stream (where some regions of the
+ * original stream where dropped) back to positions within the original stream.
+ * The map stores the start of every continuous region of the filtered stream
+ * together with its start in the original stream.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class OffsetMap {
+
+    private final int sampleRate;
+    private long[] filteredStarts = new long[16];
+    private long[] originalStarts = new long[16];
+    private int size = 0;
+
+    /**
+     * @param sampleRate the sample rate used to convert sample positions to
+     * milliseconds
+     */
+    public OffsetMap(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Adds a new continuous region. Regions MUST BE added in the order of
+     * the filtered stream.
+     * @param filteredSample the position of the region in the filtered stream
+     * @param originalSample the position of the region in the original stream
+     */
+    public void addRegion(long filteredSample, long originalSample) {
+        if(size > 0 && filteredSample < filteredStarts[size-1]){
+            throw new IllegalArgumentException("Regions MUST BE added in the order of the filtered stream!");
+        }
+        if(size == filteredStarts.length){
+            filteredStarts = Arrays.copyOf(filteredStarts, size * 2);
+            originalStarts = Arrays.copyOf(originalStarts, size * 2);
+        }
+        filteredStarts[size] = filteredSample;
+        originalStarts[size] = originalSample;
+        size++;
+    }
+
+    /**
+     * @return the number of continuous regions
+     */
+    public int getRegionCount() {
+        return size;
+    }
+
+    /**
+     * Maps a time of the filtered stream to the time in the original stream
+     * @param filteredMillis the time in milliseconds within the filtered stream
+     * @return the time in milliseconds within the original stream
+     */
+    public long toOriginal(long filteredMillis) {
+        if(size == 0){
+            return filteredMillis;
+        }
+        long filteredSample = filteredMillis * sampleRate / 1000;
+        int index = Arrays.binarySearch(filteredStarts, 0, size, filteredSample);
+        if(index < 0){ //not a region start: use the region containing the sample
+            index = Math.max(-index - 2, 0);
+        } else { //consecutive regions may start at the same position: use the last
+            while(index + 1 < size && filteredStarts[index + 1] == filteredSample){
+                index++;
+            }
+        }
+        long originalSample = originalStarts[index] + filteredSample - filteredStarts[index];
+        return originalSample * 1000 / sampleRate;
+    }
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+/**
+ * Streaming rational sample rate converter. The signal is (conceptually) 
+ * upsampled by <code>up</code>, low-pass filtered by a Blackman windowed sinc
+ * and downsampled by <code>down</code>. Only the filter phases needed for 
+ * the output samples are evaluated.<p>
+ * The filter is centered on the output samples so that output sample 
+ * <code>n</code> corresponds to the time of input sample 
+ * <code>n * inRate / outRate</code>.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class PolyphaseResampler {
+
+    /**
+     * The number of zero crossings of the sinc on each side of the center
+     */
+    private static final int ZERO_CROSSINGS = 8;
+    /**
+     * The cutoff relative to the Nyquist frequency of the lower rate
+     */
+    private static final double CUTOFF = 0.92;
+    /**
+     * The maximum size of the prototype filter
+     */
+    private static final int MAX_FILTER_LENGTH = 1 << 20;
+
+    private final int up;
+    private final int down;
+    private final int taps;
+    /**
+     * <code>phases[p][k]</code> is the tap <code>p + k * up</code> of the
+     * prototype filter
+     */
+    private final float[][] phases;
+
+    /**
+     * input samples not yet consumed including the history needed by the filter
+     */
+    private float[] buf;
+    private int length;
+    /**
+     * the position of the next output sample in units of the upsampled rate
+     * relative to the start of {@link #buf}
+     */
+    private long time;
+
+    /**
+     * @param inRate the input sample rate
+     * @param outRate the output sample rate
+     * @throws IllegalArgumentException if the ratio of the rates would 
+     * require a too large filter
+     */
+    public PolyphaseResampler(int inRate, int outRate) {
+        if(inRate < 1 || outRate < 1){
+            throw new IllegalArgumentException("Sample rates MUST BE positive!");
+        }
+        int gcd = gcd(inRate, outRate);
+        this.up = outRate / gcd;
+        this.down = inRate / gcd;
+        int factor = Math.max(up, down);
+        long filterLength = 2L * ZERO_CROSSINGS * factor;
+        if(filterLength > MAX_FILTER_LENGTH){
+            throw new IllegalArgumentException("Unsupported ratio of sample rates ("
+                + inRate + " -> " + outRate + ")!");
+        }
+        this.taps = (int)((filterLength + up - 1) / up);
+        int n = taps * up;
+        this.phases = new float[up][taps];
+        double fc = CUTOFF / factor / 2; //cycles per upsampled sample
+        double center = (n - 1) / 2.0;
+        for(int i = 0; i < n; i++){
+            double x = i - center;
+            double sinc = x == 0 ? 2 * fc : Math.sin(2 * Math.PI * fc * x) / (Math.PI * x);
+            double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (n - 1))
+                    + 0.08 * Math.cos(4 * Math.PI * i / (n - 1));
+            phases[i % up][i / up] = (float)(sinc * window * up);
+        }
+        //zero history so that the filter is centered on the first input sample
+        this.buf = new float[Math.max(taps * 2, 4096)];
+        this.length = taps - 1;
+        this.time = (long)(taps - 1) * up + (long)Math.ceil(center);
+    }
+
+    private static int gcd(int a, int b) {
+        while(b != 0){
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * @return <code>true</code> if the input and output rate are equal
+     */
+    public boolean isIdentity() {
+        return up == down;
+    }
+
+    /**
+     * Converts the parsed input samples. Output samples are only written as
+     * soon as all input samples within the filter are available.
+     * @param in the input samples
+     * @param off the offset of the first input sample
+     * @param len the number of input samples
+     * @param out the array for the output samples. Needs to be big enough
+     * for {@link #getMaxOutput(int)} samples.
+     * @param outOff the offset for the output samples
+     * @return the number of output samples
+     */
+    public int process(float[] in, int off, int len, float[] out, int outOff) {
+        if(length + len > buf.length){
+            float[] newBuf = new float[Math.max(buf.length * 2, length + len)];
+            System.arraycopy(buf, 0, newBuf, 0, length);
+            buf = newBuf;
+        }
+        System.arraycopy(in, off, buf, length, len);
+        length += len;
+        int count = 0;
+        int index;
+        while((index = (int)(time / up)) < length){
+            float[] h = phases[(int)(time % up)];
+            float sum = 0;
+            for(int k = 0, i = index; k < taps; k++, i--){
+                sum += h[k] * buf[i];
+            }
+            out[outOff + count++] = sum;
+            time += down;
+        }
+        //keep the history needed for the next output sample
+        int consumed = (int)(time / up) - (taps - 1);
+        if(consumed > 0){
+            consumed = Math.min(consumed, length);
+            length -= consumed;
+            System.arraycopy(buf, consumed, buf, 0, length);
+            time -= (long)consumed * up;
+        }
+        return count;
+    }
+
+    /**
+     * Outputs the samples still pending because of the filter delay. 
+     * @param out the array for the output samples. Needs to be big enough
+     * for {@link #getMaxOutput(int)} of {@link #getDelay()} samples
+     * @param outOff the offset for the output samples
+     * @return the number of output samples
+     */
+    public int flush(float[] out, int outOff) {
+        return process(new float[getDelay()], 0, getDelay(), out, outOff);
+    }
+
+    /**
+     * @return the number of input samples the output is delayed by the filter
+     */
+    public int getDelay() {
+        return taps / 2 + 1;
+    }
+
+    /**
+     * @param inputLength the number of input samples
+     * @return the maximum number of output samples generated for the parsed
+     * number of input samples
+     */
+    public int getMaxOutput(int inputLength) {
+        return (int)(((long)inputLength + taps) * up / down) + 1;
+    }
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes raw PCM without any header. The format is taken from the parameters
+ * of the MIME type:<ul>
+ * <li><code>audio/L16</code> (RFC 2586): 16 bit big-endian samples. Uses the 
+ * <code>rate</code> and <code>channels</code> parameters
+ * <li><code>audio/pcm</code>: little-endian samples. Uses the 
+ * <code>rate</code>, <code>channels</code> and <code>bits</code> parameters
+ * </ul>
+ * Missing parameters default to the format expected by Sphinx (16 kHz, 
+ * 16 bit, mono).
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class RawPcmDecoder implements AudioDecoder {
+
+    public static final String L16 = "audio/l16";
+    public static final String PCM = "audio/pcm";
+
+    private static final Set<String> MIME_TYPES = Collections.unmodifiableSet(new HashSet<String>(
+        Arrays.asList(L16, PCM, "audio/x-pcm", "audio/x-raw")));
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public boolean accepts(String mimeType, Map<String,String> parameters, byte[] head, int length) {
+        return mimeType != null && MIME_TYPES.contains(mimeType);
+    }
+
+    @Override
+    public DecodedAudio decode(InputStream in, String mimeType, Map<String,String> parameters) throws IOException {
+        int rate = getIntParameter(parameters, "rate", WavHeader.SPHINX_SAMPLE_RATE);
+        int channels = getIntParameter(parameters, "channels", 1);
+        if(L16.equals(mimeType)){
+            return new DecodedAudio(new WavHeader(WavHeader.FORMAT_PCM, channels, rate, 16, 0),
+                new ByteSwapInputStream(in));
+        } else {
+            int bits = getIntParameter(parameters, "bits", 16);
+            return new DecodedAudio(new WavHeader(WavHeader.FORMAT_PCM, channels, rate, bits, 0), in);
+        }
+    }
+
+    /**
+     * Parses an integer parameter of a MIME type
+     * @param parameters the parameters
+     * @param name the name of the parameter
+     * @param defaultValue the value used if the parameter is not present
+     * @return the value
+     * @throws IOException if the value is not a positive integer
+     */
+    static int getIntParameter(Map<String,String> parameters, String name, int defaultValue) throws IOException {
+        String value = parameters == null ? null : parameters.get(name);
+        if(value == null || value.trim().isEmpty()){
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if(parsed > 0){
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            //throw an IOException below
+        }
+        throw new IOException("Invalid value '"+value+"' of MIME type parameter '"+name+"'!");
+    }
+
+    @Override
+    public String toString() {
+        return "RawPcmDecoder";
+    }
+
+    /**
+     * Converts 16 bit big-endian samples to little-endian
+     */
+    static class ByteSwapInputStream extends FilterInputStream {
+
+        private final byte[] buf = new byte[8192];
+        /**
+         * the number of bytes of an incomplete sample in {@link #buf}
+         */
+        private int carry = 0;
+        /**
+         * the high byte of a sample if the low byte was already returned
+         */
+        private int pending = -1;
+
+        ByteSwapInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(pending >= 0){
+                int b = pending;
+                pending = -1;
+                return b;
+            }
+            int high = carry > 0 ? buf[0] & 0xff : in.read();
+            carry = 0;
+            if(high < 0){
+                return -1;
+            }
+            int low = in.read();
+            if(low < 0){ //incomplete sample
+                return -1;
+            }
+            pending = high;
+            return low;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0){
+                return 0;
+            }
+            if(pending >= 0 || len < 2){
+                int value = read();
+                if(value < 0){
+                    return -1;
+                }
+                b[off] = (byte)value;
+                return 1;
+            }
+            int wanted = Math.min(len & ~1, buf.length);
+            int length = carry;
+            while(length < 2){ //read at least a single sample
+                int read = in.read(buf, length, wanted - length);
+                if(read < 0){
+                    return -1; //ignore an incomplete sample at the end
+                }
+                length += read;
+            }
+            int bytes = length & ~1;
+            for(int i = 0; i < bytes; i += 2){
+                b[off + i] = buf[i + 1];
+                b[off + i + 1] = buf[i];
+            }
+            carry = length - bytes;
+            if(carry > 0){
+                buf[0] = buf[bytes];
+            }
+            return bytes;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while(skipped < n && read() >= 0){
+                skipped++;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+    }
+}
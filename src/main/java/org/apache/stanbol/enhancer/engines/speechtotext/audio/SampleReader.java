@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads little-endian PCM (8 bit unsigned, 16/24/32 bit signed) or IEEE float
+ * (32/64 bit) sample frames and mixes all channels down to a single channel
+ * of float samples in the range <code>[-1..1]</code>.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class SampleReader {
+
+    private final InputStream in;
+    private final int formatTag;
+    private final int channels;
+    private final int bytesPerSample;
+    private final int blockAlign;
+    private final float scale;
+    /**
+     * The remaining bytes of the sample data or <code>-1</code> if unknown
+     */
+    private long remaining;
+
+    private byte[] buf = new byte[0];
+    /**
+     * bytes of an incomplete frame read by the last call
+     */
+    private int pending = 0;
+
+    /**
+     * @param in the stream positioned at the first byte of the sample data
+     * @param header the format of the sample data
+     * @throws IOException if the format of the parsed header is not supported
+     */
+    public SampleReader(InputStream in, WavHeader header) throws IOException {
+        if(!isSupported(header)){
+            throw new IOException("Unsupported WAVE format "+header+"!");
+        }
+        this.in = in;
+        this.formatTag = header.getFormatTag();
+        this.channels = header.getChannels();
+        this.bytesPerSample = header.getBytesPerSample();
+        this.blockAlign = header.getBlockAlign();
+        this.scale = 1f / channels / (formatTag == WavHeader.FORMAT_IEEE_FLOAT ? 1f :
+            (float)(1L << (bytesPerSample * 8 - 1)));
+        this.remaining = header.isDataLengthKnown() ? header.getDataLength() : -1;
+    }
+
+    /**
+     * @param header the header
+     * @return <code>true</code> if the sample data described by the parsed
+     * header can be read
+     */
+    public static boolean isSupported(WavHeader header) {
+        if(header.getChannels() < 1 || header.getSampleRate() < 1){
+            return false;
+        }
+        switch (header.getFormatTag()) {
+            case WavHeader.FORMAT_PCM:
+                int bits = header.getBitsPerSample();
+                return bits == 8 || bits == 16 || bits == 24 || bits == 32;
+            case WavHeader.FORMAT_IEEE_FLOAT:
+                return header.getBitsPerSample() == 32 || header.getBitsPerSample() == 64;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reads sample frames
+     * @param samples the array to store the mono samples
+     * @param off the offset within the array
+     * @param maxFrames the maximum number of frames to read
+     * @return the number of frames read or <code>-1</code> if the end of
+     * the sample data was reached
+     * @throws IOException on any error while reading from the stream
+     */
+    public int read(float[] samples, int off, int maxFrames) throws IOException {
+        int size = maxFrames * blockAlign;
+        if(buf.length < size){
+            byte[] newBuf = new byte[size];
+            System.arraycopy(buf, 0, newBuf, 0, pending);
+            buf = newBuf;
+        }
+        if(remaining >= 0){ //do not read chunks following the sample data
+            size = (int)Math.min(size, remaining + pending);
+        }
+        int length = pending;
+        while(length < blockAlign && length < size){ //read at least a single frame
+            int read = in.read(buf, length, size - length);
+            if(read < 0){
+                break;
+            }
+            length += read;
+        }
+        int frames = length / blockAlign;
+        if(frames == 0){
+            return -1; //ignore incomplete frames at the end of the stream
+        }
+        if(remaining >= 0){
+            remaining -= length - pending;
+        }
+        int pos = 0;
+        for(int i = 0; i < frames; i++){
+            float sum = 0;
+            for(int c = 0; c < channels; c++){
+                sum += sample(pos);
+                pos += bytesPerSample;
+            }
+            samples[off + i] = sum * scale;
+        }
+        pending = length - pos;
+        System.arraycopy(buf, pos, buf, 0, pending);
+        return frames;
+    }
+
+    private float sample(int pos) {
+        switch (bytesPerSample) {
+            case 1: //8 bit PCM is unsigned
+                return (buf[pos] & 0xff) - 128;
+            case 2:
+                return (short)((buf[pos] & 0xff) | (buf[pos+1] << 8));
+            case 3:
+                return (buf[pos] & 0xff) | (buf[pos+1] & 0xff) << 8 | buf[pos+2] << 16;
+            case 4:
+                int bits = (buf[pos] & 0xff) | (buf[pos+1] & 0xff) << 8 
+                        | (buf[pos+2] & 0xff) << 16 | buf[pos+3] << 24;
+                return formatTag == WavHeader.FORMAT_IEEE_FLOAT ? Float.intBitsToFloat(bits) : bits;
+            default: //64 bit float
+                long lbits = 0;
+                for(int i = 7; i >= 0; i--){
+                    lbits = lbits << 8 | (buf[pos+i] & 0xff);
+                }
+                return (float)Double.longBitsToDouble(lbits);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Cuts a stream of 16 bit little-endian mono PCM samples at detected pauses
+ * into {@link Segment}s that can be decoded independently.<p>
+ * A segment is closed as soon as it is longer than the minimum segment length
+ * and a pause of at least the minimum pause length was detected. Segments
+ * are forcibly closed when reaching the maximum segment length. A pause is a
+ * sequence of 10 ms frames whose RMS amplitude is below the silence threshold.
+ * Only a single segment is held in memory. If the PCM data is read from a
+ * {@link MappedAudioInputStream} segments are views on the mapped file.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class SilenceSegmenter {
+
+    public static final long DEFAULT_MIN_SEGMENT_MILLIS = 10000;
+    public static final long DEFAULT_MAX_SEGMENT_MILLIS = 60000;
+    public static final long DEFAULT_MIN_PAUSE_MILLIS = 300;
+    public static final int DEFAULT_SILENCE_THRESHOLD = 500;
+
+    private static final int FRAME_MILLIS = 10;
+
+    private final InputStream in;
+    private final int sampleRate;
+    private final int frameBytes;
+    private final int minSegmentBytes;
+    private final int maxSegmentBytes;
+    private final int minPauseFrames;
+    private final long silenceThreshold;
+
+    private long offsetSamples = 0;
+    private boolean eos = false;
+
+    /**
+     * Creates a segmenter using the default configuration
+     * @param in the PCM data
+     * @param sampleRate the sample rate of the PCM data
+     */
+    public SilenceSegmenter(InputStream in, int sampleRate) {
+        this(in, sampleRate, DEFAULT_MIN_SEGMENT_MILLIS, DEFAULT_MAX_SEGMENT_MILLIS,
+            DEFAULT_MIN_PAUSE_MILLIS, DEFAULT_SILENCE_THRESHOLD);
+    }
+    /**
+     * @param in the PCM data
+     * @param sampleRate the sample rate of the PCM data
+     * @param minSegmentMillis the minimum length of a segment
+     * @param maxSegmentMillis the maximum length of a segment
+     * @param minPauseMillis the minimum length of a pause
+     * @param silenceThreshold the RMS amplitude (0..32767) below that a frame
+     * is considered silent
+     */
+    public SilenceSegmenter(InputStream in, int sampleRate, long minSegmentMillis,
+            long maxSegmentMillis, long minPauseMillis, int silenceThreshold) {
+        if(in == null){
+            throw new IllegalArgumentException("The parsed InputStream MUST NOT be NULL!");
+        }
+        if(minSegmentMillis > maxSegmentMillis){
+            throw new IllegalArgumentException("The minimum segment length MUST NOT be "
+                + "greater as the maximum segment length!");
+        }
+        this.in = in;
+        this.sampleRate = sampleRate;
+        this.frameBytes = sampleRate * FRAME_MILLIS / 1000 * 2;
+        this.minSegmentBytes = (int)(minSegmentMillis / FRAME_MILLIS) * frameBytes;
+        this.maxSegmentBytes = Math.max((int)(maxSegmentMillis / FRAME_MILLIS), 1) * frameBytes;
+        this.minPauseFrames = (int)Math.max(minPauseMillis / FRAME_MILLIS, 1);
+        this.silenceThreshold = (long)silenceThreshold * silenceThreshold;
+    }
+
+    /**
+     * Reads the next segment from the stream
+     * @return the segment or <code>null</code> if the end of the stream was
+     * reached
+     * @throws IOException on any error while reading from the stream
+     */
+    public Segment next() throws IOException {
+        if(eos){
+            return null;
+        }
+        if(in instanceof MappedAudioInputStream){
+            return nextMapped((MappedAudioInputStream)in);
+        }
+        byte[] data = new byte[Math.min(maxSegmentBytes, Math.max(minSegmentBytes, frameBytes) * 2)];
+        int length = 0;
+        int silentFrames = 0;
+        while(length < maxSegmentBytes){
+            if(data.length - length < frameBytes){
+                data = Arrays.copyOf(data, Math.min(maxSegmentBytes, data.length * 2));
+            }
+            int read = readFrame(data, length);
+            if(read <= 0){
+                eos = true;
+                break;
+            }
+            if(read == frameBytes && isSilent(data, length, read)){
+                silentFrames++;
+            } else {
+                silentFrames = 0;
+            }
+            length += read;
+            if(read < frameBytes){
+                eos = true;
+                break;
+            }
+            if(silentFrames >= minPauseFrames && length >= minSegmentBytes){
+                break; //cut at the detected pause
+            }
+        }
+        if(length == 0){
+            return null;
+        }
+        Segment segment = new Segment(ByteBuffer.wrap(data, 0, length), offsetSamples * 1000 / sampleRate);
+        offsetSamples += length / 2;
+        return segment;
+    }
+
+    /**
+     * Reads the next segment directly from the mapped file. The returned
+     * segment is a view on the mapped data (no copy).
+     */
+    private Segment nextMapped(MappedAudioInputStream mapped) throws IOException {
+        ByteBuffer view = mapped.peek(maxSegmentBytes);
+        int available = view.remaining() & ~1; //only complete samples
+        int length = 0;
+        int silentFrames = 0;
+        while(length < available){
+            int read = Math.min(frameBytes, available - length);
+            if(read == frameBytes && isSilent(view, length, read)){
+                silentFrames++;
+            } else {
+                silentFrames = 0;
+            }
+            length += read;
+            if(silentFrames >= minPauseFrames && length >= minSegmentBytes){
+                break; //cut at the detected pause
+            }
+        }
+        mapped.skip(length);
+        if(mapped.remaining() < 2){
+            eos = true;
+        }
+        if(length == 0){
+            return null;
+        }
+        view.limit(length);
+        Segment segment = new Segment(view.slice(), offsetSamples * 1000 / sampleRate);
+        offsetSamples += length / 2;
+        return segment;
+    }
+
+    private int readFrame(byte[] data, int off) throws IOException {
+        int length = 0;
+        while(length < frameBytes){
+            int read = in.read(data, off + length, frameBytes - length);
+            if(read < 0){
+                break;
+            }
+            length += read;
+        }
+        return length & ~1; //only complete samples
+    }
+
+    private boolean isSilent(ByteBuffer data, int off, int len) {
+        long sum = 0;
+        int samples = len / 2;
+        for(int i = off; i < off + len; i += 2){
+            int sample = data.getShort(i);
+            sum += sample * sample;
+        }
+        return sum / samples < silenceThreshold;
+    }
+
+    private boolean isSilent(byte[] data, int off, int len) {
+        long sum = 0;
+        int samples = len / 2;
+        for(int i = off; i < off + len; i += 2){
+            int sample = (short)((data[i] & 0xff) | (data[i + 1] << 8));
+            sum += sample * sample;
+        }
+        return sum / samples < silenceThreshold;
+    }
+
+    /**
+     * A part of the PCM stream together with its position within the stream
+     */
+    public static final class Segment {
+
+        private final ByteBuffer data;
+        private final long offsetMillis;
+
+        Segment(ByteBuffer data, long offsetMillis) {
+            this.data = data;
+            this.offsetMillis = offsetMillis;
+        }
+
+        /**
+         * @return the position of the first sample of this segment within
+         * the segmented stream in milliseconds
+         */
+        public long getOffsetMillis() {
+            return offsetMillis;
+        }
+
+        /**
+         * @return the length of the PCM data of this segment in bytes
+         */
+        public int getLength() {
+            return data.remaining();
+        }
+
+        /**
+         * @return a stream over the PCM data of this segment
+         */
+        public InputStream getStream() {
+            return new ByteBufferInputStream(data.duplicate());
+        }
+    }
+}
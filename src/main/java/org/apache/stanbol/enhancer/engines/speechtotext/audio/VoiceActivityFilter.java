@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming voice activity detection for 16 bit little-endian mono PCM.
+ * Only 10 ms frames classified as speech (plus a short pre-roll before and a
+ * hangover after speech) are passed on. Silence, hum and hiss are dropped
+ * before they reach the recognizer.<p>
+ * A frame is classified as speech if its RMS amplitude is at least
+ * {@link Settings#getEnergyThreshold()} and its zero-crossing rate is within
+ * {@link Settings#getMinZeroCrossingRate()} and
+ * {@link Settings#getMaxZeroCrossingRate()}. Positions of the kept regions are
+ * recorded in an {@link OffsetMap} (see {@link #getOffsetMap()}) so that times
+ * reported for the filtered stream can be mapped back to the original media.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class VoiceActivityFilter extends FilterInputStream {
+
+    private static final int FRAME_MILLIS = 10;
+
+    private final int sampleRate;
+    private final int frameBytes;
+    private final long energyThreshold;
+    private final int minCrossings;
+    private final int maxCrossings;
+    private final int hangoverFrames;
+    private final int preRollFrames;
+
+    private final OffsetMap offsetMap;
+
+    /**
+     * Frames not (yet) classified as speech. Emitted as pre-roll if the next
+     * frame is speech.
+     */
+    private final byte[][] preRoll;
+    private final int[] preRollLength;
+    private int preRollStart = 0;
+    private int preRollCount = 0;
+
+    /**
+     * The frames ready to be read
+     */
+    private final byte[] out;
+    private int outPos = 0;
+    private int outLength = 0;
+
+    private final byte[] frame;
+    private long frameIndex = 0; //index of the next frame read from the stream
+    private long lastEmitted = -2; //index of the last frame emitted
+    private long emittedSamples = 0;
+    private long droppedFrames = 0;
+    private int hangover = 0;
+    private boolean eos = false;
+
+    /**
+     * @param in the PCM stream
+     * @param sampleRate the sample rate of the PCM stream
+     * @param settings the detection settings
+     */
+    public VoiceActivityFilter(InputStream in, int sampleRate, Settings settings) {
+        super(in);
+        this.sampleRate = sampleRate;
+        this.frameBytes = sampleRate * FRAME_MILLIS / 1000 * 2;
+        this.energyThreshold = (long)settings.energyThreshold * settings.energyThreshold;
+        //crossings per second -> crossings per frame
+        this.minCrossings = settings.minZeroCrossingRate * FRAME_MILLIS / 1000;
+        this.maxCrossings = settings.maxZeroCrossingRate * FRAME_MILLIS / 1000;
+        this.hangoverFrames = settings.hangoverMillis / FRAME_MILLIS;
+        this.preRollFrames = Math.max(settings.preRollMillis / FRAME_MILLIS, 0);
+        this.preRoll = new byte[preRollFrames][frameBytes];
+        this.preRollLength = new int[preRollFrames];
+        this.out = new byte[(preRollFrames + 1) * frameBytes];
+        this.frame = new byte[frameBytes];
+        this.offsetMap = new OffsetMap(sampleRate);
+    }
+
+    /**
+     * @return the map of the kept regions. Complete only after the end of the
+     * stream was reached.
+     */
+    public OffsetMap getOffsetMap() {
+        return offsetMap;
+    }
+
+    /**
+     * @return the duration in milliseconds of the audio dropped so far
+     */
+    public long getDroppedMillis() {
+        return droppedFrames * FRAME_MILLIS;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while(outPos >= outLength){
+            if(!fill()){
+                return -1;
+            }
+        }
+        return out[outPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0){
+            return 0;
+        }
+        while(outPos >= outLength){
+            if(!fill()){
+                return -1;
+            }
+        }
+        int n = Math.min(len, outLength - outPos);
+        System.arraycopy(out, outPos, b, off, n);
+        outPos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while(skipped < n && read() >= 0){
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return outLength - outPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads frames until at least one is emitted or the end of the stream is
+     * reached
+     * @return <code>false</code> if the end of the stream was reached
+     */
+    private boolean fill() throws IOException {
+        outPos = 0;
+        outLength = 0;
+        while(outLength == 0){
+            if(eos){
+                return false;
+            }
+            int length = readFrame();
+            if(length <= 0){
+                eos = true;
+                return false;
+            }
+            long index = frameIndex++;
+            if(isSpeech(frame, length)){
+                //emit the pre-roll so that word onsets are not clipped
+                long preRollIndex = index - preRollCount;
+                for(int i = 0; i < preRollCount; i++){
+                    int slot = (preRollStart + i) % preRollFrames;
+                    emit(preRoll[slot], preRollLength[slot], preRollIndex + i);
+                }
+                droppedFrames -= preRollCount;
+                preRollCount = 0;
+                emit(frame, length, index);
+                hangover = hangoverFrames;
+            } else if(hangover > 0){
+                hangover--;
+                emit(frame, length, index);
+            } else if(preRollFrames > 0){
+                if(preRollCount == preRollFrames){ //drop the oldest frame
+                    preRollStart = (preRollStart + 1) % preRollFrames;
+                    preRollCount--;
+                }
+                int slot = (preRollStart + preRollCount) % preRollFrames;
+                System.arraycopy(frame, 0, preRoll[slot], 0, length);
+                preRollLength[slot] = length;
+                preRollCount++;
+                droppedFrames++;
+            } else {
+                droppedFrames++;
+            }
+        }
+        return true;
+    }
+
+    private void emit(byte[] data, int length, long index) {
+        if(index != lastEmitted + 1){ //start of a new continuous region
+            offsetMap.addRegion(emittedSamples, index * frameBytes / 2);
+        }
+        System.arraycopy(data, 0, out, outLength, length);
+        outLength += length;
+        emittedSamples += length / 2;
+        lastEmitted = index;
+    }
+
+    private int readFrame() throws IOException {
+        int length = 0;
+        while(length < frameBytes){
+            int read = in.read(frame, length, frameBytes - length);
+            if(read < 0){
+                break;
+            }
+            length += read;
+        }
+        return length & ~1; //only complete samples
+    }
+
+    private boolean isSpeech(byte[] data, int length) {
+        int samples = length / 2;
+        if(samples == 0){
+            return false;
+        }
+        long sum = 0;
+        int crossings = 0;
+        int last = 0;
+        for(int i = 0; i < length; i += 2){
+            int sample = (short)((data[i] & 0xff) | (data[i + 1] << 8));
+            sum += sample * sample;
+            if(i > 0 && (sample ^ last) < 0){
+                crossings++;
+            }
+            last = sample;
+        }
+        if(sum / samples < energyThreshold){
+            return false;
+        }
+        //scale crossings of partial frames to a full frame
+        crossings = crossings * (frameBytes / 2) / samples;
+        return crossings >= minCrossings && crossings <= maxCrossings;
+    }
+
+    @Override
+    public String toString() {
+        return "VoiceActivityFilter[rate: "+sampleRate+", dropped: "+getDroppedMillis()+"ms]";
+    }
+
+    /**
+     * Immutable settings of the {@link VoiceActivityFilter}
+     */
+    public static final class Settings {
+
+        public static final int DEFAULT_ENERGY_THRESHOLD = 300;
+        public static final int DEFAULT_MIN_ZERO_CROSSING_RATE = 0;
+        public static final int DEFAULT_MAX_ZERO_CROSSING_RATE = 6000;
+        public static final int DEFAULT_HANGOVER_MILLIS = 300;
+        public static final int DEFAULT_PRE_ROLL_MILLIS = 100;
+
+        private final int energyThreshold;
+        private final int minZeroCrossingRate;
+        private final int maxZeroCrossingRate;
+        private final int hangoverMillis;
+        private final int preRollMillis;
+
+        /**
+         * @param energyThreshold the minimum RMS amplitude (0..32767) of speech
+         * @param minZeroCrossingRate the minimum zero crossings per second of speech
+         * @param maxZeroCrossingRate the maximum zero crossings per second of speech
+         * @param hangoverMillis the time audio is kept after speech
+         * @param preRollMillis the time audio is kept before speech
+         */
+        public Settings(int energyThreshold, int minZeroCrossingRate, int maxZeroCrossingRate,
+                int hangoverMillis, int preRollMillis) {
+            if(minZeroCrossingRate > maxZeroCrossingRate){
+                throw new IllegalArgumentException("The minimum zero crossing rate MUST NOT "
+                    + "be greater as the maximum zero crossing rate!");
+            }
+            this.energyThreshold = energyThreshold;
+            this.minZeroCrossingRate = minZeroCrossingRate;
+            this.maxZeroCrossingRate = maxZeroCrossingRate;
+            this.hangoverMillis = hangoverMillis;
+            this.preRollMillis = preRollMillis;
+        }
+
+        public int getEnergyThreshold() {
+            return energyThreshold;
+        }
+
+        public int getMinZeroCrossingRate() {
+            return minZeroCrossingRate;
+        }
+
+        public int getMaxZeroCrossingRate() {
+            return maxZeroCrossingRate;
+        }
+
+        public int getHangoverMillis() {
+            return hangoverMillis;
+        }
+
+        public int getPreRollMillis() {
+            return preRollMillis;
+        }
+    }
+}
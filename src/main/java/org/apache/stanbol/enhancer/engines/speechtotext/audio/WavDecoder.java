@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * Decodes RIFF/WAVE files. PCM and IEEE float sample data is returned as is.
+ * G.711 µ-law and A-law sample data is expanded to 16 bit PCM.<p>
+ * This decoder is selected by the RIFF/WAVE magic number only. Content with
+ * a WAVE MIME type but without a RIFF header is not accepted.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class WavDecoder implements AudioDecoder {
+
+    private static final Set<String> MIME_TYPES = Collections.unmodifiableSet(new HashSet<String>(
+        Arrays.asList("audio/wav", "audio/x-wav", "audio/wave", "audio/vnd.wave")));
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public boolean accepts(String mimeType, Map<String,String> parameters, byte[] head, int length) {
+        return AudioDecoderRegistry.startsWith(head, length, 0, "RIFF") &&
+                AudioDecoderRegistry.startsWith(head, length, 8, "WAVE");
+    }
+
+    @Override
+    public DecodedAudio decode(InputStream in, String mimeType, Map<String,String> parameters) throws IOException {
+        return decode(in, WavHeader.parse(in));
+    }
+
+    /**
+     * Decodes a RIFF/WAVE file with an already known header (e.g. parsed by
+     * {@link WavHeader#probe(byte[], int)}) by skipping to the sample data
+     * @param in the stream positioned at the start of the file
+     * @param header the header. {@link WavHeader#getDataOffset()} MUST BE known
+     * @return the decoded audio
+     * @throws IOException on any error while skipping the header
+     */
+    public DecodedAudio decodeProbed(InputStream in, WavHeader header) throws IOException {
+        if(header.getDataOffset() < 0){
+            throw new IllegalArgumentException("The data offset of the parsed header MUST BE known!");
+        }
+        IOUtils.skipFully(in, header.getDataOffset());
+        return decode(in, header);
+    }
+
+    private DecodedAudio decode(InputStream in, WavHeader header) {
+        if(header.isDataLengthKnown()){ //do not decode chunks after the data (e.g. LIST or id3)
+            in = bound(in, header.getDataLength());
+        }
+        int format = header.getFormatTag();
+        if((format == WavHeader.FORMAT_MULAW || format == WavHeader.FORMAT_ALAW) 
+                && header.getBitsPerSample() == 8){
+            return new DecodedAudio(new WavHeader(WavHeader.FORMAT_PCM, header.getChannels(), 
+                header.getSampleRate(), 16, header.isDataLengthKnown() ? header.getDataLength() * 2 : 0),
+                new G711Decoder.G711InputStream(in, format == WavHeader.FORMAT_ALAW));
+        } else {
+            return new DecodedAudio(header, in);
+        }
+    }
+
+    /**
+     * Ends the parsed stream after the sample data. Memory mapped streams
+     * are limited directly so that they can still be accessed without copies
+     */
+    private static InputStream bound(InputStream in, long length) {
+        if(in instanceof MappedAudioInputStream){
+            ((MappedAudioInputStream)in).limit(length);
+            return in;
+        } else {
+            return new BoundedInputStream(in, length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WavDecoder";
+    }
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The format of a RIFF/WAVE file as parsed from its header.
+ *
+ * @author Suman Saurabh
+ *
+ */
+public class WavHeader {
+
+    /**
+     * The sample rate expected by the Sphinx acoustic models
+     */
+    public static final int SPHINX_SAMPLE_RATE = 16000;
+
+    public static final int FORMAT_PCM = 1;
+
+    public static final int FORMAT_IEEE_FLOAT = 3;
+
+    public static final int FORMAT_ALAW = 6;
+
+    public static final int FORMAT_MULAW = 7;
+    /**
+     * WAVE_FORMAT_EXTENSIBLE. The actual format is defined by the sub format
+     * of the fmt chunk. {@link #parse(InputStream)} replaces this with the
+     * sub format.
+     */
+    public static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    /**
+     * The size of the fmt chunk of {@link #FORMAT_EXTENSIBLE} files
+     */
+    private static final int EXTENSIBLE_FMT_SIZE = 40;
+
+    private final int formatTag;
+    private final int channels;
+    private final int sampleRate;
+    private final int bitsPerSample;
+    private final long dataLength;
+    private final long dataOffset;
+
+    public WavHeader(int formatTag, int channels, int sampleRate, int bitsPerSample, long dataLength) {
+        this(formatTag, channels, sampleRate, bitsPerSample, dataLength, -1);
+    }
+
+    /**
+     * @param formatTag the format tag
+     * @param channels the number of channels
+     * @param sampleRate the sample rate
+     * @param bitsPerSample the number of bits per sample
+     * @param dataLength the length of the sample data in bytes
+     * @param dataOffset the position of the sample data within the file or
+     * <code>-1</code> if not known
+     */
+    public WavHeader(int formatTag, int channels, int sampleRate, int bitsPerSample, 
+            long dataLength, long dataOffset) {
+        this.formatTag = formatTag;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.bitsPerSample = bitsPerSample;
+        this.dataLength = dataLength;
+        this.dataOffset = dataOffset;
+    }
+
+    /**
+     * Parses the header of a RIFF/WAVE stream. If successful the stream is
+     * positioned at the first byte of the sample data.
+     * @param in the stream
+     * @return the parsed header
+     * @throws IOException on any error while reading from the stream or if
+     * the stream does not start with a valid RIFF/WAVE header
+     */
+    public static WavHeader parse(InputStream in) throws IOException {
+        return parse(in, false);
+    }
+
+    /**
+     * Parses the format from the first bytes of a RIFF/WAVE file. Intended to
+     * check the format without opening the whole file.
+     * @param head the first bytes of the file
+     * @param length the number of valid bytes
+     * @return the parsed header. If the data chunk is not within the parsed
+     * bytes {@link #getDataOffset()} and {@link #getDataLength()} are unknown
+     * @throws IOException if the parsed bytes do not start with a valid 
+     * RIFF/WAVE header or the fmt chunk is not within the parsed bytes
+     */
+    public static WavHeader probe(byte[] head, int length) throws IOException {
+        return parse(new ByteArrayInputStream(head, 0, length), true);
+    }
+
+    private static WavHeader parse(InputStream in, boolean partial) throws IOException {
+        byte[] buf = new byte[EXTENSIBLE_FMT_SIZE];
+        readFully(in, buf, 12);
+        if(!"RIFF".equals(ascii(buf, 0)) || !"WAVE".equals(ascii(buf, 8))){
+            throw new IOException("Parsed stream is not a RIFF/WAVE stream!");
+        }
+        long pos = 12;
+        int formatTag = -1, channels = -1, sampleRate = -1, bitsPerSample = -1;
+        try {
+            while(true){
+                readFully(in, buf, 8);
+                pos += 8;
+                String chunkId = ascii(buf, 0);
+                long chunkSize = uint32(buf, 4);
+                if("data".equals(chunkId)){
+                    if(formatTag < 0){
+                        throw new IOException("WAVE data chunk found before the fmt chunk!");
+                    }
+                    return new WavHeader(formatTag, channels, sampleRate, bitsPerSample, chunkSize, pos);
+                }
+                long skip = chunkSize + (chunkSize & 1);
+                if("fmt ".equals(chunkId)){
+                    if(chunkSize < 16){
+                        throw new IOException("Invalid WAVE fmt chunk (size: "+chunkSize+")!");
+                    }
+                    int read = (int)Math.min(chunkSize, EXTENSIBLE_FMT_SIZE);
+                    readFully(in, buf, read);
+                    formatTag = uint16(buf, 0);
+                    channels = uint16(buf, 2);
+                    sampleRate = (int)uint32(buf, 4);
+                    bitsPerSample = uint16(buf, 14);
+                    if(formatTag == FORMAT_EXTENSIBLE && read >= EXTENSIBLE_FMT_SIZE){
+                        //the first two bytes of the sub format GUID are the format tag
+                        formatTag = uint16(buf, 24);
+                    }
+                    skip -= read;
+                } //else skip chunks like LIST, fact ...
+                skipFully(in, skip);
+                pos += chunkSize + (chunkSize & 1);
+            }
+        } catch (EOFException e) {
+            if(partial && formatTag >= 0){ //the data chunk is not within the probe
+                return new WavHeader(formatTag, channels, sampleRate, bitsPerSample, 0, -1);
+            }
+            throw e;
+        }
+    }
+
+    public int getFormatTag() {
+        return formatTag;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    /**
+     * @return the number of bytes of a single sample of a single channel
+     */
+    public int getBytesPerSample() {
+        return (bitsPerSample + 7) / 8;
+    }
+
+    /**
+     * @return the number of bytes of a sample frame (all channels)
+     */
+    public int getBlockAlign() {
+        return getBytesPerSample() * channels;
+    }
+
+    /**
+     * @return the length of the sample data in bytes as stated by the header.
+     * Streaming encoders often write <code>0</code> or <code>0xFFFFFFFF</code>.
+     */
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * @return the duration of the audio in milliseconds as derived from
+     * {@link #getDataLength()}
+     */
+    public long getDurationMillis() {
+        long bytesPerSecond = (long)sampleRate * getBlockAlign();
+        return bytesPerSecond <= 0 ? 0 : dataLength * 1000 / bytesPerSecond;
+    }
+
+    /**
+     * @return <code>true</code> if the sample data can be parsed as is to the
+     * Sphinx recognizer (16 kHz, 16 bit, mono PCM)
+     */
+    public boolean isSphinxCompatible() {
+        return formatTag == FORMAT_PCM && channels == 1 &&
+                sampleRate == SPHINX_SAMPLE_RATE && bitsPerSample == 16;
+    }
+
+    /**
+     * @return the position of the first byte of the sample data within the
+     * file or <code>-1</code> if not known
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * @return <code>true</code> if {@link #getDataLength()} is the actual
+     * length of the sample data and not a placeholder written by a 
+     * streaming encoder
+     */
+    public boolean isDataLengthKnown() {
+        return dataLength > 0 && dataLength < 0xFFFFFFFFL;
+    }
+
+    @Override
+    public String toString() {
+        return "WAVE[format: "+formatTag+", channels: "+channels+", rate: "
+                + sampleRate+", bits: "+bitsPerSample+", length: "+dataLength+"]";
+    }
+
+    private static void readFully(InputStream in, byte[] buf, int len) throws IOException {
+        int off = 0;
+        while(off < len){
+            int read = in.read(buf, off, len - off);
+            if(read < 0){
+                throw new EOFException("Unexpected end of the WAVE header!");
+            }
+            off += read;
+        }
+    }
+
+    private static void skipFully(InputStream in, long len) throws IOException {
+        while(len > 0){
+            long skipped = in.skip(len);
+            if(skipped <= 0){
+                if(in.read() < 0){
+                    throw new EOFException("Unexpected end of the WAVE header!");
+                }
+                skipped = 1;
+            }
+            len -= skipped;
+        }
+    }
+
+    private static String ascii(byte[] buf, int off) {
+        return new String(new char[]{(char)buf[off],(char)buf[off+1],(char)buf[off+2],(char)buf[off+3]});
+    }
+
+    private static int uint16(byte[] buf, int off) {
+        return (buf[off] & 0xff) | (buf[off+1] & 0xff) << 8;
+    }
+
+    private static long uint32(byte[] buf, int off) {
+        return (uint16(buf, off) | (long)uint16(buf, off+2) << 16);
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        AdmissionController admission = new AdmissionController(1, 1, 50);
+        admission.acquire();
+        assertEquals(1, admission.getActive());
+        try {
+            admission.acquire();
+            fail("second request MUST NOT be admitted");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+        assertEquals(1, admission.getTimedOut());
+        assertEquals(0, admission.getQueueDepth());
+        assertTrue(admission.getWaitTimes().getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        admission.release();
+        admission.acquire();
+        assertEquals(2, admission.getAdmitted());
+        admission.release();
+        assertEquals(0, admission.getActive());
+    }
+
+    @Test
+    public void testQueueFull() throws InterruptedException {
+        final AdmissionController admission = new AdmissionController(1, 1, 10000);
+        admission.acquire();
+        final CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    admission.acquire();
+                    admitted.countDown();
+                    admission.release();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        waiting.start();
+        long timeout = System.currentTimeMillis() + 5000;
+        while(admission.getQueueDepth() < 1 && System.currentTimeMillis() < timeout){
+            Thread.sleep(5);
+        }
+        assertEquals(1, admission.getQueueDepth());
+        try { //queue is full: rejected without waiting
+            admission.acquire();
+            fail("request MUST BE rejected if the queue is full");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+        assertEquals(1, admission.getRejected());
+        admission.release();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiting.join();
+        assertEquals(0, admission.getQueueDepth());
+        assertEquals(0, admission.getActive());
+    }
+}
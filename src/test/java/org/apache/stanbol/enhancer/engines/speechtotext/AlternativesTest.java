@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.stanbol.enhancer.engines.speechtotext.Alternatives.LatticeEdge;
+import org.apache.stanbol.enhancer.engines.speechtotext.Alternatives.LatticeNode;
+import org.junit.Test;
+
+import edu.cmu.sphinx.result.WordResult;
+
+public class AlternativesTest {
+
+    @Test
+    public void testNbest() {
+        Alternatives alternatives = Alternatives.create(
+            Arrays.asList("<s> hello world </s>", "hello  word", "<s> hello world </s>", "yellow world"),
+            null, null, new Alternatives.Settings(2, false, 0, 0));
+        assertEquals(Arrays.asList("hello world", "hello word"), alternatives.getNbest());
+        assertTrue(alternatives.getNodes().isEmpty());
+    }
+
+    @Test
+    public void testPruning() {
+        List<LatticeNode> nodes = new ArrayList<LatticeNode>();
+        LatticeNode start = new LatticeNode("<s>", 0, 0, -100, true);
+        LatticeNode hello = new LatticeNode("hello", 0, 400, -1, false);
+        LatticeNode yellow = new LatticeNode("yellow", 0, 400, -20, false);
+        LatticeNode world = new LatticeNode("world", 400, 900, -2, false);
+        LatticeNode end = new LatticeNode("</s>", 900, 900, -100, true);
+        nodes.addAll(Arrays.asList(end, yellow, world, start, hello));
+        List<LatticeEdge> edges = Arrays.asList(
+            new LatticeEdge(start, hello, -10, -1),
+            new LatticeEdge(start, yellow, -12, -3),
+            new LatticeEdge(hello, world, -20, -1),
+            new LatticeEdge(yellow, world, -25, -2),
+            new LatticeEdge(world, end, -30, 0));
+        Alternatives alternatives = Alternatives.create(null, nodes, edges, 
+            new Alternatives.Settings(0, true, 4, 2));
+        //the anchors are always kept, yellow has the lowest posterior
+        List<LatticeNode> kept = alternatives.getNodes();
+        assertEquals(4, kept.size());
+        assertEquals(1, alternatives.getPrunedNodes());
+        assertEquals("<s>", kept.get(0).getWord());
+        assertEquals("hello", kept.get(1).getWord());
+        assertEquals("world", kept.get(2).getWord());
+        assertEquals("</s>", kept.get(3).getWord());
+        //3 edges between kept nodes, the one with the lowest score is pruned
+        assertEquals(2, alternatives.getEdges().size());
+        assertEquals(3, alternatives.getPrunedEdges());
+        assertEquals(0, alternatives.getEdges().get(0).getFrom());
+        assertEquals(1, alternatives.getEdges().get(0).getTo());
+        assertEquals(1, alternatives.getEdges().get(1).getFrom());
+        assertEquals(2, alternatives.getEdges().get(1).getTo());
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        LatticeNode start = new LatticeNode("<s>", 0, 0, 0, true);
+        LatticeNode hello = new LatticeNode("hello", 0, 400, -0.5, false);
+        Alternatives alternatives = Alternatives.create(Arrays.asList("hello", "yellow"),
+            Arrays.asList(start, hello), Arrays.asList(new LatticeEdge(start, hello, -10, -1)),
+            new Alternatives.Settings(5, true, 10, 10));
+        Utterance utterance = new Utterance("hello", new ArrayList<WordResult>(), 1000, null, alternatives);
+        StringWriter out = new StringWriter();
+        alternatives.write(out, utterance, 1000, 1400);
+        assertEquals("U\t1000\t1400\thello\n"
+            + "N\thello\nN\tyellow\n"
+            + "L\t2\t1\t0\t0\n"
+            + "V\t0\t1000\t1000\t0.0\t<s>\n"
+            + "V\t1\t1000\t1400\t-0.5\thello\n"
+            + "E\t0\t1\t-10.0\t-1.0\n", out.toString());
+    }
+}
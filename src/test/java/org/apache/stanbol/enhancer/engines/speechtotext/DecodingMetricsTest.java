@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.stanbol.enhancer.engines.speechtotext.DecodingMetrics.Stage;
+import org.junit.Test;
+
+public class DecodingMetricsTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(50));
+        for(int i = 1; i <= 100; i++){
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getMaxNanos());
+        //buckets have an error of at most a factor of two
+        long p50 = histogram.getPercentileMicros(50);
+        assertTrue(p50 >= 50000 && p50 <= 100000);
+        long p99 = histogram.getPercentileMicros(99);
+        assertTrue(p99 >= 99000 && p99 <= 100000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void testRealTimeFactor() {
+        DecodingMetrics metrics = new DecodingMetrics();
+        metrics.recordRealTimeFactor(TimeUnit.SECONDS.toNanos(1), 2000);
+        metrics.recordRealTimeFactor(TimeUnit.SECONDS.toNanos(3), 2000);
+        assertEquals(1.0, metrics.getRealTimeFactor(), 0.0001);
+        assertEquals(1.5, metrics.getLastRealTimeFactor(), 0.0001);
+        assertEquals(1.5, metrics.getMaxRealTimeFactor(), 0.0001);
+        metrics.recordDecode(1000, 16000 * 2);
+        assertEquals(100, metrics.getDecodedFrames());
+        assertEquals(1000, metrics.getDecodedAudioMillis());
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        DecodingMetrics metrics = new DecodingMetrics();
+        metrics.record(Stage.DECODE, 1500);
+        metrics.recordRequest(2000, true);
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName("test:type=DecodingMetrics,name=test");
+        server.registerMBean(metrics, name);
+        assertEquals(1L, server.getAttribute(name, "Requests"));
+        TabularData stages = (TabularData)server.getAttribute(name, "Stages");
+        CompositeData decode = stages.get(new Object[]{Stage.DECODE.name()});
+        assertNotNull(decode);
+        CompositeData statistics = (CompositeData)decode.get("value");
+        assertEquals(1L, statistics.get("count"));
+        metrics.setReady(false);
+        assertEquals(Boolean.FALSE, server.getAttribute(name, "Ready"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "Requests"));
+        assertEquals(Boolean.FALSE, server.getAttribute(name, "Ready"));
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DictionaryCacheTest {
+
+    private static final String DICTIONARY = "hello HH AH L OW\n"
+        + "hello(2) HH EH L OW\n"
+        + "read R IY D\n"
+        + "read(2) R EH D\n"
+        + "world W ER L D\n"
+        + "zebra Z IY B R AH\n";
+
+    private static final String ARPA = "\\data\\\nngram 1=4\n\n\\1-grams:\n"
+        + "-99.0 <s>\n-0.7 </s>\n-0.6 HELLO\n-0.8 world\n\n\\end\\\n";
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("dictcache", "");
+        directory.delete();
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testReduce() throws IOException {
+        File dictionary = new File(directory, "test.dict");
+        FileUtils.writeStringToFile(dictionary, DICTIONARY, "ISO-8859-1");
+        File languageModel = new File(directory, "test.lm");
+        FileUtils.writeStringToFile(languageModel, ARPA, "ISO-8859-1");
+        DictionaryCache cache = new DictionaryCache(new File(directory, "cache"));
+        String location = cache.getLocation(dictionary.getPath(), languageModel.toURI().toString());
+        assertTrue(location.endsWith(DictionaryCache.SUFFIX));
+        assertEquals("hello HH AH L OW\nhello(2) HH EH L OW\nworld W ER L D\n",
+            FileUtils.readFileToString(new File(location), "ISO-8859-1"));
+        //reused after a restart
+        assertEquals(location, new DictionaryCache(new File(directory, "cache"))
+            .getLocation(dictionary.getPath(), languageModel.getPath()));
+    }
+
+    @Test
+    public void testFallback() throws IOException {
+        File dictionary = new File(directory, "test.dict");
+        FileUtils.writeStringToFile(dictionary, DICTIONARY, "ISO-8859-1");
+        File binaryModel = new File(directory, "test.lm.dmp");
+        FileUtils.writeStringToFile(binaryModel, "binary", "ISO-8859-1");
+        DictionaryCache cache = new DictionaryCache(new File(directory, "cache"));
+        assertEquals(dictionary.getPath(), cache.getLocation(dictionary.getPath(), binaryModel.getPath()));
+        assertEquals("resource:/en-cmu.dict", cache.getLocation("resource:/en-cmu.dict", binaryModel.getPath()));
+    }
+
+    @Test
+    public void testWord() {
+        assertEquals("read", DictionaryCache.getWord("READ(2) R EH D"));
+        assertEquals("(paren", DictionaryCache.getWord("(paren P ER EH N"));
+        assertNull(DictionaryCache.getWord(""));
+    }
+}
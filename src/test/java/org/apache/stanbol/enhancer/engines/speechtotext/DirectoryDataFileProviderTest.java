@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirectoryDataFileProviderTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("models", "");
+        directory.delete();
+        assertTrue(new File(directory, "en-us").mkdirs());
+        FileUtils.writeStringToFile(new File(directory, "en-us.lm.bin"), "lm", "UTF-8");
+        FileUtils.writeStringToFile(new File(directory, "en-us/mdef"), "mdef", "UTF-8");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        DirectoryDataFileProvider provider = new DirectoryDataFileProvider(directory);
+        assertTrue(provider.isAvailable(null, "en-us.lm.bin", null));
+        assertTrue(provider.isAvailable(null, "mdef", null));
+        assertFalse(provider.isAvailable(null, "missing.dict", null));
+        assertNull(provider.getInputStream(null, "missing.dict", null));
+        InputStream in = provider.getInputStream(null, "mdef", null);
+        try {
+            assertEquals("mdef", IOUtils.toString(in, "UTF-8"));
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @Test
+    public void testMimeTypes() {
+        assertEquals("audio/wav", BulkTranscriber.getMimeType(new File("a/b.WAV")));
+        assertEquals("audio/flac", BulkTranscriber.getMimeType(new File("b.flac")));
+        assertNull(BulkTranscriber.getMimeType(new File("b.segments.tsv")));
+        assertNull(BulkTranscriber.getMimeType(new File("README")));
+    }
+}
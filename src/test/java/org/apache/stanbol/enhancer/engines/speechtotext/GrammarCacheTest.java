@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GrammarCacheTest {
+
+    private static final String KEYWORDS = "# commands\n"
+        + "Turn On /1e-20/\n"
+        + "turn off\n"
+        + "\n"
+        + "turn on\n"
+        + "<invalid> | keyword\n"
+        + "stanbol\n";
+
+    private static final String GRAMMAR = "#JSGF V1.0;\n\ngrammar digits;\n\n"
+        + "public <digits> = ( one | two | three )+;\n";
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("grammarcache", "");
+        directory.delete();
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testCompileKeywords() throws IOException {
+        assertEquals("#JSGF V1.0 UTF-8;\n\ngrammar keywords;\n\n"
+            + "//keyword turn on /1e-20/\n//keyword turn off\n//keyword stanbol\n"
+            + "public <keywords> = (\n"
+            + "      turn on\n    | turn off\n    | stanbol\n    )+;\n",
+            GrammarCache.compileKeywords(new BufferedReader(new StringReader(KEYWORDS))));
+        assertNull(GrammarCache.compileKeywords(new BufferedReader(new StringReader("# empty\n\n"))));
+    }
+
+    @Test
+    public void testStoreKeywords() throws IOException {
+        GrammarCache cache = new GrammarCache(new File(directory, "cache"));
+        File grammar = cache.storeKeywords("keywords.txt", new ByteArrayInputStream(KEYWORDS.getBytes("UTF-8")));
+        assertEquals("keywords.gram", grammar.getName());
+        assertEquals("keywords", GrammarCache.getGrammarName(grammar));
+        //the same list is stored at the same location
+        assertEquals(grammar, cache.storeKeywords("other.txt", 
+            new ByteArrayInputStream(KEYWORDS.getBytes("UTF-8"))));
+        File changed = cache.storeKeywords("keywords.txt", 
+            new ByteArrayInputStream("stanbol\n".getBytes("UTF-8")));
+        assertFalse(grammar.getParentFile().equals(changed.getParentFile()));
+        assertTrue(grammar.isFile()); //still available for running requests
+    }
+
+    @Test(expected=IOException.class)
+    public void testEmptyKeywords() throws IOException {
+        new GrammarCache(directory).storeKeywords("empty.txt", new ByteArrayInputStream(new byte[0]));
+    }
+
+    @Test
+    public void testStoreGrammar() throws IOException {
+        GrammarCache cache = new GrammarCache(new File(directory, "cache"));
+        File grammar = cache.storeGrammar("grammars/digits.gram", 
+            new ByteArrayInputStream(GRAMMAR.getBytes("UTF-8")));
+        assertEquals("digits.gram", grammar.getName());
+        assertEquals("digits", GrammarCache.getGrammarName(grammar));
+        assertEquals(GRAMMAR, FileUtils.readFileToString(grammar, "UTF-8"));
+        assertEquals(1, grammar.getParentFile().getParentFile().list().length);
+    }
+
+    @Test(expected=IOException.class)
+    public void testInvalidGrammarName() throws IOException {
+        new GrammarCache(directory).storeGrammar("digits.txt", 
+            new ByteArrayInputStream(GRAMMAR.getBytes("UTF-8")));
+    }
+}
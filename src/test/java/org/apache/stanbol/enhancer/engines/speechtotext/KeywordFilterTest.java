@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.TimeFrame;
+
+public class KeywordFilterTest {
+
+    private static final String KEYWORDS = "turn on /0.3/\n"
+        + "turn off\n"
+        + "stanbol /1e-20/\n";
+
+    private File directory;
+    private KeywordFilter filter;
+
+    @Before
+    public void loadFilter() throws IOException {
+        directory = File.createTempFile("keywordfilter", "");
+        directory.delete();
+        assertTrue(directory.mkdirs());
+        File grammar = new GrammarCache(directory).storeKeywords("keywords.txt", 
+            new ByteArrayInputStream(KEYWORDS.getBytes("UTF-8")));
+        filter = KeywordFilter.load(grammar, 0.5);
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static WordResult word(String spelling, long start, double posterior) {
+        LogMath logMath = LogMath.getLogMath();
+        return new WordResult(new Word(spelling, null, false), new TimeFrame(start, start + 300),
+            logMath.linearToLog(0.001), logMath.linearToLog(posterior));
+    }
+
+    private static Utterance utterance(String hypothesis, WordResult...words) {
+        return new Utterance(hypothesis, Arrays.asList(words), 0, null, null);
+    }
+
+    @Test
+    public void testAccepted() {
+        Utterance utterance = utterance("turn on stanbol", 
+            word("turn", 0, 0.7), word("on", 300, 0.6), word("stanbol", 600, 0.01));
+        assertSame(utterance, filter.filter(utterance));
+    }
+
+    @Test
+    public void testRejected() {
+        //0.5 * 0.5 is below the threshold of 0.3 of 'turn on'
+        assertNull(filter.filter(utterance("turn on", word("turn", 0, 0.5), word("on", 300, 0.5))));
+        //the default threshold applies to keywords without one
+        assertNull(filter.filter(utterance("turn off", word("turn", 0, 0.9), word("off", 300, 0.5))));
+    }
+
+    @Test
+    public void testPartiallyAccepted() {
+        Utterance filtered = filter.filter(utterance("turn off stanbol", 
+            word("turn", 0, 0.9), word("off", 300, 0.4), word("stanbol", 600, 0.1)));
+        assertEquals("stanbol", filtered.getHypothesis());
+        assertEquals(1, filtered.getWords().size());
+        assertEquals(600, filtered.getStart());
+    }
+}
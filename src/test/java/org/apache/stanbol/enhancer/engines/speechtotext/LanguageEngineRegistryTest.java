@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.stanbol.commons.sphinx.AcousticModel;
+import org.apache.stanbol.commons.sphinx.DictionaryModel;
+import org.apache.stanbol.commons.sphinx.LanguageModel;
+import org.apache.stanbol.commons.sphinx.ModelProvider;
+import org.apache.stanbol.enhancer.engines.speechtotext.LanguageEngineRegistry.LanguageEngine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the model generations of the {@link LanguageEngineRegistry} without
+ * loading recognizers. Models are resolved by a {@link SphinxConfig} that
+ * returns the models set by the test and records released models. 
+ */
+public class LanguageEngineRegistryTest {
+
+    private File directory;
+    private TestConfig config;
+    private TestPool pool;
+    private LanguageEngineRegistry registry;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("engineregistry", "");
+        directory.delete();
+        assertTrue(directory.mkdirs());
+        config = new TestConfig();
+        pool = new TestPool();
+        registry = new LanguageEngineRegistry(pool, 0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        registry.close();
+        pool.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testInFlightRequestCompletesOnOldGeneration() throws IOException {
+        ModelSnapshot old = createModels("old", "hello");
+        config.next = old;
+        LanguageEngine inFlight = registry.getEngine(config, null, "en");
+        assertSame(old, inFlight.getModels());
+
+        ModelSnapshot current = createModels("new", "world");
+        config.replaceModelSnapshot("en", current);
+        registry.retire(old);
+        LanguageEngine started = registry.getEngine(config, null, "en");
+        assertSame(current, started.getModels());
+        assertTrue(started.getGeneration() > inFlight.getGeneration());
+        //the request started before the swap still uses the old models
+        assertSame(old, inFlight.getModels());
+        assertTrue(config.released.isEmpty());
+        assertTrue(pool.evicted.isEmpty());
+
+        registry.release(inFlight);
+        assertEquals(Arrays.asList(old), config.released);
+        assertEquals(1, pool.evicted.size());
+        registry.release(started);
+        assertEquals(Arrays.asList(old), config.released);
+        assertEquals(1, pool.evicted.size());
+    }
+
+    @Test
+    public void testDrainedGenerationReleasedAfterLastRelease() throws IOException {
+        ModelSnapshot old = createModels("old", "hello");
+        config.next = old;
+        LanguageEngine first = registry.getEngine(config, null, "en");
+        LanguageEngine second = registry.getEngine(config, null, "en");
+        assertEquals(first.getGeneration(), second.getGeneration());
+
+        config.replaceModelSnapshot("en", createModels("new", "world"));
+        registry.retire(old);
+        registry.release(first);
+        assertTrue(config.released.isEmpty());
+        assertTrue(pool.evicted.isEmpty());
+        registry.release(second);
+        assertEquals(Arrays.asList(old), config.released);
+        assertEquals(1, pool.evicted.size());
+    }
+
+    @Test
+    public void testSharedPoolKeyNotEvictedWhileInUse() throws IOException {
+        //identical content at different locations: different generations
+        //sharing the same recognizers
+        ModelSnapshot english = createModels("en", "hello");
+        ModelSnapshot copy = createModels("copy", "hello");
+        assertEquals(english.getIdentity(), copy.getIdentity());
+        config.next = english;
+        LanguageEngine first = registry.getEngine(config, null, "en");
+        config.next = copy;
+        LanguageEngine second = registry.getEngine(config, null, "de");
+        assertNotSame(first.getModels(), second.getModels());
+
+        registry.retire(english);
+        registry.release(first);
+        assertEquals(Arrays.asList(english), config.released);
+        assertTrue(pool.evicted.isEmpty());
+
+        registry.retire(copy);
+        assertTrue(pool.evicted.isEmpty());
+        registry.release(second);
+        assertEquals(Arrays.asList(english, copy), config.released);
+        assertEquals(1, pool.evicted.size());
+    }
+
+    private ModelSnapshot createModels(String name, String content) throws IOException {
+        File models = new File(directory, name);
+        final File acoustic = new File(models, "acoustic");
+        FileUtils.writeStringToFile(new File(acoustic, "mdef"), content, "UTF-8");
+        final File dictionary = new File(models, "words.dict");
+        FileUtils.writeStringToFile(dictionary, content + " HH AH L OW\n", "UTF-8");
+        final File languageModel = new File(models, "words.lm");
+        FileUtils.writeStringToFile(languageModel, content, "UTF-8");
+        return new ModelSnapshot(new AcousticModel(){
+            @Override
+            public String toString() {
+                return acoustic.getAbsolutePath();
+            }
+        }, new DictionaryModel(){
+            @Override
+            public String toString() {
+                return dictionary.getAbsolutePath();
+            }
+        }, new LanguageModel(){
+            @Override
+            public String toString() {
+                return languageModel.getAbsolutePath();
+            }
+        });
+    }
+
+    private static class TestConfig extends SphinxConfig {
+
+        private volatile ModelSnapshot next;
+        private final List<ModelSnapshot> released = new ArrayList<ModelSnapshot>();
+
+        @Override
+        protected synchronized ModelSnapshot resolveModels(ModelProvider MPi, String language) {
+            return next;
+        }
+
+        @Override
+        protected synchronized void releaseModels(ModelSnapshot models) {
+            released.add(models);
+        }
+    }
+
+    private static class TestPool extends RecognizerPool {
+
+        private final List<String> evicted = new ArrayList<String>();
+
+        TestPool() {
+            super(1, 0);
+        }
+
+        @Override
+        public void evict(String modelSetKey) {
+            evicted.add(modelSetKey);
+            super.evict(modelSetKey);
+        }
+    }
+}
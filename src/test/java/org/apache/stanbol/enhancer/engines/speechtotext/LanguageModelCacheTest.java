@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LanguageModelCacheTest {
+
+    /**
+     * n-grams are intentionally not sorted by word id
+     */
+    private static final String ARPA = "\\data\\\n"
+        + "ngram 1=4\n"
+        + "ngram 2=4\n"
+        + "ngram 3=3\n"
+        + "\n"
+        + "\\1-grams:\n"
+        + "-99.0 <s> -0.30\n"
+        + "-0.70 </s>\n"
+        + "-0.60 hello -0.20\n"
+        + "-0.80 world -0.10\n"
+        + "\n"
+        + "\\2-grams:\n"
+        + "-0.40 hello world -0.05\n"
+        + "-0.20 <s> hello -0.10\n"
+        + "-0.30 world </s>\n"
+        + "-0.90 <s> world\n"
+        + "\n"
+        + "\\3-grams:\n"
+        + "-0.25 hello world </s>\n"
+        + "-0.15 <s> hello world\n"
+        + "-0.35 <s> world </s>\n"
+        + "\n"
+        + "\\end\\\n";
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("lmcache", "");
+        directory.delete();
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testCompile() throws IOException {
+        File arpa = new File(directory, "test.lm");
+        FileUtils.writeStringToFile(arpa, ARPA, "ISO-8859-1");
+        LanguageModelCache cache = new LanguageModelCache(new File(directory, "cache"));
+        String location = cache.getLocation(arpa.getPath());
+        assertTrue(location.endsWith(LanguageModelCache.COMPILED_SUFFIX));
+        assertEquals(location, cache.getLocation(arpa.toURI().toString()));
+        //compiled models are found by the checksum after a restart
+        File copy = new File(directory, "copy.lm");
+        FileUtils.copyFile(arpa, copy);
+        assertEquals(location, new LanguageModelCache(new File(directory, "cache"))
+            .getLocation(copy.getPath()));
+        assertEquals(1, new File(directory, "cache").list().length);
+
+        DataInputStream in = new DataInputStream(new FileInputStream(location));
+        try {
+            assertEquals(ArpaToDmpConverter.HEADER, readString(in));
+            assertEquals("test.lm", readString(in));
+            assertEquals(4, in.readInt());
+            assertEquals(4, in.readInt());
+            assertEquals(3, in.readInt());
+            int[] firstBigram = new int[5];
+            float[] unigramProbs = new float[5];
+            for(int i = 0; i < 5; i++){
+                assertEquals(i, in.readInt());
+                unigramProbs[i] = in.readFloat();
+                in.readFloat();
+                firstBigram[i] = in.readInt();
+            }
+            assertEquals(-0.6f, unigramProbs[2], 0f);
+            //<s>: 2 bigrams, </s>: none, hello: 1, world: 1 and the sentinel
+            assertArrayEquals(new int[]{0, 2, 2, 3, 4}, firstBigram);
+            int[] second = new int[5];
+            int[] probIndexes = new int[5];
+            int[] firstTrigram = new int[5];
+            for(int i = 0; i < 5; i++){
+                second[i] = in.readUnsignedShort();
+                probIndexes[i] = in.readUnsignedShort();
+                in.readUnsignedShort();
+                firstTrigram[i] = in.readUnsignedShort();
+            }
+            //sorted by word id: <s> hello, <s> world, hello world, world </s>
+            assertArrayEquals(new int[]{2, 3, 3, 1}, new int[]{second[0], second[1], second[2], second[3]});
+            assertArrayEquals(new int[]{0, 1, 2, 3, 3}, firstTrigram);
+            int[] third = new int[3];
+            int[] trigramProbIndexes = new int[3];
+            for(int i = 0; i < 3; i++){
+                third[i] = in.readUnsignedShort();
+                trigramProbIndexes[i] = in.readUnsignedShort();
+            }
+            assertArrayEquals(new int[]{3, 1, 1}, third);
+            float[] bigramProbs = readTable(in);
+            assertEquals(-0.2f, bigramProbs[probIndexes[0]], 0f);
+            assertEquals(-0.3f, bigramProbs[probIndexes[3]], 0f);
+            readTable(in); //bigram back-off weights
+            float[] trigramProbs = readTable(in);
+            assertEquals(-0.15f, trigramProbs[trigramProbIndexes[0]], 0f);
+            assertEquals(-0.35f, trigramProbs[trigramProbIndexes[1]], 0f);
+            assertEquals(1, in.readInt()); //segments
+            assertEquals(0, in.readInt());
+            byte[] words = new byte[in.readInt()];
+            in.readFully(words);
+            assertEquals("<s>\0</s>\0hello\0world\0", new String(words, "ISO-8859-1"));
+            assertEquals(-1, in.read());
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @Test
+    public void testFallback() throws IOException {
+        LanguageModelCache cache = new LanguageModelCache(new File(directory, "cache"));
+        File bigramModel = new File(directory, "bigram.lm");
+        FileUtils.writeStringToFile(bigramModel, "\\data\\\nngram 1=1\nngram 2=1\n\n"
+            + "\\1-grams:\n-1.0 a\n\n\\2-grams:\n-1.0 a a\n\n\\end\\\n", "ISO-8859-1");
+        assertEquals(bigramModel.getPath(), cache.getLocation(bigramModel.getPath()));
+        File dmp = new File(directory, "model.lm.dmp");
+        FileUtils.writeStringToFile(dmp, "binary", "ISO-8859-1");
+        assertEquals(dmp.getPath(), cache.getLocation(dmp.getPath()));
+        assertEquals("resource:/en-us.lm", cache.getLocation("resource:/en-us.lm"));
+        assertFalse(new File(directory, "cache").list().length > 0);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        assertEquals(0, bytes[bytes.length - 1]);
+        return new String(bytes, 0, bytes.length - 1, "ISO-8859-1");
+    }
+
+    private static float[] readTable(DataInputStream in) throws IOException {
+        float[] table = new float[in.readInt()];
+        for(int i = 0; i < table.length; i++){
+            table[i] = in.readFloat();
+        }
+        return table;
+    }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModelIdentityTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("modelidentity", "");
+        directory.delete();
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testSameContent() throws IOException {
+        File first = new File(directory, "first.dict");
+        File second = new File(new File(directory, "custom"), "second.dict");
+        FileUtils.writeStringToFile(first, "hello HH AH L OW\n", "ISO-8859-1");
+        FileUtils.writeStringToFile(second, "hello HH AH L OW\n", "ISO-8859-1");
+        String identity = ModelIdentity.getIdentity(first.getPath());
+        assertTrue(identity.startsWith("sha1:"));
+        assertEquals(identity, ModelIdentity.getIdentity(second.toURI().toString()));
+        FileUtils.writeStringToFile(second, "world W ER L D\n", "ISO-8859-1");
+        assertFalse(identity.equals(ModelIdentity.getIdentity(second.getPath())));
+    }
+
+    @Test
+    public void testDirectory() throws IOException {
+        File first = new File(directory, "en-us");
+        File second = new File(directory, "en-us-copy");
+        for(File model : new File[]{first, second}){
+            FileUtils.writeStringToFile(new File(model, "mdef"), "mdef", "ISO-8859-1");
+            FileUtils.writeStringToFile(new File(model, "means"), "means", "ISO-8859-1");
+        }
+        assertEquals(ModelIdentity.getIdentity(first.getPath()),
+            ModelIdentity.getIdentity(second.getPath()));
+    }
+
+    @Test
+    public void testReplacedInPlace() throws IOException {
+        File dictionary = new File(directory, "test.dict");
+        FileUtils.writeStringToFile(dictionary, "hello HH AH L OW\n", "ISO-8859-1");
+        String identity = ModelIdentity.of(dictionary.getPath(), null, "resource:/en-us");
+        assertTrue(identity.endsWith("|resource:/en-us"));
+        FileUtils.writeStringToFile(dictionary, "world W ER L D\n", "ISO-8859-1");
+        dictionary.setLastModified(dictionary.lastModified() + 2000);
+        assertFalse(identity.equals(ModelIdentity.of(dictionary.getPath(), null, "resource:/en-us")));
+    }
+
+    @Test
+    public void testBoundedChecksums() throws IOException {
+        File dictionary = new File(directory, "test.dict");
+        FileUtils.writeStringToFile(dictionary, "hello HH AH L OW\n", "ISO-8859-1");
+        ModelIdentity.getIdentity(dictionary.getPath());
+        int count = ModelIdentity.getChecksumCount();
+        for(int i = 0; i < 3; i++){
+            FileUtils.writeStringToFile(dictionary, "hello HH AH L OW\n" + i, "ISO-8859-1");
+            ModelIdentity.getIdentity(dictionary.getPath());
+        }
+        assertEquals(count, ModelIdentity.getChecksumCount()); //one per path
+        for(int i = 0; i <= ModelIdentity.MAX_CHECKSUMS; i++){
+            File model = new File(directory, "model" + i + ".dict");
+            FileUtils.writeStringToFile(model, "hello HH AH L OW\n", "ISO-8859-1");
+            ModelIdentity.getIdentity(model.getPath());
+        }
+        assertEquals(ModelIdentity.MAX_CHECKSUMS, ModelIdentity.getChecksumCount());
+    }
+
+    @Test
+    public void testResource() {
+        assertEquals("resource:/en-cmu.dict", ModelIdentity.getIdentity("resource:/en-cmu.dict"));
+    }
+}
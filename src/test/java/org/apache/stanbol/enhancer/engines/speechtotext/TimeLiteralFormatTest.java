@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Locale;
+
+import org.apache.clerezza.rdf.core.TypedLiteral;
+import org.apache.clerezza.rdf.ontologies.XSD;
+import org.junit.Test;
+
+public class TimeLiteralFormatTest {
+
+    @Test
+    public void testDuration() {
+        assertEquals("PT0S", TimeLiteralFormat.toDuration(0));
+        assertEquals("PT0.5S", TimeLiteralFormat.toDuration(500));
+        assertEquals("PT0.007S", TimeLiteralFormat.toDuration(7));
+        assertEquals("PT1M", TimeLiteralFormat.toDuration(60000));
+        assertEquals("PT1H2M3.45S", TimeLiteralFormat.toDuration(3723450));
+        //no wrapping after 24 hours
+        assertEquals("PT25H", TimeLiteralFormat.toDuration(25 * 3600000L));
+    }
+
+    @Test
+    public void testLegacy() {
+        for(long time : new long[]{0, 7, 999, 61001, 3723450, 23 * 3600000L + 59999}){
+            assertEquals(legacyFormat(time), TimeLiteralFormat.toLegacy(time));
+        }
+        assertEquals("25:00:00:0", TimeLiteralFormat.toLegacy(25 * 3600000L));
+    }
+
+    @Test
+    public void testLiterals() {
+        TypedLiteral literal = TimeLiteralFormat.DURATION.createLiteral(1500);
+        assertEquals(TimeLiteralFormat.XSD_DURATION, literal.getDataType());
+        assertEquals("PT1.5S", literal.getLexicalForm());
+        literal = TimeLiteralFormat.MILLISECONDS.createLiteral(1500);
+        assertEquals(XSD.long_, literal.getDataType());
+        assertEquals("1500", literal.getLexicalForm());
+        assertEquals(TimeLiteralFormat.LEGACY, TimeLiteralFormat.parse(" legacy"));
+    }
+
+    @Test
+    public void testParseTurkishLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals(TimeLiteralFormat.MILLISECONDS, TimeLiteralFormat.parse("milliseconds"));
+            assertEquals(Granularity.PHRASE, Granularity.parse("phrase"));
+            assertEquals(RecognitionMode.LARGE_VOCABULARY, RecognitionMode.parse("large-vocabulary"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    /**
+     * The format used by earlier versions of the engine
+     */
+    private static String legacyFormat(long time) {
+        return String.format("%02d:%02d:%02d:%d", (time / 3600000) % 24, 
+            (time / 60000) % 60, (time / 1000) % 60, time % 1000);
+    }
+}
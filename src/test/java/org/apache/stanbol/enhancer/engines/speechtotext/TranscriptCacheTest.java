@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.stanbol.enhancer.engines.speechtotext.TranscriptCache.Transcript;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TranscriptCacheTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("transcripts", "");
+        directory.delete();
+    }
+
+    @After
+    public void deleteDirectory() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testKey() {
+        byte[] content = TranscriptCache.createDigest().digest(new byte[]{1,2,3});
+        String key = TranscriptCache.createKey(content, "models", "options");
+        assertEquals(40, key.length());
+        assertEquals(key, TranscriptCache.createKey(content.clone(), "models", "options"));
+        assertFalse(key.equals(TranscriptCache.createKey(content, "other", "options")));
+        assertFalse(key.equals(TranscriptCache.createKey(content, "models", "other")));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        TranscriptCache cache = new TranscriptCache(2 * transcript("a").getSize(), null);
+        cache.put("a", transcript("a"));
+        cache.put("b", transcript("b"));
+        assertNotNull(cache.get("a")); //b is now the least recently used
+        cache.put("c", transcript("c"));
+        assertEquals(2, cache.size());
+        assertEquals(2 * transcript("a").getSize(), cache.getMemoryBytes());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getDiskHits());
+    }
+
+    @Test
+    public void testSizeBoundEviction() throws IOException {
+        Transcript large = new Transcript();
+        for(int i = 0; i < 10; i++){
+            large.add(i * 1000, i * 1000 + 900, "some longer utterance number "+i);
+        }
+        TranscriptCache cache = new TranscriptCache(large.getSize() + transcript("a").getSize(), null);
+        cache.put("a", transcript("a"));
+        cache.put("b", transcript("b"));
+        cache.put("c", transcript("c"));
+        assertEquals(3, cache.size());
+        cache.put("large", large); //evicts the two least recently used
+        assertEquals(2, cache.size());
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(large.getSize() + transcript("c").getSize(), cache.getMemoryBytes());
+        //transcripts larger as the memory tier are not kept in memory
+        Transcript tooLarge = new Transcript();
+        tooLarge.add(0, 1000, large.getEntries().get(0).getText());
+        cache = new TranscriptCache(transcript("a").getSize(), null);
+        cache.put("tooLarge", tooLarge);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemoryBytes());
+    }
+
+    @Test
+    public void testDiskTier() throws IOException {
+        TranscriptCache cache = new TranscriptCache(transcript("b").getSize(), directory);
+        Transcript transcript = new Transcript();
+        transcript.add(120, 1830, "one zero zero zero one");
+        transcript.add(2000, 3723450, "nine ö two");
+        cache.put("a", transcript);
+        cache.put("b", transcript("b")); //a only fits on disk
+
+        //a new cache instance (e.g. after a restart) reads from the disk tier
+        cache = new TranscriptCache(1024, directory);
+        Transcript read = cache.get("a");
+        assertNotNull(read);
+        assertEquals(2, read.getEntries().size());
+        for(int i = 0; i < 2; i++){
+            Transcript.Entry expected = transcript.getEntries().get(i);
+            Transcript.Entry entry = read.getEntries().get(i);
+            assertEquals(expected.getStart(), entry.getStart());
+            assertEquals(expected.getEnd(), entry.getEnd());
+            assertEquals(expected.getText(), entry.getText());
+        }
+        assertNotNull(cache.get("a")); //now from memory
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getDiskHits());
+
+        cache.clear();
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getMisses());
+    }
+
+    private static Transcript transcript(String text) {
+        Transcript transcript = new Transcript();
+        transcript.add(0, 1000, text);
+        return transcript;
+    }
+}
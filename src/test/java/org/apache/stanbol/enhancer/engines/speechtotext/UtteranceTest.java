@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.stanbol.enhancer.engines.speechtotext.Utterance.Phrase;
+import org.junit.Test;
+
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.TimeFrame;
+
+public class UtteranceTest {
+
+    private static WordResult word(String spelling, long start, long end, double posterior) {
+        //Sphinx reports scores and posteriors in the log domain
+        LogMath logMath = LogMath.getLogMath();
+        return new WordResult(new Word(spelling, null, false), new TimeFrame(start, end),
+            logMath.linearToLog(0.001), logMath.linearToLog(posterior));
+    }
+
+    @Test
+    public void testConfidence() {
+        assertEquals(0.8, Utterance.getConfidence(word("hello", 0, 100, 0.8)), 0.001);
+        assertEquals(1, Utterance.getConfidence(word("hello", 0, 100, 1)), 0.001);
+        //a realistic log posterior of about -6931 (0.5 in the linear domain)
+        assertEquals(0.5, Utterance.getConfidence(word("hello", 0, 100, 0.5)), 0.001);
+    }
+
+    @Test
+    public void testPhraseConfidence() {
+        List<WordResult> words = Arrays.asList(word("hello", 0, 400, 0.9), 
+            word("world", 400, 900, 0.5), word("again", 1500, 2000, 0.2));
+        Utterance utterance = new Utterance("hello world again", words, 1000, null, null);
+        List<Phrase> phrases = utterance.getPhrases(Granularity.PHRASE_PAUSE);
+        assertEquals(2, phrases.size());
+        assertEquals("hello world", phrases.get(0).getText());
+        assertEquals(1000, phrases.get(0).getStart());
+        assertEquals(0.7, phrases.get(0).getConfidence(), 0.001);
+        assertEquals("again", phrases.get(1).getText());
+        assertEquals(0.2, phrases.get(1).getConfidence(), 0.001);
+    }
+}
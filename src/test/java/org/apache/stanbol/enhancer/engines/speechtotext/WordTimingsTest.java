@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class WordTimingsTest {
+
+    private static final String[] WORDS = {"one", "zero", "zero", "nine", "oh", "two"};
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WordTimingsWriter writer = new WordTimingsWriter(out);
+        int count = WordTimingsWriter.BLOCK_SIZE * 2 + 10; //spans three blocks
+        for(int i = 0; i < count; i++){
+            //the times of every 100th word go back (e.g. overlapping segments)
+            long start = i % 100 == 99 ? i * 500L - 700 : i * 500L;
+            writer.add(WORDS[i % WORDS.length], start, start + 300 + i % 7, (i % 11) / 10d);
+        }
+        writer.finish();
+        assertEquals(count, writer.getCount());
+        //far less as a single triple per word
+        assertTrue(out.size() < count * 8);
+
+        WordTimingsReader reader = new WordTimingsReader(new ByteArrayInputStream(out.toByteArray()));
+        for(int i = 0; i < count; i++){
+            assertTrue(reader.next());
+            long start = i % 100 == 99 ? i * 500L - 700 : i * 500L;
+            assertEquals(WORDS[i % WORDS.length], reader.getWord());
+            assertEquals(start, reader.getStart());
+            assertEquals(start + 300 + i % 7, reader.getEnd());
+            assertEquals(Math.min(1, (i % 11) / 10d), reader.getConfidence(), 0.5 / 255);
+        }
+        assertFalse(reader.next());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new WordTimingsWriter(out).finish();
+        assertEquals(8, out.size());
+        assertFalse(new WordTimingsReader(new ByteArrayInputStream(out.toByteArray())).next());
+    }
+
+    @Test(expected=IOException.class)
+    public void testUnknownFormat() throws IOException {
+        new WordTimingsReader(new ByteArrayInputStream(new byte[]{0, 0, 0, 0}));
+    }
+}
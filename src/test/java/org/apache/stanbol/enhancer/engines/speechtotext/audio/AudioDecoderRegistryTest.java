@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class AudioDecoderRegistryTest {
+
+    private final AudioDecoderRegistry registry = AudioDecoderRegistry.createDefault();
+
+    @Test
+    public void testMimeTypes() {
+        assertTrue(registry.isSupported("audio/wav"));
+        assertTrue(registry.isSupported("audio/x-wav"));
+        assertTrue(registry.isSupported("audio/wave"));
+        assertTrue(registry.isSupported("audio/L16; rate=8000"));
+        assertTrue(registry.isSupported("audio/FLAC"));
+        assertTrue(registry.isSupported("audio/PCMU"));
+        assertTrue(!registry.isSupported("text/plain"));
+        assertTrue(!registry.isSupported(null));
+    }
+
+    @Test
+    public void testSniffing() {
+        byte[] riff = "RIFF\0\0\0\0WAVEfmt ".getBytes();
+        assertTrue(registry.getDecoder(null, null, riff, riff.length) instanceof WavDecoder);
+        byte[] flac = "fLaC\0\0\0\0".getBytes();
+        assertTrue(registry.getDecoder("application/octet-stream", null, flac, flac.length) instanceof FlacDecoder);
+        byte[] au = ".snd\0\0\0\u0018".getBytes();
+        assertTrue(registry.getDecoder(null, null, au, au.length) instanceof G711Decoder);
+        byte[] unknown = new byte[16];
+        //WAVE MIME type without RIFF header is parsed as is
+        assertNull(registry.getDecoder("audio/wav", null, unknown, unknown.length));
+        assertTrue(registry.getDecoder("audio/l16", null, unknown, unknown.length) instanceof RawPcmDecoder);
+    }
+
+    @Test
+    public void testFlac() throws IOException {
+        byte[] expected = readWavData("temp.wav");
+        InputStream in = new BufferedInputStream(getClass().getClassLoader().getResourceAsStream("temp.flac"));
+        try {
+            DecodedAudio audio = registry.decode(in, "audio/flac", null);
+            assertNotNull(audio);
+            assertTrue(audio.getFormat().isSphinxCompatible());
+            assertEquals(expected.length, audio.getFormat().getDataLength());
+            //FLAC is lossless
+            assertArrayEquals(expected, IOUtils.toByteArray(audio.getStream()));
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @Test
+    public void testG711() throws IOException {
+        assertEquals(0, G711Decoder.expandULaw((byte)0xFF));
+        assertEquals(-32124, G711Decoder.expandULaw((byte)0x00));
+        assertEquals(32124, G711Decoder.expandULaw((byte)0x80));
+        assertEquals(8, G711Decoder.expandALaw((byte)0xD5));
+        assertEquals(-8, G711Decoder.expandALaw((byte)0x55));
+        assertEquals(32256, G711Decoder.expandALaw((byte)0xAA));
+        byte[] codes = new byte[]{(byte)0x00, (byte)0x80, (byte)0xFF};
+        DecodedAudio audio = registry.decode(new BufferedInputStream(new ByteArrayInputStream(codes)),
+            "audio/PCMU", Collections.singletonMap("rate", "8000"));
+        assertEquals(8000, audio.getFormat().getSampleRate());
+        assertEquals(16, audio.getFormat().getBitsPerSample());
+        assertArrayEquals(new byte[]{(byte)0x84, (byte)0x82, (byte)0x7C, (byte)0x7D, 0, 0},
+            IOUtils.toByteArray(audio.getStream()));
+    }
+
+    @Test
+    public void testL16() throws IOException {
+        byte[] bigEndian = new byte[]{0x12, 0x34, (byte)0xAB, (byte)0xCD, 0x01};
+        DecodedAudio audio = registry.decode(new BufferedInputStream(new ByteArrayInputStream(bigEndian)),
+            "audio/L16", Collections.singletonMap("rate", "44100"));
+        assertEquals(44100, audio.getFormat().getSampleRate());
+        //the incomplete sample at the end is ignored
+        assertArrayEquals(new byte[]{0x34, 0x12, (byte)0xCD, (byte)0xAB}, 
+            IOUtils.toByteArray(audio.getStream()));
+    }
+
+    private byte[] readWavData(String resource) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(resource);
+        try {
+            WavHeader.parse(in);
+            return IOUtils.toByteArray(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class AudioNormalizerTest {
+
+    private static final double FREQUENCY = 440;
+    private static final double AMPLITUDE = 0.5;
+
+    @Test
+    public void testStereo48kHz() throws IOException {
+        assertNormalized(WavHeader.FORMAT_PCM, 48000, 2, 16, false);
+    }
+
+    @Test
+    public void testMono44kHz24bit() throws IOException {
+        assertNormalized(WavHeader.FORMAT_PCM, 44100, 1, 24, false);
+    }
+
+    @Test
+    public void testUnsigned8kHz8bit() throws IOException {
+        assertNormalized(WavHeader.FORMAT_PCM, 8000, 1, 8, false);
+    }
+
+    @Test
+    public void testExtensibleFloat22kHz() throws IOException {
+        assertNormalized(WavHeader.FORMAT_IEEE_FLOAT, 22050, 2, 32, true);
+    }
+
+    @Test
+    public void testPcm32bit16kHz() throws IOException {
+        assertNormalized(WavHeader.FORMAT_PCM, 16000, 2, 32, false);
+    }
+
+    /**
+     * Converts one second of a sine wave and checks length, frequency and
+     * amplitude of the converted signal
+     */
+    private void assertNormalized(int format, int rate, int channels, int bits, 
+            boolean extensible) throws IOException {
+        InputStream in = new ByteArrayInputStream(wave(format, rate, channels, bits, extensible));
+        WavHeader header = WavHeader.parse(in);
+        assertEquals(format, header.getFormatTag());
+        assertTrue(AudioNormalizer.isSupported(header));
+        AudioNormalizer normalizer = new AudioNormalizer(in, header);
+        assertTrue(normalizer.getOutputHeader().isSphinxCompatible());
+        byte[] pcm = IOUtils.toByteArray(normalizer);
+        int samples = pcm.length / 2;
+        assertTrue("samples: "+samples, Math.abs(samples - 16000) <= 16);
+        int crossings = 0;
+        double sum = 0;
+        int last = 0;
+        //ignore the edges of the signal
+        for(int i = 800; i < samples - 800; i++){
+            int sample = (short)((pcm[2*i] & 0xff) | (pcm[2*i+1] << 8));
+            if(i > 800 && (sample ^ last) < 0){
+                crossings++;
+            }
+            sum += (double)sample * sample;
+            last = sample;
+        }
+        //0.9 seconds of a 440 Hz sine
+        assertEquals(2 * FREQUENCY * 0.9, crossings, 2);
+        double rms = Math.sqrt(sum / (samples - 1600)) / 32767;
+        assertEquals(AMPLITUDE / Math.sqrt(2), rms, 0.02);
+    }
+
+    private static byte[] wave(int format, int rate, int channels, int bits, 
+            boolean extensible) throws IOException {
+        int bytes = bits / 8;
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for(int i = 0; i < rate; i++){
+            double value = AMPLITUDE * Math.sin(2 * Math.PI * FREQUENCY * i / rate);
+            for(int c = 0; c < channels; c++){
+                long sample;
+                if(format == WavHeader.FORMAT_IEEE_FLOAT){
+                    sample = Float.floatToIntBits((float)value);
+                } else if(bits == 8){
+                    sample = Math.round(value * 127) + 128;
+                } else {
+                    sample = Math.round(value * ((1L << (bits - 1)) - 1));
+                }
+                write(data, sample, bytes);
+            }
+        }
+        ByteArrayOutputStream wave = new ByteArrayOutputStream();
+        int fmtSize = extensible ? 40 : 16;
+        wave.write("RIFF".getBytes("US-ASCII"));
+        write(wave, 4 + 8 + fmtSize + 8 + data.size(), 4);
+        wave.write("WAVE".getBytes("US-ASCII"));
+        wave.write("fmt ".getBytes("US-ASCII"));
+        write(wave, fmtSize, 4);
+        write(wave, extensible ? WavHeader.FORMAT_EXTENSIBLE : format, 2);
+        write(wave, channels, 2);
+        write(wave, rate, 4);
+        write(wave, rate * channels * bytes, 4);
+        write(wave, channels * bytes, 2);
+        write(wave, bits, 2);
+        if(extensible){
+            write(wave, 22, 2); //cbSize
+            write(wave, bits, 2); //valid bits
+            write(wave, 0, 4); //channel mask
+            write(wave, format, 2); //sub format GUID
+            wave.write(new byte[14]);
+        }
+        wave.write("data".getBytes("US-ASCII"));
+        write(wave, data.size(), 4);
+        data.writeTo(wave);
+        return wave.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, long value, int bytes) {
+        for(int i = 0; i < bytes; i++){
+            out.write((int)(value >> (8 * i)));
+        }
+    }
+}
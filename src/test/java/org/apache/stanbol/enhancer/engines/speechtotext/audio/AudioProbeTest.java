@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.junit.Test;
+
+public class AudioProbeTest {
+
+    private final AudioDecoderRegistry registry = AudioDecoderRegistry.createDefault();
+
+    @Test
+    public void testWaveProbe() throws IOException {
+        byte[] wave = readResource("temp.wav");
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(wave));
+        AudioProbe probe = AudioProbe.probe(registry, in, "audio/wav", null);
+        assertTrue(probe.getError(), probe.isSupported());
+        assertEquals(AudioProbe.PROBE_SIZE, in.getCount());
+        WavHeader header = probe.getHeader();
+        assertTrue(header.isSphinxCompatible());
+        //RIFF + fmt (18 bytes) + fact chunk + data chunk header
+        assertEquals(58, header.getDataOffset());
+        //decoding skips the already parsed header
+        DecodedAudio audio = probe.decode(new ByteArrayInputStream(wave));
+        InputStream parsed = new ByteArrayInputStream(wave);
+        WavHeader.parse(parsed);
+        assertEquals(header.getDataLength(), audio.getFormat().getDataLength());
+        assertArrayEquals(IOUtils.toByteArray(parsed), IOUtils.toByteArray(audio.getStream()));
+    }
+
+    @Test
+    public void testTrailingChunks() throws IOException {
+        byte[] wave = readResource("temp.wav");
+        InputStream parsed = new ByteArrayInputStream(wave);
+        WavHeader.parse(parsed);
+        byte[] data = IOUtils.toByteArray(parsed);
+        //a LIST chunk after the sample data
+        byte[] tagged = new byte[wave.length + 16];
+        System.arraycopy(wave, 0, tagged, 0, wave.length);
+        System.arraycopy("LIST\b\0\0\0INFOISFT".getBytes("US-ASCII"), 0, tagged, wave.length, 16);
+        AudioProbe probe = AudioProbe.probe(registry, new ByteArrayInputStream(tagged), "audio/wav", null);
+        assertTrue(probe.getError(), probe.isSupported());
+        DecodedAudio audio = probe.decode(new ByteArrayInputStream(tagged));
+        assertArrayEquals(data, IOUtils.toByteArray(audio.getStream()));
+        audio = registry.decode(new BufferedInputStream(new ByteArrayInputStream(tagged)), "audio/wav", null);
+        assertArrayEquals(data, IOUtils.toByteArray(audio.getStream()));
+    }
+
+    @Test
+    public void testUnsupported() throws IOException {
+        assertFalse(AudioProbe.probe(registry, new ByteArrayInputStream(new byte[0]), 
+            "audio/wav", null).isSupported());
+        assertFalse(AudioProbe.probe(registry, new ByteArrayInputStream(new byte[64]), 
+            "text/plain", null).isSupported());
+        //invalid channel count
+        byte[] wave = readResource("temp.wav");
+        wave[22] = 0;
+        AudioProbe probe = AudioProbe.probe(registry, new ByteArrayInputStream(wave), "audio/wav", null);
+        assertFalse(probe.isSupported());
+        //WAVE MIME type without header: parsed as is to the recognizer
+        probe = AudioProbe.probe(registry, new ByteArrayInputStream(new byte[64]), "audio/wav", null);
+        assertTrue(probe.isSupported());
+        assertNull(probe.decode(new ByteArrayInputStream(new byte[64])));
+    }
+
+    @Test
+    public void testPartialHeader() throws IOException {
+        byte[] wave = readResource("temp.wav");
+        //the data chunk is not within the probed bytes
+        WavHeader header = WavHeader.probe(wave, 44);
+        assertEquals(16000, header.getSampleRate());
+        assertEquals(-1, header.getDataOffset());
+    }
+
+    private byte[] readResource(String resource) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(resource);
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.SilenceSegmenter.Segment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedAudioInputStreamTest {
+
+    private static final int RATE = 16000;
+    /**
+     * small windows to test reads across window boundaries
+     */
+    private static final int WINDOW = 4000;
+
+    private File file;
+    private byte[] data;
+
+    @Before
+    public void createFile() throws IOException {
+        //1s noise, 1s silence, 1s noise
+        data = new byte[RATE * 2 * 3];
+        Random random = new Random(42);
+        for(int i = 0; i < data.length; i++){
+            if(i < RATE * 2 || i >= RATE * 4){
+                data[i] = (byte)random.nextInt();
+            }
+        }
+        file = File.createTempFile("mapped", ".pcm");
+        FileUtils.writeByteArrayToFile(file, data);
+    }
+
+    @After
+    public void deleteFile() {
+        FileUtils.deleteQuietly(file);
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        MappedAudioInputStream in = new MappedAudioInputStream(new FileInputStream(file), WINDOW);
+        try {
+            assertEquals(data.length, in.remaining());
+            in.mark(0);
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+            assertEquals(-1, in.read());
+            in.reset();
+            assertEquals(1000, in.skip(1000));
+            assertEquals(data[1000] & 0xff, in.read());
+            ByteBuffer view = in.peek(WINDOW * 2);
+            assertEquals(WINDOW * 2, view.remaining());
+            assertEquals(data[1001], view.get(0));
+            assertEquals(data[1001 + WINDOW], view.get(WINDOW));
+            //peek does not advance the stream
+            assertEquals(data[1001] & 0xff, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testLimit() throws IOException {
+        MappedAudioInputStream in = new MappedAudioInputStream(new FileInputStream(file), WINDOW);
+        try {
+            assertEquals(44, in.skip(44));
+            in.limit(WINDOW + 100);
+            assertEquals(WINDOW + 100, in.remaining());
+            assertEquals(WINDOW + 100, in.peek(WINDOW * 2).remaining());
+            byte[] expected = new byte[WINDOW + 100];
+            System.arraycopy(data, 44, expected, 0, expected.length);
+            assertArrayEquals(expected, IOUtils.toByteArray(in));
+            assertEquals(-1, in.read());
+            in.limit(data.length); //can not be extended
+            assertEquals(0, in.remaining());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSegmentsOfMappedFile() throws IOException {
+        SilenceSegmenter streamed = new SilenceSegmenter(new ByteArrayInputStream(data), 
+            RATE, 500, 60000, 300, 500);
+        MappedAudioInputStream in = new MappedAudioInputStream(new FileInputStream(file), WINDOW);
+        try {
+            SilenceSegmenter mapped = new SilenceSegmenter(in, RATE, 500, 60000, 300, 500);
+            Segment expected;
+            int count = 0;
+            while((expected = streamed.next()) != null){
+                Segment segment = mapped.next();
+                assertEquals(expected.getOffsetMillis(), segment.getOffsetMillis());
+                assertEquals(expected.getLength(), segment.getLength());
+                assertArrayEquals(toBytes(expected.getStream()), toBytes(segment.getStream()));
+                count++;
+            }
+            assertTrue(count > 1);
+            assertNull(mapped.next());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] toBytes(InputStream in) throws IOException {
+        return IOUtils.toByteArray(in);
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.stanbol.enhancer.engines.speechtotext.audio.SilenceSegmenter.Segment;
+import org.junit.Test;
+
+public class SilenceSegmenterTest {
+
+    private static final int RATE = 16000;
+
+    @Test
+    public void testCutAtPauses() throws IOException {
+        //1s tone, 0.5s silence, 1s tone, 0.5s silence, 1s tone
+        byte[] pcm = concat(tone(1000), silence(500), tone(1000), silence(500), tone(1000));
+        SilenceSegmenter segmenter = new SilenceSegmenter(new ByteArrayInputStream(pcm), 
+            RATE, 500, 60000, 300, 500);
+        List<Segment> segments = readAll(segmenter);
+        assertEquals(3, segments.size());
+        assertEquals(0, segments.get(0).getOffsetMillis());
+        //cut after 300ms of the first pause
+        assertEquals(1300, segments.get(1).getOffsetMillis());
+        assertEquals(2800, segments.get(2).getOffsetMillis());
+        int length = 0;
+        for(Segment segment : segments){
+            length += segment.getLength();
+        }
+        assertEquals(pcm.length, length);
+    }
+
+    @Test
+    public void testForcedCutAtMaxLength() throws IOException {
+        byte[] pcm = tone(2500);
+        SilenceSegmenter segmenter = new SilenceSegmenter(new ByteArrayInputStream(pcm), 
+            RATE, 500, 1000, 300, 500);
+        List<Segment> segments = readAll(segmenter);
+        assertEquals(3, segments.size());
+        assertEquals(1000, segments.get(1).getOffsetMillis());
+        assertEquals(2000, segments.get(2).getOffsetMillis());
+        assertEquals(RATE, segments.get(2).getLength()); //500ms
+    }
+
+    private static List<Segment> readAll(SilenceSegmenter segmenter) throws IOException {
+        List<Segment> segments = new ArrayList<Segment>();
+        Segment segment;
+        while((segment = segmenter.next()) != null){
+            segments.add(segment);
+        }
+        assertNull(segmenter.next());
+        return segments;
+    }
+
+    private static byte[] tone(int millis) {
+        byte[] data = new byte[RATE * millis / 1000 * 2];
+        for(int i = 0; i < data.length / 2; i++){
+            short sample = (short)(8000 * Math.sin(2 * Math.PI * 440 * i / RATE));
+            data[2*i] = (byte)sample;
+            data[2*i+1] = (byte)(sample >> 8);
+        }
+        return data;
+    }
+
+    private static byte[] silence(int millis) {
+        return new byte[RATE * millis / 1000 * 2];
+    }
+
+    private static byte[] concat(byte[]...parts) {
+        int length = 0;
+        for(byte[] part : parts){
+            length += part.length;
+        }
+        byte[] data = new byte[length];
+        int off = 0;
+        for(byte[] part : parts){
+            System.arraycopy(part, 0, data, off, part.length);
+            off += part.length;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.apache.stanbol.enhancer.engines.speechtotext.audio;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class VoiceActivityFilterTest {
+
+    private static final int RATE = 16000;
+
+    private static final VoiceActivityFilter.Settings SETTINGS = 
+            new VoiceActivityFilter.Settings(300, 0, 6000, 100, 50);
+
+    @Test
+    public void testDropSilence() throws IOException {
+        //1s silence, 1s tone, 2s silence, 1s tone, 1s silence
+        byte[] pcm = concat(silence(1000), tone(1000), silence(2000), tone(1000), silence(1000));
+        VoiceActivityFilter vad = new VoiceActivityFilter(new ByteArrayInputStream(pcm), RATE, SETTINGS);
+        byte[] filtered = IOUtils.toByteArray(vad);
+        //2 x (50ms pre-roll + 1s tone + 100ms hangover)
+        assertEquals(2 * 1150 * RATE / 1000 * 2, filtered.length);
+        assertEquals(6000 - 2300, vad.getDroppedMillis());
+        OffsetMap map = vad.getOffsetMap();
+        assertEquals(2, map.getRegionCount());
+        assertEquals(950, map.toOriginal(0)); //start of the first pre-roll
+        assertEquals(1050, map.toOriginal(100));
+        assertEquals(3950, map.toOriginal(1150)); //start of the second pre-roll
+        assertEquals(4500, map.toOriginal(1700));
+    }
+
+    @Test
+    public void testRejectHighZeroCrossingRate() throws IOException {
+        //a 7 kHz tone exceeds the maximum zero crossing rate of speech
+        byte[] pcm = tone(1000, 7000);
+        VoiceActivityFilter vad = new VoiceActivityFilter(new ByteArrayInputStream(pcm), RATE, SETTINGS);
+        assertEquals(0, IOUtils.toByteArray(vad).length);
+    }
+
+    private static byte[] tone(int millis) {
+        return tone(millis, 440);
+    }
+
+    private static byte[] tone(int millis, int frequency) {
+        byte[] data = new byte[RATE * millis / 1000 * 2];
+        for(int i = 0; i < data.length / 2; i++){
+            short sample = (short)(8000 * Math.sin(2 * Math.PI * frequency * i / RATE));
+            data[2*i] = (byte)sample;
+            data[2*i+1] = (byte)(sample >> 8);
+        }
+        return data;
+    }
+
+    private static byte[] silence(int millis) {
+        return new byte[RATE * millis / 1000 * 2];
+    }
+
+    private static byte[] concat(byte[]...parts) {
+        int length = 0;
+        for(byte[] part : parts){
+            length += part.length;
+        }
+        byte[] data = new byte[length];
+        int off = 0;
+        for(byte[] part : parts){
+            System.arraycopy(part, 0, data, off, part.length);
+            off += part.length;
+        }
+        return data;
+    }
+}